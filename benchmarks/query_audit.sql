@@ -0,0 +1,143 @@
+-- EXPLAIN audit of every query the repositories and the duration trigger run.
+--
+-- Run against a database with realistic history, once before V3 and once
+-- after, and compare plan shapes (Index Only Scan / Index Scan vs Seq Scan,
+-- Sort nodes) and execution times:
+--
+--   psql -U nhp_user -d nhp_outages \
+--        -v asn=15169 -v prefix="'8.8.8.0/24'" -v range="'8.8.0.0/16'" \
+--        -f benchmarks/query_audit.sql > audit.txt
+--
+-- Parameters mirror the application's defaults: 101-row pages (limit + 1),
+-- a 24 hour map window and a 7 day stats window.
+--
+-- Results for V3: pending. No database with real history has been
+-- available to run this against, so there are no before/after plans or
+-- timings yet. Record both runs' plan node and execution time per query
+-- here when they exist; until then the gains of V3 are unmeasured.
+
+\timing on
+\pset pager off
+
+\echo '== OutageEventRepository.findPage (/outages/recent) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM outage_events
+WHERE timestamp >= 'epoch' AND timestamp <= '9999-12-31'
+  AND (timestamp < '9999-12-31' OR id < 9223372036854775807)
+ORDER BY timestamp DESC, id DESC LIMIT 101;
+
+\echo '== OutageEventRepository.findPageByOriginAsn (/asn/{asn}/events) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM outage_events
+WHERE origin_asn = :asn
+  AND timestamp >= 'epoch' AND timestamp <= '9999-12-31'
+  AND (timestamp < '9999-12-31' OR id < 9223372036854775807)
+ORDER BY timestamp DESC, id DESC LIMIT 101;
+
+\echo '== OutageEventRepository.findPageByPrefix (/prefix/{prefix}/history) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM outage_events
+WHERE prefix = CAST(:prefix AS cidr)
+  AND timestamp >= 'epoch' AND timestamp <= '9999-12-31'
+  AND (timestamp < '9999-12-31' OR id < 9223372036854775807)
+ORDER BY timestamp DESC, id DESC LIMIT 101;
+
+\echo '== OutageEventRepository.findPageWithinRange (/prefixes/within) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM outage_events
+WHERE prefix <<= CAST(:range AS cidr)
+  AND timestamp >= 'epoch' AND timestamp <= '9999-12-31'
+  AND (timestamp < '9999-12-31' OR id < 9223372036854775807)
+ORDER BY timestamp DESC, id DESC LIMIT 101;
+
+\echo '== OutageEventRepository.findPageCovering (/prefixes/covering) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM outage_events
+WHERE prefix >>= CAST(:prefix AS inet)
+  AND timestamp >= 'epoch' AND timestamp <= '9999-12-31'
+  AND (timestamp < '9999-12-31' OR id < 9223372036854775807)
+ORDER BY timestamp DESC, id DESC LIMIT 101;
+
+\echo '== OutageEventRepository.findActiveOutages (/outages/active) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM outage_events
+WHERE event_type = 'outage_start' AND resolved_at IS NULL
+ORDER BY timestamp DESC;
+
+\echo '== OutageEventRepository.countByEventTypeAndResolvedAtIsNull =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT COUNT(*) FROM outage_events
+WHERE event_type = 'outage_start' AND resolved_at IS NULL;
+
+\echo '== OutageEventRepository.findByTimestampAfterOrderByTimestampDesc (/outages/map) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM outage_events
+WHERE timestamp > NOW() - INTERVAL '24 hours'
+ORDER BY timestamp DESC;
+
+\echo '== OutageEventRepository.countByEventType =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT COUNT(*) FROM outage_events WHERE event_type = 'outage_start';
+
+\echo '== OutageEventRepository.countByEventTypeAndTimestampAfter =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT COUNT(*) FROM outage_events
+WHERE event_type = 'outage_start' AND timestamp > NOW() - INTERVAL '7 days';
+
+\echo '== OutageEventRepository.countByEventTypePerHourSince (stats seeding) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT CAST(EXTRACT(EPOCH FROM date_trunc('hour', timestamp)) AS BIGINT), COUNT(*)
+FROM outage_events
+WHERE event_type = 'outage_start' AND timestamp >= NOW() - INTERVAL '7 days'
+GROUP BY 1;
+
+\echo '== OutageStatsService seed: distinct origin ASNs =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT DISTINCT origin_asn FROM outage_events;
+
+\echo '== OutageStatsService seed: distinct prefixes =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT DISTINCT CAST(prefix AS TEXT) FROM outage_events;
+
+\echo '== OutageEventRepository.countDistinctPrefixByOriginAsn (ASN severity) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT COUNT(DISTINCT prefix) FROM outage_events WHERE origin_asn = :asn;
+
+\echo '== OutageEventRepository.findAverageDurationMinutes / sumResolvedDurationSeconds =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT COUNT(duration), COALESCE(SUM(EXTRACT(EPOCH FROM duration)), 0)
+FROM outage_events WHERE duration IS NOT NULL;
+
+\echo '== calculate_outage_duration trigger lookup =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT id, timestamp FROM outage_events
+WHERE prefix = CAST(:prefix AS cidr)
+  AND origin_asn = :asn
+  AND event_type = 'outage_start'
+  AND resolved_at IS NULL
+  AND timestamp < NOW()
+ORDER BY timestamp DESC LIMIT 1;
+
+\echo '== Export (/export/outage-events) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM outage_events
+WHERE timestamp >= NOW() - INTERVAL '1 day' AND timestamp <= NOW()
+ORDER BY timestamp, id;
+
+\echo '== AsnOutageRepository.findPageByAsn (/asn/{asn}/outages) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM asn_outages
+WHERE asn = :asn
+  AND start_time >= 'epoch' AND start_time <= '9999-12-31'
+  AND (start_time < '9999-12-31' OR id < 9223372036854775807)
+ORDER BY start_time DESC, id DESC LIMIT 101;
+
+\echo '== AsnOutageRepository.findActiveAsnOutages =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM asn_outages WHERE end_time IS NULL ORDER BY start_time DESC;
+
+\echo '== AsnOutageRepository.findRecentAsnOutages =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM asn_outages
+WHERE start_time >= NOW() - INTERVAL '24 hours'
+ORDER BY start_time DESC;
@@ -0,0 +1,76 @@
+-- Storage and query benchmark for the outage hypertables.
+--
+-- Run once before and once after the V2 storage policies take effect, and
+-- compare the output:
+--
+--   psql -U nhp_user -d nhp_outages -v asn=15169 -f benchmarks/storage_policies.sql > before.txt
+--   -- apply V2, then force compression of eligible chunks instead of waiting
+--   -- for the background job:
+--   --   SELECT compress_chunk(c, if_not_compressed => TRUE)
+--   --   FROM show_chunks('outage_events', older_than => INTERVAL '14 days') c;
+--   psql -U nhp_user -d nhp_outages -v asn=15169 -f benchmarks/storage_policies.sql > after.txt
+--
+-- Pick an ASN with a long history for :asn so the per-ASN queries touch
+-- compressed chunks.
+--
+-- Results for V2: pending. No TimescaleDB instance with real history has
+-- been available to run this against, so the disk usage, compression ratio
+-- and query timing gains of the storage policies are not measured yet.
+
+\timing on
+\pset pager off
+
+\echo '== Disk usage =='
+SELECT hypertable_name,
+       pg_size_pretty(hypertable_size(format('%I', hypertable_name)::regclass)) AS total_size,
+       num_chunks
+FROM timescaledb_information.hypertables
+WHERE hypertable_name IN ('outage_events', 'asn_outages');
+
+SELECT pg_size_pretty(pg_total_relation_size('asn_outages')) AS asn_outages_size_if_plain_table;
+
+\echo '== Compression =='
+SELECT 'outage_events' AS hypertable,
+       total_chunks, number_compressed_chunks,
+       pg_size_pretty(before_compression_total_bytes) AS before,
+       pg_size_pretty(after_compression_total_bytes) AS after
+FROM hypertable_compression_stats('outage_events')
+UNION ALL
+SELECT 'asn_outages',
+       total_chunks, number_compressed_chunks,
+       pg_size_pretty(before_compression_total_bytes),
+       pg_size_pretty(after_compression_total_bytes)
+FROM hypertable_compression_stats('asn_outages');
+
+\echo '== ASN history (newest page) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM outage_events
+WHERE origin_asn = :asn
+ORDER BY timestamp DESC, id DESC
+LIMIT 101;
+
+\echo '== ASN history (one month, a year ago) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM outage_events
+WHERE origin_asn = :asn
+  AND timestamp >= NOW() - INTERVAL '395 days'
+  AND timestamp <= NOW() - INTERVAL '365 days'
+ORDER BY timestamp DESC, id DESC
+LIMIT 101;
+
+\echo '== Map window (24 hours) =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM outage_events
+WHERE timestamp > NOW() - INTERVAL '24 hours'
+ORDER BY timestamp DESC;
+
+\echo '== Full-range count by type =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT event_type, COUNT(*) FROM outage_events GROUP BY event_type;
+
+\echo '== ASN outage history =='
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM asn_outages
+WHERE asn = :asn
+ORDER BY start_time DESC, id DESC
+LIMIT 101;
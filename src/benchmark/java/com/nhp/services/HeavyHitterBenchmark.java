@@ -0,0 +1,183 @@
+package com.nhp.services;
+
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * Accuracy and single-core throughput of the heavy-hitter sketches. Updates
+ * are drawn from a Zipf distribution over the prefixes (a few flapping
+ * prefixes and a long quiet tail, as in RIS churn), each prefix with a fixed
+ * origin ASN, and fed to the Space-Saving counters and HyperLogLog counts the
+ * way one HeavyHitterService window is. The sketches are checked against
+ * exact counts before anything is timed: every key above updates / capacity
+ * is kept, its true count lies within [count - error, count], and the
+ * distinct counts are within four standard errors.
+ *
+ *   ./gradlew heavyHitterBenchmark [-Pupdates=10000000] [-Pprefixes=1000000] [-Pcapacity=1000] [-Pskew=1.1]
+ */
+public final class HeavyHitterBenchmark {
+
+    private static final int PASSES = 5;
+    private static final int PRECISION = 14;
+    private static final int ASNS = 70_000;
+    private static final int SHOWN = 10;
+
+    public static void main(String[] args) throws Exception {
+        int updates = Integer.getInteger("updates", 10_000_000);
+        int prefixCount = Integer.getInteger("prefixes", 1_000_000);
+        int capacity = Integer.getInteger("capacity", 1000);
+        double skew = Double.parseDouble(System.getProperty("skew", "1.1"));
+
+        String[] prefixes = new String[prefixCount];
+        String[] origins = new String[prefixCount];
+        for (int i = 0; i < prefixCount; i++) {
+            prefixes[i] = (1 + (i >>> 16)) + "." + (i >>> 8 & 0xFF) + "." + (i & 0xFF) + ".0/24";
+            origins[i] = String.valueOf(1000 + i % ASNS);
+        }
+        int[] stream = zipf(updates, prefixCount, skew, new Random(7));
+        System.out.printf("Updates:       %,d over %,d prefixes and %,d ASNs (Zipf %.2f), capacity %,d%n", updates,
+                prefixCount, Math.min(ASNS, prefixCount), skew, capacity);
+
+        check(stream, prefixes, origins, capacity);
+
+        long before = usedHeap();
+        Object[] sketches = feed(stream, prefixes, origins, capacity);
+        System.out.printf("Retained:      %,d bytes for one window's update sketches%n", usedHeap() - before);
+        Reference.reachabilityFence(sketches);
+
+        for (int pass = 1; pass <= PASSES; pass++) {
+            long start = System.nanoTime();
+            sketches = feed(stream, prefixes, origins, capacity);
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("Pass %d:        %,.0f updates/s, %.0f ns/update (%d)%n", pass,
+                    updates / (elapsed / 1e9), (double) elapsed / updates, ((SpaceSaving) sketches[0]).getTotal() % 10);
+        }
+    }
+
+    /**
+     * Count the updates as a HeavyHitterService window does, without its monitor
+     */
+    private static Object[] feed(int[] stream, String[] prefixes, String[] origins, int capacity) {
+        SpaceSaving prefixUpdates = new SpaceSaving(capacity);
+        SpaceSaving asnUpdates = new SpaceSaving(capacity);
+        HyperLogLog distinctPrefixes = new HyperLogLog(PRECISION);
+        HyperLogLog distinctAsns = new HyperLogLog(PRECISION);
+        for (int index : stream) {
+            prefixUpdates.offer(prefixes[index]);
+            distinctPrefixes.add(prefixes[index]);
+            asnUpdates.offer(origins[index]);
+            distinctAsns.add(origins[index]);
+        }
+        return new Object[] { prefixUpdates, asnUpdates, distinctPrefixes, distinctAsns };
+    }
+
+    /**
+     * Indices into the prefixes, index i drawn with weight 1 / (i + 1)^skew
+     */
+    private static int[] zipf(int updates, int keys, double skew, Random random) {
+        double[] cumulative = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        int[] stream = new int[updates];
+        for (int i = 0; i < updates; i++) {
+            int at = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            stream[i] = Math.min(at < 0 ? -at - 1 : at, keys - 1);
+        }
+        return stream;
+    }
+
+    /**
+     * Compare the sketches with exact counts
+     */
+    private static void check(int[] stream, String[] prefixes, String[] origins, int capacity) {
+        long[] prefixCounts = new long[prefixes.length];
+        long[] asnCounts = new long[Math.min(ASNS, prefixes.length)];
+        SpaceSaving prefixUpdates = new SpaceSaving(capacity);
+        SpaceSaving asnUpdates = new SpaceSaving(capacity);
+        HyperLogLog distinctPrefixes = new HyperLogLog(PRECISION);
+        HyperLogLog distinctAsns = new HyperLogLog(PRECISION);
+        Set<String> exactPrefixes = new HashSet<>();
+        Set<String> exactAsns = new HashSet<>();
+        for (int index : stream) {
+            prefixCounts[index]++;
+            asnCounts[index % asnCounts.length]++;
+            prefixUpdates.offer(prefixes[index]);
+            distinctPrefixes.add(prefixes[index]);
+            exactPrefixes.add(prefixes[index]);
+            asnUpdates.offer(origins[index]);
+            distinctAsns.add(origins[index]);
+            exactAsns.add(origins[index]);
+        }
+        Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < prefixes.length; i++) {
+            indices.put(prefixes[i], i);
+        }
+        checkTop("Prefixes", prefixUpdates, prefixCounts, indices::get, stream.length, capacity);
+        checkTop("ASNs", asnUpdates, asnCounts, key -> Integer.parseInt(key) - 1000, stream.length, capacity);
+        checkDistinct("Prefixes", distinctPrefixes.estimate(), exactPrefixes.size());
+        checkDistinct("ASNs", distinctAsns.estimate(), exactAsns.size());
+    }
+
+    private static void checkTop(String name, SpaceSaving counter, long[] exact,
+            ToIntFunction<String> indexOf, long total, int capacity) {
+        List<SpaceSaving.Entry> kept = counter.top(capacity);
+        Set<Integer> keptIndices = new HashSet<>();
+        double worstError = 0;
+        for (SpaceSaving.Entry entry : kept) {
+            int index = indexOf.applyAsInt(entry.getKey());
+            keptIndices.add(index);
+            long truth = exact[index];
+            if (truth > entry.getCount() || truth < entry.getCount() - entry.getError()) {
+                throw new IllegalStateException(name + ": " + entry + " but the true count is " + truth);
+            }
+            worstError = Math.max(worstError, (double) (entry.getCount() - truth) / total);
+        }
+        int heavy = 0;
+        for (int i = 0; i < exact.length; i++) {
+            if (exact[i] > total / capacity) {
+                heavy++;
+                if (!keptIndices.contains(i)) {
+                    throw new IllegalStateException(name + ": key " + i + " with " + exact[i] + " updates was lost");
+                }
+            }
+        }
+        long[] sorted = exact.clone();
+        Arrays.sort(sorted);
+        StringBuilder top = new StringBuilder();
+        for (int i = 0; i < Math.min(SHOWN, kept.size()); i++) {
+            top.append(i > 0 ? ", " : "").append(kept.get(i).getCount()).append('/')
+                    .append(sorted[sorted.length - 1 - i]);
+        }
+        System.out.printf("%-15s%,d above updates/capacity all kept, worst overcount %.4f%% of updates%n",
+                name + ":", heavy, worstError * 100);
+        System.out.printf("%-15stop %d counted/exact: %s%n", "", SHOWN, top);
+    }
+
+    private static void checkDistinct(String name, long estimate, int exact) {
+        double error = (double) (estimate - exact) / exact;
+        if (Math.abs(error) > 4 * 1.04 / Math.sqrt(1 << PRECISION)) {
+            throw new IllegalStateException(name + ": " + estimate + " distinct estimated, " + exact + " exact");
+        }
+        System.out.printf("%-15s%,d distinct estimated, %,d exact (%+.2f%%)%n", name + ":", estimate, exact,
+                error * 100);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
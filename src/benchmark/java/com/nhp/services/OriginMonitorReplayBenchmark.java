@@ -0,0 +1,165 @@
+package com.nhp.services;
+
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Replays updates through OriginMonitor, the route anomaly stage, to measure
+ * per-update cost and retained memory per prefix. Input is a RIS Live capture
+ * (one JSON message per line, e.g. recorded from wss://ris-live.ripe.net/v1/ws/
+ * with websocat) or, without one, a synthetic stream with a small share of
+ * origin changes and more-specific hijacks mixed in. Updates are parsed up
+ * front so that only the stage itself is timed.
+ *
+ *   ./gradlew replayBenchmark [-Pcapture=ris.ndjson] [-Pupdates=5000000] [-Pprefixes=100000]
+ */
+public final class OriginMonitorReplayBenchmark {
+
+    private static final Duration LEARN_AFTER = Duration.ofHours(24);
+    private static final int MAX_ORIGINS = 8;
+
+    public static void main(String[] args) throws Exception {
+        String capture = System.getProperty("capture", "");
+        int updates = Integer.getInteger("updates", 5_000_000);
+        int prefixes = Integer.getInteger("prefixes", 100_000);
+
+        List<Update> stream = capture.isEmpty() ? synthetic(updates, prefixes) : load(Path.of(capture));
+        System.out.printf("Replaying %,d updates (%s)%n", stream.size(),
+                capture.isEmpty() ? "synthetic, " + prefixes + " prefixes" : capture);
+
+        // Warm up on a throwaway monitor so the measured pass runs compiled code
+        replay(new OriginMonitor(MAX_ORIGINS, LEARN_AFTER), stream);
+
+        long before = usedHeap();
+        OriginMonitor monitor = new OriginMonitor(MAX_ORIGINS, LEARN_AFTER);
+        long start = System.nanoTime();
+        Map<String, Integer> findings = replay(monitor, stream);
+        long elapsed = System.nanoTime() - start;
+        long retained = usedHeap() - before;
+
+        // Second pass over the same monitor: every prefix already has a profile
+        long steadyStart = System.nanoTime();
+        replay(monitor, stream);
+        long steadyElapsed = System.nanoTime() - steadyStart;
+
+        System.out.printf("Cold pass:        %,.0f updates/s, %.0f ns/update%n",
+                stream.size() / (elapsed / 1e9), (double) elapsed / stream.size());
+        System.out.printf("Steady state:     %,.0f updates/s, %.0f ns/update%n",
+                stream.size() / (steadyElapsed / 1e9), (double) steadyElapsed / stream.size());
+        System.out.printf("Tracked prefixes: %,d%n", monitor.getTrackedPrefixCount());
+        System.out.printf("Retained heap:    %,d bytes (%,d bytes/prefix)%n", retained,
+                retained / Math.max(1, monitor.getTrackedPrefixCount()));
+        System.out.printf("Findings:         %s%n", findings);
+    }
+
+    private static Map<String, Integer> replay(OriginMonitor monitor, List<Update> stream) {
+        Map<String, Integer> findings = new TreeMap<>();
+        for (Update update : stream) {
+            if (update.origin < 0) {
+                monitor.withdraw(update.prefix, update.peer);
+                continue;
+            }
+            for (OriginMonitor.Finding finding : monitor.announce(update.prefix, update.peer, update.origin, null,
+                    update.time)) {
+                findings.merge(finding.getType(), 1, Integer::sum);
+            }
+        }
+        return findings;
+    }
+
+    /**
+     * Announcements of /22s and their /24s by a fixed set of peers, 10% withdrawals,
+     * and 0.01% each of origin changes on a /22 and foreign /24s under a /22
+     */
+    private static List<Update> synthetic(int count, int prefixCount) {
+        Random random = new Random(42);
+        String[] peers = new String[200];
+        for (int i = 0; i < peers.length; i++) {
+            peers[i] = "192.0.2." + i;
+        }
+
+        List<Update> stream = new ArrayList<>(count);
+        Instant time = Instant.parse("2024-01-01T00:00:00Z");
+        for (int i = 0; i < count; i++) {
+            int block = random.nextInt(prefixCount);
+            int owner = 64512 + block % 1000;
+            String base = (1 + (block >> 14)) + "." + ((block >> 6) & 0xFF) + "." + ((block & 0x3F) << 2);
+            String peer = peers[random.nextInt(peers.length)];
+            time = time.plusMillis(1);
+
+            double roll = random.nextDouble();
+            if (roll < 0.10) {
+                stream.add(new Update(base + ".0/22", peer, -1, time));
+            } else if (roll < 0.1001) {
+                stream.add(new Update(base + ".0/22", peer, 65000 + random.nextInt(500), time));
+            } else if (roll < 0.1002) {
+                stream.add(new Update(base + ".0/24", peer, 65000 + random.nextInt(500), time));
+            } else if (roll < 0.40) {
+                stream.add(new Update(base + ".0/24", peer, owner, time));
+            } else {
+                stream.add(new Update(base + ".0/22", peer, owner, time));
+            }
+        }
+        return stream;
+    }
+
+    /**
+     * Flatten a RIS Live capture into per-prefix updates
+     */
+    private static List<Update> load(Path capture) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        List<Update> stream = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(capture)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode data = mapper.readTree(line).path("data");
+                if (!"UPDATE".equals(data.path("type").asText())) {
+                    continue;
+                }
+                String peer = data.path("peer").asText();
+                double seconds = data.path("timestamp").asDouble();
+                Instant time = Instant.ofEpochMilli((long) (seconds * 1000));
+
+                JsonNode path = data.path("path");
+                JsonNode last = path.size() > 0 ? path.get(path.size() - 1) : null;
+                int origin = last != null && last.isInt() ? last.asInt() : 0;
+
+                for (JsonNode withdrawn : data.path("withdrawals")) {
+                    stream.add(new Update(withdrawn.asText(), peer, -1, time));
+                }
+                if (origin > 0) {
+                    for (JsonNode announcement : data.path("announcements")) {
+                        for (JsonNode prefix : announcement.path("prefixes")) {
+                            stream.add(new Update(prefix.asText(), peer, origin, time));
+                        }
+                    }
+                }
+            }
+        }
+        return stream;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // origin < 0 marks a withdrawal
+    private record Update(String prefix, String peer, int origin, Instant time) {
+    }
+}
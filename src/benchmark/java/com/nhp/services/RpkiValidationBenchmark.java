@@ -0,0 +1,188 @@
+package com.nhp.services;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Single-core lookup throughput of VrpTable, the RPKI validation stage. VRPs
+ * come from a validator export or, without one, a synthetic set the size of
+ * the global RPKI (450k IPv4 and 120k IPv6 VRPs); announcements are drawn from
+ * the VRP prefixes with matching, foreign and too-specific origins plus
+ * uncovered space. A sample is checked against a naive per-length lookup
+ * before anything is timed. Each pass times lookups from the prefix text,
+ * as the ingest path does, and from already parsed address bits.
+ *
+ *   ./gradlew rpkiBenchmark [-Pvrps=vrps.json] [-Plookups=2000000]
+ */
+public final class RpkiValidationBenchmark {
+
+    private static final int PASSES = 5;
+    private static final int CHECKED = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        String file = System.getProperty("vrps", "");
+        int lookups = Integer.getInteger("lookups", 2_000_000);
+
+        List<VrpTable.Vrp> vrps = file.isEmpty() ? synthetic(450_000, 120_000) : VrpTable.read(Path.of(file));
+        long before = usedHeap();
+        long buildStart = System.nanoTime();
+        VrpTable table = VrpTable.build(vrps);
+        long buildElapsed = System.nanoTime() - buildStart;
+        long retained = usedHeap() - before;
+        System.out.printf("VRPs:          %,d (%s), %,d skipped%n", table.getVrpCount(),
+                file.isEmpty() ? "synthetic" : file, table.getSkippedCount());
+        System.out.printf("Build:         %,d ms, %,d trie nodes, %,d bytes retained%n",
+                buildElapsed / 1_000_000, table.getNodeCount(), retained);
+
+        String[] prefixes = new String[lookups];
+        int[] origins = new int[lookups];
+        announcements(vrps, prefixes, origins);
+        check(table, vrps, prefixes, origins);
+
+        Map<String, Integer> statuses = new TreeMap<>();
+        for (int i = 0; i < lookups; i++) {
+            statuses.merge(table.validate(prefixes[i], origins[i]), 1, Integer::sum);
+        }
+        System.out.printf("Announcements: %,d %s%n", lookups, statuses);
+
+        long[] highs = new long[lookups];
+        long[] lows = new long[lookups];
+        int[] lengths = new int[lookups];
+        boolean[] ipv6 = new boolean[lookups];
+        for (int i = 0; i < lookups; i++) {
+            long[] key = VrpTable.parse(prefixes[i]);
+            highs[i] = key[0];
+            lows[i] = key[1];
+            lengths[i] = (int) key[2];
+            ipv6[i] = key[3] == 6;
+        }
+
+        for (int pass = 1; pass <= PASSES; pass++) {
+            int sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sink += table.validate(prefixes[i], origins[i]).length();
+            }
+            long text = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sink += table.validate(highs[i], lows[i], lengths[i], ipv6[i], origins[i]).length();
+            }
+            long parsed = System.nanoTime() - start;
+            System.out.printf("Pass %d:        text %,.0f lookups/s (%.0f ns), parsed %,.0f lookups/s (%.0f ns) (%d)%n",
+                    pass, lookups / (text / 1e9), (double) text / lookups, lookups / (parsed / 1e9),
+                    (double) parsed / lookups, sink % 10);
+        }
+    }
+
+    /**
+     * IPv4 VRPs from /12 to /24 with max lengths up to /24, IPv6 from /29 to
+     * /48; origins cycle through a few thousand ASNs
+     */
+    private static List<VrpTable.Vrp> synthetic(int ipv4, int ipv6) {
+        Random random = new Random(42);
+        List<VrpTable.Vrp> vrps = new ArrayList<>(ipv4 + ipv6);
+        for (int i = 0; i < ipv4; i++) {
+            int length = 12 + random.nextInt(13);
+            int address = (1 + random.nextInt(222)) << 24 | random.nextInt(1 << 24);
+            address &= -1 << (32 - length);
+            String prefix = (address >>> 24) + "." + (address >> 16 & 0xFF) + "." + (address >> 8 & 0xFF) + "."
+                    + (address & 0xFF) + "/" + length;
+            vrps.add(new VrpTable.Vrp(1000 + random.nextInt(5000), prefix, length + random.nextInt(25 - length)));
+        }
+        for (int i = 0; i < ipv6; i++) {
+            int length = 29 + random.nextInt(20);
+            long top = 0x2000_0000_0000_0000L | (random.nextLong() >>> 4);
+            top &= -1L << (64 - length);
+            String prefix = String.format("%x:%x:%x::/%d", top >>> 48, top >>> 32 & 0xFFFF, top >>> 16 & 0xFFFF,
+                    length);
+            vrps.add(new VrpTable.Vrp(1000 + random.nextInt(5000), prefix, Math.min(48, length + random.nextInt(5))));
+        }
+        return vrps;
+    }
+
+    /**
+     * 60% VRP prefixes from their own AS, 15% from another AS, 10% more specific
+     * than allowed, 15% uncovered space
+     */
+    private static void announcements(List<VrpTable.Vrp> vrps, String[] prefixes, int[] origins) {
+        Random random = new Random(7);
+        for (int i = 0; i < prefixes.length; i++) {
+            VrpTable.Vrp vrp = vrps.get(random.nextInt(vrps.size()));
+            double roll = random.nextDouble();
+            String base = vrp.getPrefix().substring(0, vrp.getPrefix().indexOf('/'));
+            boolean ipv6 = base.indexOf(':') >= 0;
+            if (roll < 0.60) {
+                prefixes[i] = vrp.getPrefix();
+                origins[i] = vrp.getAsn();
+            } else if (roll < 0.75) {
+                prefixes[i] = vrp.getPrefix();
+                origins[i] = 64512 + random.nextInt(1000);
+            } else if (roll < 0.85) {
+                prefixes[i] = base + "/" + Math.min(ipv6 ? 128 : 32, vrp.getMaxLength() + 1);
+                origins[i] = vrp.getAsn();
+            } else {
+                prefixes[i] = ipv6 ? String.format("3%03x:%x::/48", random.nextInt(4096), random.nextInt(65536))
+                        : (224 + random.nextInt(16)) + "." + random.nextInt(256) + "." + random.nextInt(256) + ".0/24";
+                origins[i] = vrp.getAsn();
+            }
+        }
+    }
+
+    /**
+     * Compare against RFC 6811 applied by looking up every covering length
+     */
+    private static void check(VrpTable table, List<VrpTable.Vrp> vrps, String[] prefixes, int[] origins) {
+        Map<String, List<VrpTable.Vrp>> byPrefix = new HashMap<>();
+        for (VrpTable.Vrp vrp : vrps) {
+            try {
+                byPrefix.computeIfAbsent(PrefixNotation.normalize(vrp.getPrefix()), key -> new ArrayList<>()).add(vrp);
+            } catch (IllegalArgumentException e) {
+                // Skipped by the table as well
+            }
+        }
+        for (int i = 0; i < Math.min(CHECKED, prefixes.length); i++) {
+            String prefix = prefixes[i];
+            int slash = prefix.indexOf('/');
+            int length = Integer.parseInt(prefix.substring(slash + 1));
+            String expected = VrpTable.NOT_FOUND;
+            for (int covering = 0; covering <= length && !VrpTable.VALID.equals(expected); covering++) {
+                for (VrpTable.Vrp vrp : byPrefix.getOrDefault(
+                        PrefixNotation.normalize(prefix.substring(0, slash) + "/" + covering), List.of())) {
+                    if (vrp.getMaxLength() < covering) {
+                        continue; // Skipped by the table as malformed
+                    }
+                    expected = vrp.getAsn() == origins[i] && vrp.getMaxLength() >= length ? VrpTable.VALID
+                            : VrpTable.INVALID;
+                    if (VrpTable.VALID.equals(expected)) {
+                        break;
+                    }
+                }
+            }
+            String actual = table.validate(prefix, origins[i]);
+            long[] key = VrpTable.parse(prefix);
+            if (!actual.equals(table.validate(key[0], key[1], (int) key[2], key[3] == 6, origins[i]))) {
+                throw new IllegalStateException(prefix + " AS" + origins[i] + ": parsed lookup differs from " + actual);
+            }
+            if (!expected.equals(actual)) {
+                throw new IllegalStateException(prefix + " AS" + origins[i] + ": expected " + expected + ", got "
+                        + actual + ", covering " + table.covering(prefix));
+            }
+        }
+        System.out.printf("Checked:       %,d lookups against the naive lookup%n", Math.min(CHECKED, prefixes.length));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
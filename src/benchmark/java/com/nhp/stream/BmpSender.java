@@ -0,0 +1,266 @@
+package com.nhp.stream;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.nhp.dto.BgpUpdateMessage;
+
+import io.netty.buffer.Unpooled;
+
+/**
+ * Stand-in for a router's BMP session, to exercise BmpListener locally. It
+ * sends an Initiation, a Peer Up per monitored peer, every prefix announced
+ * from every peer (IPv4 /24s, and every fourth prefix an IPv6 /48 in
+ * MP_REACH, up to 50 per UPDATE), then withdraws a share of them from every
+ * peer so they go into outage, and closes with a Peer Down and a Termination.
+ * Every message is first decoded with BmpDecoder and checked against what was
+ * encoded; with -Pconnect=false nothing is sent and the decode throughput is
+ * reported instead.
+ *
+ *   ./gradlew bmpSender [-Phost=localhost] [-Pport=11019] [-Ppeers=4] [-Pprefixes=10000] [-Pwithdraw=0.1]
+ */
+public final class BmpSender {
+
+    private static final int PER_UPDATE = 50;
+    private static final int PASSES = 5;
+    private static final String ROUTER = "127.0.0.1";
+
+    private final List<byte[]> messages = new ArrayList<>();
+    private final List<List<String>> expected = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        String host = System.getProperty("host", "localhost");
+        int port = Integer.getInteger("port", 11019);
+        int peers = Integer.getInteger("peers", 4);
+        int prefixes = Integer.getInteger("prefixes", 10_000);
+        double withdraw = Double.parseDouble(System.getProperty("withdraw", "0.1"));
+        boolean connect = Boolean.parseBoolean(System.getProperty("connect", "true"));
+
+        BmpSender sender = new BmpSender();
+        long seconds = System.currentTimeMillis() / 1000;
+        sender.add(initiation("nhp-bmp-sender"), List.of());
+        for (int peer = 0; peer < peers; peer++) {
+            sender.add(peerUp(peer, seconds), List.of("connected " + peerAddress(peer)));
+        }
+        for (int peer = 0; peer < peers; peer++) {
+            sender.addRouteMonitoring(peer, seconds, prefixes, true);
+        }
+        int withdrawn = (int) (prefixes * withdraw);
+        for (int peer = 0; peer < peers; peer++) {
+            sender.addRouteMonitoring(peer, seconds, withdrawn, false);
+        }
+        sender.add(peerDown(peers - 1, seconds), List.of("down " + peerAddress(peers - 1)));
+        sender.add(termination(), List.of());
+
+        long bytes = sender.check();
+        System.out.printf("Messages:      %,d (%,d bytes), %,d prefixes from %d peers, %,d withdrawn%n",
+                sender.messages.size(), bytes, prefixes, peers, withdrawn);
+        System.out.printf("Checked:       every message against the decoder%n");
+
+        if (!connect) {
+            for (int pass = 1; pass <= PASSES; pass++) {
+                long[] updates = new long[1];
+                long start = System.nanoTime();
+                for (byte[] message : sender.messages) {
+                    BmpDecoder.decode(Unpooled.wrappedBuffer(message), ROUTER, update -> updates[0]++);
+                }
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("Pass %d:        %,.0f messages/s, %,.0f updates/s%n", pass,
+                        sender.messages.size() / (elapsed / 1e9), updates[0] / (elapsed / 1e9));
+            }
+            return;
+        }
+
+        long start = System.nanoTime();
+        try (Socket socket = new Socket(host, port);
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            for (byte[] message : sender.messages) {
+                out.write(message);
+            }
+            out.flush();
+        }
+        System.out.printf("Sent:          %s:%d in %,d ms%n", host, port, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void add(byte[] message, List<String> updates) {
+        messages.add(message);
+        expected.add(updates);
+    }
+
+    /**
+     * Announce or withdraw prefixes [0, count) from a peer, PER_UPDATE per
+     * message; each message's prefixes share one path and origin
+     */
+    private void addRouteMonitoring(int peer, long seconds, int count, boolean announce) {
+        for (int first = 0; first < count; first += PER_UPDATE) {
+            int last = Math.min(count, first + PER_UPDATE);
+            int origin = 64512 + first / PER_UPDATE % 1000;
+            List<String> updates = new ArrayList<>();
+            // Decoded withdrawals first, IPv4 before IPv6 in both cases
+            for (int ipv6 = 0; ipv6 < 2; ipv6++) {
+                for (int i = first; i < last; i++) {
+                    if ((i % 4 == 3) == (ipv6 == 1)) {
+                        updates.add((announce ? "announce " : "withdraw ") + prefixText(i) + " "
+                                + peerAddress(peer) + (announce ? " " + origin : ""));
+                    }
+                }
+            }
+            add(routeMonitoring(peer, seconds, first, last, origin, announce), updates);
+        }
+    }
+
+    /**
+     * Decode every message and compare the updates with what was encoded
+     */
+    private long check() {
+        long bytes = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            List<String> decoded = new ArrayList<>();
+            BmpDecoder.decode(Unpooled.wrappedBuffer(messages.get(i)), ROUTER, update -> decoded.add(describe(update)));
+            if (!decoded.equals(expected.get(i))) {
+                throw new IllegalStateException("Message " + i + ": expected " + expected.get(i) + ", got " + decoded);
+            }
+            bytes += messages.get(i).length;
+        }
+        return bytes;
+    }
+
+    private static String describe(BgpUpdateMessage update) {
+        if (update.getPeerState() != null) {
+            return update.getPeerState() + " " + update.getCollector();
+        }
+        return update.isAnnouncement()
+                ? "announce " + update.getPrefix() + " " + update.getCollector() + " " + update.getOriginAsn()
+                : "withdraw " + update.getPrefix() + " " + update.getCollector();
+    }
+
+    /**
+     * IPv4 /24s from 10.0.0.0, every fourth an IPv6 /48 in 2001:db8::/32
+     */
+    private static String prefixText(int i) {
+        return i % 4 == 3 ? String.format("2001:db8:%x::/48", i & 0xFFFF)
+                : (10 + (i >> 16 & 0xFF)) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF) + ".0/24";
+    }
+
+    private static byte[] nlri(int i) {
+        return i % 4 == 3 ? new byte[] { 48, 0x20, 0x01, 0x0d, (byte) 0xb8, (byte) (i >> 8), (byte) i }
+                : new byte[] { 24, (byte) (10 + (i >> 16)), (byte) (i >> 8), (byte) i };
+    }
+
+    /**
+     * A Route Monitoring UPDATE for prefixes [first, last): IPv4 ones in the
+     * NLRI or withdrawn routes field, IPv6 ones in MP_REACH or MP_UNREACH
+     */
+    private static byte[] routeMonitoring(int peer, long seconds, int first, int last, int origin,
+            boolean announce) {
+        ByteBuffer ipv4 = ByteBuffer.allocate(PER_UPDATE * 4);
+        ByteBuffer ipv6 = ByteBuffer.allocate(PER_UPDATE * 7);
+        for (int i = first; i < last; i++) {
+            (i % 4 == 3 ? ipv6 : ipv4).put(nlri(i));
+        }
+        ipv4.flip();
+        ipv6.flip();
+
+        ByteBuffer attrs = ByteBuffer.allocate(1024);
+        if (announce) {
+            attrs.put((byte) 0x40).put((byte) 1).put((byte) 1).put((byte) 0); // ORIGIN IGP
+            attrs.put((byte) 0x40).put((byte) 2).put((byte) 14) // AS_PATH, one AS_SEQUENCE of 3
+                    .put((byte) 2).put((byte) 3).putInt(64496 + peer).putInt(3356).putInt(origin);
+            attrs.put((byte) 0x40).put((byte) 3).put((byte) 4).putInt(0xC0000201 + peer); // NEXT_HOP
+            if (ipv6.hasRemaining()) {
+                attrs.put((byte) 0x90).put((byte) 14).putShort((short) (5 + 16 + ipv6.remaining()))
+                        .putShort((short) 2).put((byte) 1).put((byte) 16).put(new byte[16]).put((byte) 0)
+                        .put(ipv6);
+            }
+        } else if (ipv6.hasRemaining()) {
+            attrs.put((byte) 0x90).put((byte) 15).putShort((short) (3 + ipv6.remaining()))
+                    .putShort((short) 2).put((byte) 1).put(ipv6);
+        }
+        attrs.flip();
+
+        int withdrawnLength = announce ? 0 : ipv4.remaining();
+        int bgpLength = 19 + 2 + withdrawnLength + 2 + attrs.remaining() + (announce ? ipv4.remaining() : 0);
+        ByteBuffer message = header(BmpDecoder.ROUTE_MONITORING, BmpDecoder.PER_PEER_HEADER + bgpLength);
+        perPeerHeader(message, peer, seconds);
+        message.put(marker()).putShort((short) bgpLength).put((byte) 2);
+        message.putShort((short) withdrawnLength);
+        if (!announce) {
+            message.put(ipv4);
+        }
+        message.putShort((short) attrs.remaining()).put(attrs);
+        if (announce) {
+            message.put(ipv4);
+        }
+        return message.array();
+    }
+
+    private static byte[] initiation(String sysName) {
+        byte[] name = sysName.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer message = header(BmpDecoder.INITIATION, 4 + name.length);
+        message.putShort((short) 2).putShort((short) name.length).put(name); // sysName TLV
+        return message.array();
+    }
+
+    private static byte[] termination() {
+        ByteBuffer message = header(BmpDecoder.TERMINATION, 6);
+        message.putShort((short) 1).putShort((short) 2).putShort((short) 0); // Reason: session closed
+        return message.array();
+    }
+
+    /**
+     * Peer Up: local address and ports, then the sent and received OPENs
+     */
+    private static byte[] peerUp(int peer, long seconds) {
+        ByteBuffer message = header(BmpDecoder.PEER_UP, BmpDecoder.PER_PEER_HEADER + 20 + 2 * 29);
+        perPeerHeader(message, peer, seconds);
+        message.put(new byte[12]).putInt(0x7F000001).putShort((short) 179).putShort((short) (40000 + peer));
+        open(message, 65000);
+        open(message, 64496 + peer);
+        return message.array();
+    }
+
+    /**
+     * Peer Down, reason 4: the remote system closed without a notification
+     */
+    private static byte[] peerDown(int peer, long seconds) {
+        ByteBuffer message = header(BmpDecoder.PEER_DOWN, BmpDecoder.PER_PEER_HEADER + 1);
+        perPeerHeader(message, peer, seconds);
+        message.put((byte) 4);
+        return message.array();
+    }
+
+    private static ByteBuffer header(int type, int bodyLength) {
+        ByteBuffer message = ByteBuffer.allocate(BmpDecoder.COMMON_HEADER + bodyLength);
+        return message.put((byte) BmpDecoder.VERSION).putInt(message.capacity()).put((byte) type);
+    }
+
+    /**
+     * Global instance peer 192.0.2.(peer + 1) in AS 64496 + peer
+     */
+    private static void perPeerHeader(ByteBuffer message, int peer, long seconds) {
+        message.put((byte) 0).put((byte) 0).putLong(0);
+        message.put(new byte[12]).putInt(0xC0000201 + peer);
+        message.putInt(64496 + peer).putInt(0x0A000001 + peer).putInt((int) seconds).putInt(0);
+    }
+
+    private static String peerAddress(int peer) {
+        return "192.0.2." + (peer + 1);
+    }
+
+    private static void open(ByteBuffer message, int asn) {
+        message.put(marker()).putShort((short) 29).put((byte) 1);
+        message.put((byte) 4).putShort((short) asn).putShort((short) 180).putInt(0x0A000000 + asn).put((byte) 0);
+    }
+
+    private static byte[] marker() {
+        byte[] marker = new byte[16];
+        Arrays.fill(marker, (byte) 0xFF);
+        return marker;
+    }
+}
@@ -0,0 +1,159 @@
+package com.nhp.stream;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.LockSupport;
+
+import com.nhp.config.ExecutionConfig;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Load test of the execution modes (see ExecutionConfig) with blocking I/O
+ * simulated by parking the calling thread, so it runs without Redis or a
+ * database:
+ * <ul>
+ * <li>stream - updates over a few thousand prefixes through IngestLanes, each
+ * blocking like a Redis read and write</li>
+ * <li>rest - concurrent requests to a Reactor Netty server whose handler blocks
+ * like a repository query, while a non-blocking ping endpoint is probed to
+ * show how much the event loop is held up</li>
+ * </ul>
+ * Run with ./gradlew executionBenchmark; tune with -Pupdates, -Pio-ms,
+ * -Prequests, -Pquery-ms, -Pconcurrency.
+ */
+public class ExecutionModeBenchmark {
+
+    private static final int UPDATES = Integer.getInteger("updates", 20_000);
+    private static final int PREFIXES = 5_000;
+    private static final long IO_MICROS = (long) (Double.parseDouble(System.getProperty("io-ms", "0.5")) * 1000);
+    private static final int REQUESTS = Integer.getInteger("requests", 5_000);
+    private static final long QUERY_MICROS = (long) (Double.parseDouble(System.getProperty("query-ms", "10")) * 1000);
+    private static final int CONCURRENCY = Integer.getInteger("concurrency", 200);
+    private static final int LANES = 16;
+    private static final int PLATFORM_THREADS = 64;
+
+    public static void main(String[] args) {
+        System.out.printf("Java %d, %d cores; simulated Redis I/O %dus x2 per update, query %dus per request%n",
+                Runtime.version().feature(), Runtime.getRuntime().availableProcessors(), IO_MICROS, QUERY_MICROS);
+
+        List<String> modes = new ArrayList<>(List.of(ExecutionConfig.EVENT_LOOP, ExecutionConfig.PLATFORM));
+        if (ExecutionConfig.virtualThreadsAvailable()) {
+            modes.add(ExecutionConfig.VIRTUAL);
+        } else {
+            System.out.println("Virtual threads need Java 21+, skipping the virtual mode");
+        }
+
+        System.out.printf("%n%-11s %14s %14s %14s %14s%n", "mode", "stream upd/s", "rest req/s", "rest p99 ms",
+                "ping p99 ms");
+        for (String mode : modes) {
+            ExecutorService executor = ExecutionConfig.createExecutor(mode, PLATFORM_THREADS);
+            Scheduler scheduler = executor == null ? Schedulers.immediate()
+                    : Schedulers.fromExecutorService(executor, mode);
+            try {
+                double stream = runStream(scheduler);
+                double[] rest = runRest(scheduler);
+                System.out.printf("%-11s %,14.0f %,14.0f %14.1f %14.1f%n", mode, stream, rest[0], rest[1], rest[2]);
+            } finally {
+                if (executor != null) {
+                    executor.shutdownNow();
+                }
+            }
+        }
+    }
+
+    private static double runStream(Scheduler scheduler) {
+        Flux<Integer> updates = Flux.range(0, UPDATES).map(i -> i % PREFIXES);
+        long start = System.nanoTime();
+        new IngestLanes(LANES).dispatch(updates, prefix -> prefix, prefix -> {
+            block(IO_MICROS); // read prefix state
+            block(IO_MICROS); // write prefix state
+        }, scheduler).blockLast();
+        return UPDATES / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Returns requests/s, request p99 and ping p99 (ms)
+     */
+    private static double[] runRest(Scheduler scheduler) {
+        // Own event loop, as in the application, so that the load generator is not held up
+        LoopResources loops = LoopResources.create("bench-server");
+        DisposableServer server = HttpServer.create()
+                .runOn(loops)
+                .port(0)
+                .route(routes -> routes
+                        .get("/query", (request, response) -> response.sendString(
+                                offload(Mono.fromCallable(() -> {
+                                    block(QUERY_MICROS);
+                                    return "ok";
+                                }), scheduler)))
+                        .get("/ping", (request, response) -> response.sendString(Mono.just("pong"))))
+                .bindNow();
+        ConnectionProvider pool = ConnectionProvider.builder("bench")
+                .maxConnections(CONCURRENCY + 8)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        HttpClient client = HttpClient.create(pool).baseUrl("http://localhost:" + server.port());
+        try {
+            ConcurrentLinkedQueue<Long> pings = new ConcurrentLinkedQueue<>();
+            var probe = Flux.interval(Duration.ofMillis(5))
+                    .onBackpressureDrop()
+                    .concatMap(tick -> timed(client, "/ping"))
+                    .subscribe(pings::add);
+
+            long start = System.nanoTime();
+            List<Long> latencies = Flux.range(0, REQUESTS)
+                    .flatMap(i -> timed(client, "/query"), CONCURRENCY)
+                    .collectList()
+                    .block();
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            probe.dispose();
+
+            return new double[] { REQUESTS / elapsed, p99(latencies), p99(new ArrayList<>(pings)) };
+        } finally {
+            server.disposeNow();
+            loops.disposeLater().block();
+            pool.disposeLater().block();
+        }
+    }
+
+    private static <T> Mono<T> offload(Mono<T> blocking, Scheduler scheduler) {
+        return scheduler == Schedulers.immediate() ? blocking : blocking.subscribeOn(scheduler);
+    }
+
+    private static Mono<Long> timed(HttpClient client, String uri) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return client.get().uri(uri).responseContent().aggregate().asString()
+                    .map(body -> System.nanoTime() - start);
+        });
+    }
+
+    private static double p99(List<Long> nanos) {
+        if (nanos == null || nanos.isEmpty()) {
+            return Double.NaN;
+        }
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * 0.99) - 1)] / 1e6;
+    }
+
+    private static void block(long micros) {
+        long deadline = System.nanoTime() + micros * 1000;
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(deadline - System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.nhp.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import com.nhp.dto.OutageEvent;
+import com.nhp.services.AllPeersWithdrawnPolicy;
+
+/**
+ * Throughput of MrtReplay, the backfill's decode and replay, on a synthetic
+ * day of one route collector: a TABLE_DUMP_V2 dump with every prefix seen
+ * from every peer, then BGP4MP update files over 24 hours. Random churn
+ * re-announces prefixes with other paths and withdraws them from some peers,
+ * never from the last one, and a number of planted outages withdraw a prefix
+ * from every peer and announce it again a quarter of a slot later. In the
+ * middle of the day one peer goes down and withdraws the prefixes only it
+ * carries; they must not go into outage, its withdrawals being suppressed.
+ * Every pass checks that exactly the planted outages and recoveries are
+ * found, at their times. Nothing is written to a database.
+ *
+ *   ./gradlew backfillBenchmark [-Pupdates=5000000] [-Pprefixes=100000] [-Ppeers=20] [-Poutages=500] [-Pthreads=8]
+ */
+public final class MrtBackfillBenchmark {
+
+    private static final int PASSES = 3;
+    private static final int FILES = 8;
+    private static final long DAY_START = 1_705_276_800L; // 2024-01-15T00:00:00Z
+    private static final int DAY = 86_400;
+    private static final int STORM = 2_000;
+    private static final int STORM_PEER = 1;
+
+    private final int prefixes;
+    private final int peers;
+    private final Random random = new Random(42);
+    private final long[] visible;
+    private final Map<Integer, Long> planted = new HashMap<>();
+
+    private MrtBackfillBenchmark(int prefixes, int peers) {
+        this.prefixes = prefixes;
+        this.peers = peers;
+        this.visible = new long[prefixes];
+    }
+
+    public static void main(String[] args) throws Exception {
+        int updates = Integer.getInteger("updates", 5_000_000);
+        int prefixes = Integer.getInteger("prefixes", 100_000);
+        int peers = Integer.getInteger("peers", 20);
+        int outages = Integer.getInteger("outages", 500);
+        int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+        Duration holdDown = Duration.ofSeconds(Long.getLong("hold-down", 0));
+        if (peers < 2 || peers > 64 || DAY / outages < 150 || outages > (prefixes - STORM) / 2) {
+            throw new IllegalArgumentException("2 to 64 peers, at most 576 outages, and "
+                    + STORM + " prefixes more than twice the outages");
+        }
+
+        Path directory = Files.createTempDirectory("mrt-backfill-benchmark");
+        try {
+            MrtBackfillBenchmark generator = new MrtBackfillBenchmark(prefixes, peers);
+            long start = System.nanoTime();
+            List<MrtReplay.Source> sources = generator.write(directory.resolve("rrc00"), updates, outages);
+            long bytes = 0;
+            for (MrtReplay.Source source : sources) {
+                bytes += Files.size(source.file);
+            }
+            System.out.printf("Archive:       %d files, %,d bytes, %,d prefixes from %d peers, %,d planted outages"
+                    + " (%,d ms to write)%n", sources.size(), bytes, prefixes, peers, outages,
+                    (System.nanoTime() - start) / 1_000_000);
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                for (int pass = 1; pass <= PASSES; pass++) {
+                    MrtReplay replay = new MrtReplay(new AllPeersWithdrawnPolicy(), holdDown, holdDown, 500,
+                            Duration.ofSeconds(10), Duration.ofMinutes(5), 64 << 20, threads * 4, executor);
+                    long decodeStart = System.nanoTime();
+                    List<MrtReplay.ChunkLog> chunks = replay.decode(sources);
+                    long decoded = System.nanoTime();
+                    List<List<OutageEvent>> events = replay.replay(chunks, Instant.now());
+                    long replayed = System.nanoTime();
+                    generator.check(events, outages);
+                    System.out.printf("Pass %d:        %,d updates, decode %,d ms (%,.0f MB/s), replay %,d ms,"
+                            + " %,.0f updates/s overall on %d threads%n", pass, replay.updates.get(),
+                            (decoded - decodeStart) / 1_000_000, bytes / 1e6 / ((decoded - decodeStart) / 1e9),
+                            (replayed - decoded) / 1_000_000,
+                            replay.updates.get() / ((replayed - decodeStart) / 1e9), threads);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            System.out.printf("Checked:       %,d outages and recoveries at their planted times, storm suppressed%n",
+                    outages);
+        } finally {
+            try (Stream<Path> walk = Files.walk(directory)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Expect an outage of each planted prefix at its planted time, then its
+     * recovery, and nothing else
+     */
+    private void check(List<List<OutageEvent>> partitions, int outages) {
+        int starts = 0;
+        int recoveries = 0;
+        for (List<OutageEvent> events : partitions) {
+            for (OutageEvent event : events) {
+                Long time = planted.get(indexOf(event.getPrefix()));
+                if (time == null) {
+                    throw new IllegalStateException("Unplanted " + event.getEventType() + " of " + event.getPrefix()
+                            + " at " + event.getTimestamp());
+                }
+                if ("outage_start".equals(event.getEventType())) {
+                    if (event.getTimestamp().toEpochMilli() != time) {
+                        throw new IllegalStateException("Outage of " + event.getPrefix() + " at "
+                                + event.getTimestamp() + ", planted at " + Instant.ofEpochMilli(time));
+                    }
+                    starts++;
+                } else {
+                    recoveries++;
+                }
+            }
+        }
+        if (starts != outages || recoveries != outages) {
+            throw new IllegalStateException("Expected " + outages + " outages and recoveries, found " + starts
+                    + " and " + recoveries);
+        }
+    }
+
+    /**
+     * Write the dump and the update files; planted outages are spread one per
+     * slot over the day, the storm sits between two of them
+     */
+    private List<MrtReplay.Source> write(Path collector, int updates, int outages) throws IOException {
+        Files.createDirectories(collector);
+        List<MrtReplay.Source> sources = new ArrayList<>();
+        Path dump = collector.resolve("bview.20240115.0000");
+        try (Writer out = new Writer(dump)) {
+            writeDump(out);
+        }
+        sources.add(new MrtReplay.Source(dump, "rrc00"));
+
+        double slot = (double) DAY / outages;
+        int[] plantedPrefixes = new int[outages];
+        for (int j = 0; j < outages; j++) {
+            plantedPrefixes[j] = j * ((prefixes - STORM) / outages);
+        }
+        double stormStart = (outages / 2 + 0.6) * slot;
+        boolean stormDone = false;
+        boolean stormUp = false;
+        long down = 0; // Planted prefixes currently withdrawn
+        int nextOutage = 0;
+        int nextRecovery = 0;
+
+        Writer out = null;
+        int file = -1;
+        try {
+            for (int u = 0; u < updates; u++) {
+                double seconds = (double) u * DAY / updates;
+                if (u * (long) FILES / updates != file) {
+                    if (out != null) {
+                        out.close();
+                    }
+                    file = (int) (u * (long) FILES / updates);
+                    Path path = collector.resolve(String.format("updates.20240115.%02d00", file * 24 / FILES));
+                    out = new Writer(path);
+                    sources.add(new MrtReplay.Source(path, "rrc00"));
+                }
+                long micros = (long) (seconds * 1_000_000);
+
+                if (nextOutage < outages && seconds >= (nextOutage + 0.25) * slot) {
+                    int prefix = plantedPrefixes[nextOutage++];
+                    planted.put(prefix, DAY_START * 1000 + micros / 1000);
+                    for (int peer = 0; peer < peers; peer++) {
+                        if ((visible[prefix] & 1L << peer) != 0) {
+                            out.update(peer, micros, prefix, false, 0);
+                        }
+                    }
+                    visible[prefix] = 0;
+                    down++;
+                    continue;
+                }
+                if (nextRecovery < nextOutage && seconds >= (nextRecovery + 0.5) * slot) {
+                    int prefix = plantedPrefixes[nextRecovery++];
+                    for (int peer = 0; peer < peers; peer++) {
+                        out.update(peer, micros, prefix, true, 0);
+                    }
+                    visible[prefix] = (1L << peers) - 1;
+                    down--;
+                    continue;
+                }
+                if (!stormDone && seconds >= stormStart) {
+                    // Session down, then a mass withdrawal the collector recorded anyway
+                    out.stateChange(STORM_PEER, micros, false);
+                    for (int prefix = prefixes - STORM; prefix < prefixes; prefix++) {
+                        out.update(STORM_PEER, micros++, prefix, false, 0);
+                    }
+                    stormDone = true;
+                    continue;
+                }
+                if (stormDone && !stormUp && seconds >= stormStart + 60) {
+                    out.stateChange(STORM_PEER, micros, true);
+                    for (int prefix = prefixes - STORM; prefix < prefixes; prefix++) {
+                        out.update(STORM_PEER, micros++, prefix, true, 0);
+                    }
+                    stormUp = true;
+                    continue;
+                }
+
+                int prefix = random.nextInt(prefixes - STORM);
+                int peer = random.nextInt(peers);
+                if (visible[prefix] == 0) {
+                    continue; // Planted outage in progress
+                }
+                boolean stormWindow = stormDone && !stormUp && peer == STORM_PEER;
+                if ((visible[prefix] & 1L << peer) != 0 && Long.bitCount(visible[prefix]) > 1 && !stormWindow
+                        && random.nextInt(10) < 3) {
+                    out.update(peer, micros, prefix, false, 0);
+                    visible[prefix] &= ~(1L << peer);
+                } else {
+                    out.update(peer, micros, prefix, true, 1 + random.nextInt(3));
+                    visible[prefix] |= 1L << peer;
+                }
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+        if (down != 0 || nextOutage != outages) {
+            throw new IllegalStateException("Too few updates for " + outages + " outages");
+        }
+        return sources;
+    }
+
+    private void writeDump(Writer out) throws IOException {
+        ByteBuffer table = ByteBuffer.allocate(8 + peers * 13);
+        table.putInt(0x0A000001).putShort((short) 0).putShort((short) peers);
+        for (int peer = 0; peer < peers; peer++) {
+            table.put((byte) 0x02).putInt(0x0A000100 + peer).putInt(peerAddress(peer)).putInt(peerAsn(peer));
+        }
+        out.record(DAY_START, MrtDecoder.TABLE_DUMP_V2, MrtDecoder.PEER_INDEX_TABLE, table.flip());
+
+        ByteBuffer rib = ByteBuffer.allocate(64 + peers * 64);
+        for (int prefix = 0; prefix < prefixes; prefix++) {
+            rib.clear();
+            byte[] nlri = nlri(prefix);
+            // The storm's prefixes are single-homed behind its peer
+            boolean single = prefix >= prefixes - STORM;
+            rib.putInt(prefix).put(nlri).putShort((short) (single ? 1 : peers));
+            for (int peer = single ? STORM_PEER : 0; peer < (single ? STORM_PEER + 1 : peers); peer++) {
+                rib.putShort((short) peer).putInt((int) DAY_START - 3600);
+                int attrs = rib.position();
+                rib.putShort((short) 0);
+                origin(rib);
+                asPath(rib, 4, peer, 0, prefix);
+                rib.putShort(attrs, (short) (rib.position() - attrs - 2));
+            }
+            boolean ipv6 = isIpv6(prefix);
+            out.record(DAY_START, MrtDecoder.TABLE_DUMP_V2,
+                    ipv6 ? MrtDecoder.RIB_IPV6_UNICAST : MrtDecoder.RIB_IPV4_UNICAST, rib.flip());
+            visible[prefix] = single ? 1L << STORM_PEER : (1L << peers) - 1;
+        }
+    }
+
+    /**
+     * Prefix index of a prefix's text, as written by nlri
+     */
+    private static int indexOf(String prefix) {
+        if (prefix.contains(":")) {
+            String[] groups = prefix.split("[:/]");
+            return (Integer.parseInt(groups[1], 16) - 0xdb8) << 16 | Integer.parseInt(groups[2], 16);
+        }
+        String[] octets = prefix.split("[./]");
+        return (Integer.parseInt(octets[0]) - 10) << 16 | Integer.parseInt(octets[1]) << 8
+                | Integer.parseInt(octets[2]);
+    }
+
+    /**
+     * Every eighth prefix an IPv6 /48 (its last group never zero), the rest
+     * IPv4 /24s
+     */
+    private static boolean isIpv6(int prefix) {
+        return prefix % 8 == 7;
+    }
+
+    private static byte[] nlri(int i) {
+        int high = 0xdb8 + (i >> 16);
+        return isIpv6(i)
+                ? new byte[] { 48, 0x20, 0x01, (byte) (high >> 8), (byte) high, (byte) (i >> 8), (byte) i }
+                : new byte[] { 24, (byte) (10 + (i >> 16)), (byte) (i >> 8), (byte) i };
+    }
+
+    private static int peerAddress(int peer) {
+        return 0xC6336401 + peer; // 198.51.100.1 onwards
+    }
+
+    private static int peerAsn(int peer) {
+        return 64496 + peer;
+    }
+
+    private static void origin(ByteBuffer attrs) {
+        attrs.put((byte) 0x40).put((byte) 1).put((byte) 1).put((byte) 0);
+    }
+
+    /**
+     * peer, a transit (which changes with variant), origin
+     */
+    private static void asPath(ByteBuffer attrs, int asnSize, int peer, int variant, int prefix) {
+        int[] transits = { 3356, 1299, 174, 6939 };
+        int[] path = { peerAsn(peer), transits[variant], 64512 + prefix % 1000 };
+        attrs.put((byte) 0x40).put((byte) 2).put((byte) (2 + path.length * asnSize));
+        attrs.put((byte) 2).put((byte) path.length);
+        for (int asn : path) {
+            if (asnSize == 4) {
+                attrs.putInt(asn);
+            } else {
+                attrs.putShort((short) asn);
+            }
+        }
+    }
+
+    /**
+     * MRT records into a file: updates in BGP4MP_ET, with 4-byte ASNs from
+     * even peers and 2-byte ones from odd peers; state changes in BGP4MP,
+     * whose whole seconds would reorder updates within a second
+     */
+    private final class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        private final ByteBuffer body = ByteBuffer.allocate(4096);
+
+        Writer(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void update(int peer, long micros, int prefix, boolean announce, int variant) throws IOException {
+            boolean as4 = peer % 2 == 0;
+            int asnSize = as4 ? 4 : 2;
+            byte[] nlri = nlri(prefix);
+            boolean ipv6 = isIpv6(prefix);
+
+            body.clear();
+            sessionHeader(peer, as4);
+            int bgp = body.position();
+            body.put(marker()).putShort((short) 0).put((byte) 2);
+            if (!announce && !ipv6) {
+                body.putShort((short) nlri.length).put(nlri).putShort((short) 0);
+            } else {
+                body.putShort((short) 0);
+                int attrs = body.position();
+                body.putShort((short) 0);
+                if (announce) {
+                    origin(body);
+                    asPath(body, asnSize, peer, variant, prefix);
+                    if (ipv6) {
+                        body.put((byte) 0x90).put((byte) 14).putShort((short) (5 + 16 + nlri.length))
+                                .putShort((short) 2).put((byte) 1).put((byte) 16).put(new byte[16]).put((byte) 0)
+                                .put(nlri);
+                    } else {
+                        body.put((byte) 0x40).put((byte) 3).put((byte) 4).putInt(peerAddress(peer));
+                    }
+                } else {
+                    body.put((byte) 0x90).put((byte) 15).putShort((short) (3 + nlri.length))
+                            .putShort((short) 2).put((byte) 1).put(nlri);
+                }
+                body.putShort(attrs, (short) (body.position() - attrs - 2));
+                if (announce && !ipv6) {
+                    body.put(nlri);
+                }
+            }
+            body.putShort(bgp + 16, (short) (body.position() - bgp));
+            write(micros, as4 ? MrtDecoder.MESSAGE_AS4 : MrtDecoder.MESSAGE, true);
+        }
+
+        void stateChange(int peer, long micros, boolean up) throws IOException {
+            boolean as4 = peer % 2 == 0;
+            body.clear();
+            sessionHeader(peer, as4);
+            body.putShort((short) (up ? 3 : 6)).putShort((short) (up ? 6 : 1)); // OpenConfirm/Established, Idle
+            write(micros, as4 ? MrtDecoder.STATE_CHANGE_AS4 : MrtDecoder.STATE_CHANGE, false);
+        }
+
+        private void sessionHeader(int peer, boolean as4) {
+            if (as4) {
+                body.putInt(peerAsn(peer)).putInt(12654);
+            } else {
+                body.putShort((short) peerAsn(peer)).putShort((short) 12654);
+            }
+            body.putShort((short) 0).putShort((short) 1).putInt(peerAddress(peer)).putInt(0xC1000001);
+        }
+
+        private void write(long micros, int subtype, boolean et) throws IOException {
+            long seconds = DAY_START + micros / 1_000_000;
+            body.flip();
+            if (et) {
+                ByteBuffer extended = ByteBuffer.allocate(4 + body.remaining());
+                extended.putInt((int) (micros % 1_000_000)).put(body).flip();
+                record(seconds, MrtDecoder.BGP4MP_ET, subtype, extended);
+            } else {
+                record(seconds, MrtDecoder.BGP4MP, subtype, body);
+            }
+        }
+
+        void record(long seconds, int type, int subtype, ByteBuffer content) throws IOException {
+            if (buffer.remaining() < MrtDecoder.HEADER + content.remaining()) {
+                flush();
+            }
+            buffer.putInt((int) seconds).putShort((short) type).putShort((short) subtype)
+                    .putInt(content.remaining()).put(content);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    private static byte[] marker() {
+        byte[] marker = new byte[16];
+        Arrays.fill(marker, (byte) 0xFF);
+        return marker;
+    }
+}
@@ -0,0 +1,116 @@
+package com.nhp.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.reactive.config.BlockingExecutionConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Where blocking Redis and database work runs (nhp.execution.mode):
+ * <ul>
+ * <li>event-loop - on the Reactor Netty event loop (default)</li>
+ * <li>platform - on a fixed pool of platform threads</li>
+ * <li>virtual - on a new virtual thread per task; needs a Java 21 runtime and
+ * falls back to platform threads on older ones</li>
+ * </ul>
+ * Applies to RIS ingestion (see RipeStreamClient) and to controller methods
+ * with non-reactive return types, through WebFlux blocking execution.
+ */
+@Slf4j
+@Configuration
+public class ExecutionConfig implements WebFluxConfigurer {
+
+    public static final String EVENT_LOOP = "event-loop";
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+
+    // null when running on the event loop
+    private final ExecutorService blockingExecutor;
+
+    public ExecutionConfig(@Value("${nhp.execution.mode:event-loop}") String mode,
+            @Value("${nhp.execution.platform-threads:64}") int platformThreads) {
+        this.blockingExecutor = createExecutor(mode, platformThreads);
+        log.info("Blocking work runs on {}", blockingExecutor == null ? "the event loop"
+                : VIRTUAL.equals(mode) && virtualThreadsAvailable() ? "virtual threads"
+                        : platformThreads + " platform threads");
+    }
+
+    @Override
+    public void configureBlockingExecution(BlockingExecutionConfigurer configurer) {
+        if (blockingExecutor != null) {
+            configurer.setExecutor(new TaskExecutorAdapter(blockingExecutor));
+        }
+    }
+
+    /**
+     * Scheduler for ingestion lanes; immediate keeps processing on the event loop
+     */
+    @Bean
+    public Scheduler blockingScheduler() {
+        return blockingExecutor == null ? Schedulers.immediate()
+                : Schedulers.fromExecutorService(blockingExecutor, "blocking");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (blockingExecutor != null) {
+            blockingExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Executor for an execution mode, or null for the event loop
+     */
+    public static ExecutorService createExecutor(String mode, int platformThreads) {
+        switch (mode) {
+            case EVENT_LOOP:
+                return null;
+            case VIRTUAL:
+                if (virtualThreadsAvailable()) {
+                    return newVirtualThreadPerTaskExecutor();
+                }
+                log.warn("Virtual threads need Java 21+ (running {}), using platform threads",
+                        Runtime.version().feature());
+                return newPlatformExecutor(platformThreads);
+            case PLATFORM:
+                return newPlatformExecutor(platformThreads);
+            default:
+                throw new IllegalArgumentException("Unknown nhp.execution.mode: " + mode);
+        }
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    // Looked up reflectively: the build still targets Java 17
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available", e);
+        }
+    }
+
+    private static ExecutorService newPlatformExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "blocking-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(threads, factory);
+    }
+}
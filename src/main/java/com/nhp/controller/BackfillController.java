@@ -0,0 +1,56 @@
+package com.nhp.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.nhp.dto.BackfillStatus;
+import com.nhp.stream.MrtBackfill;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/v1/backfill")
+public class BackfillController {
+
+    @Autowired
+    private MrtBackfill mrtBackfill;
+
+    /**
+     * Start building outage history from the MRT files matching a glob under
+     * the backfill directory; 409 while another backfill runs
+     */
+    @PostMapping
+    public ResponseEntity<BackfillStatus> startBackfill(@RequestParam String files) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(mrtBackfill.start(files));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (Exception e) {
+            log.error("Error starting backfill of {}", files, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get the progress of the running or last backfill
+     */
+    @GetMapping
+    public ResponseEntity<BackfillStatus> getBackfillStatus() {
+        try {
+            BackfillStatus status = mrtBackfill.getStatus();
+            return status != null ? ResponseEntity.ok(status) : ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            log.error("Error fetching backfill status", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+}
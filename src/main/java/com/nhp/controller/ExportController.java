@@ -0,0 +1,94 @@
+package com.nhp.controller;
+
+import java.time.Instant;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.nhp.dto.AsnOutage;
+import com.nhp.dto.OutageEvent;
+import com.nhp.services.AsnOutageService;
+import com.nhp.services.ColumnarExportService;
+import com.nhp.services.OutageEventService;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/v1/export")
+public class ExportController {
+
+    @Autowired
+    private OutageEventService outageEventService;
+
+    @Autowired
+    private AsnOutageService asnOutageService;
+
+    @Autowired
+    private ColumnarExportService columnarExportService;
+
+    /**
+     * Export outage events in a time range as NDJSON, streamed from the database
+     */
+    @GetMapping(value = "/outage-events", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<OutageEvent> exportOutageEvents(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        return outageEventService.exportOutageEvents(from, to)
+                .doOnError(e -> log.error("Error exporting outage events", e));
+    }
+
+    /**
+     * Export ASN outages in a time range as NDJSON, streamed from the database
+     */
+    @GetMapping(value = "/asn-outages", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<AsnOutage> exportAsnOutages(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        return asnOutageService.exportAsnOutages(from, to)
+                .doOnError(e -> log.error("Error exporting ASN outages", e));
+    }
+
+    /**
+     * Download outage events in a time range as a compressed Arrow IPC stream
+     */
+    @GetMapping(value = "/outage-events", produces = ColumnarExportService.ARROW_STREAM_MEDIA_TYPE)
+    public ResponseEntity<Flux<byte[]>> exportOutageEventsArrow(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        return arrowDownload("outage_events",
+                columnarExportService.exportOutageEvents(from, to)
+                        .doOnError(e -> log.error("Error exporting outage events as Arrow", e)));
+    }
+
+    /**
+     * Download ASN outages in a time range as a compressed Arrow IPC stream
+     */
+    @GetMapping(value = "/asn-outages", produces = ColumnarExportService.ARROW_STREAM_MEDIA_TYPE)
+    public ResponseEntity<Flux<byte[]>> exportAsnOutagesArrow(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        return arrowDownload("asn_outages",
+                columnarExportService.exportAsnOutages(from, to)
+                        .doOnError(e -> log.error("Error exporting ASN outages as Arrow", e)));
+    }
+
+    private ResponseEntity<Flux<byte[]>> arrowDownload(String table, Flux<byte[]> body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(ColumnarExportService.ARROW_STREAM_MEDIA_TYPE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(table + ColumnarExportService.FILE_EXTENSION)
+                        .build()
+                        .toString())
+                .body(body);
+    }
+}
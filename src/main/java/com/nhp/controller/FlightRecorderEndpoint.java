@@ -0,0 +1,86 @@
+package com.nhp.controller;
+
+import java.io.InputStream;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.nhp.dto.FlightRecording;
+import com.nhp.services.FlightRecorderService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Flight recordings on demand at /actuator/flightrecorder: GET for the
+ * status, POST {"duration": "10m", "settings": "profile"} to start, GET
+ * /dump for the recording so far as a .jfr file, DELETE to stop. Not exposed
+ * by default: anyone reaching it can start, stop and download recordings.
+ */
+@Slf4j
+@Component
+@Endpoint(id = "flightrecorder")
+public class FlightRecorderEndpoint {
+
+    private static final String DUMP = "dump";
+
+    @Autowired
+    private FlightRecorderService flightRecorderService;
+
+    @ReadOperation
+    public FlightRecording getRecording() {
+        return flightRecorderService.getStatus();
+    }
+
+    /**
+     * Start a bounded recording; 409 while one is running
+     */
+    @WriteOperation
+    public WebEndpointResponse<FlightRecording> startRecording(@Nullable Duration duration,
+            @Nullable String settings) {
+        try {
+            return new WebEndpointResponse<>(flightRecorderService.start(duration, settings));
+        } catch (IllegalArgumentException e) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new WebEndpointResponse<>(HttpStatus.CONFLICT.value());
+        } catch (Exception e) {
+            log.error("Error starting a flight recording", e);
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * The events recorded so far, without stopping the recording. Each dump is
+     * streamed from its own file, deleted when the response completes.
+     */
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> dumpRecording(@Selector String action) {
+        if (!DUMP.equals(action)) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        try {
+            InputStream dump = flightRecorderService.dump();
+            return dump != null ? new WebEndpointResponse<>(new InputStreamResource(dump))
+                    : new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        } catch (Exception e) {
+            log.error("Error dumping the flight recording", e);
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @DeleteOperation
+    public FlightRecording stopRecording() {
+        return flightRecorderService.stop();
+    }
+}
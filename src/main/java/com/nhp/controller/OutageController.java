@@ -1,11 +1,17 @@
 package com.nhp.controller;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -13,12 +19,30 @@ import org.springframework.web.bind.annotation.RestController;
 import com.nhp.dto.OutageEvent;
 import com.nhp.dto.AsnOutage;
 import com.nhp.dto.AsnInfo;
+import com.nhp.dto.HistoryPage;
 import com.nhp.services.OutageEventService;
 import com.nhp.services.AsnOutageService;
 import com.nhp.services.AsnGeolocationService;
+import com.nhp.services.OutageFeedService;
+import com.nhp.services.PeerHealthService;
+import com.nhp.services.RouteAnomalyService;
+import com.nhp.services.RpkiValidationService;
+import com.nhp.services.ShardCoordinator;
+import com.nhp.services.TransitCorrelationService;
+import com.nhp.services.IncidentService;
+import com.nhp.services.HeavyHitterService;
+import com.nhp.dto.ClusterStatus;
+import com.nhp.dto.OutageFeedEvent;
 import com.nhp.dto.OutageStats;
+import com.nhp.dto.PeerHealth;
+import com.nhp.dto.RouteAnomaly;
+import com.nhp.dto.RpkiValidity;
+import com.nhp.dto.TransitIncident;
+import com.nhp.dto.Incident;
+import com.nhp.dto.HeavyHitterReport;
 
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 
 @Slf4j
 @RestController
@@ -34,15 +58,49 @@ public class OutageController {
     @Autowired
     private AsnGeolocationService asnGeolocationService;
 
+    @Autowired
+    private OutageFeedService outageFeedService;
+
+    @Autowired
+    private PeerHealthService peerHealthService;
+
+    @Autowired
+    private RouteAnomalyService routeAnomalyService;
+
+    @Autowired
+    private RpkiValidationService rpkiValidationService;
+
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
+    @Autowired
+    private TransitCorrelationService transitCorrelationService;
+
+    @Autowired
+    private IncidentService incidentService;
+
+    @Autowired
+    private HeavyHitterService heavyHitterService;
+
+    // Comment frames keep idle SSE connections open through proxies
+    private static final Duration FEED_HEARTBEAT = Duration.ofSeconds(15);
+
+    // Response header carrying the keyset cursor for the next page
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     /**
-     * Get recent outage events
+     * Get recent outage events (keyset-paginated, optionally time-bounded)
      */
     @GetMapping("/outages/recent")
     public ResponseEntity<List<OutageEvent>> getRecentOutages(
-            @RequestParam(defaultValue = "50") int limit) {
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor) {
         try {
-            List<OutageEvent> outages = outageEventService.getRecentOutages(limit);
-            return ResponseEntity.ok(outages);
+            return pageResponse(outageEventService.getRecentOutages(limit, from, to, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Error fetching recent outages", e);
             return ResponseEntity.internalServerError().build();
@@ -64,19 +122,157 @@ public class OutageController {
     }
 
     /**
-     * Get outage events for a specific ASN
+     * Get session health of every RIS peer seen, down peers first
+     */
+    @GetMapping("/peers")
+    public ResponseEntity<List<PeerHealth>> getPeerHealth() {
+        try {
+            return ResponseEntity.ok(peerHealthService.getPeerHealth());
+        } catch (Exception e) {
+            log.error("Error fetching peer health", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get the busiest prefixes and origin ASNs of the current or previous window
+     */
+    @GetMapping("/heavy-hitters")
+    public ResponseEntity<HeavyHitterReport> getHeavyHitters(
+            @RequestParam(defaultValue = HeavyHitterService.CURRENT) String window,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            HeavyHitterReport report = heavyHitterService.getReport(window, limit);
+            return report != null ? ResponseEntity.ok(report) : ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error fetching heavy hitters", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get this instance's view of the cluster and the shard units it owns
+     */
+    @GetMapping("/cluster")
+    public ResponseEntity<ClusterStatus> getClusterStatus() {
+        try {
+            return ResponseEntity.ok(shardCoordinator.getStatus());
+        } catch (Exception e) {
+            log.error("Error fetching cluster status", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get active (ongoing) ASN outages
+     */
+    @GetMapping("/asn-outages/active")
+    public ResponseEntity<List<AsnOutage>> getActiveAsnOutages() {
+        try {
+            List<AsnOutage> outages = asnOutageService.getActiveAsnOutages();
+            return ResponseEntity.ok(outages);
+        } catch (Exception e) {
+            log.error("Error fetching active ASN outages", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get open transit incidents (outages clustered behind a transit AS)
+     */
+    @GetMapping("/transit-incidents/active")
+    public ResponseEntity<List<TransitIncident>> getActiveTransitIncidents() {
+        try {
+            return ResponseEntity.ok(transitCorrelationService.getActiveIncidents());
+        } catch (Exception e) {
+            log.error("Error fetching active transit incidents", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get closed transit incidents, optionally behind one ASN (keyset-paginated)
+     */
+    @GetMapping("/transit-incidents")
+    public ResponseEntity<List<TransitIncident>> getTransitIncidents(@RequestParam(required = false) Integer asn,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor) {
+        try {
+            return pageResponse(transitCorrelationService.getIncidents(asn, limit, from, to, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error fetching transit incidents", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get open incidents (concurrent ASN outages grouped by country and upstream)
+     */
+    @GetMapping("/incidents/active")
+    public ResponseEntity<List<Incident>> getActiveIncidents() {
+        try {
+            return ResponseEntity.ok(incidentService.getActiveIncidents());
+        } catch (Exception e) {
+            log.error("Error fetching active incidents", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get closed incidents, optionally touching one country (keyset-paginated)
+     */
+    @GetMapping("/incidents")
+    public ResponseEntity<List<Incident>> getIncidents(@RequestParam(required = false) String country,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor) {
+        try {
+            return pageResponse(incidentService.getIncidents(country, limit, from, to, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error fetching incidents", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get outage events for a specific ASN (keyset-paginated, optionally time-bounded)
      */
     @GetMapping("/asn/{asn}/events")
-    public ResponseEntity<List<OutageEvent>> getAsnEvents(@PathVariable Integer asn) {
+    public ResponseEntity<List<OutageEvent>> getAsnEvents(@PathVariable Integer asn,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor) {
         try {
-            List<OutageEvent> events = outageEventService.getAsnEvents(asn);
-            return ResponseEntity.ok(events);
+            return pageResponse(outageEventService.getAsnEvents(asn, limit, from, to, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Error fetching events for ASN: {}", asn, e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    /**
+     * Stream all events for an ASN as NDJSON (unpaginated, optionally time-bounded)
+     */
+    @GetMapping(value = "/asn/{asn}/events", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<OutageEvent> streamAsnEvents(@PathVariable Integer asn,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        return outageEventService.streamAsnEvents(asn, from, to)
+                .doOnError(e -> log.error("Error streaming events for ASN: {}", asn, e));
+    }
+
     /**
      * Get ASN information including geolocation
      */
@@ -92,13 +288,18 @@ public class OutageController {
     }
 
     /**
-     * Get ASN-level outage correlations
+     * Get ASN-level outage correlations (keyset-paginated, optionally time-bounded)
      */
     @GetMapping("/asn/{asn}/outages")
-    public ResponseEntity<List<AsnOutage>> getAsnOutages(@PathVariable Integer asn) {
+    public ResponseEntity<List<AsnOutage>> getAsnOutages(@PathVariable Integer asn,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor) {
         try {
-            List<AsnOutage> outages = asnOutageService.getAsnOutages(asn);
-            return ResponseEntity.ok(outages);
+            return pageResponse(asnOutageService.getAsnOutages(asn, limit, from, to, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Error fetching ASN outages for ASN: {}", asn, e);
             return ResponseEntity.internalServerError().build();
@@ -106,19 +307,107 @@ public class OutageController {
     }
 
     /**
-     * Get outage history for a specific prefix
+     * Get outage history for a specific prefix (keyset-paginated, optionally time-bounded)
      */
     @GetMapping("/prefix/{prefix}/history")
-    public ResponseEntity<List<OutageEvent>> getPrefixHistory(@PathVariable String prefix) {
+    public ResponseEntity<List<OutageEvent>> getPrefixHistory(@PathVariable String prefix,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor) {
         try {
-            List<OutageEvent> history = outageEventService.getPrefixHistory(prefix);
-            return ResponseEntity.ok(history);
+            return pageResponse(outageEventService.getPrefixHistory(prefix, limit, from, to, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Error fetching history for prefix: {}", prefix, e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    /**
+     * Stream a prefix's history as NDJSON (unpaginated, optionally time-bounded)
+     */
+    @GetMapping(value = "/prefix/{prefix}/history", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<OutageEvent> streamPrefixHistory(@PathVariable String prefix,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        return outageEventService.streamPrefixHistory(prefix, from, to)
+                .doOnError(e -> log.error("Error streaming history for prefix: {}", prefix, e));
+    }
+
+    /**
+     * Get outage events for every prefix inside a range, e.g. range=203.0.113.0/22
+     */
+    @GetMapping("/prefixes/within")
+    public ResponseEntity<List<OutageEvent>> getEventsWithinRange(@RequestParam String range,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor) {
+        try {
+            return pageResponse(outageEventService.getEventsWithinRange(range, limit, from, to, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error fetching events within range: {}", range, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get outage events for every prefix covering an address or prefix, e.g. target=203.0.113.7
+     */
+    @GetMapping("/prefixes/covering")
+    public ResponseEntity<List<OutageEvent>> getEventsCovering(@RequestParam String target,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor) {
+        try {
+            return pageResponse(outageEventService.getEventsCovering(target, limit, from, to, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error fetching events covering: {}", target, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get route anomalies (unexpected origins), optionally for one prefix (keyset-paginated)
+     */
+    @GetMapping("/anomalies")
+    public ResponseEntity<List<RouteAnomaly>> getRouteAnomalies(@RequestParam(required = false) String prefix,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor) {
+        try {
+            return pageResponse(routeAnomalyService.getAnomalies(prefix, limit, from, to, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error fetching route anomalies", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Get the RPKI validation state of a prefix announced by an ASN
+     */
+    @GetMapping("/rpki/validity")
+    public ResponseEntity<RpkiValidity> getRpkiValidity(@RequestParam String prefix, @RequestParam String asn) {
+        try {
+            return ResponseEntity.ok(rpkiValidationService.check(prefix, asn));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error validating prefix {} for AS{}", prefix, asn, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * Get summary statistics
      */
@@ -148,6 +437,38 @@ public class OutageController {
         }
     }
 
+    /**
+     * Stream global outage map data as NDJSON
+     */
+    @GetMapping(value = "/outages/map", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<OutageEvent> streamOutageMapData(@RequestParam(defaultValue = "24") int hours) {
+        return outageEventService.streamOutagesForMap(hours)
+                .doOnError(e -> log.error("Error streaming outage map data", e));
+    }
+
+    /**
+     * Live feed of outage deltas as Server-Sent Events. Clients resume via the
+     * standard Last-Event-ID header or the since parameter (an event id); a
+     * reset event means the resume was not exact and state should be reloaded.
+     */
+    @GetMapping(value = "/outages/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<OutageFeedEvent>> streamOutages(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(required = false) String since) {
+        String lastId = lastEventId != null ? lastEventId : since;
+
+        Flux<ServerSentEvent<OutageFeedEvent>> events = outageFeedService.subscribe(lastId)
+                .map(event -> ServerSentEvent.builder(event)
+                        .id(event.getId())
+                        .event(event.getType())
+                        .build());
+
+        Flux<ServerSentEvent<OutageFeedEvent>> heartbeat = Flux.interval(FEED_HEARTBEAT)
+                .map(tick -> ServerSentEvent.<OutageFeedEvent>builder().comment("keepalive").build());
+
+        return Flux.merge(events, heartbeat);
+    }
+
     /**
      * Health check endpoint
      */
@@ -155,4 +476,15 @@ public class OutageController {
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("OK");
     }
+
+    /**
+     * Page items as the body, next-page cursor (if any) as a header
+     */
+    private <T> ResponseEntity<List<T>> pageResponse(HistoryPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
 }
\ No newline at end of file
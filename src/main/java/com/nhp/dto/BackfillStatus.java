@@ -0,0 +1,34 @@
+package com.nhp.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of an MRT archive backfill: running (in a phase), completed or failed
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BackfillStatus {
+    private String state;
+    private String phase;
+    private List<String> files;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private long bytes;
+    private long records;
+    private long malformedRecords;
+    private long updates;
+    private long prefixes;
+    private long events;
+    private long unrecordedEvents; // Announcements skipped, origin not a plain ASN (an AS_SET or above 2^31-1)
+    private long openAtEndEvents; // Outages still open at the end of the archives, not loaded
+    private long loadedEvents;
+    private String error;
+}
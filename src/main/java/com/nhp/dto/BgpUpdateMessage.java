@@ -1,5 +1,7 @@
 package com.nhp.dto;
 
+import java.time.Instant;
+
 import lombok.Builder;
 import lombok.Data;
 
@@ -12,4 +14,7 @@ public class BgpUpdateMessage {
     private String asPath;
     private boolean announcement;
     private boolean withdrawal;
+    private Instant timestamp; // RIS collector receive time
+    private String host; // RIS route collector, e.g. rrc00
+    private String peerState; // set for RIS_PEER_STATE messages only
 }
\ No newline at end of file
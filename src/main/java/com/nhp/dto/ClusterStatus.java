@@ -0,0 +1,26 @@
+package com.nhp.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This instance's view of the cluster: live members and the shard units it holds
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterStatus {
+    private boolean enabled;
+    private String instanceId;
+    private List<String> members;
+    private int ownedShards;
+    private int totalShards;
+    private List<String> subscribedPrefixes;
+    private Instant lastHeartbeat;
+}
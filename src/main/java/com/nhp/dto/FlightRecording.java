@@ -0,0 +1,29 @@
+package com.nhp.dto;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The managed JDK Flight Recorder recording: state (running, stopped), its
+ * bounds and how much it holds on disk
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlightRecording {
+    private String name;
+    private String state;
+    private String settings;
+    private boolean continuous;
+    private Instant startedAt;
+    private Duration duration;
+    private Duration maxAge;
+    private long maxSize;
+    private long size;
+}
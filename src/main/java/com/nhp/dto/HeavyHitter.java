@@ -0,0 +1,21 @@
+package com.nhp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A prefix or origin ASN among the most frequent in a window; count may
+ * overstate the true count by at most error
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeavyHitter {
+    private String key;
+    private long count;
+    private long error;
+    private double perMinute;
+}
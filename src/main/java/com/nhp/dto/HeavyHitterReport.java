@@ -0,0 +1,31 @@
+package com.nhp.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The busiest prefixes and origin ASNs of one window, by updates and by
+ * outage verdicts, with the distinct prefixes and ASNs updated in it
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeavyHitterReport {
+    private Instant windowStart;
+    private Instant windowEnd;
+    private boolean complete;
+    private long updates;
+    private long outages;
+    private long distinctPrefixes;
+    private long distinctAsns;
+    private List<HeavyHitter> prefixesByUpdates;
+    private List<HeavyHitter> asnsByUpdates;
+    private List<HeavyHitter> prefixesByOutages;
+    private List<HeavyHitter> asnsByOutages;
+}
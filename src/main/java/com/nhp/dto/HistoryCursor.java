@@ -0,0 +1,35 @@
+package com.nhp.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Opaque keyset pagination cursor: the (timestamp, id) of the last row
+ * returned. The next page starts strictly after this position in
+ * (timestamp DESC, id DESC) order.
+ */
+@Data
+@AllArgsConstructor
+public class HistoryCursor {
+    private Instant timestamp;
+    private Long id;
+
+    public String encode() {
+        String raw = timestamp.toString() + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static HistoryCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int comma = raw.indexOf(',');
+            return new HistoryCursor(Instant.parse(raw.substring(0, comma)), Long.parseLong(raw.substring(comma + 1)));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
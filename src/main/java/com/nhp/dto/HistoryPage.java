@@ -0,0 +1,27 @@
+package com.nhp.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class HistoryPage<T> {
+    private List<T> items;
+    // Null when there are no further rows
+    private String nextCursor;
+
+    /**
+     * Build a page from a query that fetched up to limit + 1 rows; the extra
+     * row only signals that another page exists
+     */
+    public static <T> HistoryPage<T> of(List<T> rows, int limit, Function<T, HistoryCursor> cursorOf) {
+        if (rows.size() <= limit) {
+            return new HistoryPage<>(rows, null);
+        }
+        List<T> items = rows.subList(0, limit);
+        return new HistoryPage<>(items, cursorOf.apply(items.get(limit - 1)).encode());
+    }
+}
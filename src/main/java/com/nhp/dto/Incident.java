@@ -0,0 +1,55 @@
+package com.nhp.dto;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Concurrent ASN outages grouped into one event by country and shared
+ * upstream (IncidentService)
+ */
+@Entity
+@Table(name = "incidents")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Incident {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "start_time", nullable = false)
+    private Instant startTime;
+
+    @Column(name = "end_time")
+    private Instant endTime;
+
+    @Column(name = "asns", columnDefinition = "INTEGER[]")
+    private Integer[] asns;
+
+    // Countries of the ASNs, most affected first
+    @Column(name = "countries", columnDefinition = "TEXT[]")
+    private String[] countries;
+
+    // Direct upstreams shared by at least two of the ASNs, most shared first
+    @Column(name = "upstream_asns", columnDefinition = "INTEGER[]")
+    private Integer[] upstreamAsns;
+
+    @Column(name = "prefix_count")
+    private Integer prefixCount;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+}
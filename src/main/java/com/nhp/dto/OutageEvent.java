@@ -9,6 +9,8 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
 
+import org.hibernate.annotations.ColumnTransformer;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -26,15 +28,22 @@ public class OutageEvent {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "prefix", nullable = false)
+    // Stored as native CIDR; the cast lets the driver bind a plain string
+    @Column(name = "prefix", nullable = false, columnDefinition = "cidr")
+    @ColumnTransformer(write = "CAST(? AS cidr)")
     private String prefix;
 
     @Column(name = "origin_asn", nullable = false)
     private Integer originAsn;
 
+    // BGP event time from the RIS message that triggered the event
     @Column(name = "timestamp", nullable = false)
     private Instant timestamp;
 
+    // Wall-clock time at which the event was detected
+    @Column(name = "detected_at")
+    private Instant detectedAt;
+
     @Column(name = "event_type", nullable = false)
     private String eventType;
 
@@ -0,0 +1,30 @@
+package com.nhp.dto;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OutageFeedEvent {
+    private long seq;
+    // Resume cursor, <epoch>-<seq>; seq restarts with every feed epoch
+    private String id;
+    private String type;
+    private Instant timestamp;
+    private Long eventId;
+    private String prefix;
+    private Integer asn;
+    private String lastPath;
+    private String[] prefixes;
+    private Integer severity;
+    private String country;
+}
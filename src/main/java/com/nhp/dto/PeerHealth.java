@@ -0,0 +1,26 @@
+package com.nhp.dto;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Health snapshot of a single RIS peer session
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PeerHealth {
+    private String peer;
+    private String collector;
+    private String state; // up, down
+    private String reason; // ris_peer_state, mass_withdrawal
+    private Instant lastStateChange;
+    private Instant suppressedUntil;
+    private long withdrawalsInWindow;
+    private long suppressedWithdrawals;
+}
@@ -1,20 +1,123 @@
 package com.nhp.dto;
 
 import java.io.Serializable;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import lombok.Data;
 
 @Data
 public class PrefixState implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    // Collector for peers whose collector was not recorded (states written by older versions)
+    public static final String UNKNOWN_COLLECTOR = "unknown";
+
+    // Peers (by address) currently announcing the prefix
     private Set<String> visibleCollectors = new HashSet<>();
     private Set<String> withdrawnBy = new HashSet<>();
     private String originAsn;
     private String lastPath;
     private Instant lastSeen;
     private boolean withdrawn = false;
-}
\ No newline at end of file
+
+    // RPKI validation state of the last announcement: valid, invalid or
+    // not-found; null if no VRPs were loaded
+    private String rpkiStatus;
+
+    // Visibility counts, kept in step with visibleCollectors so that detection
+    // policies never scan sets: route collector of each visible peer, visible
+    // peers per route collector, and the highest counts seen (the baseline)
+    private Map<String, String> peerCollectors = new HashMap<>();
+    private Map<String, Integer> visiblePeersByCollector = new HashMap<>();
+    private int peakVisiblePeers;
+    private int peakVisibleCollectors;
+
+    // Last time a peer started or stopped announcing the prefix
+    private Instant visibilityChangedAt;
+
+    /**
+     * Mark a peer as announcing the prefix; returns false if it already was
+     */
+    public boolean addVisiblePeer(String peer, String collector) {
+        if (!visibleCollectors.add(peer)) {
+            return false;
+        }
+        String key = collector == null || collector.isEmpty() ? UNKNOWN_COLLECTOR : collector;
+        peerCollectors.put(peer, key);
+        visiblePeersByCollector.merge(key, 1, Integer::sum);
+        peakVisiblePeers = Math.max(peakVisiblePeers, visibleCollectors.size());
+        peakVisibleCollectors = Math.max(peakVisibleCollectors, visiblePeersByCollector.size());
+        visibilityChangedAt = Instant.now();
+        return true;
+    }
+
+    /**
+     * Mark a peer as no longer announcing the prefix; returns false if it was not
+     */
+    public boolean removeVisiblePeer(String peer) {
+        if (!visibleCollectors.remove(peer)) {
+            return false;
+        }
+        String key = peerCollectors.remove(peer);
+        visiblePeersByCollector.computeIfPresent(key != null ? key : UNKNOWN_COLLECTOR,
+                (collector, count) -> count > 1 ? count - 1 : null);
+        visibilityChangedAt = Instant.now();
+        return true;
+    }
+
+    /**
+     * Lower the peaks to the current counts once visibility has not changed
+     * for stableFor, so that a prefix whose visibility shrank for good gets a
+     * new baseline instead of being held against peers that left; returns
+     * true if the peaks changed
+     */
+    public boolean rebaseline(Instant now, Duration stableFor) {
+        if (visibilityChangedAt == null || now.isBefore(visibilityChangedAt.plus(stableFor))) {
+            return false;
+        }
+        int peers = visibleCollectors.size();
+        int collectors = visiblePeersByCollector.size();
+        if (peakVisiblePeers == peers && peakVisibleCollectors == collectors) {
+            return false;
+        }
+        peakVisiblePeers = peers;
+        peakVisibleCollectors = collectors;
+        return true;
+    }
+
+    /**
+     * Rebuild the counts if they do not match the visible peers, as for states
+     * stored before the counts existed. Runs once per load, not per update.
+     */
+    public void reconcileCounts() {
+        int counted = visiblePeersByCollector.values().stream().mapToInt(Integer::intValue).sum();
+        if (counted == visibleCollectors.size() && peerCollectors.size() == counted) {
+            return;
+        }
+        peerCollectors.keySet().retainAll(visibleCollectors);
+        visiblePeersByCollector.clear();
+        for (String peer : visibleCollectors) {
+            String key = peerCollectors.computeIfAbsent(peer, p -> UNKNOWN_COLLECTOR);
+            visiblePeersByCollector.merge(key, 1, Integer::sum);
+        }
+        peakVisiblePeers = Math.max(peakVisiblePeers, visibleCollectors.size());
+        peakVisibleCollectors = Math.max(peakVisibleCollectors, visiblePeersByCollector.size());
+    }
+
+    @JsonIgnore
+    public int getVisiblePeerCount() {
+        return visibleCollectors.size();
+    }
+
+    @JsonIgnore
+    public int getVisibleCollectorCount() {
+        return visiblePeersByCollector.size();
+    }
+}
@@ -0,0 +1,69 @@
+package com.nhp.dto;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import org.hibernate.annotations.ColumnTransformer;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An unexpected origin seen for a prefix: moas, origin_change, subprefix_hijack
+ * or rpki_invalid
+ */
+@Entity
+@Table(name = "route_anomalies")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RouteAnomaly {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "prefix", nullable = false, columnDefinition = "cidr")
+    @ColumnTransformer(write = "CAST(? AS cidr)")
+    private String prefix;
+
+    // BGP event time of the announcement
+    @Column(name = "timestamp", nullable = false)
+    private Instant timestamp;
+
+    @Column(name = "detected_at")
+    private Instant detectedAt;
+
+    @Column(name = "anomaly_type", nullable = false)
+    private String anomalyType;
+
+    @Column(name = "origin_asn", nullable = false)
+    private Integer originAsn;
+
+    @Column(name = "expected_origins", columnDefinition = "INTEGER[]")
+    private Integer[] expectedOrigins;
+
+    // For subprefix_hijack: the monitored prefix the announcement falls under;
+    // for rpki_invalid: the most specific covering VRP prefix
+    @Column(name = "covering_prefix", columnDefinition = "cidr")
+    @ColumnTransformer(write = "CAST(? AS cidr)")
+    private String coveringPrefix;
+
+    @Column(name = "as_path")
+    private String asPath;
+
+    @Column(name = "peer")
+    private String peer;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+}
@@ -0,0 +1,26 @@
+package com.nhp.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * RPKI validation state of a prefix and origin: valid, invalid or not-found
+ * (null while no VRPs are loaded), with the covering VRPs as "prefix-maxLength ASn"
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RpkiValidity {
+    private String prefix;
+    private Long originAsn;
+    private String status;
+    private List<String> coveringVrps;
+    private int vrpCount;
+    private Instant loadedAt;
+}
@@ -0,0 +1,59 @@
+package com.nhp.dto;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Prefix outages that clustered behind one transit AS: the prefixes and
+ * origins whose last known paths crossed it
+ */
+@Entity
+@Table(name = "transit_incidents")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransitIncident {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // The transit AS
+    @Column(name = "asn", nullable = false)
+    private Integer asn;
+
+    @Column(name = "start_time", nullable = false)
+    private Instant startTime;
+
+    @Column(name = "end_time")
+    private Instant endTime;
+
+    @Column(name = "prefixes", columnDefinition = "TEXT[]")
+    private String[] prefixes;
+
+    @Column(name = "origin_asns", columnDefinition = "INTEGER[]")
+    private Integer[] originAsns;
+
+    // Distinct next hops after the transit AS on the affected paths, out of the
+    // downstream neighbours the AS graph knows for it
+    @Column(name = "affected_downstreams")
+    private Integer affectedDownstreams;
+
+    @Column(name = "downstream_asns")
+    private Integer downstreamAsns;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+}
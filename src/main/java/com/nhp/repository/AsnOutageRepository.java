@@ -1,5 +1,6 @@
 package com.nhp.repository;
 
+import java.time.Instant;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -12,11 +13,18 @@ import com.nhp.dto.AsnOutage;
 @Repository
 public interface AsnOutageRepository extends JpaRepository<AsnOutage, Long> {
 
-    List<AsnOutage> findByAsnOrderByStartTimeDesc(Integer asn);
+    // Keyset page in (start_time DESC, id DESC) order, see OutageEventRepository
+    @Query("SELECT a FROM AsnOutage a WHERE a.asn = :asn "
+            + "AND a.startTime >= :from AND a.startTime <= :beforeTs "
+            + "AND (a.startTime < :beforeTs OR a.id < :beforeId) "
+            + "ORDER BY a.startTime DESC, a.id DESC LIMIT :limit")
+    List<AsnOutage> findPageByAsn(@Param("asn") Integer asn, @Param("from") Instant from,
+            @Param("beforeTs") Instant beforeTs, @Param("beforeId") Long beforeId,
+            @Param("limit") int limit);
 
     @Query("SELECT a FROM AsnOutage a WHERE a.endTime IS NULL ORDER BY a.startTime DESC")
     List<AsnOutage> findActiveAsnOutages();
 
     @Query("SELECT a FROM AsnOutage a WHERE a.startTime >= :since ORDER BY a.startTime DESC")
-    List<AsnOutage> findRecentAsnOutages(@Param("since") java.time.Instant since);
+    List<AsnOutage> findRecentAsnOutages(@Param("since") Instant since);
 }
\ No newline at end of file
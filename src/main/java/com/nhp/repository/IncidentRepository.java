@@ -0,0 +1,30 @@
+package com.nhp.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.nhp.dto.Incident;
+
+@Repository
+public interface IncidentRepository extends JpaRepository<Incident, Long> {
+
+    // Keyset pages in (start_time DESC, id DESC) order, see OutageEventRepository
+
+    @Query("SELECT i FROM Incident i WHERE i.startTime >= :from AND i.startTime <= :beforeTs "
+            + "AND (i.startTime < :beforeTs OR i.id < :beforeId) "
+            + "ORDER BY i.startTime DESC, i.id DESC LIMIT :limit")
+    List<Incident> findPage(@Param("from") Instant from, @Param("beforeTs") Instant beforeTs,
+            @Param("beforeId") Long beforeId, @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM incidents WHERE :country = ANY(countries) "
+            + "AND start_time >= :from AND start_time <= :beforeTs "
+            + "AND (start_time < :beforeTs OR id < :beforeId) "
+            + "ORDER BY start_time DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Incident> findPageByCountry(@Param("country") String country, @Param("from") Instant from,
+            @Param("beforeTs") Instant beforeTs, @Param("beforeId") Long beforeId, @Param("limit") int limit);
+}
@@ -13,10 +13,6 @@ import com.nhp.dto.OutageEvent;
 @Repository
 public interface OutageEventRepository extends JpaRepository<OutageEvent, Long> {
 
-    List<OutageEvent> findByPrefixOrderByTimestampDesc(String prefix);
-
-    List<OutageEvent> findByOriginAsnOrderByTimestampDesc(Integer originAsn);
-
     List<OutageEvent> findByTimestampAfterOrderByTimestampDesc(Instant since);
 
     long countByEventType(String eventType);
@@ -37,8 +33,65 @@ public interface OutageEventRepository extends JpaRepository<OutageEvent, Long>
     @Query("SELECT AVG(EXTRACT(EPOCH FROM o.duration)/60) FROM OutageEvent o WHERE o.duration IS NOT NULL")
     Double findAverageDurationMinutes();
 
-    @Query("SELECT o FROM OutageEvent o ORDER BY o.timestamp DESC LIMIT :limit")
-    List<OutageEvent> findRecentOutages(@Param("limit") int limit);
+    @Query(value = "SELECT COUNT(duration), COALESCE(SUM(EXTRACT(EPOCH FROM duration)), 0) "
+            + "FROM outage_events WHERE duration IS NOT NULL", nativeQuery = true)
+    List<Object[]> sumResolvedDurationSeconds();
+
+    @Query(value = "SELECT CAST(EXTRACT(EPOCH FROM date_trunc('hour', timestamp)) AS BIGINT), COUNT(*) "
+            + "FROM outage_events WHERE event_type = :eventType AND timestamp >= :since GROUP BY 1",
+            nativeQuery = true)
+    List<Object[]> countByEventTypePerHourSince(@Param("eventType") String eventType,
+            @Param("since") Instant since);
+
+    // Keyset pages in (timestamp DESC, id DESC) order. The redundant
+    // "timestamp <= :beforeTs" bound keeps the scan a plain index range and
+    // lets TimescaleDB exclude chunks outside [from, beforeTs].
+
+    @Query("SELECT o FROM OutageEvent o WHERE o.timestamp >= :from AND o.timestamp <= :beforeTs "
+            + "AND (o.timestamp < :beforeTs OR o.id < :beforeId) "
+            + "ORDER BY o.timestamp DESC, o.id DESC LIMIT :limit")
+    List<OutageEvent> findPage(@Param("from") Instant from, @Param("beforeTs") Instant beforeTs,
+            @Param("beforeId") Long beforeId, @Param("limit") int limit);
+
+    @Query("SELECT o FROM OutageEvent o WHERE o.originAsn = :asn "
+            + "AND o.timestamp >= :from AND o.timestamp <= :beforeTs "
+            + "AND (o.timestamp < :beforeTs OR o.id < :beforeId) "
+            + "ORDER BY o.timestamp DESC, o.id DESC LIMIT :limit")
+    List<OutageEvent> findPageByOriginAsn(@Param("asn") Integer asn, @Param("from") Instant from,
+            @Param("beforeTs") Instant beforeTs, @Param("beforeId") Long beforeId, @Param("limit") int limit);
+
+    // Prefix predicates are native so the parameter is cast to cidr and the
+    // comparison stays on the column's own type (and its indexes)
+
+    @Query(value = "SELECT * FROM outage_events WHERE prefix = CAST(:prefix AS cidr) "
+            + "AND timestamp >= :from AND timestamp <= :beforeTs "
+            + "AND (timestamp < :beforeTs OR id < :beforeId) "
+            + "ORDER BY timestamp DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<OutageEvent> findPageByPrefix(@Param("prefix") String prefix, @Param("from") Instant from,
+            @Param("beforeTs") Instant beforeTs, @Param("beforeId") Long beforeId, @Param("limit") int limit);
+
+    // Events for prefixes inside a range (equal or more specific), GiST-backed
+    @Query(value = "SELECT * FROM outage_events WHERE prefix <<= CAST(:range AS cidr) "
+            + "AND timestamp >= :from AND timestamp <= :beforeTs "
+            + "AND (timestamp < :beforeTs OR id < :beforeId) "
+            + "ORDER BY timestamp DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<OutageEvent> findPageWithinRange(@Param("range") String range, @Param("from") Instant from,
+            @Param("beforeTs") Instant beforeTs, @Param("beforeId") Long beforeId, @Param("limit") int limit);
+
+    // Events for prefixes covering an address or prefix (equal or less specific), GiST-backed
+    @Query(value = "SELECT * FROM outage_events WHERE prefix >>= CAST(:target AS inet) "
+            + "AND timestamp >= :from AND timestamp <= :beforeTs "
+            + "AND (timestamp < :beforeTs OR id < :beforeId) "
+            + "ORDER BY timestamp DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<OutageEvent> findPageCovering(@Param("target") String target, @Param("from") Instant from,
+            @Param("beforeTs") Instant beforeTs, @Param("beforeId") Long beforeId, @Param("limit") int limit);
+
+    // Idempotency check for events replayed from the local journal; the
+    // column keeps microseconds, so the timestamp is matched within [from, to]
+    @Query(value = "SELECT EXISTS(SELECT 1 FROM outage_events WHERE prefix = CAST(:prefix AS cidr) "
+            + "AND timestamp >= :from AND timestamp <= :to AND event_type = :eventType)", nativeQuery = true)
+    boolean existsEvent(@Param("prefix") String prefix, @Param("from") Instant from, @Param("to") Instant to,
+            @Param("eventType") String eventType);
 
     @Query("SELECT o FROM OutageEvent o WHERE o.eventType = 'outage_start' AND o.resolvedAt IS NULL ORDER BY o.timestamp DESC")
     List<OutageEvent> findActiveOutages();
@@ -0,0 +1,30 @@
+package com.nhp.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.nhp.dto.RouteAnomaly;
+
+@Repository
+public interface RouteAnomalyRepository extends JpaRepository<RouteAnomaly, Long> {
+
+    // Keyset pages in (timestamp DESC, id DESC) order, see OutageEventRepository
+
+    @Query("SELECT r FROM RouteAnomaly r WHERE r.timestamp >= :from AND r.timestamp <= :beforeTs "
+            + "AND (r.timestamp < :beforeTs OR r.id < :beforeId) "
+            + "ORDER BY r.timestamp DESC, r.id DESC LIMIT :limit")
+    List<RouteAnomaly> findPage(@Param("from") Instant from, @Param("beforeTs") Instant beforeTs,
+            @Param("beforeId") Long beforeId, @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM route_anomalies WHERE prefix = CAST(:prefix AS cidr) "
+            + "AND timestamp >= :from AND timestamp <= :beforeTs "
+            + "AND (timestamp < :beforeTs OR id < :beforeId) "
+            + "ORDER BY timestamp DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<RouteAnomaly> findPageByPrefix(@Param("prefix") String prefix, @Param("from") Instant from,
+            @Param("beforeTs") Instant beforeTs, @Param("beforeId") Long beforeId, @Param("limit") int limit);
+}
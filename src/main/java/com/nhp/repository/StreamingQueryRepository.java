@@ -0,0 +1,88 @@
+package com.nhp.repository;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Streams large result sets row by row instead of materialising a List.
+ * Each subscription gets its own stateless session (no persistence context, so
+ * nothing accumulates) and its own transaction, which the PostgreSQL driver
+ * needs to honour the fetch size with a server-side cursor. The transaction is
+ * always rolled back; it only exists to keep the cursor open.
+ */
+@Slf4j
+@Repository
+public class StreamingQueryRepository {
+
+    // Rows fetched from the server-side cursor per round trip
+    private static final int FETCH_SIZE = 500;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Stream the results of an HQL query. All database work, including the
+     * pulls triggered by downstream demand, runs on one bounded-elastic worker.
+     */
+    public <T> Flux<T> stream(String hql, Map<String, Object> parameters, Class<T> resultType) {
+        return Flux.using(
+                this::openSession,
+                session -> {
+                    Query<T> query = session.createQuery(hql, resultType)
+                            .setFetchSize(FETCH_SIZE)
+                            .setReadOnly(true);
+                    parameters.forEach(query::setParameter);
+                    Stream<T> rows = query.getResultStream();
+                    return Flux.fromStream(rows);
+                },
+                this::closeSession)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Stream the results of a native SQL query mapped onto an entity
+     */
+    public <T> Flux<T> streamNative(String sql, Map<String, Object> parameters, Class<T> entityType) {
+        return Flux.using(
+                this::openSession,
+                session -> {
+                    NativeQuery<T> query = session.createNativeQuery(sql, entityType)
+                            .setFetchSize(FETCH_SIZE);
+                    parameters.forEach(query::setParameter);
+                    Stream<T> rows = query.getResultStream();
+                    return Flux.fromStream(rows);
+                },
+                this::closeSession)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private StatelessSession openSession() {
+        StatelessSession session = entityManagerFactory.unwrap(SessionFactory.class).openStatelessSession();
+        session.beginTransaction();
+        return session;
+    }
+
+    private void closeSession(StatelessSession session) {
+        try {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+        } catch (Exception e) {
+            log.debug("Failed to roll back streaming transaction: {}", e.getMessage());
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.nhp.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.nhp.dto.TransitIncident;
+
+@Repository
+public interface TransitIncidentRepository extends JpaRepository<TransitIncident, Long> {
+
+    // Keyset pages in (start_time DESC, id DESC) order, see OutageEventRepository
+
+    @Query("SELECT t FROM TransitIncident t WHERE t.startTime >= :from AND t.startTime <= :beforeTs "
+            + "AND (t.startTime < :beforeTs OR t.id < :beforeId) "
+            + "ORDER BY t.startTime DESC, t.id DESC LIMIT :limit")
+    List<TransitIncident> findPage(@Param("from") Instant from, @Param("beforeTs") Instant beforeTs,
+            @Param("beforeId") Long beforeId, @Param("limit") int limit);
+
+    @Query("SELECT t FROM TransitIncident t WHERE t.asn = :asn "
+            + "AND t.startTime >= :from AND t.startTime <= :beforeTs "
+            + "AND (t.startTime < :beforeTs OR t.id < :beforeId) "
+            + "ORDER BY t.startTime DESC, t.id DESC LIMIT :limit")
+    List<TransitIncident> findPageByAsn(@Param("asn") Integer asn, @Param("from") Instant from,
+            @Param("beforeTs") Instant beforeTs, @Param("beforeId") Long beforeId, @Param("limit") int limit);
+}
@@ -0,0 +1,170 @@
+package com.nhp.services;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.AsnOutage;
+import com.nhp.dto.Incident;
+import com.nhp.dto.OutageEvent;
+import com.nhp.repository.OutageEventRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Authoritative in-memory view of currently open prefix and ASN outages.
+ * UpdateProcessor and AsnOutageService keep it in step with detection, so
+ * active-outage queries never touch the database. Prefix outages are rebuilt
+ * from the database at startup. ASN outage changes are passed on to
+ * IncidentService.
+ */
+@Slf4j
+@Service
+public class ActiveOutageRegistry {
+
+    private static final Comparator<OutageEvent> NEWEST_FIRST = Comparator
+            .comparing(OutageEvent::getTimestamp, Comparator.reverseOrder())
+            .thenComparing(OutageEvent::getPrefix);
+
+    private static final Comparator<AsnOutage> ASN_NEWEST_FIRST = Comparator
+            .comparing(AsnOutage::getStartTime, Comparator.reverseOrder())
+            .thenComparing(AsnOutage::getAsn);
+
+    @Autowired
+    private OutageEventRepository outageEventRepository;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private StartupGate startupGate;
+
+    // Lazy: incident clustering looks up prefix outages here
+    @Autowired
+    @Lazy
+    private IncidentService incidentService;
+
+    // Open outage_start event per prefix, plus the same events in display order
+    private final Map<String, OutageEvent> prefixOutages = new ConcurrentHashMap<>();
+    private final NavigableSet<OutageEvent> prefixOutagesByTime = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+
+    // Snapshot of each open ASN outage (endTime is null)
+    private final Map<Integer, AsnOutage> asnOutages = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        metricsService.registerGauge("ripe.prefix.outages.active", "Prefixes currently in outage",
+                prefixOutages, Map::size);
+        startupGate.warmup("active outage registry", this::rebuildFromDatabase);
+    }
+
+    /**
+     * Rebuild open prefix outages from the database
+     */
+    public void rebuildFromDatabase() {
+        try {
+            // Newest first, so the latest open outage wins if a prefix has several
+            for (OutageEvent event : outageEventRepository.findActiveOutages()) {
+                if (!prefixOutages.containsKey(event.getPrefix())) {
+                    openPrefixOutage(event);
+                }
+            }
+            log.info("Rebuilt active outage registry: {} open prefix outages", prefixOutages.size());
+        } catch (Exception e) {
+            log.error("Failed to rebuild active outage registry from database", e);
+        }
+    }
+
+    /**
+     * Record that a prefix is in outage
+     */
+    public synchronized void openPrefixOutage(OutageEvent event) {
+        OutageEvent previous = prefixOutages.put(event.getPrefix(), event);
+        if (previous != null) {
+            prefixOutagesByTime.remove(previous);
+        }
+        prefixOutagesByTime.add(event);
+    }
+
+    /**
+     * Swap an open outage for its saved copy, which carries the database id,
+     * unless the prefix has recovered or had a newer outage since
+     */
+    public synchronized void replacePrefixOutage(OutageEvent event, OutageEvent saved) {
+        if (event == saved || prefixOutages.get(event.getPrefix()) != event) {
+            return;
+        }
+        prefixOutages.put(saved.getPrefix(), saved);
+        prefixOutagesByTime.remove(event);
+        prefixOutagesByTime.add(saved);
+    }
+
+    /**
+     * Record that a prefix has recovered; returns the outage it closes, if any
+     */
+    public synchronized OutageEvent closePrefixOutage(String prefix) {
+        OutageEvent open = prefixOutages.remove(prefix);
+        if (open != null) {
+            prefixOutagesByTime.remove(open);
+        }
+        return open;
+    }
+
+    public OutageEvent getPrefixOutage(String prefix) {
+        return prefixOutages.get(prefix);
+    }
+
+    public boolean isPrefixInOutage(String prefix) {
+        return prefixOutages.containsKey(prefix);
+    }
+
+    /**
+     * Open prefix outages, newest first
+     */
+    public List<OutageEvent> getActivePrefixOutages() {
+        return List.copyOf(prefixOutagesByTime);
+    }
+
+    public int getActivePrefixOutageCount() {
+        return prefixOutages.size();
+    }
+
+    /**
+     * Publish the current state of an open ASN outage
+     */
+    public void updateAsnOutage(Integer asn, Instant startTime, List<String> prefixes, String country) {
+        asnOutages.put(asn, AsnOutage.builder()
+                .asn(asn)
+                .startTime(startTime)
+                .prefixes(prefixes.toArray(new String[0]))
+                .country(country)
+                .build());
+        incidentService.processAsnOutage(asn, startTime, prefixes, country);
+    }
+
+    /**
+     * Drop a closed ASN outage; returns the incident it closed, if this
+     * instance is to save it (see IncidentService.saveIncident)
+     */
+    public Incident closeAsnOutage(Integer asn, Instant endTime) {
+        return asnOutages.remove(asn) != null ? incidentService.closeAsnOutage(asn, endTime) : null;
+    }
+
+    /**
+     * Open ASN outages, newest first
+     */
+    public List<AsnOutage> getActiveAsnOutages() {
+        return asnOutages.values().stream()
+                .sorted(ASN_NEWEST_FIRST)
+                .toList();
+    }
+}
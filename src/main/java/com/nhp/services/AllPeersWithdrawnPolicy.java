@@ -0,0 +1,17 @@
+package com.nhp.services;
+
+import org.springframework.stereotype.Component;
+
+import com.nhp.dto.PrefixState;
+
+/**
+ * Outage once no peer announces the prefix any more
+ */
+@Component("all-withdrawn")
+public class AllPeersWithdrawnPolicy implements DetectionPolicy {
+
+    @Override
+    public boolean isOutage(PrefixState state) {
+        return state.getVisiblePeerCount() == 0;
+    }
+}
@@ -0,0 +1,244 @@
+package com.nhp.services;
+
+import java.util.Arrays;
+
+/**
+ * AS adjacencies seen in announced AS paths, for transit-level correlation.
+ * ASNs are mapped to dense int ids, and each adjacency (upstream id, downstream
+ * id, upstream being the AS nearer the RIS peer) is one slot of an
+ * open-addressing table holding the minute it was last seen, with upstream and
+ * downstream degree counts per AS. Adding a path parses at most MAX_HOPS ASNs
+ * and probes the table once per hop without allocating; the edge count is
+ * capped, and edges not seen within the TTL are dropped by expire().
+ *
+ * Plain class with no Spring dependencies; thread-safe through its monitor.
+ */
+final class AsGraph {
+
+    static final int MAX_HOPS = 32;
+
+    private static final long NO_EDGE = -1L;
+
+    private final int maxEdges;
+
+    // ASN (unsigned 32-bit pattern, 0 never occurs in a path) -> id
+    private int[] asnKeys = new int[1024];
+    private int[] asnIds = new int[1024];
+
+    // Per id
+    private int[] upstreamDegree = new int[512];
+    private int[] downstreamDegree = new int[512];
+    private int asnCount;
+
+    // Upstream id << 32 | downstream id, and the minute it was last seen
+    private long[] edgeKeys = newEdgeKeys(1024);
+    private int[] edgeSeen = new int[1024];
+    private int edgeCount;
+    private long droppedEdges;
+
+    private final int[] hops = new int[MAX_HOPS];
+
+    AsGraph(int maxEdges) {
+        this.maxEdges = maxEdges;
+    }
+
+    /**
+     * Add the adjacencies of a space-separated AS path seen at the given minute
+     */
+    synchronized void addPath(String path, int minute) {
+        int count = parsePath(path, hops);
+        for (int i = 1; i < count; i++) {
+            addEdge(idOf(hops[i - 1]), idOf(hops[i]), minute);
+        }
+    }
+
+    /**
+     * Drop edges last seen before the given minute; returns how many
+     */
+    synchronized int expire(int beforeMinute) {
+        long[] keys = edgeKeys;
+        int[] seen = edgeSeen;
+        edgeKeys = newEdgeKeys(keys.length);
+        edgeSeen = new int[keys.length];
+        int before = edgeCount;
+        edgeCount = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] == NO_EDGE) {
+                continue;
+            }
+            if (seen[slot] < beforeMinute) {
+                upstreamDegree[(int) keys[slot]]--;
+                downstreamDegree[(int) (keys[slot] >>> 32)]--;
+            } else {
+                insertEdge(keys[slot], seen[slot]);
+            }
+        }
+        return before - edgeCount;
+    }
+
+    /**
+     * Distinct ASes seen right after asn in paths (its customers and peers as
+     * seen from the collectors)
+     */
+    synchronized int getDownstreamDegree(int asn) {
+        int id = findId(asn);
+        return id < 0 ? 0 : downstreamDegree[id];
+    }
+
+    /**
+     * Distinct ASes seen right before asn in paths
+     */
+    synchronized int getUpstreamDegree(int asn) {
+        int id = findId(asn);
+        return id < 0 ? 0 : upstreamDegree[id];
+    }
+
+    synchronized int getAsnCount() {
+        return asnCount;
+    }
+
+    synchronized int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * New adjacencies not stored because the graph was full
+     */
+    synchronized long getDroppedEdges() {
+        return droppedEdges;
+    }
+
+    /**
+     * Parse a space-separated AS path into ASNs (unsigned 32-bit patterns),
+     * peer first and origin last, collapsing prepends. Parsing stops at an
+     * AS_SET or a malformed hop and after MAX_HOPS ASNs; returns the count.
+     */
+    static int parsePath(String path, int[] into) {
+        if (path == null) {
+            return 0;
+        }
+        int count = 0;
+        int length = path.length();
+        int i = 0;
+        while (i < length && count < into.length) {
+            char c = path.charAt(i);
+            if (c == ' ') {
+                i++;
+                continue;
+            }
+            long asn = 0;
+            int start = i;
+            while (i < length && (c = path.charAt(i)) >= '0' && c <= '9' && i - start < 10) {
+                asn = asn * 10 + (c - '0');
+                i++;
+            }
+            if (i == start || (i < length && path.charAt(i) != ' ') || asn == 0 || asn > 0xFFFFFFFFL) {
+                break; // AS_SET, or not an ASN
+            }
+            if (count == 0 || into[count - 1] != (int) asn) {
+                into[count++] = (int) asn;
+            }
+        }
+        return count;
+    }
+
+    private void addEdge(int up, int down, int minute) {
+        long key = (long) up << 32 | down;
+        int mask = edgeKeys.length - 1;
+        for (int slot = mix(key) & mask;; slot = (slot + 1) & mask) {
+            if (edgeKeys[slot] == key) {
+                edgeSeen[slot] = minute;
+                return;
+            }
+            if (edgeKeys[slot] == NO_EDGE) {
+                break;
+            }
+        }
+        if (edgeCount >= maxEdges) {
+            droppedEdges++;
+            return;
+        }
+        if (2 * (edgeCount + 1) > edgeKeys.length) {
+            long[] keys = edgeKeys;
+            int[] seen = edgeSeen;
+            edgeKeys = newEdgeKeys(keys.length * 2);
+            edgeSeen = new int[keys.length * 2];
+            edgeCount = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != NO_EDGE) {
+                    insertEdge(keys[slot], seen[slot]);
+                }
+            }
+        }
+        insertEdge(key, minute);
+        downstreamDegree[up]++;
+        upstreamDegree[down]++;
+    }
+
+    private void insertEdge(long key, int minute) {
+        int mask = edgeKeys.length - 1;
+        int slot = mix(key) & mask;
+        while (edgeKeys[slot] != NO_EDGE) {
+            slot = (slot + 1) & mask;
+        }
+        edgeKeys[slot] = key;
+        edgeSeen[slot] = minute;
+        edgeCount++;
+    }
+
+    private int findId(int asn) {
+        int mask = asnKeys.length - 1;
+        for (int slot = mix(asn) & mask; asnKeys[slot] != 0; slot = (slot + 1) & mask) {
+            if (asnKeys[slot] == asn) {
+                return asnIds[slot];
+            }
+        }
+        return -1;
+    }
+
+    private int idOf(int asn) {
+        int id = findId(asn);
+        if (id >= 0) {
+            return id;
+        }
+        if (2 * (asnCount + 1) > asnKeys.length) {
+            int[] keys = asnKeys;
+            int[] ids = asnIds;
+            asnKeys = new int[keys.length * 2];
+            asnIds = new int[keys.length * 2];
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0) {
+                    insertAsn(keys[slot], ids[slot]);
+                }
+            }
+        }
+        if (asnCount == upstreamDegree.length) {
+            upstreamDegree = Arrays.copyOf(upstreamDegree, asnCount * 2);
+            downstreamDegree = Arrays.copyOf(downstreamDegree, asnCount * 2);
+        }
+        id = asnCount++;
+        insertAsn(asn, id);
+        return id;
+    }
+
+    private void insertAsn(int asn, int id) {
+        int mask = asnKeys.length - 1;
+        int slot = mix(asn) & mask;
+        while (asnKeys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        asnKeys[slot] = asn;
+        asnIds[slot] = id;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long[] newEdgeKeys(int size) {
+        long[] keys = new long[size];
+        Arrays.fill(keys, NO_EDGE);
+        return keys;
+    }
+}
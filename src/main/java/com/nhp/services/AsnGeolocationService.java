@@ -5,6 +5,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
@@ -21,7 +22,7 @@ public class AsnGeolocationService {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate = new RestTemplate(requestFactory());
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     // In-memory cache for ASN information
@@ -30,6 +31,9 @@ public class AsnGeolocationService {
     // Cache TTL in Redis (24 hours)
     private static final Duration CACHE_TTL = Duration.ofHours(24);
 
+    // Per API call; a lookup tries up to three APIs
+    private static final Duration API_TIMEOUT = Duration.ofSeconds(3);
+
     // API endpoints for ASN information
     private static final String IPAPI_ENDPOINT = "http://ip-api.com/json/";
     private static final String ASNLOOKUP_ENDPOINT = "https://api.asnlookup.com/v1/asn/";
@@ -79,6 +83,15 @@ public class AsnGeolocationService {
         return asnInfo;
     }
 
+    /**
+     * Country of an ASN already held in memory, without going to Redis or the
+     * APIs; null if it was not looked up yet
+     */
+    public String getCachedCountry(Integer asn) {
+        AsnInfo cached = asn != null ? asnCache.get(asn) : null;
+        return cached != null ? cached.getCountry() : null;
+    }
+
     /**
      * Fetch ASN information from external APIs
      */
@@ -270,4 +283,11 @@ public class AsnGeolocationService {
         asnCache.clear();
         // Note: Redis cache will expire automatically
     }
+
+    private static SimpleClientHttpRequestFactory requestFactory() {
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout((int) API_TIMEOUT.toMillis());
+        factory.setReadTimeout((int) API_TIMEOUT.toMillis());
+        return factory;
+    }
 }
\ No newline at end of file
@@ -3,21 +3,35 @@ package com.nhp.services;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import com.nhp.dto.AsnOutage;
+import com.nhp.dto.HistoryCursor;
+import com.nhp.dto.HistoryPage;
+import com.nhp.dto.Incident;
 import com.nhp.dto.OutageEvent;
 import com.nhp.repository.AsnOutageRepository;
 import com.nhp.repository.OutageEventRepository;
+import com.nhp.repository.StreamingQueryRepository;
 
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @Slf4j
 @Service
@@ -32,67 +46,209 @@ public class AsnOutageService {
     @Autowired
     private AsnGeolocationService asnGeolocationService;
 
-    // In-memory tracking of active ASN outages
+    @Autowired
+    private OutageFeedService outageFeedService;
+
+    @Autowired
+    private StreamingQueryRepository streamingQueryRepository;
+
+    @Autowired
+    private ActiveOutageRegistry activeOutageRegistry;
+
+    @Autowired
+    private IncidentService incidentService;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
+    @Autowired
+    private StartupGate startupGate;
+
+    // Lazy: the relay feeds prefix events from other instances into this service
+    @Autowired
+    @Lazy
+    private ClusterRelay clusterRelay;
+
+    // In-memory tracking of active ASN outages. Updated under this service's
+    // lock: ingestion lanes, the cluster relay and the scheduler all feed it.
+    // Nothing blocking runs under the lock: countries not in memory are looked
+    // up in the background; closed outages and incidents are saved, and
+    // snapshots relayed to the cluster, after it is released.
     private final Map<Integer, AsnOutageTracker> activeAsnOutages = new ConcurrentHashMap<>();
 
+    // Snapshots queued under the lock in update order, sent by one thread at a time
+    private final Queue<RelayedSnapshot> pendingRelays = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock relayLock = new ReentrantLock();
+
+    // ASNs with a country lookup in flight
+    private final Set<Integer> countryLookups = ConcurrentHashMap.newKeySet();
+
     // Timeout for ASN outage correlation (5 minutes)
     private static final Duration ASN_OUTAGE_TIMEOUT = Duration.ofMinutes(5);
 
+    private static final String UNKNOWN_COUNTRY = "Unknown";
+
+    @PostConstruct
+    public void init() {
+        metricsService.registerGauge("ripe.asn.outage.trackers", "Open ASN outage trackers",
+                activeAsnOutages, Map::size);
+        startupGate.warmup("ASN outage trackers", this::restoreActiveOutages);
+    }
+
+    /**
+     * Restore ASN trackers from the open prefix outages in the registry. No feed
+     * events are published; these outages were already announced before restart.
+     * In cluster mode nothing is owned yet, trackers are adopted once it is.
+     */
+    public void restoreActiveOutages() {
+        synchronized (this) {
+            int restored = adoptTrackers();
+            if (restored > 0) {
+                log.info("Restored {} active ASN outages", restored);
+            }
+        }
+        flushRelays();
+    }
+
+    /**
+     * Hand trackers over after a cluster membership change: drop the ASNs now
+     * owned elsewhere (their new owner keeps them open) and adopt the ones now
+     * owned here from the registry
+     */
+    @EventListener
+    public void onOwnershipChanged(ShardCoordinator.OwnershipChanged event) {
+        synchronized (this) {
+            int dropped = 0;
+            for (Integer asn : List.copyOf(activeAsnOutages.keySet())) {
+                if (!shardCoordinator.ownsAsn(asn)) {
+                    activeAsnOutages.remove(asn);
+                    dropped++;
+                }
+            }
+            int adopted = adoptTrackers();
+            if (dropped > 0 || adopted > 0) {
+                log.info("ASN tracker handoff: {} handed over, {} adopted", dropped, adopted);
+            }
+        }
+        flushRelays();
+    }
+
+    /**
+     * Create trackers for owned ASNs with open outages in the registry but no
+     * tracker here. A previous owner's snapshot keeps its start time and
+     * prefixes; adopted trackers get a fresh timeout window.
+     */
+    private int adoptTrackers() {
+        Set<Integer> adopted = new HashSet<>();
+        // Snapshots and prefix outages may carry no country; it is backfilled below
+        for (AsnOutage open : activeOutageRegistry.getActiveAsnOutages()) {
+            Integer asn = open.getAsn();
+            if (!activeAsnOutages.containsKey(asn) && shardCoordinator.ownsAsn(asn)) {
+                AsnOutageTracker tracker = new AsnOutageTracker(asn, open.getStartTime());
+                tracker.setCountry(open.getCountry());
+                for (String prefix : open.getPrefixes()) {
+                    tracker.addPrefix(prefix);
+                }
+                activeAsnOutages.put(asn, tracker);
+                adopted.add(asn);
+            }
+        }
+        for (OutageEvent event : activeOutageRegistry.getActivePrefixOutages()) {
+            Integer asn = event.getOriginAsn();
+            if (!adopted.contains(asn) && (activeAsnOutages.containsKey(asn) || !shardCoordinator.ownsAsn(asn))) {
+                continue;
+            }
+            activeAsnOutages.computeIfAbsent(asn, key -> new AsnOutageTracker(key, event.getTimestamp()))
+                    .addPrefix(event.getPrefix());
+            adopted.add(asn);
+        }
+
+        Instant now = Instant.now();
+        for (Integer asn : adopted) {
+            AsnOutageTracker tracker = activeAsnOutages.get(asn);
+            tracker.setLastActivity(now);
+            resolveCountry(tracker);
+            publishToRegistry(tracker);
+        }
+        return adopted.size();
+    }
+
     /**
      * Process a new outage event and potentially correlate it with existing ASN
      * outages
      */
     public void processOutageEvent(OutageEvent event) {
-        if (!"outage_start".equals(event.getEventType())) {
+        if (!"outage_start".equals(event.getEventType()) || !shardCoordinator.ownsAsn(event.getOriginAsn())) {
             return;
         }
 
-        Integer asn = event.getOriginAsn();
-        AsnOutageTracker tracker = activeAsnOutages.get(asn);
+        synchronized (this) {
+            Integer asn = event.getOriginAsn();
+            AsnOutageTracker tracker = activeAsnOutages.get(asn);
 
-        if (tracker == null) {
-            // Start new ASN outage
-            tracker = new AsnOutageTracker(asn, event.getTimestamp());
-            activeAsnOutages.put(asn, tracker);
-        }
+            if (tracker == null) {
+                // Start new ASN outage; the feed gets the country if it is already known
+                tracker = new AsnOutageTracker(asn, event.getTimestamp());
+                resolveCountry(tracker);
+                activeAsnOutages.put(asn, tracker);
+                outageFeedService.publishAsnOutageOpened(asn, tracker.getStartTime(), tracker.getCountry());
+            }
 
-        // Add prefix to the ASN outage
-        tracker.addPrefix(event.getPrefix());
-        tracker.setLastActivity(Instant.now());
+            // Add prefix to the ASN outage
+            tracker.addPrefix(event.getPrefix());
+            tracker.setLastActivity(Instant.now());
+            publishToRegistry(tracker);
 
-        log.debug("Added prefix {} to ASN {} outage tracker", event.getPrefix(), asn);
+            log.debug("Added prefix {} to ASN {} outage tracker", event.getPrefix(), asn);
+        }
+        flushRelays();
     }
 
     /**
      * Process a recovery event and potentially close ASN outages
      */
     public void processRecoveryEvent(OutageEvent event) {
-        if (!"recovery".equals(event.getEventType())) {
+        if (!"recovery".equals(event.getEventType()) || !shardCoordinator.ownsAsn(event.getOriginAsn())) {
             return;
         }
 
-        Integer asn = event.getOriginAsn();
-        AsnOutageTracker tracker = activeAsnOutages.get(asn);
+        ClosedAsnOutage closed = null;
+        synchronized (this) {
+            Integer asn = event.getOriginAsn();
+            AsnOutageTracker tracker = activeAsnOutages.get(asn);
 
-        if (tracker != null) {
-            tracker.removePrefix(event.getPrefix());
-            tracker.setLastActivity(Instant.now());
+            if (tracker != null) {
+                tracker.removePrefix(event.getPrefix());
+                tracker.setLastActivity(Instant.now());
 
-            // If all prefixes have recovered, close the ASN outage
-            if (tracker.getPrefixes().isEmpty()) {
-                closeAsnOutage(tracker);
-            }
+                // If all prefixes have recovered, close the ASN outage
+                if (tracker.getPrefixes().isEmpty()) {
+                    closed = closeAsnOutage(tracker, event.getTimestamp());
+                } else {
+                    publishToRegistry(tracker);
+                }
 
-            log.debug("Removed prefix {} from ASN {} outage tracker", event.getPrefix(), asn);
+                log.debug("Removed prefix {} from ASN {} outage tracker", event.getPrefix(), asn);
+            }
+        }
+        flushRelays();
+        if (closed != null) {
+            saveAsnOutage(closed);
         }
     }
 
     /**
-     * Close an ASN outage and persist it to the database
+     * Close an ASN outage in memory, returning it and any incident it closed
+     * for saveAsnOutage() once the lock is released. endTime is the event time
+     * of the last recovery, or now when the outage timed out.
      */
-    private void closeAsnOutage(AsnOutageTracker tracker) {
-        Instant endTime = Instant.now();
+    private ClosedAsnOutage closeAsnOutage(AsnOutageTracker tracker, Instant endTime) {
         Duration duration = Duration.between(tracker.getStartTime(), endTime);
+        String country = tracker.getCountry() != null ? tracker.getCountry()
+                : asnGeolocationService.getCachedCountry(tracker.getAsn());
 
         AsnOutage asnOutage = AsnOutage.builder()
                 .asn(tracker.getAsn())
@@ -100,16 +256,31 @@ public class AsnOutageService {
                 .endTime(endTime)
                 .duration(duration.toString())
                 .prefixes(tracker.getPrefixes().toArray(new String[0]))
-                .severity(calculateSeverity(tracker.getAsn(), tracker.getPrefixes().size()))
-                .country(getAsnCountry(tracker.getAsn()))
+                .country(country != null ? country : UNKNOWN_COUNTRY)
                 .createdAt(Instant.now())
                 .build();
 
-        asnOutageRepository.save(asnOutage);
         activeAsnOutages.remove(tracker.getAsn());
+        Incident incident = activeOutageRegistry.closeAsnOutage(tracker.getAsn(), endTime);
 
         log.info("Closed ASN outage: ASN={}, duration={}, prefixes={}",
                 tracker.getAsn(), duration, tracker.getPrefixes());
+        return new ClosedAsnOutage(asnOutage, incident);
+    }
+
+    /**
+     * Persist a closed ASN outage and announce it on the feed, then save the
+     * incident it closed
+     */
+    private void saveAsnOutage(ClosedAsnOutage closed) {
+        AsnOutage asnOutage = closed.getOutage();
+        try {
+            asnOutage.setSeverity(calculateSeverity(asnOutage.getAsn(), asnOutage.getPrefixes().length));
+            outageFeedService.publishAsnOutageClosed(asnOutageRepository.save(asnOutage));
+        } catch (Exception e) {
+            log.error("Failed to save closed outage of ASN {}", asnOutage.getAsn(), e);
+        }
+        incidentService.saveIncident(closed.getIncident());
     }
 
     /**
@@ -118,39 +289,89 @@ public class AsnOutageService {
     @Scheduled(fixedRate = 60000) // Run every minute
     public void closeTimedOutOutages() {
         Instant now = Instant.now();
-        List<Integer> asnsToClose = new ArrayList<>();
-
-        for (Map.Entry<Integer, AsnOutageTracker> entry : activeAsnOutages.entrySet()) {
-            AsnOutageTracker tracker = entry.getValue();
-            if (now.isAfter(tracker.getLastActivity().plus(ASN_OUTAGE_TIMEOUT))) {
-                asnsToClose.add(entry.getKey());
+        List<ClosedAsnOutage> closed = new ArrayList<>();
+
+        synchronized (this) {
+            List<Integer> asnsToClose = new ArrayList<>();
+            for (Map.Entry<Integer, AsnOutageTracker> entry : activeAsnOutages.entrySet()) {
+                AsnOutageTracker tracker = entry.getValue();
+                if (now.isAfter(tracker.getLastActivity().plus(ASN_OUTAGE_TIMEOUT))) {
+                    asnsToClose.add(entry.getKey());
+                }
             }
-        }
 
-        for (Integer asn : asnsToClose) {
-            AsnOutageTracker tracker = activeAsnOutages.get(asn);
-            if (tracker != null) {
-                closeAsnOutage(tracker);
+            for (Integer asn : asnsToClose) {
+                AsnOutageTracker tracker = activeAsnOutages.get(asn);
+                if (tracker != null) {
+                    closed.add(closeAsnOutage(tracker, now));
+                }
             }
         }
 
-        if (!asnsToClose.isEmpty()) {
-            log.info("Closed {} timed-out ASN outages", asnsToClose.size());
+        closed.forEach(this::saveAsnOutage);
+        if (!closed.isEmpty()) {
+            log.info("Closed {} timed-out ASN outages", closed.size());
         }
     }
 
     /**
      * Get ASN outages for a specific ASN
      */
-    public List<AsnOutage> getAsnOutages(Integer asn) {
-        return asnOutageRepository.findByAsnOrderByStartTimeDesc(asn);
+    public HistoryPage<AsnOutage> getAsnOutages(Integer asn, int limit, Instant from, Instant to, String cursor) {
+        HistoryQuery query = HistoryQuery.of(limit, from, to, cursor);
+        return HistoryPage.of(
+                asnOutageRepository.findPageByAsn(asn, query.getFrom(), query.getBeforeTs(), query.getBeforeId(),
+                        query.getLimit() + 1),
+                query.getLimit(), outage -> new HistoryCursor(outage.getStartTime(), outage.getId()));
     }
 
     /**
-     * Get active ASN outages
+     * Stream every ASN outage that started in a time range, oldest first (for exports)
+     */
+    public Flux<AsnOutage> exportAsnOutages(Instant from, Instant to) {
+        return streamingQueryRepository.stream(
+                "SELECT a FROM AsnOutage a WHERE a.startTime >= :from AND a.startTime <= :to "
+                        + "ORDER BY a.startTime, a.id",
+                Map.of("from", HistoryQuery.lowerBound(from), "to", HistoryQuery.upperBound(to)),
+                AsnOutage.class);
+    }
+
+    /**
+     * Get active ASN outages from the in-memory registry
      */
     public List<AsnOutage> getActiveAsnOutages() {
-        return asnOutageRepository.findActiveAsnOutages();
+        return activeOutageRegistry.getActiveAsnOutages();
+    }
+
+    /**
+     * Update the registry, and in cluster mode queue the snapshot for
+     * flushRelays() once the lock is released
+     */
+    private void publishToRegistry(AsnOutageTracker tracker) {
+        activeOutageRegistry.updateAsnOutage(tracker.getAsn(), tracker.getStartTime(), tracker.getPrefixes(),
+                tracker.getCountry());
+        if (shardCoordinator.isEnabled()) {
+            pendingRelays.add(new RelayedSnapshot(tracker.getAsn(), tracker.getStartTime(),
+                    List.copyOf(tracker.getPrefixes()), tracker.getCountry()));
+        }
+    }
+
+    /**
+     * Send the queued snapshots in the order they were taken. Whoever holds the
+     * relay lock sends; the loop picks up snapshots queued while it was held.
+     */
+    private void flushRelays() {
+        while (!pendingRelays.isEmpty() && relayLock.tryLock()) {
+            try {
+                RelayedSnapshot snapshot;
+                while ((snapshot = pendingRelays.poll()) != null) {
+                    clusterRelay.relayAsnOutage(snapshot.getAsn(), snapshot.getStartTime(), snapshot.getPrefixes(),
+                            snapshot.getCountry());
+                }
+            } finally {
+                relayLock.unlock();
+            }
+        }
     }
 
     /**
@@ -168,6 +389,41 @@ public class AsnOutageService {
         return Math.min(100, (int) ((affectedPrefixes * 100) / totalPrefixes));
     }
 
+    /**
+     * Give a tracker without a country the one held in memory, or look it up
+     * in the background (Redis, then the APIs) and publish the tracker again
+     * once it is known, so that its incident gets the country key
+     */
+    private void resolveCountry(AsnOutageTracker tracker) {
+        if (tracker.getCountry() != null) {
+            return;
+        }
+        Integer asn = tracker.getAsn();
+        String cached = asnGeolocationService.getCachedCountry(asn);
+        if (cached != null) {
+            tracker.setCountry(cached);
+            return;
+        }
+        if (!countryLookups.add(asn)) {
+            return;
+        }
+        Mono.fromCallable(() -> getAsnCountry(asn))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doFinally(signal -> countryLookups.remove(asn))
+                .subscribe(country -> backfillCountry(asn, country));
+    }
+
+    private void backfillCountry(Integer asn, String country) {
+        synchronized (this) {
+            AsnOutageTracker tracker = activeAsnOutages.get(asn);
+            if (tracker != null && tracker.getCountry() == null) {
+                tracker.setCountry(country);
+                publishToRegistry(tracker);
+            }
+        }
+        flushRelays();
+    }
+
     /**
      * Get country for ASN using geolocation service
      */
@@ -176,10 +432,24 @@ public class AsnOutageService {
             return asnGeolocationService.getAsnInfo(asn).getCountry();
         } catch (Exception e) {
             log.debug("Failed to get country for ASN {}: {}", asn, e.getMessage());
-            return "Unknown";
+            return UNKNOWN_COUNTRY;
         }
     }
 
+    @lombok.Value
+    private static class ClosedAsnOutage {
+        AsnOutage outage;
+        Incident incident;
+    }
+
+    @lombok.Value
+    private static class RelayedSnapshot {
+        Integer asn;
+        Instant startTime;
+        List<String> prefixes;
+        String country;
+    }
+
     /**
      * Inner class to track active ASN outages
      */
@@ -188,6 +458,8 @@ public class AsnOutageService {
         private final Instant startTime;
         private final List<String> prefixes = new ArrayList<>();
         private Instant lastActivity;
+        // From memory when the outage opens or is adopted, otherwise backfilled by a lookup
+        private String country;
 
         public AsnOutageTracker(Integer asn, Instant startTime) {
             this.asn = asn;
@@ -225,5 +497,13 @@ public class AsnOutageService {
         public void setLastActivity(Instant lastActivity) {
             this.lastActivity = lastActivity;
         }
+
+        public String getCountry() {
+            return country;
+        }
+
+        public void setCountry(String country) {
+            this.country = country;
+        }
     }
 }
\ No newline at end of file
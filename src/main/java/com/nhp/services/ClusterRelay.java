@@ -0,0 +1,174 @@
+package com.nhp.services;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nhp.dto.OutageEvent;
+import com.nhp.dto.OutageFeedEvent;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Redis pub/sub between cluster members. Each instance only detects outages
+ * for its own shard units, so it relays every feed delta and ASN outage
+ * snapshot it produces; the others apply them to their registry and live feed,
+ * and the instance owning the ASN correlates relayed prefix events. Together
+ * with the registry rebuild at startup this gives every instance the full
+ * active-outage view. Delivery is at most once, like the feed itself.
+ */
+@Slf4j
+@Service
+public class ClusterRelay {
+
+    private static final String CHANNEL = "nhp:cluster:events";
+
+    // Relay-only delta carrying the current prefixes of an open ASN outage
+    private static final String ASN_OUTAGE_UPDATE = "asn_outage_update";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
+    @Autowired
+    private OutageFeedService outageFeedService;
+
+    @Autowired
+    private ActiveOutageRegistry activeOutageRegistry;
+
+    @Autowired
+    private AsnOutageService asnOutageService;
+
+    @Autowired
+    private TransitCorrelationService transitCorrelationService;
+
+    @Autowired
+    private IncidentService incidentService;
+
+    private String instanceId;
+
+    @PostConstruct
+    public void subscribe() {
+        if (!shardCoordinator.isEnabled()) {
+            return;
+        }
+        instanceId = shardCoordinator.getInstanceId();
+        listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * Relay a feed delta produced by this instance
+     */
+    public void relayFeedEvent(OutageFeedEvent event) {
+        send(event);
+    }
+
+    /**
+     * Relay the current state of an ASN outage correlated by this instance
+     */
+    public void relayAsnOutage(Integer asn, Instant startTime, List<String> prefixes, String country) {
+        send(OutageFeedEvent.builder()
+                .type(ASN_OUTAGE_UPDATE)
+                .timestamp(startTime)
+                .asn(asn)
+                .prefixes(prefixes.toArray(new String[0]))
+                .country(country)
+                .build());
+    }
+
+    private void send(OutageFeedEvent event) {
+        if (!shardCoordinator.isEnabled()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL,
+                    objectMapper.writeValueAsString(new RelayedEvent(instanceId, event)));
+        } catch (Exception e) {
+            log.warn("Failed to relay {} to the cluster: {}", event.getType(), e.getMessage());
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        try {
+            RelayedEvent relayed = objectMapper.readValue(message.getBody(), RelayedEvent.class);
+            if (instanceId.equals(relayed.getOrigin()) || relayed.getEvent() == null) {
+                return; // Our own delta, already applied
+            }
+            apply(relayed.getEvent());
+        } catch (Exception e) {
+            log.warn("Failed to apply relayed cluster event: {}", e.getMessage());
+        }
+    }
+
+    private void apply(OutageFeedEvent event) {
+        switch (event.getType()) {
+            case OutageFeedService.OUTAGE_START -> {
+                OutageEvent outage = toOutageEvent(event);
+                activeOutageRegistry.openPrefixOutage(outage);
+                outageFeedService.publishRelayed(event);
+                asnOutageService.processOutageEvent(outage);
+                transitCorrelationService.processOutageEvent(outage);
+            }
+            case OutageFeedService.RECOVERY -> {
+                activeOutageRegistry.closePrefixOutage(event.getPrefix());
+                outageFeedService.publishRelayed(event);
+                OutageEvent recovery = toOutageEvent(event);
+                asnOutageService.processRecoveryEvent(recovery);
+                transitCorrelationService.processRecoveryEvent(recovery);
+            }
+            case OutageFeedService.ASN_OUTAGE_CLOSE -> {
+                incidentService.saveIncident(activeOutageRegistry.closeAsnOutage(event.getAsn(),
+                        event.getTimestamp()));
+                outageFeedService.publishRelayed(event);
+            }
+            case OutageFeedService.TRANSIT_INCIDENT_OPEN, OutageFeedService.TRANSIT_INCIDENT_CLOSE -> {
+                transitCorrelationService.applyRelayed(event);
+                outageFeedService.publishRelayed(event);
+            }
+            case ASN_OUTAGE_UPDATE -> activeOutageRegistry.updateAsnOutage(event.getAsn(), event.getTimestamp(),
+                    event.getPrefixes() != null ? List.of(event.getPrefixes()) : List.of(), event.getCountry());
+            default -> outageFeedService.publishRelayed(event);
+        }
+    }
+
+    private static OutageEvent toOutageEvent(OutageFeedEvent event) {
+        return OutageEvent.builder()
+                .id(event.getEventId())
+                .prefix(event.getPrefix())
+                .originAsn(event.getAsn())
+                .timestamp(event.getTimestamp())
+                .eventType(event.getType())
+                .lastPath(event.getLastPath())
+                .build();
+    }
+
+    /**
+     * Wire format: a feed delta and the instance that produced it
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RelayedEvent {
+        private String origin;
+        private OutageFeedEvent event;
+    }
+}
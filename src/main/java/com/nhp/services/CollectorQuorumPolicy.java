@@ -0,0 +1,25 @@
+package com.nhp.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nhp.dto.PrefixState;
+
+/**
+ * Outage once fewer than a quorum of distinct route collectors still have a
+ * peer announcing the prefix. A single laggard peer, or several peers behind
+ * the same collector, cannot hold a prefix up on their own. Prefixes only ever
+ * seen through fewer collectors than the quorum need all of them.
+ */
+@Component("collector-quorum")
+public class CollectorQuorumPolicy implements DetectionPolicy {
+
+    @Value("${nhp.detection.collector-quorum:2}")
+    private int quorum;
+
+    @Override
+    public boolean isOutage(PrefixState state) {
+        int required = Math.max(1, Math.min(quorum, state.getPeakVisibleCollectors()));
+        return state.getVisibleCollectorCount() < required;
+    }
+}
@@ -0,0 +1,430 @@
+package com.nhp.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.AsnOutage;
+import com.nhp.dto.OutageEvent;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Columnar export of outage history as ZSTD-compressed Apache Arrow IPC
+ * streams. Rows are pulled from the database cursor in fixed-size batches, so
+ * memory is bounded by one batch regardless of the exported range. Prefix, ASN,
+ * event type and country columns are dictionary-encoded per batch.
+ */
+@Slf4j
+@Service
+public class ColumnarExportService {
+
+    public static final String ARROW_STREAM_MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+    public static final String FILE_EXTENSION = ".arrows";
+
+    // Rows per Arrow record batch
+    private static final int BATCH_SIZE = 8192;
+
+    private static final ArrowType.Int INDEX_TYPE = new ArrowType.Int(32, true);
+    private static final ArrowType TIMESTAMP_TYPE = new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC");
+
+    @Autowired
+    private OutageEventService outageEventService;
+
+    @Autowired
+    private AsnOutageService asnOutageService;
+
+    @Value("${nhp.export.directory:exports}")
+    private String exportDirectory;
+
+    @Value("${nhp.export.scheduled:false}")
+    private boolean scheduledExportEnabled;
+
+    /**
+     * Encode outage events in a time range as an Arrow IPC stream
+     */
+    public Flux<byte[]> exportOutageEvents(Instant from, Instant to) {
+        return export(outageEventService.exportOutageEvents(from, to), OutageEventBatchWriter::new);
+    }
+
+    /**
+     * Encode ASN outages in a time range as an Arrow IPC stream
+     */
+    public Flux<byte[]> exportAsnOutages(Instant from, Instant to) {
+        return export(asnOutageService.exportAsnOutages(from, to), AsnOutageBatchWriter::new);
+    }
+
+    /**
+     * Scheduled job writing the previous UTC day to the export directory
+     */
+    @Scheduled(cron = "${nhp.export.cron:0 15 0 * * *}", zone = "UTC")
+    public void exportPreviousDay() {
+        if (!scheduledExportEnabled) {
+            return;
+        }
+
+        LocalDate day = LocalDate.now(ZoneOffset.UTC).minusDays(1);
+        Instant from = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant to = from.plus(1, ChronoUnit.DAYS).minus(1, ChronoUnit.MICROS);
+        Path directory = Paths.get(exportDirectory);
+
+        try {
+            writeToFile(exportOutageEvents(from, to), directory.resolve("outage_events-" + day + FILE_EXTENSION));
+            writeToFile(exportAsnOutages(from, to), directory.resolve("asn_outages-" + day + FILE_EXTENSION));
+            log.info("Exported outage history for {} to {}", day, directory.toAbsolutePath());
+        } catch (Exception e) {
+            log.error("Scheduled export for {} failed", day, e);
+        }
+    }
+
+    /**
+     * Write an export to a file, replacing it atomically once complete
+     */
+    public Path writeToFile(Flux<byte[]> chunks, Path target) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path partial = target.resolveSibling(target.getFileName() + ".partial");
+
+        try (OutputStream out = Files.newOutputStream(partial)) {
+            for (byte[] chunk : chunks.toIterable(1)) {
+                out.write(chunk);
+            }
+        }
+        return Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private <T> Flux<byte[]> export(Flux<T> rows, Function<BufferAllocator, ArrowBatchWriter<T>> writerFactory) {
+        return Flux.using(
+                () -> writerFactory.apply(new RootAllocator()),
+                writer -> rows.buffer(BATCH_SIZE)
+                        .map(writer::writeBatch)
+                        .concatWith(Mono.fromCallable(writer::finish)),
+                ArrowBatchWriter::close);
+    }
+
+    /**
+     * Encodes batches of rows into an Arrow IPC stream held in a small reusable
+     * buffer that is drained after every batch.
+     */
+    private abstract static class ArrowBatchWriter<T> implements AutoCloseable {
+        protected final BufferAllocator allocator;
+        protected final DictionaryProvider.MapDictionaryProvider dictionaries = new DictionaryProvider.MapDictionaryProvider();
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private VectorSchemaRoot root;
+        private ArrowStreamWriter writer;
+        private boolean started = false;
+
+        ArrowBatchWriter(BufferAllocator allocator) {
+            this.allocator = allocator;
+        }
+
+        /**
+         * Subclasses call this once their dictionaries are registered
+         */
+        protected void open(List<Field> fields) {
+            root = VectorSchemaRoot.create(new Schema(fields), allocator);
+            writer = new ArrowStreamWriter(root, dictionaries, Channels.newChannel(buffer), IpcOption.DEFAULT,
+                    CommonsCompressionFactory.INSTANCE, CompressionUtil.CodecType.ZSTD);
+        }
+
+        protected abstract void fill(VectorSchemaRoot root, List<T> rows);
+
+        byte[] writeBatch(List<T> rows) {
+            try {
+                ensureStarted();
+                root.allocateNew();
+                fill(root, rows);
+                root.setRowCount(rows.size());
+                writer.writeBatch();
+                return drain();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to encode Arrow batch", e);
+            }
+        }
+
+        byte[] finish() throws IOException {
+            ensureStarted();
+            writer.end();
+            return drain();
+        }
+
+        private void ensureStarted() throws IOException {
+            if (!started) {
+                writer.start();
+                started = true;
+            }
+        }
+
+        private byte[] drain() {
+            byte[] bytes = buffer.toByteArray();
+            buffer.reset();
+            return bytes;
+        }
+
+        /**
+         * Register a dictionary and return the index field that references it
+         */
+        protected Field dictionaryField(String name, long id, FieldVector dictionary) {
+            DictionaryEncoding encoding = new DictionaryEncoding(id, false, INDEX_TYPE);
+            dictionary.allocateNew();
+            dictionaries.put(new Dictionary(dictionary, encoding));
+            return new Field(name, new FieldType(true, INDEX_TYPE, encoding), null);
+        }
+
+        /**
+         * Dictionary-encode a string column using a dictionary built from this batch only
+         */
+        protected void encodeStrings(IntVector indices, VarCharVector dictionary, List<String> values) {
+            Map<String, Integer> ids = new HashMap<>();
+            dictionary.reset();
+            for (int i = 0; i < values.size(); i++) {
+                String value = values.get(i);
+                if (value == null) {
+                    indices.setNull(i);
+                    continue;
+                }
+                Integer id = ids.get(value);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(value, id);
+                    dictionary.setSafe(id, value.getBytes(StandardCharsets.UTF_8));
+                }
+                indices.setSafe(i, id);
+            }
+            dictionary.setValueCount(ids.size());
+        }
+
+        /**
+         * Dictionary-encode an integer column using a dictionary built from this batch only
+         */
+        protected void encodeInts(IntVector indices, IntVector dictionary, List<Integer> values) {
+            Map<Integer, Integer> ids = new HashMap<>();
+            dictionary.reset();
+            for (int i = 0; i < values.size(); i++) {
+                Integer value = values.get(i);
+                if (value == null) {
+                    indices.setNull(i);
+                    continue;
+                }
+                Integer id = ids.get(value);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(value, id);
+                    dictionary.setSafe(id, value);
+                }
+                indices.setSafe(i, id);
+            }
+            dictionary.setValueCount(ids.size());
+        }
+
+        protected static void setTimestamp(TimeStampMicroTZVector vector, int index, Instant value) {
+            if (value == null) {
+                vector.setNull(index);
+            } else {
+                vector.setSafe(index, value.getEpochSecond() * 1_000_000L + value.getNano() / 1_000);
+            }
+        }
+
+        protected static void setString(VarCharVector vector, int index, String value) {
+            if (value == null) {
+                vector.setNull(index);
+            } else {
+                vector.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        protected static void setStrings(ListVector vector, int index, String[] values) {
+            if (values == null) {
+                vector.setNull(index);
+                return;
+            }
+            VarCharVector items = (VarCharVector) vector.getDataVector();
+            int start = vector.startNewValue(index);
+            for (int i = 0; i < values.length; i++) {
+                setString(items, start + i, values[i]);
+            }
+            vector.endValue(index, values.length);
+        }
+
+        protected static Field timestampField(String name) {
+            return new Field(name, FieldType.nullable(TIMESTAMP_TYPE), null);
+        }
+
+        protected static Field stringListField(String name) {
+            return new Field(name, FieldType.nullable(ArrowType.List.INSTANCE),
+                    List.of(new Field("item", FieldType.nullable(ArrowType.Utf8.INSTANCE), null)));
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+                if (root != null) {
+                    root.close();
+                }
+                dictionaries.close();
+            } finally {
+                allocator.close();
+            }
+        }
+    }
+
+    /**
+     * Column layout for outage_events
+     */
+    private static class OutageEventBatchWriter extends ArrowBatchWriter<OutageEvent> {
+        private final VarCharVector prefixDictionary;
+        private final IntVector asnDictionary;
+        private final VarCharVector eventTypeDictionary;
+
+        OutageEventBatchWriter(BufferAllocator allocator) {
+            super(allocator);
+            prefixDictionary = new VarCharVector("prefix_dictionary", allocator);
+            asnDictionary = new IntVector("origin_asn_dictionary", allocator);
+            eventTypeDictionary = new VarCharVector("event_type_dictionary", allocator);
+
+            open(List.of(
+                    new Field("id", FieldType.notNullable(new ArrowType.Int(64, true)), null),
+                    dictionaryField("prefix", 0L, prefixDictionary),
+                    dictionaryField("origin_asn", 1L, asnDictionary),
+                    timestampField("timestamp"),
+                    timestampField("detected_at"),
+                    dictionaryField("event_type", 2L, eventTypeDictionary),
+                    new Field("last_path", FieldType.nullable(ArrowType.Utf8.INSTANCE), null),
+                    stringListField("withdrawn_by"),
+                    timestampField("resolved_at"),
+                    new Field("duration", FieldType.nullable(ArrowType.Utf8.INSTANCE), null),
+                    timestampField("created_at")));
+        }
+
+        @Override
+        protected void fill(VectorSchemaRoot root, List<OutageEvent> rows) {
+            BigIntVector id = (BigIntVector) root.getVector("id");
+            TimeStampMicroTZVector timestamp = (TimeStampMicroTZVector) root.getVector("timestamp");
+            TimeStampMicroTZVector detectedAt = (TimeStampMicroTZVector) root.getVector("detected_at");
+            VarCharVector lastPath = (VarCharVector) root.getVector("last_path");
+            ListVector withdrawnBy = (ListVector) root.getVector("withdrawn_by");
+            TimeStampMicroTZVector resolvedAt = (TimeStampMicroTZVector) root.getVector("resolved_at");
+            VarCharVector duration = (VarCharVector) root.getVector("duration");
+            TimeStampMicroTZVector createdAt = (TimeStampMicroTZVector) root.getVector("created_at");
+
+            for (int i = 0; i < rows.size(); i++) {
+                OutageEvent event = rows.get(i);
+                id.setSafe(i, event.getId());
+                setTimestamp(timestamp, i, event.getTimestamp());
+                setTimestamp(detectedAt, i, event.getDetectedAt());
+                setString(lastPath, i, event.getLastPath());
+                setStrings(withdrawnBy, i, event.getWithdrawnBy());
+                setTimestamp(resolvedAt, i, event.getResolvedAt());
+                setString(duration, i, event.getDuration());
+                setTimestamp(createdAt, i, event.getCreatedAt());
+            }
+
+            encodeStrings((IntVector) root.getVector("prefix"), prefixDictionary,
+                    rows.stream().map(OutageEvent::getPrefix).toList());
+            encodeInts((IntVector) root.getVector("origin_asn"), asnDictionary,
+                    rows.stream().map(OutageEvent::getOriginAsn).toList());
+            encodeStrings((IntVector) root.getVector("event_type"), eventTypeDictionary,
+                    rows.stream().map(OutageEvent::getEventType).toList());
+        }
+    }
+
+    /**
+     * Column layout for asn_outages
+     */
+    private static class AsnOutageBatchWriter extends ArrowBatchWriter<AsnOutage> {
+        private final IntVector asnDictionary;
+        private final VarCharVector countryDictionary;
+
+        AsnOutageBatchWriter(BufferAllocator allocator) {
+            super(allocator);
+            asnDictionary = new IntVector("asn_dictionary", allocator);
+            countryDictionary = new VarCharVector("country_dictionary", allocator);
+
+            open(List.of(
+                    new Field("id", FieldType.notNullable(new ArrowType.Int(64, true)), null),
+                    dictionaryField("asn", 3L, asnDictionary),
+                    timestampField("start_time"),
+                    timestampField("end_time"),
+                    new Field("duration", FieldType.nullable(ArrowType.Utf8.INSTANCE), null),
+                    stringListField("prefixes"),
+                    new Field("severity", FieldType.nullable(new ArrowType.Int(32, true)), null),
+                    dictionaryField("country", 4L, countryDictionary),
+                    timestampField("created_at")));
+        }
+
+        @Override
+        protected void fill(VectorSchemaRoot root, List<AsnOutage> rows) {
+            BigIntVector id = (BigIntVector) root.getVector("id");
+            TimeStampMicroTZVector startTime = (TimeStampMicroTZVector) root.getVector("start_time");
+            TimeStampMicroTZVector endTime = (TimeStampMicroTZVector) root.getVector("end_time");
+            VarCharVector duration = (VarCharVector) root.getVector("duration");
+            ListVector prefixes = (ListVector) root.getVector("prefixes");
+            IntVector severity = (IntVector) root.getVector("severity");
+            TimeStampMicroTZVector createdAt = (TimeStampMicroTZVector) root.getVector("created_at");
+
+            for (int i = 0; i < rows.size(); i++) {
+                AsnOutage outage = rows.get(i);
+                id.setSafe(i, outage.getId());
+                setTimestamp(startTime, i, outage.getStartTime());
+                setTimestamp(endTime, i, outage.getEndTime());
+                setString(duration, i, outage.getDuration());
+                setStrings(prefixes, i, outage.getPrefixes());
+                if (outage.getSeverity() == null) {
+                    severity.setNull(i);
+                } else {
+                    severity.setSafe(i, outage.getSeverity());
+                }
+                setTimestamp(createdAt, i, outage.getCreatedAt());
+            }
+
+            encodeInts((IntVector) root.getVector("asn"), asnDictionary,
+                    rows.stream().map(AsnOutage::getAsn).toList());
+            encodeStrings((IntVector) root.getVector("country"), countryDictionary,
+                    rows.stream().map(AsnOutage::getCountry).toList());
+        }
+    }
+}
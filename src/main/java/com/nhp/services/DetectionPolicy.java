@@ -0,0 +1,14 @@
+package com.nhp.services;
+
+import com.nhp.dto.PrefixState;
+
+/**
+ * Decides from a prefix's visibility counts whether it is in outage. Each
+ * implementation is a bean whose name is selectable with nhp.detection.policy.
+ * Implementations must only read the counts on PrefixState, so that every
+ * update is evaluated in constant time.
+ */
+public interface DetectionPolicy {
+
+    boolean isOutage(PrefixState state);
+}
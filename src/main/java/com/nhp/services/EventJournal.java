@@ -0,0 +1,289 @@
+package com.nhp.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of memory-mapped segment files. An append is a copy into
+ * the mapping, so it survives the JVM dying as soon as it returns; force()
+ * makes everything appended so far durable against an OS crash as well, in
+ * one fsync per segment however many records it covers (group commit).
+ * commit() records that a prefix of the journal reached the database and
+ * deletes segments that are entirely behind it. Records not yet committed
+ * can be read back at any time with read(), so that the reader does not
+ * have to hold them in memory.
+ *
+ * Record layout: int payload length, int CRC32C of seq and payload, long seq,
+ * payload. A zero length marks the end of a segment's records; a bad CRC marks
+ * a torn write, which ends recovery of that segment.
+ */
+final class EventJournal implements AutoCloseable {
+
+    private static final int HEADER_BYTES = 16;
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final Path directory;
+    private final int segmentSize;
+
+    // Oldest first; the last one is being appended to
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final List<Segment> unforced = new ArrayList<>();
+    private long nextSeq;
+    private long committedSeq;
+    private volatile long durableSeq;
+
+    // False until the first roll: recovered segments are never appended to
+    private boolean activeWritable;
+
+    /**
+     * A record read back from the journal
+     */
+    @lombok.Value
+    static class Entry {
+        long seq;
+        byte[] payload;
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final long firstSeq;
+        private long lastSeq;
+
+        Segment(Path path, MappedByteBuffer buffer, long firstSeq) {
+            this.path = path;
+            this.buffer = buffer;
+            this.firstSeq = firstSeq;
+            this.lastSeq = firstSeq - 1;
+        }
+    }
+
+    EventJournal(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        this.committedSeq = Files.exists(checkpoint) ? Long.parseLong(Files.readString(checkpoint).trim()) : 0;
+        this.nextSeq = committedSeq + 1;
+    }
+
+    /**
+     * Check every record after the checkpoint and return the seq of the last
+     * one (the checkpoint if there are none); they are then read back with
+     * read(). Must be called once, before the first append; appends then go
+     * to a fresh segment, never after a possibly torn tail.
+     */
+    synchronized long recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            long firstSeq = Long.parseLong(file.getFileName().toString().replace(SEGMENT_SUFFIX, ""));
+            Segment segment;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()),
+                        firstSeq);
+            }
+            checkRecords(segment);
+            nextSeq = Math.max(nextSeq, segment.lastSeq + 1);
+            if (segment.lastSeq <= committedSeq || segment.lastSeq < segment.firstSeq) {
+                Files.deleteIfExists(file);
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        durableSeq = nextSeq - 1;
+        return durableSeq;
+    }
+
+    /**
+     * Find the last intact record of a segment
+     */
+    private void checkRecords(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        CRC32C crc = new CRC32C();
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            long seq = buffer.getLong();
+            if (length <= 0 || length > buffer.remaining()) {
+                return;
+            }
+            crc.reset();
+            crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, seq));
+            crc.update(buffer.slice(buffer.position(), length));
+            if ((int) crc.getValue() != checksum) {
+                return;
+            }
+            buffer.position(buffer.position() + length);
+            segment.lastSeq = seq;
+        }
+    }
+
+    /**
+     * Up to limit records after seq, oldest first; only records not yet
+     * committed are still there
+     */
+    synchronized List<Entry> read(long afterSeq, int limit) {
+        List<Entry> entries = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.lastSeq <= afterSeq) {
+                continue;
+            }
+            ByteBuffer buffer = segment.buffer.duplicate().clear();
+            while (entries.size() < limit && buffer.remaining() >= HEADER_BYTES) {
+                int length = buffer.getInt();
+                buffer.getInt();
+                long seq = buffer.getLong();
+                // Past the last intact record, or the append position of the active segment
+                if (length <= 0 || seq > segment.lastSeq) {
+                    break;
+                }
+                if (seq <= afterSeq) {
+                    buffer.position(buffer.position() + length);
+                    continue;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                entries.add(new Entry(seq, payload));
+            }
+            if (entries.size() >= limit) {
+                break;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Append a record and return its sequence number
+     */
+    synchronized long append(byte[] payload) throws IOException {
+        Segment active = segments.peekLast();
+        if (!activeWritable || active.buffer.remaining() < HEADER_BYTES + payload.length) {
+            active = roll(HEADER_BYTES + payload.length);
+            activeWritable = true;
+        }
+        long seq = nextSeq++;
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, seq));
+        crc.update(payload);
+
+        // Payload before header: a record is only visible once its length is set
+        int start = active.buffer.position();
+        active.buffer.position(start + HEADER_BYTES);
+        active.buffer.put(payload);
+        active.buffer.putInt(start + 4, (int) crc.getValue());
+        active.buffer.putLong(start + 8, seq);
+        active.buffer.putInt(start, payload.length);
+        active.lastSeq = seq;
+        return seq;
+    }
+
+    private Segment roll(int minimumSize) throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", nextSeq, SEGMENT_SUFFIX));
+        Segment segment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            segment = new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(segmentSize, minimumSize)), nextSeq);
+        }
+        Segment previous = segments.peekLast();
+        if (previous != null) {
+            unforced.add(previous); // Still needs its final fsync
+        }
+        segments.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Flush everything appended so far to disk; returns the highest durable seq
+     */
+    long force() {
+        List<MappedByteBuffer> buffers = new ArrayList<>();
+        long upTo;
+        synchronized (this) {
+            upTo = nextSeq - 1;
+            if (upTo == durableSeq) {
+                return upTo;
+            }
+            for (Segment segment : unforced) {
+                buffers.add(segment.buffer);
+            }
+            unforced.clear();
+            Segment active = segments.peekLast();
+            if (active != null) {
+                buffers.add(active.buffer);
+            }
+        }
+        // Outside the lock, so appends continue during the fsync
+        for (MappedByteBuffer buffer : buffers) {
+            buffer.force();
+        }
+        durableSeq = upTo;
+        return upTo;
+    }
+
+    long getDurableSeq() {
+        return durableSeq;
+    }
+
+    synchronized long getLastSeq() {
+        return nextSeq - 1;
+    }
+
+    synchronized long getCommittedSeq() {
+        return committedSeq;
+    }
+
+    /**
+     * Record that every record up to seq is in the database and drop the
+     * segments that hold nothing newer
+     */
+    void commit(long seq) throws IOException {
+        List<Path> obsolete = new ArrayList<>();
+        synchronized (this) {
+            if (seq <= committedSeq) {
+                return;
+            }
+            committedSeq = seq;
+            // Keep the active segment, appends continue there
+            while (segments.size() > 1 && segments.peekFirst().lastSeq <= seq) {
+                Segment done = segments.pollFirst();
+                unforced.remove(done);
+                obsolete.add(done.path);
+            }
+        }
+
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(temporary, Long.toString(seq), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        for (Path path : obsolete) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+}
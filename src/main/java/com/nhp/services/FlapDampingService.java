@@ -0,0 +1,185 @@
+package com.nhp.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Route-flap damping of outage/recovery reporting, modelled on RFC 2439.
+ * Every reachability change of a prefix adds a fixed penalty that decays
+ * exponentially. Once the penalty crosses the suppress threshold, changes are
+ * tracked but not reported; when it decays below the reuse threshold the
+ * prefix's current state is reported if it differs from the last one
+ * reported. Damping state is in memory only and starts clean on restart.
+ */
+@Slf4j
+@Service
+public class FlapDampingService {
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Value("${nhp.damping.enabled:true}")
+    private boolean enabled;
+
+    @Value("${nhp.damping.half-life:15m}")
+    private Duration halfLife;
+
+    @Value("${nhp.damping.penalty:1000}")
+    private double penaltyPerFlap;
+
+    @Value("${nhp.damping.suppress-threshold:2000}")
+    private double suppressThreshold;
+
+    @Value("${nhp.damping.reuse-threshold:750}")
+    private double reuseThreshold;
+
+    @Value("${nhp.damping.max-suppress:60m}")
+    private Duration maxSuppress;
+
+    // Penalty cap that guarantees reuse within maxSuppress of the last flap
+    private double penaltyCeiling;
+
+    private final Map<String, DampingState> prefixes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        penaltyCeiling = reuseThreshold * Math.pow(2, (double) maxSuppress.toMillis() / halfLife.toMillis());
+        metricsService.registerGauge("ripe.prefix.damping.tracked", "Prefixes with a non-zero flap penalty",
+                prefixes, Map::size);
+        metricsService.registerGauge("ripe.prefix.damping.suppressed", "Prefixes whose changes are being damped",
+                this, FlapDampingService::countSuppressed);
+    }
+
+    /**
+     * Account for a reachability change of a prefix. Returns true when the
+     * change should be reported now, false when it is damped.
+     */
+    public boolean recordTransition(String prefix, boolean withdrawn, Instant eventTime) {
+        if (!enabled) {
+            return true;
+        }
+
+        Instant now = Instant.now();
+        DampingState state = prefixes.computeIfAbsent(prefix, key -> new DampingState(!withdrawn, now));
+        synchronized (state) {
+            state.decay(now, halfLife);
+            state.penalty = Math.min(state.penalty + penaltyPerFlap, penaltyCeiling);
+            state.actualWithdrawn = withdrawn;
+            state.lastTransition = eventTime;
+
+            if (!state.suppressed && state.penalty >= suppressThreshold) {
+                state.suppressed = true;
+                log.info("Damping flapping prefix {} (penalty {})", prefix, Math.round(state.penalty));
+            }
+
+            if (state.suppressed) {
+                metricsService.incrementPrefixFlapsDamped();
+                return false;
+            }
+            state.reportedWithdrawn = withdrawn;
+            return true;
+        }
+    }
+
+    /**
+     * Prefixes whose penalty has decayed below the reuse threshold while
+     * damped, to pass to release(). Fully decayed prefixes are forgotten.
+     */
+    public List<String> reusablePrefixes() {
+        Instant now = Instant.now();
+        List<String> reusable = new ArrayList<>();
+
+        Iterator<Map.Entry<String, DampingState>> entries = prefixes.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, DampingState> entry = entries.next();
+            DampingState state = entry.getValue();
+            synchronized (state) {
+                state.decay(now, halfLife);
+                if (state.suppressed && state.penalty < reuseThreshold) {
+                    reusable.add(entry.getKey());
+                }
+                // A penalty this small no longer affects any decision
+                if (!state.suppressed && state.penalty < 1) {
+                    entries.remove();
+                }
+            }
+        }
+        return reusable;
+    }
+
+    /**
+     * Lift damping from a prefix whose penalty has decayed below the reuse
+     * threshold and return the change that was held back meanwhile; null if
+     * it is not reusable or its state did not change. Must run where the
+     * prefix's transitions are recorded (its ingest lane), so that nothing is
+     * reported for it in between.
+     */
+    public ReleasedTransition release(String prefix) {
+        DampingState state = prefixes.get(prefix);
+        if (state == null) {
+            return null;
+        }
+        synchronized (state) {
+            state.decay(Instant.now(), halfLife);
+            if (!state.suppressed || state.penalty >= reuseThreshold) {
+                return null;
+            }
+            state.suppressed = false;
+            log.info("Released damped prefix {}", prefix);
+            if (state.actualWithdrawn == state.reportedWithdrawn) {
+                return null;
+            }
+            state.reportedWithdrawn = state.actualWithdrawn;
+            return new ReleasedTransition(prefix, state.actualWithdrawn, state.lastTransition);
+        }
+    }
+
+    private long countSuppressed() {
+        return prefixes.values().stream().filter(state -> state.suppressed).count();
+    }
+
+    /**
+     * A held-back change that should now be reported
+     */
+    @lombok.Value
+    public static class ReleasedTransition {
+        String prefix;
+        boolean withdrawn;
+        Instant eventTime;
+    }
+
+    private static class DampingState {
+        private double penalty;
+        private Instant lastDecay;
+        private volatile boolean suppressed;
+        private boolean actualWithdrawn;
+        private boolean reportedWithdrawn;
+        private Instant lastTransition;
+
+        DampingState(boolean reportedWithdrawn, Instant now) {
+            this.reportedWithdrawn = reportedWithdrawn;
+            this.actualWithdrawn = reportedWithdrawn;
+            this.lastDecay = now;
+        }
+
+        void decay(Instant now, Duration halfLife) {
+            long elapsed = Duration.between(lastDecay, now).toMillis();
+            if (elapsed > 0) {
+                penalty *= Math.pow(0.5, (double) elapsed / halfLife.toMillis());
+                lastDecay = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.nhp.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.HeavyHitter;
+import com.nhp.dto.HeavyHitterReport;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Which prefixes and origin ASNs are churning most right now, without
+ * touching the database. Every applied update and every outage verdict
+ * (damped ones included, so that flapping prefixes stand out) is counted in
+ * tumbling windows: Space-Saving top-k counters of prefixes and ASNs by
+ * updates and by outages, and HyperLogLog counts of the distinct prefixes
+ * and ASNs updated. Only the current and the previous window are kept, so
+ * memory is fixed by the capacity whatever the update rate. Prometheus gets
+ * the counts of the previous window by rank, not by key, so the series do
+ * not grow with the keys seen; the keys are served over REST.
+ */
+@Slf4j
+@Service
+public class HeavyHitterService {
+
+    public static final String CURRENT = "current";
+    public static final String PREVIOUS = "previous";
+
+    // 16KB of registers per distinct counter, about 0.8% standard error
+    private static final int HLL_PRECISION = 14;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Value("${nhp.heavy-hitters.enabled:true}")
+    private boolean enabled;
+
+    @Value("${nhp.heavy-hitters.window:5m}")
+    private Duration window;
+
+    // Keys counted per ranking; keys above updates / capacity are never missed
+    @Value("${nhp.heavy-hitters.capacity:1000}")
+    private int capacity;
+
+    // Ranks exported per ranking as gauges
+    @Value("${nhp.heavy-hitters.metrics-top:10}")
+    private int metricsTop;
+
+    private volatile Window current;
+    private volatile Window previous;
+
+    // The previous window at metricsTop, built once per window for the gauges
+    private volatile HeavyHitterReport published;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis() / window.toMillis() * window.toMillis();
+        current = new Window(start);
+        previous = new Window(start - window.toMillis());
+        published = previous.report(metricsTop, start);
+
+        registerRanks("prefix_updates", HeavyHitterReport::getPrefixesByUpdates);
+        registerRanks("asn_updates", HeavyHitterReport::getAsnsByUpdates);
+        registerRanks("prefix_outages", HeavyHitterReport::getPrefixesByOutages);
+        registerRanks("asn_outages", HeavyHitterReport::getAsnsByOutages);
+        metricsService.registerGauge("ripe.heavyhitters.distinct", "Distinct keys updated in the previous window",
+                this, service -> service.published().getDistinctPrefixes(), "kind", "prefix");
+        metricsService.registerGauge("ripe.heavyhitters.distinct", "Distinct keys updated in the previous window",
+                this, service -> service.published().getDistinctAsns(), "kind", "asn");
+    }
+
+    /**
+     * Count an applied update of prefix; originAsn may be null for a
+     * withdrawal of a prefix never seen announced
+     */
+    public void recordUpdate(String prefix, String originAsn) {
+        if (enabled) {
+            windowAt(System.currentTimeMillis()).recordUpdate(prefix, originAsn);
+        }
+    }
+
+    /**
+     * Count an outage verdict for prefix, whether or not it is damped
+     */
+    public void recordOutage(String prefix, String originAsn) {
+        if (enabled) {
+            windowAt(System.currentTimeMillis()).recordOutage(prefix, originAsn);
+        }
+    }
+
+    /**
+     * The top limit keys of the current (still filling) or previous window;
+     * null when heavy-hitter tracking is disabled
+     */
+    public HeavyHitterReport getReport(String which, int limit) {
+        if (!enabled) {
+            return null;
+        }
+        if (limit < 1 || limit > capacity) {
+            throw new IllegalArgumentException("limit must be between 1 and " + capacity);
+        }
+        long now = System.currentTimeMillis();
+        Window target = windowAt(now);
+        if (PREVIOUS.equals(which)) {
+            target = previous;
+        } else if (!CURRENT.equals(which)) {
+            throw new IllegalArgumentException("window must be '" + CURRENT + "' or '" + PREVIOUS + "'");
+        }
+        return target.report(limit, now);
+    }
+
+    private void registerRanks(String ranking, Function<HeavyHitterReport, List<HeavyHitter>> top) {
+        for (int rank = 1; rank <= metricsTop; rank++) {
+            int index = rank - 1;
+            metricsService.registerGauge("ripe.heavyhitters.count",
+                    "Count of the key at this rank in the previous window", this, service -> {
+                        List<HeavyHitter> hitters = top.apply(service.published());
+                        return index < hitters.size() ? hitters.get(index).getCount() : 0;
+                    }, "ranking", ranking, "rank", String.valueOf(rank));
+        }
+    }
+
+    /**
+     * The window holding now, rolling over first if the current one ended
+     */
+    private Window windowAt(long now) {
+        Window filling = current;
+        if (now < filling.end) {
+            return filling;
+        }
+        synchronized (this) {
+            filling = current;
+            if (now >= filling.end) {
+                long length = window.toMillis();
+                long start = now / length * length;
+                // After an idle gap the window before this one saw nothing
+                previous = filling.end == start ? filling : new Window(start - length);
+                current = filling = new Window(start);
+                published = previous.report(metricsTop, now);
+                log.debug("Heavy-hitter window from {} closed: {} updates of {} prefixes, {} outages",
+                        published.getWindowStart(), published.getUpdates(), published.getDistinctPrefixes(),
+                        published.getOutages());
+            }
+            return filling;
+        }
+    }
+
+    /**
+     * The previous window for the gauges, rolled over even without updates
+     */
+    private HeavyHitterReport published() {
+        windowAt(System.currentTimeMillis());
+        return published;
+    }
+
+    /**
+     * The sketches of one window, guarded by its monitor
+     */
+    private final class Window {
+        private final long start;
+        private final long end;
+        private final SpaceSaving prefixUpdates = new SpaceSaving(capacity);
+        private final SpaceSaving asnUpdates = new SpaceSaving(capacity);
+        private final SpaceSaving prefixOutages = new SpaceSaving(capacity);
+        private final SpaceSaving asnOutages = new SpaceSaving(capacity);
+        private final HyperLogLog distinctPrefixes = new HyperLogLog(HLL_PRECISION);
+        private final HyperLogLog distinctAsns = new HyperLogLog(HLL_PRECISION);
+
+        private Window(long start) {
+            this.start = start;
+            this.end = start + window.toMillis();
+        }
+
+        synchronized void recordUpdate(String prefix, String originAsn) {
+            prefixUpdates.offer(prefix);
+            distinctPrefixes.add(prefix);
+            if (originAsn != null) {
+                asnUpdates.offer(originAsn);
+                distinctAsns.add(originAsn);
+            }
+        }
+
+        synchronized void recordOutage(String prefix, String originAsn) {
+            prefixOutages.offer(prefix);
+            if (originAsn != null) {
+                asnOutages.offer(originAsn);
+            }
+        }
+
+        synchronized HeavyHitterReport report(int limit, long now) {
+            double minutes = Math.max(Math.min(now, end) - start, 1) / 60_000.0;
+            return HeavyHitterReport.builder()
+                    .windowStart(Instant.ofEpochMilli(start))
+                    .windowEnd(Instant.ofEpochMilli(end))
+                    .complete(now >= end)
+                    .updates(prefixUpdates.getTotal())
+                    .outages(prefixOutages.getTotal())
+                    .distinctPrefixes(distinctPrefixes.estimate())
+                    .distinctAsns(distinctAsns.estimate())
+                    .prefixesByUpdates(hitters(prefixUpdates, limit, minutes))
+                    .asnsByUpdates(hitters(asnUpdates, limit, minutes))
+                    .prefixesByOutages(hitters(prefixOutages, limit, minutes))
+                    .asnsByOutages(hitters(asnOutages, limit, minutes))
+                    .build();
+        }
+
+        private List<HeavyHitter> hitters(SpaceSaving counter, int limit, double minutes) {
+            return counter.top(limit).stream()
+                    .map(entry -> HeavyHitter.builder()
+                            .key(entry.getKey())
+                            .count(entry.getCount())
+                            .error(entry.getError())
+                            .perMinute(entry.getCount() / minutes)
+                            .build())
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.nhp.services;
+
+import java.time.Instant;
+
+import com.nhp.dto.HistoryCursor;
+
+import lombok.Value;
+
+/**
+ * Resolved bounds for a keyset-paginated history query
+ */
+@Value
+class HistoryQuery {
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    // Upper bound used when neither a cursor nor an end time is given
+    private static final Instant OPEN_END = Instant.parse("9999-12-31T00:00:00Z");
+
+    int limit;
+    Instant from;
+    Instant beforeTs;
+    Long beforeId;
+
+    static Instant lowerBound(Instant from) {
+        return from != null ? from : Instant.EPOCH;
+    }
+
+    static Instant upperBound(Instant to) {
+        return to != null ? to : OPEN_END;
+    }
+
+    static HistoryQuery of(int limit, Instant from, Instant to, String cursor) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Instant lowerBound = lowerBound(from);
+
+        if (cursor != null && !cursor.isBlank()) {
+            HistoryCursor position = HistoryCursor.decode(cursor);
+            return new HistoryQuery(pageSize, lowerBound, position.getTimestamp(), position.getId());
+        }
+        // Inclusive end: every row at "to" sorts before (to, Long.MAX_VALUE)
+        return new HistoryQuery(pageSize, lowerBound, upperBound(to), Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,283 @@
+package com.nhp.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Groups concurrent ASN outages into incidents. Every ASN outage has keys,
+ * its country and the direct upstreams of its prefixes. Each key holds a
+ * sliding window: the incident last joined through it and the start of the
+ * outage that joined it. An outage that starts within the window of one of
+ * its keys joins that incident. When its keys lead to several incidents,
+ * they are merged, the smaller into the larger. Each update costs a few
+ * hash lookups, the window expiry is a sorted set (O(log n)), and merging
+ * small into large keeps moves at O(log n) per outage overall.
+ *
+ * Plain class with no Spring dependencies; thread-safe through its monitor.
+ */
+final class IncidentClusterer {
+
+    static final String COUNTRY = "country:";
+    static final String UPSTREAM = "upstream:";
+
+    private static final Comparator<KeyWindow> BY_LAST_START = Comparator
+            .comparing((KeyWindow window) -> window.lastStart)
+            .thenComparing(window -> window.key);
+
+    private final Duration window;
+    private final int minAsns;
+
+    private final Map<Integer, Member> members = new HashMap<>();
+    private final Map<String, KeyWindow> windows = new HashMap<>();
+    private final TreeSet<KeyWindow> windowsByLastStart = new TreeSet<>(BY_LAST_START);
+    private final Map<Long, Cluster> open = new LinkedHashMap<>();
+    private Instant watermark = Instant.EPOCH;
+    private long nextId = 1;
+
+    IncidentClusterer(Duration window, int minAsns) {
+        this.window = window;
+        this.minAsns = minAsns;
+    }
+
+    /**
+     * Add or update an open ASN outage with its keys (keys only accumulate).
+     * Returns the incident it belongs to when that incident has just reached
+     * the reporting size, otherwise null.
+     */
+    synchronized Cluster update(int asn, Instant start, Set<String> keys, int prefixCount) {
+        if (start.isAfter(watermark)) {
+            watermark = start;
+            expireWindows();
+        }
+        Member member = members.get(asn);
+        if (member == null || member.closed) {
+            // A reopened ASN starts afresh; its keys lead it back while the old incident is open
+            member = new Member(asn, start);
+            Cluster cluster = new Cluster(nextId++, start);
+            cluster.add(member);
+            open.put(cluster.id, cluster);
+            members.put(asn, member);
+        }
+        member.prefixCount = prefixCount;
+
+        for (String key : keys) {
+            if (!member.keys.add(key)) {
+                continue;
+            }
+            KeyWindow keyWindow = windows.get(key);
+            if (keyWindow != null && !keyWindow.cluster.closed && keyWindow.cluster != member.cluster
+                    && Duration.between(keyWindow.lastStart, member.start).abs().compareTo(window) <= 0) {
+                merge(keyWindow.cluster, member.cluster);
+            }
+            member.cluster.keyCounts.merge(key, 1, Integer::sum);
+            touch(key, member);
+        }
+        Cluster cluster = member.cluster;
+        if (!cluster.reported && cluster.members.size() >= minAsns) {
+            cluster.reported = true;
+            return cluster;
+        }
+        return null;
+    }
+
+    /**
+     * Close an ASN outage. Returns its incident when that has no open ASN
+     * outage left, otherwise null.
+     */
+    synchronized Cluster close(int asn, Instant end) {
+        Member member = members.get(asn);
+        if (member == null || member.closed) {
+            return null;
+        }
+        member.closed = true;
+        Cluster cluster = member.cluster;
+        cluster.openMembers--;
+        if (cluster.end == null || end.isAfter(cluster.end)) {
+            cluster.end = end;
+        }
+        if (cluster.openMembers > 0) {
+            return null;
+        }
+        cluster.closed = true;
+        open.remove(cluster.id);
+        for (Member closed : cluster.members.values()) {
+            members.remove(closed.asn, closed);
+        }
+        return cluster;
+    }
+
+    /**
+     * Open incidents of at least the reporting size, newest first
+     */
+    synchronized List<Cluster> getOpenIncidents() {
+        List<Cluster> incidents = new ArrayList<>();
+        for (Cluster cluster : open.values()) {
+            if (cluster.reported) {
+                incidents.add(cluster);
+            }
+        }
+        incidents.sort(Comparator.comparing((Cluster cluster) -> cluster.start).reversed());
+        return incidents;
+    }
+
+    private void touch(String key, Member member) {
+        KeyWindow keyWindow = windows.get(key);
+        if (keyWindow == null) {
+            keyWindow = new KeyWindow(key, member.cluster, member.start);
+            windows.put(key, keyWindow);
+            windowsByLastStart.add(keyWindow);
+            member.cluster.windows.add(keyWindow);
+            return;
+        }
+        if (keyWindow.cluster != member.cluster) {
+            keyWindow.cluster.windows.remove(keyWindow);
+            keyWindow.cluster = member.cluster;
+            member.cluster.windows.add(keyWindow);
+        }
+        if (member.start.isAfter(keyWindow.lastStart)) {
+            windowsByLastStart.remove(keyWindow);
+            keyWindow.lastStart = member.start;
+            windowsByLastStart.add(keyWindow);
+        }
+    }
+
+    /**
+     * Merge two incidents, moving the smaller one's members and windows
+     */
+    private void merge(Cluster a, Cluster b) {
+        Cluster into = a.members.size() >= b.members.size() ? a : b;
+        Cluster from = into == a ? b : a;
+        for (Member member : from.members.values()) {
+            member.cluster = into;
+            if (!member.closed) {
+                into.openMembers++;
+            }
+            Member existing = into.members.putIfAbsent(member.asn, member);
+            if (existing != null && existing.closed) {
+                into.members.put(member.asn, member); // Keep the reopened outage over the closed one
+            }
+        }
+        for (KeyWindow keyWindow : from.windows) {
+            keyWindow.cluster = into;
+            into.windows.add(keyWindow);
+        }
+        from.keyCounts.forEach((key, count) -> into.keyCounts.merge(key, count, Integer::sum));
+        if (from.start.isBefore(into.start)) {
+            into.start = from.start;
+        }
+        into.reported |= from.reported;
+        from.closed = true;
+        open.remove(from.id);
+    }
+
+    private void expireWindows() {
+        Instant cutoff = watermark.minus(window);
+        while (!windowsByLastStart.isEmpty() && windowsByLastStart.first().lastStart.isBefore(cutoff)) {
+            KeyWindow expired = windowsByLastStart.pollFirst();
+            windows.remove(expired.key);
+            expired.cluster.windows.remove(expired);
+        }
+    }
+
+    private static final class Member {
+        private final int asn;
+        private final Instant start;
+        private final Set<String> keys = new LinkedHashSet<>();
+        private int prefixCount;
+        private boolean closed;
+        private Cluster cluster;
+
+        Member(int asn, Instant start) {
+            this.asn = asn;
+            this.start = start;
+        }
+    }
+
+    private static final class KeyWindow {
+        private final String key;
+        private Cluster cluster;
+        private Instant lastStart;
+
+        KeyWindow(String key, Cluster cluster, Instant lastStart) {
+            this.key = key;
+            this.cluster = cluster;
+            this.lastStart = lastStart;
+        }
+    }
+
+    /**
+     * An incident: ASN outages (open and closed) and how many of them share
+     * each key
+     */
+    static final class Cluster {
+        private final long id;
+        private final Map<Integer, Member> members = new LinkedHashMap<>();
+        private final Map<String, Integer> keyCounts = new LinkedHashMap<>();
+        private final Set<KeyWindow> windows = new LinkedHashSet<>();
+        private int openMembers;
+        private Instant start;
+        private Instant end;
+        private boolean reported;
+        private boolean closed;
+
+        Cluster(long id, Instant start) {
+            this.id = id;
+            this.start = start;
+        }
+
+        private void add(Member member) {
+            members.put(member.asn, member);
+            member.cluster = this;
+            openMembers++;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        Instant getStart() {
+            return start;
+        }
+
+        Instant getEnd() {
+            return end;
+        }
+
+        boolean isReported() {
+            return reported;
+        }
+
+        List<Integer> getAsns() {
+            return List.copyOf(members.keySet());
+        }
+
+        int getPrefixCount() {
+            int count = 0;
+            for (Member member : members.values()) {
+                count += member.prefixCount;
+            }
+            return count;
+        }
+
+        /**
+         * Values of the keys of one type (COUNTRY or UPSTREAM) held by at least
+         * minCount of the ASN outages, most held first
+         */
+        List<String> getKeys(String type, int minCount) {
+            return keyCounts.entrySet().stream()
+                    .filter(entry -> entry.getKey().startsWith(type) && entry.getValue() >= minCount)
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                    .map(entry -> entry.getKey().substring(type.length()))
+                    .toList();
+        }
+    }
+}
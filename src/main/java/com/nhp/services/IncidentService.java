@@ -0,0 +1,184 @@
+package com.nhp.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.HistoryCursor;
+import com.nhp.dto.HistoryPage;
+import com.nhp.dto.Incident;
+import com.nhp.dto.OutageEvent;
+import com.nhp.repository.IncidentRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Groups concurrent ASN outages into incidents (IncidentClusterer), so a
+ * regional event is one record instead of one row per ASN. ASN outages are
+ * keyed by their country and by the direct upstreams of their prefixes, the
+ * hop before the origin on each prefix's last known path. ASN outages with a
+ * key in common that start within nhp.incidents.window of each other share an
+ * incident. An incident is reported once it spans min-asns ASNs and is saved
+ * when its last ASN outage closes. ActiveOutageRegistry feeds it, so in
+ * cluster mode every instance builds the same incidents from the relayed ASN
+ * outages; the owner of the incident's lowest ASN saves it.
+ */
+@Slf4j
+@Service
+public class IncidentService {
+
+    private static final String UNKNOWN_COUNTRY = "Unknown";
+
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    @Autowired
+    private ActiveOutageRegistry activeOutageRegistry;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
+    @Value("${nhp.incidents.enabled:true}")
+    private boolean enabled;
+
+    @Value("${nhp.incidents.window:5m}")
+    private Duration window;
+
+    @Value("${nhp.incidents.min-asns:3}")
+    private int minAsns;
+
+    private IncidentClusterer clusterer;
+
+    // Prefixes whose upstream has been looked up, per open ASN outage
+    private final Map<Integer, Set<String>> examined = new HashMap<>();
+
+    private final int[] hops = new int[AsGraph.MAX_HOPS];
+
+    @PostConstruct
+    public void init() {
+        clusterer = new IncidentClusterer(window, minAsns);
+        metricsService.registerGauge("ripe.incidents.active", "Open incidents", clusterer,
+                c -> c.getOpenIncidents().size());
+    }
+
+    /**
+     * Add or update an open ASN outage. Only prefixes not seen before for the
+     * ASN are looked up, so an update costs its new prefixes.
+     */
+    public synchronized void processAsnOutage(Integer asn, Instant startTime, List<String> prefixes,
+            String country) {
+        if (!enabled) {
+            return;
+        }
+        Set<String> seen = examined.computeIfAbsent(asn, key -> new HashSet<>());
+        Set<String> keys = new LinkedHashSet<>();
+        if (country != null && !UNKNOWN_COUNTRY.equals(country)) {
+            keys.add(IncidentClusterer.COUNTRY + country);
+        }
+        for (String prefix : prefixes) {
+            if (!seen.add(prefix)) {
+                continue;
+            }
+            OutageEvent outage = activeOutageRegistry.getPrefixOutage(prefix);
+            int count = outage != null ? AsGraph.parsePath(outage.getLastPath(), hops) : 0;
+            if (count >= 2) {
+                keys.add(IncidentClusterer.UPSTREAM + Integer.toUnsignedString(hops[count - 2]));
+            }
+        }
+        IncidentClusterer.Cluster reported = clusterer.update(asn, startTime, keys, prefixes.size());
+        if (reported != null) {
+            metricsService.incrementIncidents();
+            log.warn("INCIDENT: {} ASNs down since {}, countries {}, shared upstreams {}",
+                    reported.getAsns().size(), reported.getStart(),
+                    reported.getKeys(IncidentClusterer.COUNTRY, 1),
+                    reported.getKeys(IncidentClusterer.UPSTREAM, 2));
+        }
+    }
+
+    /**
+     * Close an ASN outage. Returns its incident if it was the last one open and
+     * this instance saves it, for saveIncident() once the caller's locks are
+     * released; null otherwise.
+     */
+    public synchronized Incident closeAsnOutage(Integer asn, Instant endTime) {
+        if (!enabled) {
+            return null;
+        }
+        examined.remove(asn);
+        IncidentClusterer.Cluster closed = clusterer.close(asn, endTime != null ? endTime : Instant.now());
+        if (closed == null || !closed.isReported()) {
+            return null;
+        }
+        log.info("Closed incident: duration={}, asns={}", Duration.between(closed.getStart(), closed.getEnd()),
+                closed.getAsns());
+        if (!shardCoordinator.ownsAsn(closed.getAsns().stream().min(Integer::compare).orElse(asn))) {
+            return null;
+        }
+        return toIncident(closed, closed.getEnd());
+    }
+
+    /**
+     * Save an incident returned by closeAsnOutage(); null is ignored
+     */
+    public void saveIncident(Incident incident) {
+        if (incident == null) {
+            return;
+        }
+        try {
+            incidentRepository.save(incident);
+        } catch (Exception e) {
+            log.error("Failed to save incident of {} ASNs", incident.getAsns().length, e);
+        }
+    }
+
+    /**
+     * Open incidents, newest first
+     */
+    public synchronized List<Incident> getActiveIncidents() {
+        return clusterer.getOpenIncidents().stream()
+                .map(cluster -> toIncident(cluster, null))
+                .toList();
+    }
+
+    /**
+     * Get closed incidents, newest first, optionally those touching one country
+     */
+    public HistoryPage<Incident> getIncidents(String country, int limit, Instant from, Instant to, String cursor) {
+        HistoryQuery query = HistoryQuery.of(limit, from, to, cursor);
+        List<Incident> rows = country == null
+                ? incidentRepository.findPage(query.getFrom(), query.getBeforeTs(), query.getBeforeId(),
+                        query.getLimit() + 1)
+                : incidentRepository.findPageByCountry(country, query.getFrom(), query.getBeforeTs(),
+                        query.getBeforeId(), query.getLimit() + 1);
+        return HistoryPage.of(rows, query.getLimit(),
+                incident -> new HistoryCursor(incident.getStartTime(), incident.getId()));
+    }
+
+    private static Incident toIncident(IncidentClusterer.Cluster cluster, Instant endTime) {
+        return Incident.builder()
+                .startTime(cluster.getStart())
+                .endTime(endTime)
+                .asns(cluster.getAsns().stream().sorted(Comparator.naturalOrder()).toArray(Integer[]::new))
+                .countries(cluster.getKeys(IncidentClusterer.COUNTRY, 1).toArray(new String[0]))
+                .upstreamAsns(cluster.getKeys(IncidentClusterer.UPSTREAM, 2).stream()
+                        .map(Integer::parseUnsignedInt)
+                        .toArray(Integer[]::new))
+                .prefixCount(cluster.getPrefixCount())
+                .createdAt(Instant.now())
+                .build();
+    }
+}
@@ -1,13 +1,26 @@
 package com.nhp.services;
 
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
 
 @Service
 public class MetricsService {
 
+    private final MeterRegistry registry;
+
     private final Counter bgpMessagesReceived;
     private final Counter bgpMessagesProcessed;
     private final Counter bgpProcessingErrors;
@@ -15,8 +28,43 @@ public class MetricsService {
     private final Counter prefixRecoveries;
     private final Counter streamRestarts;
     private final Counter websocketErrors;
+    private final Counter feedEventsDropped;
+    private final Counter peerWithdrawalsSuppressed;
+    private final Counter prefixFlapsDamped;
+    private final Counter clusterUpdatesSkipped;
+    private final Counter unusableOrigins;
+    private final Counter startupUpdatesDropped;
+    private final Counter rpkiValid;
+    private final Counter rpkiInvalid;
+    private final Counter rpkiNotFound;
+    private final Counter transitIncidents;
+    private final Counter incidents;
+    private final Counter bmpDecodeErrors;
+    private final Counter journalDeadLettered;
+
+    // Hot-path stage timers. Percentile histograms are aggregated server side
+    // from fixed buckets, so recording is a couple of atomic increments.
+    private final Timer parseTimer;
+    private final Timer bmpDecodeTimer;
+    private final Timer stateLookupHitTimer;
+    private final Timer stateLookupMissTimer;
+    private final Timer redisReadTimer;
+    private final Timer redisWriteTimer;
+    private final Timer dbInsertTimer;
+    private final Timer asnCorrelationTimer;
+    private final Timer journalFsyncTimer;
+    private final Timer detectionLatencyTimer;
+    private final Timer ingestLagTimer;
+    private final DistributionSummary bgpMessageSize;
 
-    public MetricsService(MeterRegistry registry) {
+    // JVM uptime at the first RIS message received and processed, -1 until then
+    private final AtomicLong firstMessageReceivedMillis = new AtomicLong(-1);
+    private final AtomicLong firstMessageProcessedMillis = new AtomicLong(-1);
+
+    public MetricsService(MeterRegistry registry,
+            @Value("${nhp.slo.detection-lag:30s}") Duration detectionLagSlo,
+            @Value("${nhp.slo.ingest-lag:5s}") Duration ingestLagSlo) {
+        this.registry = registry;
         this.bgpMessagesReceived = registry.counter("ripe.bgp.messages.received");
         this.bgpMessagesProcessed = registry.counter("ripe.bgp.messages.processed");
         this.bgpProcessingErrors = registry.counter("ripe.bgp.processing.errors");
@@ -24,6 +72,88 @@ public class MetricsService {
         this.prefixRecoveries = registry.counter("ripe.prefix.recoveries");
         this.streamRestarts = registry.counter("ripe.stream.restarts");
         this.websocketErrors = registry.counter("ripe.websocket.errors");
+        this.feedEventsDropped = registry.counter("ripe.feed.events.dropped");
+        this.peerWithdrawalsSuppressed = registry.counter("ripe.peer.withdrawals.suppressed");
+        this.prefixFlapsDamped = registry.counter("ripe.prefix.flaps.damped");
+        this.clusterUpdatesSkipped = registry.counter("ripe.cluster.updates.skipped");
+        this.unusableOrigins = registry.counter("ripe.updates.origin.unusable");
+        this.startupUpdatesDropped = registry.counter("ripe.startup.updates.dropped");
+        this.rpkiValid = registry.counter("ripe.rpki.validations", "status", VrpTable.VALID);
+        this.rpkiInvalid = registry.counter("ripe.rpki.validations", "status", VrpTable.INVALID);
+        this.rpkiNotFound = registry.counter("ripe.rpki.validations", "status", VrpTable.NOT_FOUND);
+        this.transitIncidents = registry.counter("ripe.transit.incidents");
+        this.incidents = registry.counter("ripe.incidents");
+        this.bmpDecodeErrors = registry.counter("ripe.bmp.decode.errors");
+        this.journalDeadLettered = registry.counter("ripe.journal.dead.lettered");
+
+        this.parseTimer = stageTimer("ripe.bgp.parse", "Parse a RIS message into an update");
+        this.bmpDecodeTimer = stageTimer("ripe.bmp.decode", "Decode a BMP message into updates");
+        this.stateLookupHitTimer = stageTimer("ripe.prefix.state.lookup", "Prefix state lookup", "cache", "hit");
+        this.stateLookupMissTimer = stageTimer("ripe.prefix.state.lookup", "Prefix state lookup", "cache", "miss");
+        this.redisReadTimer = stageTimer("ripe.redis.read", "Redis prefix state read");
+        this.redisWriteTimer = stageTimer("ripe.redis.write", "Redis prefix state write");
+        this.dbInsertTimer = stageTimer("ripe.db.insert", "Outage event insert");
+        this.asnCorrelationTimer = stageTimer("ripe.asn.correlation", "ASN outage correlation");
+        this.journalFsyncTimer = stageTimer("ripe.journal.fsync", "Outage event journal group commit");
+        this.detectionLatencyTimer = lagTimer("ripe.detection.latency",
+                "RIS message timestamp to outage or recovery detection", detectionLagSlo);
+        this.ingestLagTimer = lagTimer("ripe.ingest.lag", "RIS message timestamp to ingestion", ingestLagSlo);
+        this.bgpMessageSize = DistributionSummary.builder("ripe.bgp.message.size")
+                .description("Raw RIS message size")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(64.0)
+                .maximumExpectedValue(1_048_576.0)
+                .register(registry);
+        startupGauge("received", firstMessageReceivedMillis);
+        startupGauge("processed", firstMessageProcessedMillis);
+    }
+
+    private void startupGauge(String stage, AtomicLong millis) {
+        TimeGauge.builder("ripe.startup.first.message", millis, TimeUnit.MILLISECONDS,
+                value -> value.get() < 0 ? Double.NaN : value.get())
+                .description("JVM start to the first RIS message")
+                .tag("stage", stage)
+                .register(registry);
+    }
+
+    private Timer stageTimer(String name, String description, String... tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100))
+                .maximumExpectedValue(Duration.ofSeconds(2))
+                .register(registry);
+    }
+
+    // Lag histograms carry an exact bucket at the SLO threshold so that the
+    // fraction of events within objective can be read off without interpolation
+    private Timer lagTimer(String name, String description, Duration slo) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(slo)
+                .minimumExpectedValue(Duration.ofMillis(10))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(registry);
+    }
+
+    /**
+     * Register a gauge sampled from a long-lived object at scrape time
+     */
+    public <T> void registerGauge(String name, String description, T target, ToDoubleFunction<T> value) {
+        Gauge.builder(name, target, value)
+                .description(description)
+                .register(registry);
+    }
+
+    public <T> void registerGauge(String name, String description, T target, ToDoubleFunction<T> value,
+            String... tags) {
+        Gauge.builder(name, target, value)
+                .description(description)
+                .tags(tags)
+                .register(registry);
     }
 
     public void incrementBgpMessagesReceieved() {
@@ -54,4 +184,121 @@ public class MetricsService {
         websocketErrors.increment();
     }
 
+    public void incrementFeedEventsDropped() {
+        feedEventsDropped.increment();
+    }
+
+    public void incrementPeerWithdrawalsSuppressed() {
+        peerWithdrawalsSuppressed.increment();
+    }
+
+    public void incrementPrefixFlapsDamped() {
+        prefixFlapsDamped.increment();
+    }
+
+    public void incrementClusterUpdatesSkipped() {
+        clusterUpdatesSkipped.increment();
+    }
+
+    public void incrementUnusableOrigins() {
+        unusableOrigins.increment();
+    }
+
+    public void incrementStartupUpdatesDropped() {
+        startupUpdatesDropped.increment();
+    }
+
+    public void incrementRpkiValidations(String status) {
+        if (VrpTable.VALID.equals(status)) {
+            rpkiValid.increment();
+        } else if (VrpTable.INVALID.equals(status)) {
+            rpkiInvalid.increment();
+        } else {
+            rpkiNotFound.increment();
+        }
+    }
+
+    public void incrementTransitIncidents() {
+        transitIncidents.increment();
+    }
+
+    public void incrementIncidents() {
+        incidents.increment();
+    }
+
+    public void incrementBmpDecodeErrors() {
+        bmpDecodeErrors.increment();
+    }
+
+    public void incrementJournalDeadLettered() {
+        journalDeadLettered.increment();
+    }
+
+    public void incrementRouteAnomalies(String type) {
+        registry.counter("ripe.route.anomalies", "type", type).increment();
+    }
+
+    public Timer.Sample startTimer() {
+        return Timer.start(registry);
+    }
+
+    public void recordParse(Timer.Sample sample) {
+        sample.stop(parseTimer);
+    }
+
+    public void recordBmpDecode(Timer.Sample sample) {
+        sample.stop(bmpDecodeTimer);
+    }
+
+    public void recordStateLookup(Timer.Sample sample, boolean cacheHit) {
+        sample.stop(cacheHit ? stateLookupHitTimer : stateLookupMissTimer);
+    }
+
+    public void recordRedisRead(Timer.Sample sample) {
+        sample.stop(redisReadTimer);
+    }
+
+    public void recordRedisWrite(Timer.Sample sample) {
+        sample.stop(redisWriteTimer);
+    }
+
+    public void recordDbInsert(Timer.Sample sample) {
+        sample.stop(dbInsertTimer);
+    }
+
+    public void recordAsnCorrelation(Timer.Sample sample) {
+        sample.stop(asnCorrelationTimer);
+    }
+
+    public void recordJournalFsync(Timer.Sample sample) {
+        sample.stop(journalFsyncTimer);
+    }
+
+    /**
+     * Note a RIS message received (or processed, when processed is set); only
+     * the first one since JVM start is kept
+     */
+    public void recordFirstMessage(boolean processed) {
+        AtomicLong millis = processed ? firstMessageProcessedMillis : firstMessageReceivedMillis;
+        if (millis.get() < 0) {
+            millis.compareAndSet(-1, ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+    }
+
+    public void recordDetectionLatency(Duration latency) {
+        if (!latency.isNegative()) {
+            detectionLatencyTimer.record(latency);
+        }
+    }
+
+    public void recordIngestLag(Duration lag) {
+        if (!lag.isNegative()) {
+            ingestLagTimer.record(lag);
+        }
+    }
+
+    public void recordBgpMessageSize(int bytes) {
+        bgpMessageSize.record(bytes);
+    }
+
 }
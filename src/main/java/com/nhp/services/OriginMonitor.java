@@ -0,0 +1,227 @@
+package com.nhp.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Origin-AS tracking behind the route anomaly stage. Each prefix keeps a
+ * bounded set of expected origins, seeded from the last known origin
+ * (trust on first use) and extended when a new origin stays announced for
+ * the learning period. An announcement from an unexpected origin is reported
+ * once: as a sub-prefix hijack when the most specific covering prefix does
+ * not expect it either, otherwise as MOAS when an expected origin is still
+ * announced by some peer, and as an origin change when none is.
+ *
+ * Plain class with no Spring dependencies so that it can be replayed in
+ * isolation (see the replayBenchmark task).
+ */
+final class OriginMonitor {
+
+    static final String MOAS = "moas";
+    static final String ORIGIN_CHANGE = "origin_change";
+    static final String SUBPREFIX_HIJACK = "subprefix_hijack";
+
+    private final int maxOrigins;
+    private final Duration learnAfter;
+
+    private final Map<String, OriginProfile> profiles = new ConcurrentHashMap<>();
+    private final PrefixTrie<OriginProfile> trie = new PrefixTrie<>();
+
+    OriginMonitor(int maxOrigins, Duration learnAfter) {
+        this.maxOrigins = maxOrigins;
+        this.learnAfter = learnAfter;
+    }
+
+    /**
+     * Inspect an announcement of prefix with the given origin by peer.
+     * previousOrigin seeds the expected set of a prefix seen for the first
+     * time; without one the announced origin is trusted, unless a covering
+     * prefix does not expect it. Returns what should be reported, usually
+     * nothing.
+     */
+    List<Finding> announce(String prefix, String peer, int origin, Integer previousOrigin, Instant time) {
+        OriginProfile profile = profiles.get(prefix);
+        OriginProfile covering = profile != null ? coveringOf(profile) : trie.findCovering(prefix);
+        List<Integer> coveringExpected = null;
+        if (covering != null) {
+            synchronized (covering) {
+                coveringExpected = covering.expected.contains(origin) ? null : List.copyOf(covering.expected);
+            }
+        }
+
+        if (profile == null) {
+            Integer seed = previousOrigin != null ? previousOrigin : coveringExpected == null ? origin : null;
+            profile = profiles.computeIfAbsent(prefix, key -> {
+                OriginProfile created = new OriginProfile(key, seed);
+                trie.put(key, created);
+                return created;
+            });
+        }
+
+        synchronized (profile) {
+            profile.announce(peer, origin, time, learnAfter, maxOrigins);
+            if (profile.expected.contains(origin)) {
+                return List.of();
+            }
+            if (coveringExpected != null) {
+                // A more specific than a monitored prefix, from an origin neither expects
+                return profile.alert(SUBPREFIX_HIJACK, origin, maxOrigins)
+                        ? List.of(new Finding(SUBPREFIX_HIJACK, prefix, origin, coveringExpected, covering.prefix))
+                        : List.of();
+            }
+            if (!profile.expected.isEmpty() && profile.alert(ORIGIN_CHANGE, origin, maxOrigins)) {
+                String type = profile.anyExpectedVisible() ? MOAS : ORIGIN_CHANGE;
+                return List.of(new Finding(type, prefix, origin, List.copyOf(profile.expected), null));
+            }
+            return List.of();
+        }
+    }
+
+    /**
+     * Account for a withdrawal of prefix by peer
+     */
+    void withdraw(String prefix, String peer) {
+        OriginProfile profile = profiles.get(prefix);
+        if (profile != null) {
+            synchronized (profile) {
+                profile.withdraw(peer);
+            }
+        }
+    }
+
+    /**
+     * Covering profile of a tracked prefix, looked up again only after the trie changed
+     */
+    private OriginProfile coveringOf(OriginProfile profile) {
+        long version = trie.version();
+        if (profile.coveringVersion != version) {
+            profile.covering = trie.findCovering(profile.prefix);
+            profile.coveringVersion = version;
+        }
+        return profile.covering;
+    }
+
+    int getTrackedPrefixCount() {
+        return profiles.size();
+    }
+
+    /**
+     * An anomaly to report
+     */
+    @lombok.Value
+    static class Finding {
+        String type;
+        String prefix;
+        int origin;
+        List<Integer> expectedOrigins;
+        String coveringPrefix;
+    }
+
+    /**
+     * Per-prefix origin state. Memory is bounded by maxOrigins plus one entry
+     * per peer currently announcing the prefix. Guarded by its own monitor.
+     */
+    private static final class OriginProfile {
+        private final String prefix;
+        private final Set<Integer> expected = new LinkedHashSet<>();
+        private final Map<Integer, Instant> candidates = new LinkedHashMap<>();
+        private final Map<String, Integer> peerOrigins = new HashMap<>();
+        private final Map<Integer, Integer> visiblePeersByOrigin = new HashMap<>();
+        private final Set<String> alerted = new LinkedHashSet<>();
+
+        // Cached trie lookup, valid while the trie is at coveringVersion
+        private volatile OriginProfile covering;
+        private volatile long coveringVersion = -1;
+
+        OriginProfile(String prefix, Integer initialOrigin) {
+            this.prefix = prefix;
+            if (initialOrigin != null) {
+                expected.add(initialOrigin);
+            }
+        }
+
+        void announce(String peer, int origin, Instant time, Duration learnAfter, int maxOrigins) {
+            Integer previous = peerOrigins.put(peer, origin);
+            if (previous == null || previous != origin) {
+                visiblePeersByOrigin.merge(origin, 1, Integer::sum);
+                if (previous != null) {
+                    release(previous);
+                }
+            }
+
+            if (expected.contains(origin)) {
+                return;
+            }
+            Instant firstSeen = candidates.computeIfAbsent(origin, key -> time);
+            if (!time.isBefore(firstSeen.plus(learnAfter))) {
+                // Announced continuously for the learning period: now legitimate
+                candidates.remove(origin);
+                expected.add(origin);
+                if (expected.size() > maxOrigins) {
+                    Iterator<Integer> oldest = expected.iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+                clearAlerts(origin);
+            } else if (candidates.size() > maxOrigins) {
+                Iterator<Integer> oldest = candidates.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        }
+
+        void withdraw(String peer) {
+            Integer previous = peerOrigins.remove(peer);
+            if (previous != null) {
+                release(previous);
+            }
+        }
+
+        boolean anyExpectedVisible() {
+            for (Integer origin : expected) {
+                if (visiblePeersByOrigin.containsKey(origin)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns true the first time a type/origin pair is alerted on
+         */
+        boolean alert(String type, int origin, int maxOrigins) {
+            if (!alerted.add(type + "|" + origin)) {
+                return false;
+            }
+            if (alerted.size() > maxOrigins * 2) {
+                Iterator<String> oldest = alerted.iterator();
+                oldest.next();
+                oldest.remove();
+            }
+            return true;
+        }
+
+        private void release(int origin) {
+            Integer remaining = visiblePeersByOrigin.computeIfPresent(origin,
+                    (key, count) -> count > 1 ? count - 1 : null);
+            if (remaining == null) {
+                // No peer announces it any more: restart learning and re-arm alerts
+                candidates.remove(origin);
+                clearAlerts(origin);
+            }
+        }
+
+        private void clearAlerts(int origin) {
+            String suffix = "|" + origin;
+            alerted.removeIf(alert -> alert.endsWith(suffix));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.nhp.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.PrefixState;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Turns prefix visibility into outage and recovery transitions. The
+ * configured DetectionPolicy says whether a prefix is down; a hold-down timer
+ * per direction requires that verdict to persist before the reported state
+ * changes. Pending transitions are kept in memory and re-checked on the next
+ * update of the prefix or by the periodic sweep, whichever comes first.
+ * Visibility peaks are reset to the current counts once they have held for
+ * baseline-reset, so a permanent loss of peers ends as a recovery.
+ */
+@Slf4j
+@Service
+public class OutageDetectionEngine {
+
+    public enum Transition {
+        NONE, OUTAGE, RECOVERY
+    }
+
+    @lombok.Value
+    public static class Decision {
+        public static final Decision NONE = new Decision(Transition.NONE, null);
+
+        Transition transition;
+        Instant eventTime; // when the policy verdict first held
+    }
+
+    @Autowired
+    private Map<String, DetectionPolicy> policies;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Value("${nhp.detection.policy:all-withdrawn}")
+    private String policyName;
+
+    @Value("${nhp.detection.outage-hold-down:0s}")
+    private Duration outageHoldDown;
+
+    @Value("${nhp.detection.recovery-hold-down:0s}")
+    private Duration recoveryHoldDown;
+
+    // How long visibility must hold before its peaks are lowered to it; 0 keeps peaks for good
+    @Value("${nhp.detection.baseline-reset:24h}")
+    private Duration baselineReset;
+
+    private DetectionPolicy policy;
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        policy = policies.get(policyName);
+        if (policy == null) {
+            throw new IllegalStateException("Unknown detection policy '" + policyName + "', available: "
+                    + policies.keySet());
+        }
+        metricsService.registerGauge("ripe.detection.pending", "Transitions waiting out their hold-down",
+                pending, Map::size);
+        log.info("Outage detection policy: {} (outage hold-down {}, recovery hold-down {})",
+                policyName, outageHoldDown, recoveryHoldDown);
+    }
+
+    /**
+     * Decide whether the reported state of a prefix should change. eventTime
+     * is the BGP time of the update being applied, and now the wall clock.
+     */
+    public Decision evaluate(String prefix, PrefixState state, Instant eventTime, Instant now) {
+        if (!baselineReset.isZero() && state.rebaseline(now, baselineReset)) {
+            log.debug("Visibility baseline of {} reset to {} peers, {} collectors", prefix,
+                    state.getPeakVisiblePeers(), state.getPeakVisibleCollectors());
+        }
+        boolean down = policy.isOutage(state);
+        if (down == state.isWithdrawn()) {
+            pending.remove(prefix);
+            return Decision.NONE;
+        }
+
+        Transition transition = down ? Transition.OUTAGE : Transition.RECOVERY;
+        Duration holdDown = down ? outageHoldDown : recoveryHoldDown;
+        if (holdDown.isZero()) {
+            pending.remove(prefix);
+            return new Decision(transition, eventTime);
+        }
+
+        Pending waiting = pending.compute(prefix, (key, existing) -> existing != null
+                && existing.transition == transition ? existing
+                        : new Pending(transition, eventTime, now.plus(holdDown)));
+        if (now.isBefore(waiting.deadline)) {
+            return Decision.NONE;
+        }
+        pending.remove(prefix);
+        return new Decision(transition, waiting.eventTime);
+    }
+
+    /**
+     * Prefixes whose hold-down has run out and that need re-evaluating
+     */
+    public List<String> duePrefixes(Instant now) {
+        return pending.entrySet().stream()
+                .filter(entry -> !now.isBefore(entry.getValue().deadline))
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    public DetectionPolicy getPolicy() {
+        return policy;
+    }
+
+    public Duration getOutageHoldDown() {
+        return outageHoldDown;
+    }
+
+    public Duration getRecoveryHoldDown() {
+        return recoveryHoldDown;
+    }
+
+    private static class Pending {
+        private final Transition transition;
+        private final Instant eventTime;
+        private final Instant deadline;
+
+        Pending(Transition transition, Instant eventTime, Instant deadline) {
+            this.transition = transition;
+            this.eventTime = eventTime;
+            this.deadline = deadline;
+        }
+    }
+}
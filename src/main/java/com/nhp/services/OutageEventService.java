@@ -3,16 +3,21 @@ package com.nhp.services;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.nhp.dto.HistoryCursor;
+import com.nhp.dto.HistoryPage;
 import com.nhp.dto.OutageEvent;
 import com.nhp.dto.OutageStats;
 import com.nhp.repository.OutageEventRepository;
+import com.nhp.repository.StreamingQueryRepository;
 
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 
 @Slf4j
 @Service
@@ -21,105 +26,164 @@ public class OutageEventService {
     @Autowired
     private OutageEventRepository outageEventRepository;
 
+    @Autowired
+    private OutageEventWriter outageEventWriter;
+
+    @Autowired
+    private OutageStatsService outageStatsService;
+
+    @Autowired
+    private StreamingQueryRepository streamingQueryRepository;
+
+    @Autowired
+    private ActiveOutageRegistry activeOutageRegistry;
+
     /**
-     * Record the start of an outage event
+     * Record the start of an outage event and return it. eventTime is the BGP
+     * time of the triggering update; the detection time is taken from the
+     * wall clock. The event is registered as open, then journaled and saved
+     * asynchronously (see OutageEventWriter), which swaps the saved copy into
+     * the registry.
      */
-    public void recordOutageStart(String prefix, String originAsn, String lastPath, Set<String> withdrawnBy) {
+    public OutageEvent recordOutageStart(String prefix, String originAsn, String lastPath, Set<String> withdrawnBy,
+            Instant eventTime) {
+        OutageEvent event = createOutageStartEvent(prefix, originAsn, lastPath, withdrawnBy, eventTime);
+        activeOutageRegistry.openPrefixOutage(event);
         try {
-            OutageEvent event = OutageEvent.builder()
-                    .prefix(prefix)
-                    .originAsn(Integer.parseInt(originAsn))
-                    .timestamp(Instant.now())
-                    .eventType("outage_start")
-                    .lastPath(lastPath)
-                    .withdrawnBy(withdrawnBy.toArray(new String[0]))
-                    .build();
-
-            outageEventRepository.save(event);
+            outageEventWriter.write(event);
             log.info("Recorded outage start: prefix={}, origin_asn={}", prefix, originAsn);
 
         } catch (Exception e) {
             log.error("Failed to record outage start: prefix={}, origin_asn={}", prefix, originAsn, e);
         }
+        return event;
     }
 
     /**
-     * Record the recovery of a prefix
+     * Record the recovery of a prefix, closing its open outage, and return
+     * the recovery event
      */
-    public void recordRecovery(String prefix, String originAsn, String asPath, Set<String> withdrawnBy) {
+    public OutageEvent recordRecovery(String prefix, String originAsn, String asPath, Set<String> withdrawnBy,
+            Instant eventTime) {
+        OutageEvent event = createRecoveryEvent(prefix, originAsn, asPath, withdrawnBy, eventTime);
+        activeOutageRegistry.closePrefixOutage(prefix);
         try {
-            OutageEvent event = OutageEvent.builder()
-                    .prefix(prefix)
-                    .originAsn(Integer.parseInt(originAsn))
-                    .timestamp(Instant.now())
-                    .eventType("recovery")
-                    .lastPath(asPath)
-                    .withdrawnBy(withdrawnBy.toArray(new String[0]))
-                    .build();
-
-            outageEventRepository.save(event);
+            outageEventWriter.write(event);
             log.info("Recorded recovery: prefix={}, origin_asn={}", prefix, originAsn);
 
         } catch (Exception e) {
             log.error("Failed to record recovery: prefix={}, origin_asn={}", prefix, originAsn, e);
         }
+        return event;
+    }
+
+    private static OutageEvent createOutageStartEvent(String prefix, String originAsn, String lastPath,
+            Set<String> withdrawnBy, Instant eventTime) {
+        return createEvent("outage_start", prefix, originAsn, lastPath, withdrawnBy, eventTime);
+    }
+
+    private static OutageEvent createRecoveryEvent(String prefix, String originAsn, String asPath, Set<String> withdrawnBy,
+            Instant eventTime) {
+        return createEvent("recovery", prefix, originAsn, asPath, withdrawnBy, eventTime);
     }
 
     /**
-     * Create an outage start event (for ASN correlation)
+     * An origin ASN as the events store it (a signed int column), or null for
+     * an AS_SET ({a,b}), a 4-byte ASN above 2147483647 or anything else that
+     * is not a plain ASN; updates with such an origin are not tracked
      */
-    public OutageEvent createOutageStartEvent(String prefix, String originAsn, String lastPath,
-            Set<String> withdrawnBy) {
+    public static Integer parseOriginAsn(String originAsn) {
+        if (originAsn == null || originAsn.isEmpty() || !Character.isDigit(originAsn.charAt(0))) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(originAsn);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static OutageEvent createEvent(String eventType, String prefix, String originAsn, String path,
+            Set<String> withdrawnBy, Instant eventTime) {
+        Instant detectedAt = Instant.now();
         return OutageEvent.builder()
                 .prefix(prefix)
                 .originAsn(Integer.parseInt(originAsn))
-                .timestamp(Instant.now())
-                .eventType("outage_start")
-                .lastPath(lastPath)
+                // Messages without a usable timestamp fall back to detection time
+                .timestamp(eventTime != null ? eventTime : detectedAt)
+                .detectedAt(detectedAt)
+                .eventType(eventType)
+                .lastPath(path)
                 .withdrawnBy(withdrawnBy.toArray(new String[0]))
                 .build();
     }
 
     /**
-     * Create a recovery event (for ASN correlation)
+     * Get recent outage events, newest first
      */
-    public OutageEvent createRecoveryEvent(String prefix, String originAsn, String asPath, Set<String> withdrawnBy) {
-        return OutageEvent.builder()
-                .prefix(prefix)
-                .originAsn(Integer.parseInt(originAsn))
-                .timestamp(Instant.now())
-                .eventType("recovery")
-                .lastPath(asPath)
-                .withdrawnBy(withdrawnBy.toArray(new String[0]))
-                .build();
+    public HistoryPage<OutageEvent> getRecentOutages(int limit, Instant from, Instant to, String cursor) {
+        HistoryQuery query = HistoryQuery.of(limit, from, to, cursor);
+        return HistoryPage.of(
+                outageEventRepository.findPage(query.getFrom(), query.getBeforeTs(), query.getBeforeId(), query.getLimit() + 1),
+                query.getLimit(), OutageEventService::cursorOf);
     }
 
     /**
-     * Get recent outage events
+     * Get active (ongoing) outages from the in-memory registry
      */
-    public List<OutageEvent> getRecentOutages(int limit) {
-        return outageEventRepository.findRecentOutages(limit);
+    public List<OutageEvent> getActiveOutages() {
+        return activeOutageRegistry.getActivePrefixOutages();
     }
 
     /**
-     * Get active (ongoing) outages
+     * Get outage events for a specific prefix, newest first
      */
-    public List<OutageEvent> getActiveOutages() {
-        return outageEventRepository.findActiveOutages();
+    public HistoryPage<OutageEvent> getPrefixHistory(String prefix, int limit, Instant from, Instant to,
+            String cursor) {
+        HistoryQuery query = HistoryQuery.of(limit, from, to, cursor);
+        return HistoryPage.of(
+                outageEventRepository.findPageByPrefix(prefix, query.getFrom(), query.getBeforeTs(), query.getBeforeId(),
+                        query.getLimit() + 1),
+                query.getLimit(), OutageEventService::cursorOf);
+    }
+
+    /**
+     * Get outage events for a specific ASN, newest first
+     */
+    public HistoryPage<OutageEvent> getAsnEvents(Integer asn, int limit, Instant from, Instant to, String cursor) {
+        HistoryQuery query = HistoryQuery.of(limit, from, to, cursor);
+        return HistoryPage.of(
+                outageEventRepository.findPageByOriginAsn(asn, query.getFrom(), query.getBeforeTs(), query.getBeforeId(),
+                        query.getLimit() + 1),
+                query.getLimit(), OutageEventService::cursorOf);
     }
 
     /**
-     * Get outage events for a specific prefix
+     * Get outage events for all prefixes inside a range (e.g. every /24 in a /22)
      */
-    public List<OutageEvent> getPrefixHistory(String prefix) {
-        return outageEventRepository.findByPrefixOrderByTimestampDesc(prefix);
+    public HistoryPage<OutageEvent> getEventsWithinRange(String range, int limit, Instant from, Instant to,
+            String cursor) {
+        HistoryQuery query = HistoryQuery.of(limit, from, to, cursor);
+        return HistoryPage.of(
+                outageEventRepository.findPageWithinRange(PrefixNotation.normalize(range), query.getFrom(),
+                        query.getBeforeTs(), query.getBeforeId(), query.getLimit() + 1),
+                query.getLimit(), OutageEventService::cursorOf);
     }
 
     /**
-     * Get outage events for a specific ASN
+     * Get outage events for all prefixes covering an address or prefix
      */
-    public List<OutageEvent> getAsnEvents(Integer asn) {
-        return outageEventRepository.findByOriginAsnOrderByTimestampDesc(asn);
+    public HistoryPage<OutageEvent> getEventsCovering(String target, int limit, Instant from, Instant to,
+            String cursor) {
+        HistoryQuery query = HistoryQuery.of(limit, from, to, cursor);
+        return HistoryPage.of(
+                outageEventRepository.findPageCovering(PrefixNotation.normalize(target), query.getFrom(),
+                        query.getBeforeTs(), query.getBeforeId(), query.getLimit() + 1),
+                query.getLimit(), OutageEventService::cursorOf);
+    }
+
+    private static HistoryCursor cursorOf(OutageEvent event) {
+        return new HistoryCursor(event.getTimestamp(), event.getId());
     }
 
     /**
@@ -130,10 +194,64 @@ public class OutageEventService {
         return outageEventRepository.findByTimestampAfterOrderByTimestampDesc(since);
     }
 
+    /**
+     * Stream outages for map visualization without materialising the result
+     */
+    public Flux<OutageEvent> streamOutagesForMap(int hours) {
+        Instant since = Instant.now().minus(hours, ChronoUnit.HOURS);
+        return streamingQueryRepository.stream(
+                "SELECT o FROM OutageEvent o WHERE o.timestamp > :since ORDER BY o.timestamp DESC",
+                Map.of("since", since), OutageEvent.class);
+    }
+
+    /**
+     * Stream all outage events for an ASN in a time range, newest first
+     */
+    public Flux<OutageEvent> streamAsnEvents(Integer asn, Instant from, Instant to) {
+        return streamingQueryRepository.stream(
+                "SELECT o FROM OutageEvent o WHERE o.originAsn = :asn AND o.timestamp >= :from "
+                        + "AND o.timestamp <= :to ORDER BY o.timestamp DESC, o.id DESC",
+                Map.of("asn", asn, "from", HistoryQuery.lowerBound(from), "to", HistoryQuery.upperBound(to)),
+                OutageEvent.class);
+    }
+
+    /**
+     * Stream all outage events for a prefix in a time range, newest first
+     */
+    public Flux<OutageEvent> streamPrefixHistory(String prefix, Instant from, Instant to) {
+        return streamingQueryRepository.streamNative(
+                "SELECT * FROM outage_events WHERE prefix = CAST(:prefix AS cidr) AND timestamp >= :from "
+                        + "AND timestamp <= :to ORDER BY timestamp DESC, id DESC",
+                Map.of("prefix", prefix, "from", HistoryQuery.lowerBound(from), "to", HistoryQuery.upperBound(to)),
+                OutageEvent.class);
+    }
+
+    /**
+     * Stream every outage event in a time range, oldest first (for exports)
+     */
+    public Flux<OutageEvent> exportOutageEvents(Instant from, Instant to) {
+        return streamingQueryRepository.stream(
+                "SELECT o FROM OutageEvent o WHERE o.timestamp >= :from AND o.timestamp <= :to "
+                        + "ORDER BY o.timestamp, o.id",
+                Map.of("from", HistoryQuery.lowerBound(from), "to", HistoryQuery.upperBound(to)),
+                OutageEvent.class);
+    }
+
     /**
      * Get summary statistics
      */
     public OutageStats getSummaryStats() {
+        if (outageStatsService.isSeeded()) {
+            return outageStatsService.getSummaryStats();
+        }
+        return computeSummaryStatsFromDatabase();
+    }
+
+    /**
+     * Compute summary statistics with full-table queries (used until the
+     * in-memory counters are seeded)
+     */
+    private OutageStats computeSummaryStatsFromDatabase() {
         long totalOutages = outageEventRepository.countByEventType("outage_start");
         long totalRecoveries = outageEventRepository.countByEventType("recovery");
         long activeOutages = outageEventRepository.countByEventTypeAndResolvedAtIsNull("outage_start");
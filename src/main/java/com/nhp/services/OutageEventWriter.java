@@ -0,0 +1,446 @@
+package com.nhp.services;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nhp.dto.OutageEvent;
+import com.nhp.repository.OutageEventRepository;
+
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persistence of detected outage events. With the journal enabled (default),
+ * an event is appended to the local write-ahead journal (see EventJournal) and
+ * queued, in journal order; detection never waits for the database. A writer
+ * thread saves the queue in batches, then publishes the saved events and
+ * advances the journal checkpoint, and a flusher fsyncs the journal every
+ * fsync-interval. The queue is bounded: while it is full, events only go to
+ * the journal and the writer reads them back from there once it catches up.
+ * A batch that keeps failing is retried row by row, and a row that keeps
+ * failing while the database is reachable is moved to the dead-letter file.
+ * Events still in the journal at startup are replayed, skipping those that
+ * reached the database before the checkpoint did.
+ */
+@Slf4j
+@Service
+public class OutageEventWriter {
+
+    @Autowired
+    private OutageEventRepository outageEventRepository;
+
+    @Autowired
+    private OutageStatsService outageStatsService;
+
+    @Autowired
+    private OutageFeedService outageFeedService;
+
+    @Autowired
+    private ActiveOutageRegistry activeOutageRegistry;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${nhp.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${nhp.journal.directory:journal}")
+    private String directory;
+
+    @Value("${nhp.journal.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${nhp.journal.fsync-interval:10ms}")
+    private Duration fsyncInterval;
+
+    @Value("${nhp.journal.batch-size:500}")
+    private int batchSize;
+
+    // Events held in memory for the writer; the rest wait in the journal
+    @Value("${nhp.journal.queue-capacity:100000}")
+    private int queueCapacity;
+
+    // Failed attempts of a batch before it is retried row by row
+    @Value("${nhp.journal.batch-attempts:5}")
+    private int batchAttempts;
+
+    // Failed attempts of one row, with the database up, before it is dead-lettered
+    @Value("${nhp.journal.row-attempts:3}")
+    private int rowAttempts;
+
+    private static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+
+    private EventJournal journal;
+    private BlockingQueue<Pending> queue;
+    private ScheduledExecutorService flusher;
+    private Thread writer;
+    private volatile boolean running;
+
+    // Appends and enqueues happen together under this lock, so the queue is in
+    // journal order and a committed seq never passes an unsaved event. Not a
+    // monitor, so that a virtual thread writing an event is not pinned.
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Highest seq enqueued; while overflowing, later ones are only in the journal
+    private long queuedSeq;
+    private boolean overflowing;
+    // Last seq found in the journal at startup; these are replays
+    private long recoveredSeq;
+
+    /**
+     * An event waiting for the database
+     */
+    private static final class Pending {
+        private final long seq;
+        private final OutageEvent event;
+        private final boolean replayed;
+        private int failures;
+
+        Pending(long seq, OutageEvent event, boolean replayed) {
+            this.seq = seq;
+            this.event = event;
+            this.replayed = replayed;
+        }
+    }
+
+    @PostConstruct
+    public void start() throws Exception {
+        if (!enabled) {
+            return;
+        }
+        journal = new EventJournal(Path.of(directory), (int) segmentSize.toBytes());
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        recoveredSeq = journal.recover();
+        queuedSeq = journal.getCommittedSeq();
+        overflowing = recoveredSeq > queuedSeq;
+        if (overflowing) {
+            log.warn("Replaying {} journaled outage events not confirmed by the database",
+                    recoveredSeq - queuedSeq);
+            refill();
+        }
+
+        metricsService.registerGauge("ripe.journal.backlog", "Journaled outage events not yet in the database",
+                journal, pending -> pending.getLastSeq() - pending.getCommittedSeq());
+        metricsService.registerGauge("ripe.journal.queued", "Journaled outage events held in memory for the writer",
+                queue, BlockingQueue::size);
+        metricsService.registerGauge("ripe.journal.segments", "Journal segment files retained",
+                journal, EventJournal::getSegmentCount);
+
+        running = true;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-fsync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, fsyncInterval.toMillis(), fsyncInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        writer = new Thread(this::drain, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Persist a detected event, through the journal when it is enabled
+     */
+    public void write(OutageEvent event) throws Exception {
+        PipelineEvents.EventSave saveEvent = new PipelineEvents.EventSave();
+        saveEvent.begin();
+        if (!enabled) {
+            long generation = outageStatsService.getGeneration();
+            Timer.Sample insert = metricsService.startTimer();
+            OutageEvent saved = outageEventRepository.save(event);
+            metricsService.recordDbInsert(insert);
+            commitSave(saveEvent, event);
+            if (OutageFeedService.OUTAGE_START.equals(saved.getEventType())) {
+                activeOutageRegistry.replacePrefixOutage(event, saved);
+            }
+            published(saved, generation);
+            return;
+        }
+        byte[] payload = objectMapper.writeValueAsBytes(event);
+        appendLock.lock();
+        try {
+            long seq = journal.append(payload);
+            if (!overflowing && queue.offer(new Pending(seq, event, false))) {
+                queuedSeq = seq;
+            } else if (!overflowing) {
+                overflowing = true;
+                log.warn("Outage event queue full ({}), holding events in the journal until the database catches up",
+                        queueCapacity);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        commitSave(saveEvent, event);
+    }
+
+    private void commitSave(PipelineEvents.EventSave saveEvent, OutageEvent event) {
+        saveEvent.end();
+        if (saveEvent.shouldCommit()) {
+            saveEvent.prefix = event.getPrefix();
+            saveEvent.originAsn = event.getOriginAsn() != null ? event.getOriginAsn() : 0;
+            saveEvent.eventType = event.getEventType();
+            saveEvent.journaled = enabled;
+            saveEvent.commit();
+        }
+    }
+
+    private void flush() {
+        try {
+            long durable = journal.getDurableSeq();
+            Timer.Sample fsync = metricsService.startTimer();
+            if (journal.force() != durable) {
+                metricsService.recordJournalFsync(fsync);
+            }
+        } catch (Exception e) {
+            log.error("Journal fsync failed", e);
+        }
+    }
+
+    /**
+     * Read events that overflowed the queue back from the journal, as many as
+     * fit; runs on the writer thread (or before it starts), the only one that
+     * enqueues while overflowing
+     */
+    private void refill() throws Exception {
+        List<EventJournal.Entry> entries = journal.read(queuedSeq, queue.remainingCapacity());
+        for (EventJournal.Entry entry : entries) {
+            OutageEvent event = objectMapper.readValue(entry.getPayload(), OutageEvent.class);
+            queue.add(new Pending(entry.getSeq(), event, entry.getSeq() <= recoveredSeq));
+        }
+        appendLock.lock();
+        try {
+            if (!entries.isEmpty()) {
+                queuedSeq = entries.get(entries.size() - 1).getSeq();
+            }
+            if (queuedSeq == journal.getLastSeq()) {
+                overflowing = false;
+                log.info("Outage event queue caught up with the journal");
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Writer loop: save batches in journal order, retrying a failed batch with
+     * backoff so that the checkpoint never passes an unsaved event. After
+     * batch-attempts failures the batch is saved row by row, so that one bad
+     * row cannot hold up the rest.
+     */
+    private void drain() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        int failures = 0;
+        long backoff = 0;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    if (queue.isEmpty() && isOverflowing()) {
+                        refill();
+                    }
+                    Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                if (failures < batchAttempts) {
+                    save(batch);
+                    journal.commit(batch.get(batch.size() - 1).seq);
+                    batch.clear();
+                } else {
+                    saveRows(batch);
+                }
+                if (batch.isEmpty()) {
+                    failures = 0;
+                    backoff = 0;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failures++;
+                backoff = Math.min(Math.max(backoff * 2, 500), 30_000);
+                log.error("Failed to save {} journaled outage events (attempt {}), retrying in {}ms", batch.size(),
+                        failures, backoff, e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean isOverflowing() {
+        appendLock.lock();
+        try {
+            return overflowing;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Save the batch one row at a time, in order, committing each row saved or
+     * dead-lettered and removing it from the batch. Stops at a row that fails:
+     * it is retried next time, and dead-lettered after row-attempts failures
+     * unless the database itself is unreachable.
+     */
+    private void saveRows(List<Pending> batch) throws Exception {
+        Iterator<Pending> rows = batch.iterator();
+        while (rows.hasNext()) {
+            Pending row = rows.next();
+            try {
+                save(List.of(row));
+            } catch (Exception e) {
+                if (isDatabaseUnavailable(e) || ++row.failures < rowAttempts) {
+                    throw e;
+                }
+                deadLetter(row, e);
+            }
+            journal.commit(row.seq);
+            rows.remove();
+        }
+    }
+
+    /**
+     * Whether a failure says nothing about the row, only that the database
+     * cannot be reached right now
+     */
+    private static boolean isDatabaseUnavailable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataAccessResourceFailureException || cause instanceof TransientDataAccessException
+                    || cause instanceof CannotCreateTransactionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move a row that cannot be saved to the dead-letter file next to the
+     * journal, with the error, for inspection and a manual re-insert
+     */
+    private void deadLetter(Pending row, Exception error) throws Exception {
+        String line = objectMapper.writeValueAsString(objectMapper.createObjectNode()
+                .put("seq", row.seq)
+                .put("failedAt", Instant.now().toString())
+                .put("error", String.valueOf(error.getMessage()))
+                .set("event", objectMapper.valueToTree(row.event))) + "\n";
+        Files.writeString(Path.of(directory).resolve(DEAD_LETTER_FILE), line, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE,
+                StandardOpenOption.SYNC);
+        metricsService.incrementJournalDeadLettered();
+        log.error("Dead-lettered outage event seq {} ({} {}) after {} failed attempts", row.seq,
+                row.event.getEventType(), row.event.getPrefix(), row.failures, error);
+    }
+
+    private void save(List<Pending> batch) {
+        List<Pending> unsaved = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            // A replayed event may have been saved before the checkpoint was written
+            if (pending.replayed && outageEventRepository.existsEvent(pending.event.getPrefix(),
+                    pending.event.getTimestamp().minusNanos(1000), pending.event.getTimestamp().plusNanos(1000),
+                    pending.event.getEventType())) {
+                continue;
+            }
+            unsaved.add(pending);
+        }
+        if (unsaved.isEmpty()) {
+            return;
+        }
+
+        long generation = outageStatsService.getGeneration();
+        Timer.Sample insert = metricsService.startTimer();
+        PipelineEvents.EventBatchSave batchEvent = new PipelineEvents.EventBatchSave();
+        batchEvent.begin();
+        List<OutageEvent> saved = outageEventRepository.saveAll(
+                unsaved.stream().map(pending -> pending.event).toList());
+        batchEvent.end();
+        metricsService.recordDbInsert(insert);
+        if (batchEvent.shouldCommit()) {
+            batchEvent.events = unsaved.size();
+            batchEvent.commit();
+        }
+        // saveAll returns the saved entities in the order given
+        for (int i = 0; i < saved.size(); i++) {
+            Pending pending = unsaved.get(i);
+            registered(pending, saved.get(i));
+            published(saved.get(i), generation);
+        }
+    }
+
+    /**
+     * Live events are already in the registry, where an open outage is swapped
+     * for its saved copy; replayed ones were detected before the restart
+     */
+    private void registered(Pending pending, OutageEvent saved) {
+        boolean start = OutageFeedService.OUTAGE_START.equals(saved.getEventType());
+        if (!pending.replayed) {
+            if (start) {
+                activeOutageRegistry.replacePrefixOutage(pending.event, saved);
+            }
+        } else if (start) {
+            activeOutageRegistry.openPrefixOutage(saved);
+        } else {
+            activeOutageRegistry.closePrefixOutage(saved.getPrefix());
+        }
+    }
+
+    /**
+     * Stats generation is taken before the save, so that an event a reseed
+     * already counted is not added again
+     */
+    private void published(OutageEvent saved, long generation) {
+        if (OutageFeedService.OUTAGE_START.equals(saved.getEventType())) {
+            outageStatsService.recordOutageStart(saved, generation);
+        } else {
+            outageStatsService.recordRecovery(saved, generation);
+        }
+        outageFeedService.publishPrefixEvent(saved);
+    }
+
+    /**
+     * Drain the queue before the database goes away; anything left is replayed
+     * at the next start
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        writer.join(Duration.ofSeconds(10).toMillis());
+        flusher.shutdown();
+        journal.close();
+    }
+}
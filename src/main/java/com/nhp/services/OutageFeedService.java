@@ -0,0 +1,294 @@
+package com.nhp.services;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.AsnOutage;
+import com.nhp.dto.OutageEvent;
+import com.nhp.dto.OutageFeedEvent;
+import com.nhp.dto.RouteAnomaly;
+import com.nhp.dto.TransitIncident;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Fan-out of outage deltas to live subscribers (dashboards, SSE clients).
+ * Every delta gets a monotonically increasing sequence number and is kept in a
+ * bounded history so that reconnecting clients can resume where they left off.
+ * Sequence numbers are in memory and local to this instance, so ids carry the
+ * feed's epoch (its start time): a client resuming from another epoch (after a
+ * restart, or on another cluster member) or from before the retained history
+ * gets a reset delta, then everything retained, and should reload its state.
+ * So does a subscriber too slow to keep up, at the first delta after those it
+ * missed.
+ */
+@Slf4j
+@Service
+public class OutageFeedService {
+
+    public static final String OUTAGE_START = "outage_start";
+    public static final String RECOVERY = "recovery";
+    public static final String ASN_OUTAGE_OPEN = "asn_outage_open";
+    public static final String ASN_OUTAGE_CLOSE = "asn_outage_close";
+    public static final String TRANSIT_INCIDENT_OPEN = "transit_incident_open";
+    public static final String TRANSIT_INCIDENT_CLOSE = "transit_incident_close";
+    public static final String RESET = "reset";
+
+    // Number of deltas kept for resume (Last-Event-ID / since)
+    private static final int HISTORY_SIZE = 10_000;
+
+    // Per-client buffer; once full, the oldest pending deltas are dropped
+    private static final int CLIENT_BUFFER_SIZE = 512;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    // Lazy: the relay publishes into this feed as well
+    @Autowired
+    @Lazy
+    private ClusterRelay clusterRelay;
+
+    private final Deque<OutageFeedEvent> history = new ArrayDeque<>(HISTORY_SIZE);
+    private final Set<FluxSink<OutageFeedEvent>> subscribers = new CopyOnWriteArraySet<>();
+    private final String epoch = Long.toString(System.currentTimeMillis());
+    private long lastSeq = 0;
+
+    @PostConstruct
+    public void registerGauges() {
+        metricsService.registerGauge("ripe.feed.subscribers", "Connected live feed subscribers",
+                subscribers, Set::size);
+        metricsService.registerGauge("ripe.feed.history.size", "Deltas retained for feed resume",
+                this, OutageFeedService::historySize);
+    }
+
+    private synchronized int historySize() {
+        return history.size();
+    }
+
+    /**
+     * Publish a prefix-level outage start or recovery
+     */
+    public void publishPrefixEvent(OutageEvent event) {
+        publish(OutageFeedEvent.builder()
+                .type(event.getEventType())
+                .timestamp(event.getTimestamp())
+                .eventId(event.getId())
+                .prefix(event.getPrefix())
+                .asn(event.getOriginAsn())
+                .lastPath(event.getLastPath())
+                .build());
+    }
+
+    /**
+     * Publish the opening of a correlated ASN outage
+     */
+    public void publishAsnOutageOpened(Integer asn, Instant startTime, String country) {
+        publish(OutageFeedEvent.builder()
+                .type(ASN_OUTAGE_OPEN)
+                .timestamp(startTime)
+                .asn(asn)
+                .country(country)
+                .build());
+    }
+
+    /**
+     * Publish the closing of a correlated ASN outage
+     */
+    public void publishAsnOutageClosed(AsnOutage outage) {
+        publish(OutageFeedEvent.builder()
+                .type(ASN_OUTAGE_CLOSE)
+                .timestamp(outage.getEndTime())
+                .eventId(outage.getId())
+                .asn(outage.getAsn())
+                .prefixes(outage.getPrefixes())
+                .severity(outage.getSeverity())
+                .country(outage.getCountry())
+                .build());
+    }
+
+    /**
+     * Publish the opening of a transit incident (prefixes affected so far,
+     * severity as the affected share of the transit AS's downstream neighbours)
+     */
+    public void publishTransitIncidentOpened(TransitIncident incident) {
+        publish(transitIncidentEvent(TRANSIT_INCIDENT_OPEN, incident.getStartTime(), incident));
+    }
+
+    /**
+     * Publish the closing of a transit incident
+     */
+    public void publishTransitIncidentClosed(TransitIncident incident) {
+        publish(transitIncidentEvent(TRANSIT_INCIDENT_CLOSE, incident.getEndTime(), incident).toBuilder()
+                .eventId(incident.getId())
+                .build());
+    }
+
+    private static OutageFeedEvent transitIncidentEvent(String type, Instant timestamp, TransitIncident incident) {
+        return OutageFeedEvent.builder()
+                .type(type)
+                .timestamp(timestamp)
+                .asn(incident.getAsn())
+                .prefixes(incident.getPrefixes())
+                .severity(100 * incident.getAffectedDownstreams() / Math.max(1, incident.getDownstreamAsns()))
+                .build();
+    }
+
+    /**
+     * Publish a route anomaly (moas, origin_change or subprefix_hijack)
+     */
+    public void publishRouteAnomaly(RouteAnomaly anomaly) {
+        publish(OutageFeedEvent.builder()
+                .type(anomaly.getAnomalyType())
+                .timestamp(anomaly.getTimestamp())
+                .eventId(anomaly.getId())
+                .prefix(anomaly.getPrefix())
+                .asn(anomaly.getOriginAsn())
+                .lastPath(anomaly.getAsPath())
+                .prefixes(anomaly.getCoveringPrefix() != null ? new String[] { anomaly.getCoveringPrefix() } : null)
+                .build());
+    }
+
+    /**
+     * Publish a delta relayed from another cluster member, without relaying it again
+     */
+    public void publishRelayed(OutageFeedEvent event) {
+        publish(event, false);
+    }
+
+    /**
+     * Subscribe to the live feed, replaying the retained deltas after the one
+     * with id lastId first; a null lastId means live only. An id this feed
+     * cannot resume from exactly is answered with a reset delta and the whole
+     * retained history.
+     */
+    public Flux<OutageFeedEvent> subscribe(String lastId) {
+        return Flux.defer(() -> {
+            List<OutageFeedEvent> replayed;
+            long snapshotSeq;
+            synchronized (this) {
+                replayed = replay(lastId);
+                snapshotSeq = lastSeq;
+            }
+            Flux<OutageFeedEvent> feed = Flux.create(sink -> {
+                // Registration happens under the publish lock, after whatever was published
+                // since the snapshot, so that no delta falls between the replay and the live stream
+                synchronized (this) {
+                    replayed.forEach(sink::next);
+                    history.stream().filter(event -> event.getSeq() > snapshotSeq).forEach(sink::next);
+                    subscribers.add(sink);
+                }
+                sink.onDispose(() -> subscribers.remove(sink));
+            }, FluxSink.OverflowStrategy.BUFFER);
+
+            // Room for the whole replay next to the live buffer, so that a resume is never cut short
+            AtomicBoolean missed = new AtomicBoolean();
+            return feed
+                    .onBackpressureBuffer(CLIENT_BUFFER_SIZE + replayed.size(), dropped -> {
+                        metricsService.incrementFeedEventsDropped();
+                        missed.set(true);
+                    }, BufferOverflowStrategy.DROP_OLDEST)
+                    // The client cannot see the deltas dropped for it; tell it to reload. One at a
+                    // time, so that nothing is held past the buffer above
+                    .flatMapIterable(event -> missed.getAndSet(false)
+                            ? List.of(reset(event.getSeq() - 1), event)
+                            : List.of(event), 1);
+        });
+    }
+
+    /**
+     * Retained deltas after lastId, led by a reset delta when lastId is from
+     * another epoch or older than the history
+     */
+    private synchronized List<OutageFeedEvent> replay(String lastId) {
+        if (lastId == null) {
+            return List.of();
+        }
+        List<OutageFeedEvent> replay = new ArrayList<>();
+        long afterSeq = seqOf(lastId);
+        long oldestSeq = history.isEmpty() ? lastSeq + 1 : history.peekFirst().getSeq();
+        if (afterSeq < oldestSeq - 1 || afterSeq > lastSeq) {
+            afterSeq = oldestSeq - 1;
+            replay.add(reset(afterSeq));
+        }
+        for (OutageFeedEvent event : history) {
+            if (event.getSeq() > afterSeq) {
+                replay.add(event);
+            }
+        }
+        return replay;
+    }
+
+    /**
+     * A reset delta; resuming from its id picks up the deltas after seq
+     */
+    private OutageFeedEvent reset(long seq) {
+        return OutageFeedEvent.builder()
+                .seq(seq)
+                .id(idOf(seq))
+                .type(RESET)
+                .timestamp(Instant.now())
+                .build();
+    }
+
+    /**
+     * Sequence number of an id from this epoch; -1 otherwise
+     */
+    private long seqOf(String id) {
+        int separator = id.lastIndexOf('-');
+        if (separator < 0 || !epoch.equals(id.substring(0, separator))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(id.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String idOf(long seq) {
+        return epoch + "-" + seq;
+    }
+
+    private void publish(OutageFeedEvent event) {
+        publish(event, true);
+    }
+
+    private void publish(OutageFeedEvent event, boolean relay) {
+        append(event);
+        if (relay) {
+            clusterRelay.relayFeedEvent(event);
+        }
+    }
+
+    private synchronized void append(OutageFeedEvent event) {
+        event.setSeq(++lastSeq);
+        event.setId(idOf(lastSeq));
+        if (history.size() == HISTORY_SIZE) {
+            history.pollFirst();
+        }
+        history.addLast(event);
+
+        for (FluxSink<OutageFeedEvent> sink : subscribers) {
+            try {
+                sink.next(event);
+            } catch (Exception e) {
+                log.debug("Dropping feed subscriber after error: {}", e.getMessage());
+                subscribers.remove(sink);
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.nhp.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.OutageEvent;
+import com.nhp.dto.OutageStats;
+import com.nhp.repository.OutageEventRepository;
+import com.nhp.repository.StreamingQueryRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Incrementally maintained summary statistics. Seeded from the database at
+ * startup and updated on every recorded event, so reads are constant time
+ * regardless of how much history has accumulated. Distinct ASNs and prefixes
+ * are HyperLogLog estimates (about 0.8% error, 16KB each).
+ *
+ * Events are recorded with the seed generation taken before they were
+ * saved; those saved around a seed are left out rather than counted twice,
+ * and summaries come from the database while it runs. The counters are
+ * reseeded every night (nhp.stats.reseed-cron), which drops rows removed by retention
+ * and picks up what the seed missed. In cluster mode each instance only adds
+ * the events it wrote itself; other instances' events show up at the reseed.
+ */
+@Slf4j
+@Service
+public class OutageStatsService {
+
+    // One bucket per hour, enough to cover the 7 day window plus the current hour
+    private static final int HOURS_TRACKED = 7 * 24 + 1;
+
+    private static final int PRECISION = 14;
+
+    @Autowired
+    private OutageEventRepository outageEventRepository;
+
+    @Autowired
+    private StreamingQueryRepository streamingQueryRepository;
+
+    @Autowired
+    private StartupGate startupGate;
+
+    private final AtomicLong totalOutages = new AtomicLong();
+    private final AtomicLong totalRecoveries = new AtomicLong();
+    private final AtomicLong resolvedOutages = new AtomicLong();
+    private final AtomicLong resolvedDurationSeconds = new AtomicLong();
+
+    // Replaced by each seed; guarded by their own monitors
+    private volatile HyperLogLog affectedAsns = new HyperLogLog(PRECISION);
+    private volatile HyperLogLog affectedPrefixes = new HyperLogLog(PRECISION);
+
+    // Start time of each unresolved outage, keyed the same way the duration trigger matches rows
+    private final Map<String, Instant> openOutages = new ConcurrentHashMap<>();
+
+    // Outage starts per hour, ring-indexed by epoch hour
+    private final long[] hourlyOutages = new long[HOURS_TRACKED];
+    private final long[] hourlyBucketHour = new long[HOURS_TRACKED];
+
+    private volatile boolean seeded = false;
+
+    // Bumped as each seed starts, under this; recording checks it under this too
+    private long generation;
+
+    private final Object seedLock = new Object();
+
+    @PostConstruct
+    public void init() {
+        startupGate.warmup("outage stats", this::seedFromDatabase);
+    }
+
+    /**
+     * Seed counters from the existing history, replacing what they held
+     */
+    public void seedFromDatabase() {
+        synchronized (seedLock) {
+            synchronized (this) {
+                generation++;
+                seeded = false;
+            }
+            try {
+                totalOutages.set(outageEventRepository.countByEventType("outage_start"));
+                totalRecoveries.set(outageEventRepository.countByEventType("recovery"));
+
+                resolvedOutages.set(0);
+                resolvedDurationSeconds.set(0);
+                List<Object[]> durations = outageEventRepository.sumResolvedDurationSeconds();
+                if (!durations.isEmpty()) {
+                    resolvedOutages.set(((Number) durations.get(0)[0]).longValue());
+                    resolvedDurationSeconds.set(((Number) durations.get(0)[1]).longValue());
+                }
+
+                affectedAsns = distinct("SELECT DISTINCT CAST(o.originAsn AS String) FROM OutageEvent o");
+                affectedPrefixes = distinct("SELECT DISTINCT CAST(o.prefix AS String) FROM OutageEvent o");
+
+                openOutages.clear();
+                for (OutageEvent open : outageEventRepository.findActiveOutages()) {
+                    openOutages.putIfAbsent(outageKey(open.getPrefix(), open.getOriginAsn()), open.getTimestamp());
+                }
+
+                clearHours();
+                Instant since = Instant.now().truncatedTo(ChronoUnit.HOURS)
+                        .minus(HOURS_TRACKED - 1, ChronoUnit.HOURS);
+                for (Object[] row : outageEventRepository.countByEventTypePerHourSince("outage_start", since)) {
+                    addToHour(((Number) row[0]).longValue() / 3600, ((Number) row[1]).longValue());
+                }
+
+                seeded = true;
+                log.info("Seeded outage stats: outages={}, recoveries={}, active={}, asns~{}, prefixes~{}",
+                        totalOutages.get(), totalRecoveries.get(), openOutages.size(),
+                        estimate(affectedAsns), estimate(affectedPrefixes));
+            } catch (Exception e) {
+                log.error("Failed to seed outage stats, summary will fall back to database queries", e);
+            }
+        }
+    }
+
+    /**
+     * Nightly reseed; summaries come from the database while it runs
+     */
+    @Scheduled(cron = "${nhp.stats.reseed-cron:0 45 0 * * *}", zone = "UTC")
+    public void reseed() {
+        if (startupGate.isReady()) {
+            seedFromDatabase();
+        }
+    }
+
+    /**
+     * Distinct values of a query, streamed into a HyperLogLog
+     */
+    private HyperLogLog distinct(String hql) {
+        HyperLogLog counter = new HyperLogLog(PRECISION);
+        streamingQueryRepository.stream(hql, Map.of(), String.class).doOnNext(counter::add).blockLast();
+        return counter;
+    }
+
+    /**
+     * Whether the in-memory counters reflect the full history
+     */
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Seed generation to pass to record*() for an event about to be saved;
+     * -1 while a seed runs
+     */
+    public synchronized long getGeneration() {
+        return seeded ? generation : -1;
+    }
+
+    /**
+     * Account for a persisted outage start; ignored unless the counters were
+     * seeded before it was saved and not since
+     */
+    public synchronized void recordOutageStart(OutageEvent event, long savedIn) {
+        if (!seeded || savedIn != generation) {
+            return;
+        }
+        totalOutages.incrementAndGet();
+        addDistinct(event);
+        openOutages.putIfAbsent(outageKey(event.getPrefix(), event.getOriginAsn()), event.getTimestamp());
+        addToHour(event.getTimestamp().getEpochSecond() / 3600, 1);
+    }
+
+    /**
+     * Account for a persisted recovery; ignored unless the counters were
+     * seeded before it was saved and not since
+     */
+    public synchronized void recordRecovery(OutageEvent event, long savedIn) {
+        if (!seeded || savedIn != generation) {
+            return;
+        }
+        totalRecoveries.incrementAndGet();
+        addDistinct(event);
+
+        Instant start = openOutages.remove(outageKey(event.getPrefix(), event.getOriginAsn()));
+        if (start != null && start.isBefore(event.getTimestamp())) {
+            resolvedOutages.incrementAndGet();
+            resolvedDurationSeconds.addAndGet(Duration.between(start, event.getTimestamp()).getSeconds());
+        }
+    }
+
+    /**
+     * Current summary statistics
+     */
+    public OutageStats getSummaryStats() {
+        long resolved = resolvedOutages.get();
+        double averageMinutes = resolved > 0 ? resolvedDurationSeconds.get() / 60.0 / resolved : 0.0;
+
+        return OutageStats.builder()
+                .totalOutages(totalOutages.get())
+                .activeOutages(openOutages.size())
+                .totalRecoveries(totalRecoveries.get())
+                .uniqueAsnsAffected(estimate(affectedAsns))
+                .uniquePrefixesAffected(estimate(affectedPrefixes))
+                .averageOutageDurationMinutes(averageMinutes)
+                .outagesLast24Hours(countOutagesLastHours(24))
+                .outagesLast7Days(countOutagesLastHours(7 * 24))
+                .build();
+    }
+
+    private void addDistinct(OutageEvent event) {
+        HyperLogLog asns = affectedAsns;
+        synchronized (asns) {
+            asns.add(String.valueOf(event.getOriginAsn()));
+        }
+        HyperLogLog prefixes = affectedPrefixes;
+        synchronized (prefixes) {
+            prefixes.add(event.getPrefix());
+        }
+    }
+
+    private static long estimate(HyperLogLog counter) {
+        synchronized (counter) {
+            return counter.estimate();
+        }
+    }
+
+    private synchronized void clearHours() {
+        Arrays.fill(hourlyOutages, 0);
+        Arrays.fill(hourlyBucketHour, 0);
+    }
+
+    private synchronized void addToHour(long epochHour, long count) {
+        int slot = (int) (epochHour % HOURS_TRACKED);
+        if (hourlyBucketHour[slot] != epochHour) {
+            if (hourlyBucketHour[slot] > epochHour) {
+                return; // older than the tracked window
+            }
+            hourlyBucketHour[slot] = epochHour;
+            hourlyOutages[slot] = 0;
+        }
+        hourlyOutages[slot] += count;
+    }
+
+    private synchronized long countOutagesLastHours(int hours) {
+        long currentHour = Instant.now().getEpochSecond() / 3600;
+        long total = 0;
+        for (long hour = currentHour - hours + 1; hour <= currentHour; hour++) {
+            int slot = (int) (hour % HOURS_TRACKED);
+            if (hourlyBucketHour[slot] == hour) {
+                total += hourlyOutages[slot];
+            }
+        }
+        return total;
+    }
+
+    private static String outageKey(String prefix, Integer originAsn) {
+        return prefix + "|" + originAsn;
+    }
+}
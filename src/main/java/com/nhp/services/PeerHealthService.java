@@ -0,0 +1,195 @@
+package com.nhp.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.PeerHealth;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-peer session health. A peer is considered down when RIS reports its
+ * session down, or when it withdraws more than a threshold of prefixes within
+ * a short window (a session reset seen from the route collector). While a
+ * peer is down its withdrawals say nothing about prefix reachability and are
+ * kept out of outage detection.
+ */
+@Slf4j
+@Service
+public class PeerHealthService {
+
+    public static final String REASON_PEER_STATE = "ris_peer_state";
+    public static final String REASON_MASS_WITHDRAWAL = "mass_withdrawal";
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Value("${nhp.peers.mass-withdrawal-threshold:500}")
+    private int massWithdrawalThreshold;
+
+    @Value("${nhp.peers.mass-withdrawal-window:10s}")
+    private Duration massWithdrawalWindow;
+
+    @Value("${nhp.peers.suppress-for:5m}")
+    private Duration suppressFor;
+
+    private final Map<String, PeerTracker> peers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerGauges() {
+        metricsService.registerGauge("ripe.peers.tracked", "RIS peers seen", peers, Map::size);
+        metricsService.registerGauge("ripe.peers.down", "RIS peers whose withdrawals are suppressed",
+                this, PeerHealthService::countDownPeers);
+    }
+
+    /**
+     * Account for a withdrawal from a peer. Returns false when the peer is down
+     * and the withdrawal must not count toward outage detection.
+     */
+    public boolean acceptWithdrawal(String peer, Instant now) {
+        PeerTracker tracker = peers.computeIfAbsent(peer, PeerTracker::new);
+        synchronized (tracker) {
+            if (tracker.windowStart == null || !now.isBefore(tracker.windowStart.plus(massWithdrawalWindow))) {
+                tracker.windowStart = now;
+                tracker.windowCount = 0;
+            }
+            tracker.windowCount++;
+
+            if (tracker.windowCount >= massWithdrawalThreshold) {
+                if (!tracker.isDown(now)) {
+                    tracker.markDown(REASON_MASS_WITHDRAWAL, now);
+                    log.warn("Peer {} withdrew {} prefixes within {}, suppressing its withdrawals for {}",
+                            peer, tracker.windowCount, massWithdrawalWindow, suppressFor);
+                }
+                // Keep suppressing for as long as the storm lasts
+                tracker.suppressedUntil = now.plus(suppressFor);
+            }
+
+            if (tracker.isDown(now)) {
+                tracker.suppressedWithdrawals++;
+                metricsService.incrementPeerWithdrawalsSuppressed();
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Apply a RIS_PEER_STATE message ("connected" or "down")
+     */
+    public void recordPeerState(String peer, String collector, String state, Instant now) {
+        PeerTracker tracker = peers.computeIfAbsent(peer, PeerTracker::new);
+        synchronized (tracker) {
+            tracker.collector = collector;
+            if ("down".equalsIgnoreCase(state)) {
+                tracker.explicitDown = true;
+                tracker.markDown(REASON_PEER_STATE, now);
+                log.info("Peer {} at {} reported down", peer, collector);
+            } else if ("connected".equalsIgnoreCase(state)) {
+                // A re-established session re-announces its table; withdrawals
+                // from here on are meaningful again
+                tracker.explicitDown = false;
+                tracker.suppressedUntil = null;
+                tracker.reason = null;
+                tracker.lastStateChange = now;
+                log.info("Peer {} at {} reported connected", peer, collector);
+            }
+        }
+    }
+
+    public boolean isDown(String peer) {
+        PeerTracker tracker = peers.get(peer);
+        if (tracker == null) {
+            return false;
+        }
+        synchronized (tracker) {
+            return tracker.isDown(Instant.now());
+        }
+    }
+
+    public int getMassWithdrawalThreshold() {
+        return massWithdrawalThreshold;
+    }
+
+    public Duration getMassWithdrawalWindow() {
+        return massWithdrawalWindow;
+    }
+
+    public Duration getSuppressFor() {
+        return suppressFor;
+    }
+
+    /**
+     * Health of every peer seen so far, down peers first
+     */
+    public List<PeerHealth> getPeerHealth() {
+        Instant now = Instant.now();
+        return peers.values().stream()
+                .map(tracker -> tracker.snapshot(now))
+                .sorted(Comparator.comparing((PeerHealth health) -> !"down".equals(health.getState()))
+                        .thenComparing(PeerHealth::getPeer))
+                .toList();
+    }
+
+    private long countDownPeers() {
+        Instant now = Instant.now();
+        return peers.values().stream()
+                .filter(tracker -> {
+                    synchronized (tracker) {
+                        return tracker.isDown(now);
+                    }
+                })
+                .count();
+    }
+
+    /**
+     * Mutable per-peer state, guarded by its own monitor
+     */
+    private static class PeerTracker {
+        private final String peer;
+        private String collector;
+        private boolean explicitDown;
+        private Instant suppressedUntil;
+        private String reason;
+        private Instant lastStateChange;
+        private Instant windowStart;
+        private long windowCount;
+        private long suppressedWithdrawals;
+
+        PeerTracker(String peer) {
+            this.peer = peer;
+        }
+
+        boolean isDown(Instant now) {
+            return explicitDown || (suppressedUntil != null && now.isBefore(suppressedUntil));
+        }
+
+        void markDown(String reason, Instant now) {
+            this.reason = reason;
+            this.lastStateChange = now;
+        }
+
+        synchronized PeerHealth snapshot(Instant now) {
+            boolean down = isDown(now);
+            return PeerHealth.builder()
+                    .peer(peer)
+                    .collector(collector)
+                    .state(down ? "down" : "up")
+                    .reason(down ? reason : null)
+                    .lastStateChange(lastStateChange)
+                    .suppressedUntil(down && !explicitDown ? suppressedUntil : null)
+                    .withdrawalsInWindow(windowCount)
+                    .suppressedWithdrawals(suppressedWithdrawals)
+                    .build();
+        }
+    }
+}
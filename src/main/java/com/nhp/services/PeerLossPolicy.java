@@ -0,0 +1,31 @@
+package com.nhp.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nhp.dto.PrefixState;
+
+/**
+ * Outage once a fraction of the peers that have announced the prefix (its
+ * peak visibility) no longer do. Prefixes seen by too few peers for a
+ * percentage to mean anything fall back to requiring every peer to withdraw.
+ */
+@Component("peer-loss")
+public class PeerLossPolicy implements DetectionPolicy {
+
+    @Value("${nhp.detection.peer-loss-threshold:0.9}")
+    private double lossThreshold;
+
+    @Value("${nhp.detection.min-baseline-peers:5}")
+    private int minBaselinePeers;
+
+    @Override
+    public boolean isOutage(PrefixState state) {
+        int visible = state.getVisiblePeerCount();
+        int baseline = state.getPeakVisiblePeers();
+        if (baseline < minBaselinePeers) {
+            return visible == 0;
+        }
+        return baseline - visible >= lossThreshold * baseline;
+    }
+}
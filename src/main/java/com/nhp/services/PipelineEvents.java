@@ -0,0 +1,123 @@
+package com.nhp.services;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events for the ingestion pipeline stages, carrying the
+ * prefix and origin ASN they worked on, so that a slow stage in a recording
+ * can be lined up with GC pauses, lock contention and socket reads of the
+ * same thread. Stack traces are off. The per-update stages only commit past
+ * a 1 ms threshold, so an always-on recording costs a clock read per stage
+ * and keeps only the outliers; events and batches are saved and correlated
+ * rarely enough to record all of them. Without a recording running, begin()
+ * and commit() do nothing.
+ *
+ * Plain classes with no Spring dependencies; one instance per stage run.
+ */
+final class PipelineEvents {
+
+    private static final String CATEGORY = "NHP";
+    private static final String PIPELINE = "Pipeline";
+
+    private PipelineEvents() {
+    }
+
+    @Name("com.nhp.MessageParse")
+    @Label("Message Parse")
+    @Description("RIS message parsed into an update")
+    @Category({ CATEGORY, PIPELINE })
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class MessageParse extends Event {
+        @Label("Prefix")
+        String prefix;
+
+        @Label("Origin ASN")
+        String originAsn;
+
+        @Label("Message Size")
+        int size;
+    }
+
+    @Name("com.nhp.StateLookup")
+    @Label("Prefix State Lookup")
+    @Description("Prefix state read from the local cache, or from Redis on a miss")
+    @Category({ CATEGORY, PIPELINE })
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class StateLookup extends Event {
+        @Label("Prefix")
+        String prefix;
+
+        @Label("Cache Hit")
+        boolean cacheHit;
+    }
+
+    @Name("com.nhp.OutageDetection")
+    @Label("Outage Detection")
+    @Description("Detection policy run over a prefix's visibility, with any transition it reported")
+    @Category({ CATEGORY, PIPELINE })
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class OutageDetection extends Event {
+        @Label("Prefix")
+        String prefix;
+
+        @Label("Origin ASN")
+        String originAsn;
+
+        @Label("Transition")
+        String transition;
+    }
+
+    @Name("com.nhp.EventSave")
+    @Label("Outage Event Save")
+    @Description("Detected event persisted: appended to the journal, or inserted when the journal is off")
+    @Category({ CATEGORY, PIPELINE })
+    @StackTrace(false)
+    static final class EventSave extends Event {
+        @Label("Prefix")
+        String prefix;
+
+        @Label("Origin ASN")
+        long originAsn;
+
+        @Label("Event Type")
+        String eventType;
+
+        @Label("Journaled")
+        boolean journaled;
+    }
+
+    @Name("com.nhp.EventBatchSave")
+    @Label("Outage Event Batch Save")
+    @Description("Journaled events inserted into the database in one batch")
+    @Category({ CATEGORY, PIPELINE })
+    @StackTrace(false)
+    static final class EventBatchSave extends Event {
+        @Label("Events")
+        int events;
+    }
+
+    @Name("com.nhp.AsnCorrelation")
+    @Label("ASN Correlation")
+    @Description("Outage or recovery fed to ASN and transit correlation")
+    @Category({ CATEGORY, PIPELINE })
+    @StackTrace(false)
+    static final class AsnCorrelation extends Event {
+        @Label("Prefix")
+        String prefix;
+
+        @Label("Origin ASN")
+        String originAsn;
+
+        @Label("Event Type")
+        String eventType;
+    }
+}
@@ -0,0 +1,58 @@
+package com.nhp.services;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import com.google.common.net.InetAddresses;
+
+/**
+ * Validation of user-supplied addresses and prefixes before they reach a
+ * cidr/inet cast in SQL, so malformed input is a 400 rather than a DB error
+ */
+final class PrefixNotation {
+
+    private PrefixNotation() {
+    }
+
+    /**
+     * Validate "address" or "address/length"; host bits right of the mask are
+     * cleared, since PostgreSQL rejects them in a cidr value
+     */
+    static String normalize(String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Prefix is required");
+        }
+
+        String trimmed = value.trim();
+        int slash = trimmed.indexOf('/');
+        InetAddress address = InetAddresses.forString(slash < 0 ? trimmed : trimmed.substring(0, slash));
+
+        if (slash >= 0) {
+            int maxLength = address.getAddress().length * 8;
+            int length;
+            try {
+                length = Integer.parseInt(trimmed.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length: " + value, e);
+            }
+            if (length < 0 || length > maxLength) {
+                throw new IllegalArgumentException("Invalid prefix length: " + value);
+            }
+            return InetAddresses.toAddrString(mask(address, length)) + "/" + length;
+        }
+        return InetAddresses.toAddrString(address);
+    }
+
+    private static InetAddress mask(InetAddress address, int length) {
+        byte[] bytes = address.getAddress();
+        for (int i = 0; i < bytes.length; i++) {
+            int keep = Math.max(0, Math.min(8, length - i * 8));
+            bytes[i] &= (byte) (0xFF << (8 - keep));
+        }
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid address: " + address, e);
+        }
+    }
+}
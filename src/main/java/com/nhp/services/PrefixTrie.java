@@ -0,0 +1,103 @@
+package com.nhp.services;
+
+import java.net.InetAddress;
+
+import com.google.common.net.InetAddresses;
+
+/**
+ * Binary trie over address bits, one root per address family, for
+ * longest-covering-prefix lookups. Uncompressed: a lookup walks at most
+ * prefix-length nodes, and inserting a prefix adds at most that many nodes,
+ * shared with every other prefix under the same covering prefixes.
+ */
+final class PrefixTrie<V> {
+
+    private final Node<V> ipv4 = new Node<>();
+    private final Node<V> ipv6 = new Node<>();
+
+    // Bumped on every insert, so callers can cache lookups until the trie changes
+    private volatile long version;
+
+    /**
+     * Store a value for a prefix ("address/length"); malformed prefixes are ignored
+     */
+    synchronized void put(String prefix, V value) {
+        Key key = Key.parse(prefix);
+        if (key == null) {
+            return;
+        }
+        Node<V> node = key.ipv6 ? ipv6 : ipv4;
+        for (int bit = 0; bit < key.length; bit++) {
+            if (key.bit(bit)) {
+                node = node.one != null ? node.one : (node.one = new Node<>());
+            } else {
+                node = node.zero != null ? node.zero : (node.zero = new Node<>());
+            }
+        }
+        node.value = value;
+        version++;
+    }
+
+    long version() {
+        return version;
+    }
+
+    /**
+     * Value of the most specific stored prefix that strictly covers the given one
+     */
+    synchronized V findCovering(String prefix) {
+        Key key = Key.parse(prefix);
+        if (key == null) {
+            return null;
+        }
+        Node<V> node = key.ipv6 ? ipv6 : ipv4;
+        V covering = null;
+        for (int bit = 0; bit < key.length && node != null; bit++) {
+            if (node.value != null) {
+                covering = node.value;
+            }
+            node = key.bit(bit) ? node.one : node.zero;
+        }
+        return covering;
+    }
+
+    private static final class Node<V> {
+        private Node<V> zero;
+        private Node<V> one;
+        private V value;
+    }
+
+    private static final class Key {
+        private final byte[] address;
+        private final int length;
+        private final boolean ipv6;
+
+        private Key(byte[] address, int length) {
+            this.address = address;
+            this.length = length;
+            this.ipv6 = address.length == 16;
+        }
+
+        boolean bit(int index) {
+            return (address[index >> 3] & (0x80 >> (index & 7))) != 0;
+        }
+
+        static Key parse(String prefix) {
+            if (prefix == null) {
+                return null;
+            }
+            int slash = prefix.indexOf('/');
+            try {
+                InetAddress address = InetAddresses.forString(slash < 0 ? prefix : prefix.substring(0, slash));
+                byte[] bytes = address.getAddress();
+                int length = slash < 0 ? bytes.length * 8 : Integer.parseInt(prefix.substring(slash + 1));
+                if (length < 0 || length > bytes.length * 8) {
+                    return null;
+                }
+                return new Key(bytes, length);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
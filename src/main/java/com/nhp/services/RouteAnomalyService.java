@@ -0,0 +1,140 @@
+package com.nhp.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.HistoryCursor;
+import com.nhp.dto.HistoryPage;
+import com.nhp.dto.RouteAnomaly;
+import com.nhp.repository.RouteAnomalyRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Second detection stage next to withdrawal tracking: checks every
+ * announcement's origin AS against what is expected for the prefix and its
+ * covering prefixes (see OriginMonitor). Runs inline on the update path and
+ * only touches memory unless an anomaly is raised; each anomaly is raised once
+ * per prefix and origin, so a persistent hijack does not write on every update.
+ */
+@Slf4j
+@Service
+public class RouteAnomalyService {
+
+    @Autowired
+    private RouteAnomalyRepository routeAnomalyRepository;
+
+    @Autowired
+    private OutageFeedService outageFeedService;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Value("${nhp.anomaly.enabled:true}")
+    private boolean enabled;
+
+    @Value("${nhp.anomaly.max-origins-per-prefix:8}")
+    private int maxOriginsPerPrefix;
+
+    @Value("${nhp.anomaly.learn-after:24h}")
+    private Duration learnAfter;
+
+    private OriginMonitor originMonitor;
+
+    @PostConstruct
+    public void init() {
+        originMonitor = new OriginMonitor(maxOriginsPerPrefix, learnAfter);
+        metricsService.registerGauge("ripe.anomaly.prefixes.tracked", "Prefixes with an origin profile",
+                originMonitor, OriginMonitor::getTrackedPrefixCount);
+    }
+
+    /**
+     * Inspect an announcement before the prefix state takes on its origin.
+     * previousOrigin is the origin last stored for the prefix, if any.
+     */
+    public void inspectAnnouncement(String prefix, String peer, String originAsn, String previousOrigin,
+            String asPath, Instant eventTime) {
+        if (!enabled) {
+            return;
+        }
+        Integer origin = parseAsn(originAsn);
+        if (origin == null || origin == 0) {
+            return; // AS_SET or empty path, nothing to compare
+        }
+
+        Instant time = eventTime != null ? eventTime : Instant.now();
+        for (OriginMonitor.Finding finding : originMonitor.announce(prefix, peer, origin, parseAsn(previousOrigin),
+                time)) {
+            record(finding, asPath, peer, time);
+        }
+    }
+
+    /**
+     * Account for a withdrawal, so origins no peer announces any more stop
+     * counting as visible
+     */
+    public void recordWithdrawal(String prefix, String peer) {
+        if (enabled) {
+            originMonitor.withdraw(prefix, peer);
+        }
+    }
+
+    /**
+     * Get route anomalies, newest first, optionally for one prefix
+     */
+    public HistoryPage<RouteAnomaly> getAnomalies(String prefix, int limit, Instant from, Instant to,
+            String cursor) {
+        HistoryQuery query = HistoryQuery.of(limit, from, to, cursor);
+        List<RouteAnomaly> rows = prefix == null
+                ? routeAnomalyRepository.findPage(query.getFrom(), query.getBeforeTs(), query.getBeforeId(),
+                        query.getLimit() + 1)
+                : routeAnomalyRepository.findPageByPrefix(PrefixNotation.normalize(prefix), query.getFrom(),
+                        query.getBeforeTs(), query.getBeforeId(), query.getLimit() + 1);
+        return HistoryPage.of(rows, query.getLimit(),
+                anomaly -> new HistoryCursor(anomaly.getTimestamp(), anomaly.getId()));
+    }
+
+    /**
+     * Save and publish an anomaly (also raised by the RPKI validation stage)
+     */
+    void record(OriginMonitor.Finding finding, String asPath, String peer, Instant eventTime) {
+        log.warn("Route anomaly {}: prefix={}, origin_asn={}, expected={}, covering={}",
+                finding.getType(), finding.getPrefix(), finding.getOrigin(), finding.getExpectedOrigins(),
+                finding.getCoveringPrefix());
+        metricsService.incrementRouteAnomalies(finding.getType());
+
+        RouteAnomaly anomaly = RouteAnomaly.builder()
+                .prefix(finding.getPrefix())
+                .timestamp(eventTime)
+                .detectedAt(Instant.now())
+                .anomalyType(finding.getType())
+                .originAsn(finding.getOrigin())
+                .expectedOrigins(finding.getExpectedOrigins().toArray(new Integer[0]))
+                .coveringPrefix(finding.getCoveringPrefix())
+                .asPath(asPath)
+                .peer(peer)
+                .build();
+        try {
+            outageFeedService.publishRouteAnomaly(routeAnomalyRepository.save(anomaly));
+        } catch (Exception e) {
+            log.error("Failed to record route anomaly for prefix {}", finding.getPrefix(), e);
+        }
+    }
+
+    private static Integer parseAsn(String asn) {
+        if (asn == null || asn.isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(asn);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.nhp.services;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.RpkiValidity;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * RPKI route origin validation of every announcement against VRPs loaded from
+ * a validator export (nhp.rpki.vrp-file, JSON or CSV). Lookups run inline on
+ * the update path against an immutable VrpTable; a changed file is loaded into
+ * a new table that replaces the old one in a single reference swap, so
+ * lookups never see a half-loaded set. An invalid origin is recorded as a
+ * route anomaly once per prefix and origin.
+ */
+@Slf4j
+@Service
+public class RpkiValidationService {
+
+    static final String RPKI_INVALID = "rpki_invalid";
+
+    @Autowired
+    private RouteAnomalyService routeAnomalyService;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Value("${nhp.rpki.enabled:true}")
+    private boolean enabled;
+
+    @Value("${nhp.rpki.vrp-file:}")
+    private String vrpFile;
+
+    private volatile VrpTable table = VrpTable.EMPTY;
+    private volatile Instant loadedAt;
+    private FileTime loadedModified;
+
+    // Origin last reported invalid per prefix, cleared once the prefix validates again
+    private final Map<String, Integer> invalidOrigins = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        metricsService.registerGauge("ripe.rpki.vrps", "VRPs loaded for route origin validation", this,
+                service -> service.table.getVrpCount());
+        if (enabled && !vrpFile.isEmpty()) {
+            reload();
+        }
+    }
+
+    /**
+     * Load the VRP file again if it has changed; a file that fails to load
+     * leaves the current table in place
+     */
+    @Scheduled(fixedRate = 60000, initialDelay = 60000)
+    public synchronized void reload() {
+        if (!enabled || vrpFile.isEmpty()) {
+            return;
+        }
+        Path path = Path.of(vrpFile);
+        try {
+            FileTime modified = Files.getLastModifiedTime(path);
+            if (modified.equals(loadedModified)) {
+                return;
+            }
+            long start = System.nanoTime();
+            VrpTable loaded = VrpTable.build(VrpTable.read(path));
+            table = loaded;
+            loadedModified = modified;
+            loadedAt = Instant.now();
+            log.info("Loaded {} VRPs from {} in {}ms ({} skipped, {} trie nodes)", loaded.getVrpCount(), path,
+                    (System.nanoTime() - start) / 1_000_000, loaded.getSkippedCount(), loaded.getNodeCount());
+        } catch (Exception e) {
+            log.error("Failed to load VRPs from {}, keeping the previous set", path, e);
+        }
+    }
+
+    /**
+     * Validate an announcement and return its state (valid, invalid or
+     * not-found), or null when no VRPs are loaded or the route has no usable
+     * origin
+     */
+    public String validate(String prefix, String originAsn, String asPath, String peer, Instant eventTime) {
+        VrpTable current = table;
+        if (!enabled || current.getVrpCount() == 0) {
+            return null;
+        }
+        Integer origin = parseAsn(originAsn);
+        if (origin == null) {
+            return null;
+        }
+        String status = current.validate(prefix, origin);
+        if (status == null) {
+            return null;
+        }
+        metricsService.incrementRpkiValidations(status);
+
+        if (VrpTable.INVALID.equals(status)) {
+            if (!Objects.equals(invalidOrigins.put(prefix, origin), origin)) {
+                record(current, prefix, origin, asPath, peer, eventTime);
+            }
+        } else if (!invalidOrigins.isEmpty()) {
+            invalidOrigins.remove(prefix);
+        }
+        return status;
+    }
+
+    /**
+     * Validation state of a prefix and origin, with the VRPs covering the prefix
+     */
+    public RpkiValidity check(String target, String originAsn) {
+        String prefix = PrefixNotation.normalize(target);
+        Integer origin = parseAsn(originAsn);
+        if (origin == null) {
+            throw new IllegalArgumentException("Invalid ASN: " + originAsn);
+        }
+        VrpTable current = table;
+        List<String> covering = current.covering(prefix).stream()
+                .map(vrp -> vrp.getPrefix() + "-" + vrp.getMaxLength() + " AS"
+                        + Integer.toUnsignedString(vrp.getAsn()))
+                .toList();
+        return RpkiValidity.builder()
+                .prefix(prefix)
+                .originAsn(Integer.toUnsignedLong(origin))
+                .status(current.getVrpCount() == 0 ? null : current.validate(prefix, origin))
+                .coveringVrps(covering)
+                .vrpCount(current.getVrpCount())
+                .loadedAt(loadedAt)
+                .build();
+    }
+
+    private void record(VrpTable current, String prefix, int origin, String asPath, String peer,
+            Instant eventTime) {
+        List<VrpTable.Vrp> covering = current.covering(prefix);
+        List<Integer> authorized = covering.stream().map(VrpTable.Vrp::getAsn).distinct().toList();
+        String coveringPrefix = covering.isEmpty() ? null : covering.get(covering.size() - 1).getPrefix();
+        routeAnomalyService.record(
+                new OriginMonitor.Finding(RPKI_INVALID, prefix, origin, authorized, coveringPrefix), asPath, peer,
+                eventTime != null ? eventTime : Instant.now());
+    }
+
+    /**
+     * Origin AS as its unsigned 32-bit pattern; null for AS_SETs and empty paths
+     */
+    private static Integer parseAsn(String asn) {
+        if (asn == null || asn.isEmpty()) {
+            return null;
+        }
+        try {
+            long number = Long.parseLong(asn);
+            return number > 0 && number <= 0xFFFFFFFFL ? (int) number : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.nhp.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.ClusterStatus;
+import com.nhp.stream.IngestLanes;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Prefix ownership when several instances share one Redis. Members heartbeat
+ * into a sorted set; each one computes the same rendezvous assignment of shard
+ * units (see ShardMap) from the live members, and processes a unit only while
+ * it holds that unit's lease. A unit changes hands only after the previous
+ * owner released its lease or stopped renewing it, so no two instances ever
+ * process the same prefix. ASN trackers follow the membership view.
+ *
+ * Disabled by default: a single instance owns everything.
+ */
+@Slf4j
+@Service
+public class ShardCoordinator {
+
+    private static final String MEMBERS_KEY = "nhp:cluster:members";
+    private static final String LEASE_KEY_PREFIX = "nhp:cluster:lease:";
+
+    // Lease TTLs are in milliseconds; below this a heartbeat round trip eats the margin
+    private static final Duration MIN_MEMBER_TIMEOUT = Duration.ofSeconds(3);
+
+    // Renew the leases we still hold, take the free ones; returns the indexes of held keys
+    @SuppressWarnings("unchecked")
+    private static final RedisScript<List<Object>> ACQUIRE_LEASES = new DefaultRedisScript<>(
+            "local held = {} "
+                    + "for i, key in ipairs(KEYS) do "
+                    + "  local owner = redis.call('GET', key) "
+                    + "  if owner == ARGV[1] then "
+                    + "    redis.call('PEXPIRE', key, ARGV[2]) held[#held + 1] = i - 1 "
+                    + "  elseif not owner then "
+                    + "    redis.call('SET', key, ARGV[1], 'PX', ARGV[2]) held[#held + 1] = i - 1 "
+                    + "  end "
+                    + "end "
+                    + "return held",
+            (Class<List<Object>>) (Class<?>) List.class);
+
+    private static final RedisScript<Long> RELEASE_LEASES = new DefaultRedisScript<>(
+            "local released = 0 "
+                    + "for _, key in ipairs(KEYS) do "
+                    + "  if redis.call('GET', key) == ARGV[1] then "
+                    + "    redis.call('DEL', key) released = released + 1 "
+                    + "  end "
+                    + "end "
+                    + "return released",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private IngestLanes ingestLanes;
+
+    @Value("${nhp.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${nhp.cluster.instance-id:}")
+    private String instanceId;
+
+    // Heartbeats run every third of it, so a lease survives two missed renewals
+    @Value("${nhp.cluster.member-timeout:15s}")
+    private Duration memberTimeout;
+
+    @Value("${nhp.stream.prefixes:8.8.8.0/24}")
+    private List<String> streamPrefixes;
+
+    private volatile ShardMap shardMap;
+    private volatile boolean[] ownedUnits = new boolean[ShardMap.UNIT_COUNT];
+    private volatile Instant lastHeartbeat;
+    private ScheduledFuture<?> heartbeats;
+
+    @PostConstruct
+    public void init() {
+        if (instanceId == null || instanceId.isBlank()) {
+            instanceId = UUID.randomUUID().toString();
+        }
+        if (enabled) {
+            if (memberTimeout.compareTo(MIN_MEMBER_TIMEOUT) < 0) {
+                throw new IllegalStateException("nhp.cluster.member-timeout must be at least " + MIN_MEMBER_TIMEOUT);
+            }
+            heartbeats = taskScheduler.scheduleAtFixedRate(this::heartbeat, getHeartbeatInterval());
+            metricsService.registerGauge("ripe.cluster.members", "Live cluster members seen by this instance",
+                    this, coordinator -> coordinator.getMembers().size());
+            metricsService.registerGauge("ripe.cluster.shards.owned", "Shard units held by this instance",
+                    this, ShardCoordinator::getOwnedUnitCount);
+            log.info("Cluster mode enabled, instance id {}, heartbeat every {}", instanceId, getHeartbeatInterval());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Whether this instance processes updates for a prefix
+     */
+    public boolean ownsPrefix(String prefix) {
+        return !enabled || ownedUnits[ShardMap.unitOf(prefix)];
+    }
+
+    /**
+     * Whether this instance correlates outages of an ASN
+     */
+    public boolean ownsAsn(Integer asn) {
+        if (!enabled) {
+            return true;
+        }
+        ShardMap map = shardMap;
+        return map != null && asn != null && instanceId.equals(map.ownerOf("asn:" + asn));
+    }
+
+    /**
+     * Prefixes to subscribe to on the RIS stream: the configured ones, cut down
+     * to the owned shard units in cluster mode
+     */
+    public List<String> getSubscription() {
+        if (!enabled) {
+            return List.copyOf(streamPrefixes);
+        }
+        boolean[] owned = ownedUnits;
+        return ShardMap.slice(streamPrefixes, unit -> owned[unit]);
+    }
+
+    /**
+     * A third of the member timeout
+     */
+    public Duration getHeartbeatInterval() {
+        return memberTimeout.dividedBy(3);
+    }
+
+    /**
+     * Refresh membership, then release, renew and acquire unit leases to match
+     * the current assignment; scheduled every heartbeat interval
+     */
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().add(MEMBERS_KEY, instanceId, now);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(MEMBERS_KEY, Double.NEGATIVE_INFINITY,
+                    now - memberTimeout.toMillis());
+            Set<String> members = stringRedisTemplate.opsForZSet().range(MEMBERS_KEY, 0, -1);
+            ShardMap map = new ShardMap(members != null ? members : Set.of(instanceId));
+
+            boolean[] kept = ownedUnits.clone();
+            List<Integer> assigned = new ArrayList<>();
+            List<String> surrendered = new ArrayList<>();
+            for (int unit = 0; unit < ShardMap.UNIT_COUNT; unit++) {
+                if (instanceId.equals(map.ownerOfUnit(unit))) {
+                    assigned.add(unit);
+                } else if (kept[unit]) {
+                    kept[unit] = false;
+                    surrendered.add(LEASE_KEY_PREFIX + unit);
+                }
+            }
+
+            // Let go before taking over, so that a handoff needs a single round. Stop
+            // processing the units and wait out the lane work already in flight first,
+            // or the next owner could take them while we still write their prefixes
+            if (!surrendered.isEmpty()) {
+                ownedUnits = kept;
+                ingestLanes.drain();
+                stringRedisTemplate.execute(RELEASE_LEASES, surrendered, instanceId);
+            }
+
+            boolean[] owned = new boolean[ShardMap.UNIT_COUNT];
+            if (!assigned.isEmpty()) {
+                List<String> keys = assigned.stream().map(unit -> LEASE_KEY_PREFIX + unit).toList();
+                List<Object> held = stringRedisTemplate.execute(ACQUIRE_LEASES, keys, instanceId,
+                        String.valueOf(memberTimeout.toMillis()));
+                if (held != null) {
+                    for (Object index : held) {
+                        owned[assigned.get(((Number) index).intValue())] = true;
+                    }
+                }
+            }
+
+            applyView(map, owned);
+            lastHeartbeat = Instant.now();
+        } catch (Exception e) {
+            log.error("Cluster heartbeat failed", e);
+            // Our leases lapse on their own; stop processing before another instance takes over
+            Instant last = lastHeartbeat;
+            if (last != null && Instant.now().isAfter(last.plus(memberTimeout.dividedBy(2)))) {
+                applyView(shardMap, new boolean[ShardMap.UNIT_COUNT]);
+            }
+        }
+    }
+
+    /**
+     * Leave the cluster on shutdown so that other members take over right away
+     */
+    @PreDestroy
+    public void leave() {
+        if (!enabled) {
+            return;
+        }
+        if (heartbeats != null) {
+            heartbeats.cancel(false);
+        }
+        try {
+            List<String> keys = new ArrayList<>();
+            boolean[] owned = ownedUnits;
+            for (int unit = 0; unit < owned.length; unit++) {
+                if (owned[unit]) {
+                    keys.add(LEASE_KEY_PREFIX + unit);
+                }
+            }
+            if (!keys.isEmpty()) {
+                stringRedisTemplate.execute(RELEASE_LEASES, keys, instanceId);
+            }
+            stringRedisTemplate.opsForZSet().remove(MEMBERS_KEY, instanceId);
+            log.info("Left cluster, released {} shard units", keys.size());
+        } catch (Exception e) {
+            log.warn("Failed to leave cluster cleanly: {}", e.getMessage());
+        }
+    }
+
+    private void applyView(ShardMap map, boolean[] owned) {
+        ShardMap previous = shardMap;
+        boolean membersChanged = previous == null || map == null || !previous.getMembers().equals(map.getMembers());
+        boolean unitsChanged = !Arrays.equals(ownedUnits, owned);
+        shardMap = map;
+        ownedUnits = owned;
+        if (membersChanged || unitsChanged) {
+            log.info("Cluster view changed: {} members, {} of {} shard units owned",
+                    map != null ? map.getMembers().size() : 0, getOwnedUnitCount(), ShardMap.UNIT_COUNT);
+            eventPublisher.publishEvent(new OwnershipChanged(getOwnedUnitCount(),
+                    map != null ? map.getMembers().size() : 0));
+        }
+    }
+
+    private int getOwnedUnitCount() {
+        int count = 0;
+        for (boolean owned : ownedUnits) {
+            if (owned) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<String> getMembers() {
+        ShardMap map = shardMap;
+        return map != null ? map.getMembers() : List.of();
+    }
+
+    public ClusterStatus getStatus() {
+        return ClusterStatus.builder()
+                .enabled(enabled)
+                .instanceId(instanceId)
+                .members(enabled ? getMembers() : List.of(instanceId))
+                .ownedShards(enabled ? getOwnedUnitCount() : ShardMap.UNIT_COUNT)
+                .totalShards(ShardMap.UNIT_COUNT)
+                .subscribedPrefixes(getSubscription())
+                .lastHeartbeat(lastHeartbeat)
+                .build();
+    }
+
+    /**
+     * Published after the members or the owned shard units change
+     */
+    @lombok.Value
+    public static class OwnershipChanged {
+        int ownedUnits;
+        int members;
+    }
+}
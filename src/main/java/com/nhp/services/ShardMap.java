@@ -0,0 +1,151 @@
+package com.nhp.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.net.InetAddresses;
+
+/**
+ * Assignment of prefixes to cluster members. The address space is cut into
+ * fixed shard units (IPv4 /8s, the /12s of 2000::/3, and one unit for the
+ * rest of IPv6), and every unit goes to the member with the highest
+ * rendezvous hash for it. Adding or removing a member therefore only moves
+ * the units that member gains or loses.
+ *
+ * Immutable; a new map is built whenever the membership changes.
+ */
+final class ShardMap {
+
+    static final int IPV4_UNITS = 256;
+    static final int IPV6_UNITS = 512;
+    static final int OTHER_UNIT = IPV4_UNITS + IPV6_UNITS;
+    static final int UNIT_COUNT = OTHER_UNIT + 1;
+
+    private static final int IPV4_UNIT_LENGTH = 8;
+    private static final int IPV6_UNIT_LENGTH = 12;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final List<String> members;
+    private final String[] unitOwners = new String[UNIT_COUNT];
+
+    ShardMap(Collection<String> members) {
+        this.members = List.copyOf(new TreeSet<>(members));
+        for (int unit = 0; unit < UNIT_COUNT; unit++) {
+            unitOwners[unit] = ownerOf("unit:" + unit);
+        }
+    }
+
+    List<String> getMembers() {
+        return members;
+    }
+
+    String ownerOfUnit(int unit) {
+        return unitOwners[unit];
+    }
+
+    /**
+     * Member with the highest rendezvous hash for an arbitrary key, e.g. an ASN
+     */
+    String ownerOf(String key) {
+        String owner = null;
+        long best = Long.MIN_VALUE;
+        for (String member : members) {
+            long score = HASH.hashString(member + '|' + key, StandardCharsets.UTF_8).asLong();
+            if (owner == null || score > best) {
+                owner = member;
+                best = score;
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * Shard unit of a prefix ("address/length"). Only looks at the first
+     * octet or hextet, so it is cheap enough for every update; anything
+     * unparseable lands in OTHER_UNIT.
+     */
+    static int unitOf(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return OTHER_UNIT;
+        }
+        try {
+            int colon = prefix.indexOf(':');
+            if (colon >= 0) {
+                int hextet = colon == 0 ? 0 : Integer.parseInt(prefix.substring(0, colon), 16);
+                return (hextet & 0xE000) == 0x2000 ? IPV4_UNITS + ((hextet >> 4) & 0x1FF) : OTHER_UNIT;
+            }
+            int dot = prefix.indexOf('.');
+            int octet = Integer.parseInt(dot < 0 ? prefix : prefix.substring(0, dot));
+            return octet >= 0 && octet < IPV4_UNITS ? octet : OTHER_UNIT;
+        } catch (NumberFormatException e) {
+            return OTHER_UNIT;
+        }
+    }
+
+    /**
+     * The prefix a unit covers, or null for OTHER_UNIT
+     */
+    static String unitPrefix(int unit) {
+        if (unit < IPV4_UNITS) {
+            return unit + ".0.0.0/" + IPV4_UNIT_LENGTH;
+        }
+        if (unit < OTHER_UNIT) {
+            return Integer.toHexString(0x2000 + ((unit - IPV4_UNITS) << 4)) + "::/" + IPV6_UNIT_LENGTH;
+        }
+        return null;
+    }
+
+    /**
+     * The part of a subscription that falls in owned units. Prefixes at least
+     * as specific as a unit are kept or dropped whole; shorter ones are split
+     * into the owned units they cover. A short IPv6 prefix reaching outside
+     * 2000::/3 is kept whole when OTHER_UNIT is owned.
+     */
+    static List<String> slice(Collection<String> prefixes, IntPredicate owned) {
+        Set<String> slice = new LinkedHashSet<>();
+        for (String prefix : prefixes) {
+            byte[] address;
+            int length;
+            try {
+                int slash = prefix.indexOf('/');
+                address = InetAddresses.forString(slash < 0 ? prefix : prefix.substring(0, slash)).getAddress();
+                length = slash < 0 ? address.length * 8 : Integer.parseInt(prefix.substring(slash + 1));
+            } catch (IllegalArgumentException e) {
+                continue; // Not a prefix, nothing to subscribe to
+            }
+
+            boolean ipv6 = address.length == 16;
+            int unitLength = ipv6 ? IPV6_UNIT_LENGTH : IPV4_UNIT_LENGTH;
+            if (length >= unitLength) {
+                if (owned.test(unitOf(prefix))) {
+                    slice.add(prefix);
+                }
+                continue;
+            }
+
+            // Compare the leading bits of the prefix with each unit of its family
+            int lead = ipv6 ? ((address[0] & 0xFF) << 8) | (address[1] & 0xFF) : address[0] & 0xFF;
+            int shift = (ipv6 ? 16 : 8) - length;
+            int first = ipv6 ? IPV4_UNITS : 0;
+            int last = ipv6 ? OTHER_UNIT : IPV4_UNITS;
+            for (int unit = first; unit < last; unit++) {
+                int unitLead = ipv6 ? 0x2000 + ((unit - IPV4_UNITS) << 4) : unit;
+                if (owned.test(unit) && (unitLead >> shift) == (lead >> shift)) {
+                    slice.add(unitPrefix(unit));
+                }
+            }
+            if (ipv6 && (length < 3 || unitOf(prefix) == OTHER_UNIT) && owned.test(OTHER_UNIT)) {
+                slice.add(prefix);
+            }
+        }
+        return List.copyOf(slice);
+    }
+}
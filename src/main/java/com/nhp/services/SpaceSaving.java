@@ -0,0 +1,138 @@
+package com.nhp.services;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving top-k counter (Metwally et al.): at most capacity keys are
+ * counted, and a key not yet counted takes over the slot of the smallest
+ * count, inheriting it as its possible overcount. Every key occurring more
+ * than total / capacity times is kept, and a kept key's count is at most
+ * its error above the truth. Slots form a min-heap by count with an index
+ * by key, so an offer is O(log capacity) and memory is fixed.
+ *
+ * Plain class with no Spring dependencies; not thread-safe.
+ */
+final class SpaceSaving {
+
+    /**
+     * A counted key; count - error is a lower bound on its true count
+     */
+    @lombok.Value
+    static class Entry {
+        String key;
+        long count;
+        long error;
+    }
+
+    private static final class Slot {
+        private String key;
+        private long count;
+        private long error;
+        private int position;
+    }
+
+    private final int capacity;
+    private final Slot[] heap;
+    private final Map<String, Slot> index;
+    private int size;
+    private long total;
+
+    SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.heap = new Slot[capacity];
+        this.index = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Count one occurrence of key
+     */
+    void offer(String key) {
+        total++;
+        Slot slot = index.get(key);
+        if (slot == null && size < capacity) {
+            slot = new Slot();
+            slot.key = key;
+            slot.count = 1;
+            index.put(key, slot);
+            siftUp(slot, size++);
+            return;
+        }
+        if (slot == null) {
+            // Evict the smallest count, whose count the newcomer may owe
+            slot = heap[0];
+            index.remove(slot.key);
+            slot.error = slot.count;
+            slot.key = key;
+            index.put(key, slot);
+        }
+        slot.count++;
+        siftDown(slot);
+    }
+
+    /**
+     * The n largest counts, largest first
+     */
+    List<Entry> top(int n) {
+        Slot[] slots = Arrays.copyOf(heap, size);
+        Arrays.sort(slots, Comparator.comparingLong((Slot slot) -> slot.count).reversed());
+        return Arrays.stream(slots, 0, Math.min(n, slots.length))
+                .map(slot -> new Entry(slot.key, slot.count, slot.error))
+                .toList();
+    }
+
+    /**
+     * Occurrences offered, counted or not
+     */
+    long getTotal() {
+        return total;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Place a new slot, starting at the given free position
+     */
+    private void siftUp(Slot slot, int at) {
+        while (at > 0) {
+            int parent = (at - 1) / 2;
+            if (heap[parent].count <= slot.count) {
+                break;
+            }
+            heap[at] = heap[parent];
+            heap[at].position = at;
+            at = parent;
+        }
+        heap[at] = slot;
+        slot.position = at;
+    }
+
+    /**
+     * A count only grows, so a slot only moves towards the leaves
+     */
+    private void siftDown(Slot slot) {
+        int at = slot.position;
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (heap[child].count >= slot.count) {
+                break;
+            }
+            heap[at] = heap[child];
+            heap[at].position = at;
+            at = child;
+        }
+        heap[at] = slot;
+        slot.position = at;
+    }
+}
@@ -0,0 +1,81 @@
+package com.nhp.services;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Startup warm-ups that read the database (registry rebuild, stats seeding,
+ * ASN tracker restore). By default they run inline during bean creation. With
+ * nhp.startup.deferred-warmup (fast-start profile) they run in registration
+ * order on a background thread once the context is up, so the stream connects
+ * without waiting for them; ingestion holds updates until they have finished.
+ */
+@Slf4j
+@Service
+public class StartupGate {
+
+    @Value("${nhp.startup.deferred-warmup:false}")
+    private boolean deferred;
+
+    private final Map<String, Runnable> warmups = new LinkedHashMap<>();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+    /**
+     * Run a warm-up now, or queue it when warm-ups are deferred
+     */
+    public synchronized void warmup(String name, Runnable task) {
+        if (!deferred || ready.isDone()) {
+            task.run();
+            return;
+        }
+        warmups.put(name, task);
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void onContextRefreshed() {
+        if (ready.isDone()) {
+            return;
+        }
+        if (!deferred) {
+            ready.complete(null);
+            return;
+        }
+        List<Map.Entry<String, Runnable>> queued = new ArrayList<>(warmups.entrySet());
+        warmups.clear();
+        Thread thread = new Thread(() -> {
+            for (Map.Entry<String, Runnable> warmup : queued) {
+                long start = System.nanoTime();
+                warmup.getValue().run();
+                log.info("Warm-up {} finished in {}ms", warmup.getKey(), (System.nanoTime() - start) / 1_000_000);
+            }
+            log.info("Startup warm-ups finished {}ms after JVM start, releasing ingestion",
+                    ManagementFactory.getRuntimeMXBean().getUptime());
+            ready.complete(null);
+        }, "startup-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    /**
+     * Completes once every warm-up has run
+     */
+    public Mono<Void> ready() {
+        return Mono.fromFuture(ready, true);
+    }
+}
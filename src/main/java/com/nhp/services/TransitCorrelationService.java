@@ -0,0 +1,437 @@
+package com.nhp.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.nhp.dto.HistoryCursor;
+import com.nhp.dto.HistoryPage;
+import com.nhp.dto.OutageEvent;
+import com.nhp.dto.OutageFeedEvent;
+import com.nhp.dto.TransitIncident;
+import com.nhp.repository.TransitIncidentRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Transit-level correlation next to the per-origin ASN correlation. Announced
+ * paths feed an AS adjacency graph (AsGraph). Each outage start is held in a
+ * sliding window with the transit hops of its last known path, the ASes
+ * between the RIS peer's AS and the origin. A transit incident is opened for
+ * the hop nearest the origins once enough distinct origins in the window lost
+ * reachability behind it, and once their next hops after it make up enough of
+ * its downstream neighbours in the graph. Later outages behind it join the
+ * incident. A prefix that recovers leaves the window. An incident closes
+ * once its prefixes have recovered, or after a quiet timeout like ASN
+ * outages, and is saved once the lock is released. In cluster mode every instance sees every outage
+ * through the relay; the owner of the transit ASN reports the incident.
+ */
+@Slf4j
+@Service
+public class TransitCorrelationService {
+
+    // Outages kept in the window at most, the oldest are dropped first
+    private static final int MAX_WINDOW = 50_000;
+
+    @Autowired
+    private TransitIncidentRepository transitIncidentRepository;
+
+    @Autowired
+    private OutageFeedService outageFeedService;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
+    @Value("${nhp.transit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${nhp.transit.window:2m}")
+    private Duration window;
+
+    @Value("${nhp.transit.min-origins:5}")
+    private int minOrigins;
+
+    @Value("${nhp.transit.min-downstream-share:0.1}")
+    private double minDownstreamShare;
+
+    @Value("${nhp.transit.timeout:10m}")
+    private Duration timeout;
+
+    @Value("${nhp.transit.max-edges:2000000}")
+    private int maxEdges;
+
+    @Value("${nhp.transit.edge-ttl:7d}")
+    private Duration edgeTtl;
+
+    private AsGraph graph;
+
+    // Recent outage starts not yet attributed to an incident by prefix, oldest
+    // first, and per transit ASN the origins and next hops behind them
+    private final Map<String, WindowedOutage> recent = new LinkedHashMap<>();
+    private final Map<Integer, Behind> behind = new HashMap<>();
+
+    private final Map<Integer, IncidentTracker> activeIncidents = new ConcurrentHashMap<>();
+    private final Map<String, Integer> incidentOfPrefix = new HashMap<>();
+
+    // Incidents opened by other cluster members, as relayed when they opened
+    private final Map<Integer, TransitIncident> relayedIncidents = new ConcurrentHashMap<>();
+
+    private final int[] hops = new int[AsGraph.MAX_HOPS];
+
+    @PostConstruct
+    public void init() {
+        graph = new AsGraph(maxEdges);
+        metricsService.registerGauge("ripe.asgraph.asns", "ASes in the AS adjacency graph", graph,
+                AsGraph::getAsnCount);
+        metricsService.registerGauge("ripe.asgraph.edges", "Adjacencies in the AS adjacency graph", graph,
+                AsGraph::getEdgeCount);
+        metricsService.registerGauge("ripe.transit.incidents.active", "Open transit incidents",
+                activeIncidents, Map::size);
+    }
+
+    /**
+     * Add an announced path to the AS graph. Bounded work, no allocation.
+     */
+    public void recordPath(String asPath, Instant eventTime) {
+        if (enabled && asPath != null && !asPath.isEmpty()) {
+            graph.addPath(asPath, minuteOf(eventTime != null ? eventTime : Instant.now()));
+        }
+    }
+
+    /**
+     * Add an outage start to the window, and join it to an open incident or
+     * open one if it completes a cluster behind a transit AS
+     */
+    public synchronized void processOutageEvent(OutageEvent event) {
+        if (!enabled || !"outage_start".equals(event.getEventType())) {
+            return;
+        }
+        int count = AsGraph.parsePath(event.getLastPath(), hops);
+        if (count < 3) {
+            return; // Peer AS and origin only, no transit hop
+        }
+        Instant time = event.getTimestamp() != null ? event.getTimestamp() : Instant.now();
+        expireWindow(time);
+
+        // Transit hops, nearest to the origin first
+        int[] transit = new int[count - 2];
+        for (int i = 0; i < transit.length; i++) {
+            transit[i] = hops[count - 2 - i];
+        }
+        WindowedOutage outage = new WindowedOutage(event.getPrefix(), hops[count - 1], transit, time);
+
+        for (int i = 0; i < transit.length; i++) {
+            IncidentTracker incident = activeIncidents.get(transit[i]);
+            if (incident != null) {
+                attach(incident, outage);
+                return;
+            }
+        }
+
+        addToWindow(outage);
+        for (int asn : transit) {
+            Behind cluster = behind.get(asn);
+            if (cluster.origins.size() < minOrigins) {
+                continue;
+            }
+            int downstreams = Math.max(cluster.nextHops.size(), graph.getDownstreamDegree(asn));
+            if (cluster.nextHops.size() < minDownstreamShare * downstreams) {
+                continue;
+            }
+            if (shardCoordinator.ownsAsn(asn)) {
+                openIncident(asn, downstreams);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Remove a recovered prefix from the window or from its incident, closing
+     * the incident once none of its prefixes is still down
+     */
+    public void processRecoveryEvent(OutageEvent event) {
+        if (!enabled || !"recovery".equals(event.getEventType())) {
+            return;
+        }
+        TransitIncident closed;
+        synchronized (this) {
+            WindowedOutage windowed = recent.get(event.getPrefix());
+            if (windowed != null) {
+                removeFromWindow(windowed);
+            }
+            Integer asn = incidentOfPrefix.remove(event.getPrefix());
+            IncidentTracker incident = asn != null ? activeIncidents.get(asn) : null;
+            if (incident == null) {
+                return;
+            }
+            incident.down.remove(event.getPrefix());
+            incident.lastActivity = Instant.now();
+            if (!incident.down.isEmpty()) {
+                return;
+            }
+            closed = closeIncident(incident, event.getTimestamp() != null ? event.getTimestamp() : Instant.now());
+        }
+        saveIncident(closed);
+    }
+
+    /**
+     * Track the incidents other cluster members open and close
+     */
+    public void applyRelayed(OutageFeedEvent event) {
+        if (OutageFeedService.TRANSIT_INCIDENT_OPEN.equals(event.getType())) {
+            relayedIncidents.put(event.getAsn(), TransitIncident.builder()
+                    .asn(event.getAsn())
+                    .startTime(event.getTimestamp())
+                    .prefixes(event.getPrefixes())
+                    .build());
+        } else if (OutageFeedService.TRANSIT_INCIDENT_CLOSE.equals(event.getType())) {
+            relayedIncidents.remove(event.getAsn());
+        }
+    }
+
+    /**
+     * Close incidents without new outages or recoveries for the timeout
+     */
+    @Scheduled(fixedRate = 60000)
+    public void closeTimedOutIncidents() {
+        Instant now = Instant.now();
+        List<TransitIncident> closed = new ArrayList<>();
+        synchronized (this) {
+            for (IncidentTracker incident : List.copyOf(activeIncidents.values())) {
+                if (now.isAfter(incident.lastActivity.plus(timeout))) {
+                    closed.add(closeIncident(incident, now));
+                }
+            }
+        }
+        closed.forEach(this::saveIncident);
+    }
+
+    /**
+     * Drop adjacencies not announced within the edge TTL
+     */
+    @Scheduled(fixedRate = 3600000, initialDelay = 3600000)
+    public void expireEdges() {
+        int expired = graph.expire(minuteOf(Instant.now().minus(edgeTtl)));
+        if (expired > 0) {
+            log.info("Expired {} AS adjacencies, {} left", expired, graph.getEdgeCount());
+        }
+    }
+
+    /**
+     * Open transit incidents, this instance's and those relayed from other
+     * cluster members, newest first
+     */
+    public List<TransitIncident> getActiveIncidents() {
+        List<TransitIncident> incidents = new ArrayList<>(relayedIncidents.values());
+        synchronized (this) {
+            for (IncidentTracker incident : activeIncidents.values()) {
+                incidents.add(incident.snapshot(null));
+            }
+        }
+        incidents.sort(Comparator.comparing(TransitIncident::getStartTime).reversed());
+        return incidents;
+    }
+
+    /**
+     * Get closed transit incidents, newest first, optionally for one transit ASN
+     */
+    public HistoryPage<TransitIncident> getIncidents(Integer asn, int limit, Instant from, Instant to,
+            String cursor) {
+        HistoryQuery query = HistoryQuery.of(limit, from, to, cursor);
+        List<TransitIncident> rows = asn == null
+                ? transitIncidentRepository.findPage(query.getFrom(), query.getBeforeTs(), query.getBeforeId(),
+                        query.getLimit() + 1)
+                : transitIncidentRepository.findPageByAsn(asn, query.getFrom(), query.getBeforeTs(),
+                        query.getBeforeId(), query.getLimit() + 1);
+        return HistoryPage.of(rows, query.getLimit(),
+                incident -> new HistoryCursor(incident.getStartTime(), incident.getId()));
+    }
+
+    private void openIncident(int asn, int downstreams) {
+        IncidentTracker incident = new IncidentTracker(asn, downstreams);
+        List<WindowedOutage> members = new ArrayList<>();
+        for (WindowedOutage outage : recent.values()) {
+            for (int hop : outage.transit) {
+                if (hop == asn) {
+                    members.add(outage);
+                    break;
+                }
+            }
+        }
+        incident.startTime = members.get(0).time;
+        for (WindowedOutage outage : members) {
+            removeFromWindow(outage);
+            attach(incident, outage);
+        }
+        activeIncidents.put(asn, incident);
+        metricsService.incrementTransitIncidents();
+        outageFeedService.publishTransitIncidentOpened(incident.snapshot(null));
+
+        log.warn("TRANSIT INCIDENT behind AS{}: {} prefixes from {} origins, {}/{} downstream neighbours",
+                Integer.toUnsignedString(asn), incident.down.size(), incident.origins.size(),
+                incident.nextHops.size(), downstreams);
+    }
+
+    private void attach(IncidentTracker incident, WindowedOutage outage) {
+        incident.prefixes.add(outage.prefix);
+        incident.down.add(outage.prefix);
+        incident.origins.add(outage.origin);
+        incident.nextHops.add(outage.nextHopAfter(incident.asn));
+        incident.lastActivity = Instant.now();
+        incidentOfPrefix.put(outage.prefix, incident.asn);
+    }
+
+    /**
+     * Close an incident in memory, returning it for saveIncident() once the
+     * lock is released
+     */
+    private TransitIncident closeIncident(IncidentTracker incident, Instant endTime) {
+        activeIncidents.remove(incident.asn);
+        for (String prefix : incident.prefixes) {
+            incidentOfPrefix.remove(prefix, incident.asn);
+        }
+        log.info("Closed transit incident behind AS{}: duration={}, prefixes={}",
+                Integer.toUnsignedString(incident.asn), Duration.between(incident.startTime, endTime),
+                incident.prefixes.size());
+        return incident.snapshot(endTime);
+    }
+
+    private void saveIncident(TransitIncident incident) {
+        try {
+            TransitIncident saved = transitIncidentRepository.save(incident);
+            outageFeedService.publishTransitIncidentClosed(saved);
+        } catch (Exception e) {
+            log.error("Failed to save transit incident behind AS{}", Integer.toUnsignedString(incident.getAsn()), e);
+        }
+    }
+
+    private void addToWindow(WindowedOutage outage) {
+        WindowedOutage previous = recent.get(outage.prefix);
+        if (previous != null) {
+            removeFromWindow(previous); // Started again without a recovery seen
+        } else if (recent.size() == MAX_WINDOW) {
+            removeFromWindow(oldest());
+        }
+        recent.put(outage.prefix, outage);
+        for (int hop : outage.transit) {
+            Behind cluster = behind.computeIfAbsent(hop, key -> new Behind());
+            cluster.origins.merge(outage.origin, 1, Integer::sum);
+            cluster.nextHops.merge(outage.nextHopAfter(hop), 1, Integer::sum);
+        }
+    }
+
+    private void removeFromWindow(WindowedOutage outage) {
+        recent.remove(outage.prefix);
+        for (int hop : outage.transit) {
+            Behind cluster = behind.get(hop);
+            decrement(cluster.origins, outage.origin);
+            decrement(cluster.nextHops, outage.nextHopAfter(hop));
+            if (cluster.origins.isEmpty()) {
+                behind.remove(hop);
+            }
+        }
+    }
+
+    private void expireWindow(Instant now) {
+        Instant cutoff = now.minus(window);
+        while (!recent.isEmpty() && oldest().time.isBefore(cutoff)) {
+            removeFromWindow(oldest());
+        }
+    }
+
+    private WindowedOutage oldest() {
+        return recent.values().iterator().next();
+    }
+
+    private static void decrement(Map<Integer, Integer> counts, int key) {
+        counts.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+    }
+
+    private static int minuteOf(Instant time) {
+        return (int) (time.getEpochSecond() / 60);
+    }
+
+    /**
+     * An outage start in the window: transit hops nearest to the origin first
+     */
+    private static final class WindowedOutage {
+        private final String prefix;
+        private final int origin;
+        private final int[] transit;
+        private final Instant time;
+
+        WindowedOutage(String prefix, int origin, int[] transit, Instant time) {
+            this.prefix = prefix;
+            this.origin = origin;
+            this.transit = transit;
+            this.time = time;
+        }
+
+        /**
+         * The AS after hop towards the origin
+         */
+        int nextHopAfter(int hop) {
+            for (int i = 1; i < transit.length; i++) {
+                if (transit[i] == hop) {
+                    return transit[i - 1];
+                }
+            }
+            return origin;
+        }
+    }
+
+    /**
+     * Origins and next hops behind a transit AS in the window, with the number
+     * of windowed outages for each
+     */
+    private static final class Behind {
+        private final Map<Integer, Integer> origins = new HashMap<>();
+        private final Map<Integer, Integer> nextHops = new HashMap<>();
+    }
+
+    private static final class IncidentTracker {
+        private final int asn;
+        private final int downstreams;
+        private final Set<String> prefixes = new LinkedHashSet<>();
+        private final Set<String> down = new LinkedHashSet<>();
+        private final Set<Integer> origins = new LinkedHashSet<>();
+        private final Set<Integer> nextHops = new LinkedHashSet<>();
+        private Instant startTime;
+        private Instant lastActivity;
+
+        IncidentTracker(int asn, int downstreams) {
+            this.asn = asn;
+            this.downstreams = downstreams;
+        }
+
+        TransitIncident snapshot(Instant endTime) {
+            return TransitIncident.builder()
+                    .asn(asn)
+                    .startTime(startTime)
+                    .endTime(endTime)
+                    .prefixes(prefixes.toArray(new String[0]))
+                    .originAsns(origins.toArray(new Integer[0]))
+                    .affectedDownstreams(nextHops.size())
+                    .downstreamAsns(Math.max(downstreams, nextHops.size()))
+                    .createdAt(Instant.now())
+                    .build();
+        }
+    }
+}
@@ -2,17 +2,24 @@ package com.nhp.services;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nhp.dto.BgpUpdateMessage;
+import com.nhp.dto.OutageEvent;
 import com.nhp.dto.PrefixState;
+import com.nhp.stream.IngestLanes;
 
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -31,6 +38,34 @@ public class UpdateProcessor {
     @Autowired
     private AsnOutageService asnOutageService;
 
+    @Autowired
+    private PeerHealthService peerHealthService;
+
+    @Autowired
+    private FlapDampingService flapDampingService;
+
+    @Autowired
+    private OutageDetectionEngine detectionEngine;
+
+    @Autowired
+    private RouteAnomalyService routeAnomalyService;
+
+    @Autowired
+    private RpkiValidationService rpkiValidationService;
+
+    @Autowired
+    private TransitCorrelationService transitCorrelationService;
+
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
+    @Autowired
+    private HeavyHitterService heavyHitterService;
+
+    // Sweeps take the prefix's lane, so they never race its updates
+    @Autowired
+    private IngestLanes ingestLanes;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     // In-memory cache for active prefix states to reduce Redis calls
@@ -39,31 +74,88 @@ public class UpdateProcessor {
     // TTL for prefix state in Redis (24 hours)
     private static final Duration PREFIX_TTL = Duration.ofHours(24);
 
+    @PostConstruct
+    public void registerGauges() {
+        metricsService.registerGauge("ripe.prefix.state.cache.size", "Prefix states held in the local cache",
+                prefixStateCache, ConcurrentHashMap::size);
+    }
+
     /**
      * Process incoming BGP UPDATE message
      */
     public void processBgpUpdate(String message) {
+        BgpUpdateMessage bgpUpdate = parse(message);
+        if (bgpUpdate != null) {
+            process(bgpUpdate);
+        }
+    }
+
+    /**
+     * Parse a raw RIS message; null if it is not an update or peer state
+     * message. CPU only, so it can run on the event loop.
+     */
+    public BgpUpdateMessage parse(String message) {
+        metricsService.recordBgpMessageSize(message.length());
+        Timer.Sample parse = metricsService.startTimer();
+        PipelineEvents.MessageParse parseEvent = new PipelineEvents.MessageParse();
+        parseEvent.begin();
+        BgpUpdateMessage bgpUpdate = parseBgpMessage(message);
+        parseEvent.end();
+        metricsService.recordParse(parse);
+        if (parseEvent.shouldCommit()) {
+            parseEvent.size = message.length();
+            if (bgpUpdate != null) {
+                parseEvent.prefix = bgpUpdate.getPrefix();
+                parseEvent.originAsn = bgpUpdate.getOriginAsn();
+            }
+            parseEvent.commit();
+        }
+        if (bgpUpdate != null && bgpUpdate.getTimestamp() != null) {
+            metricsService.recordIngestLag(Duration.between(bgpUpdate.getTimestamp(), Instant.now()));
+        }
+        return bgpUpdate;
+    }
+
+    /**
+     * Apply a parsed update. Blocks on Redis and the database; updates for the
+     * same prefix must not be processed concurrently.
+     */
+    public void process(BgpUpdateMessage bgpUpdate) {
         try {
-            BgpUpdateMessage bgpUpdate = parseBgpMessage(message);
-            if (bgpUpdate == null) {
+            if (bgpUpdate.getPeerState() != null) {
+                peerHealthService.recordPeerState(bgpUpdate.getCollector(), bgpUpdate.getHost(),
+                        bgpUpdate.getPeerState(), Instant.now());
+                metricsService.incrementBgpMessagesProcessed();
                 return;
             }
 
             String prefix = bgpUpdate.getPrefix();
+            if (!shardCoordinator.ownsPrefix(prefix)) {
+                // Another instance owns this shard (only seen around a handoff)
+                metricsService.incrementClusterUpdatesSkipped();
+                return;
+            }
             String collector = bgpUpdate.getCollector();
             String originAsn = bgpUpdate.getOriginAsn();
             String asPath = bgpUpdate.getAsPath();
 
+            // An AS_SET or 4-byte origin beyond the ASN column is an unknown origin;
+            // skipped before any prefix state changes, so no transition is half applied
+            if (bgpUpdate.isAnnouncement() && OutageEventService.parseOriginAsn(originAsn) == null) {
+                metricsService.incrementUnusableOrigins();
+                return;
+            }
+
             if (bgpUpdate.isAnnouncement()) {
-                processAnnouncement(prefix, collector, originAsn, asPath);
+                processAnnouncement(prefix, collector, bgpUpdate.getHost(), originAsn, asPath, bgpUpdate.getTimestamp());
             } else if (bgpUpdate.isWithdrawal()) {
-                processWithdrawal(prefix, collector, originAsn, asPath);
+                processWithdrawal(prefix, collector, originAsn, asPath, bgpUpdate.getTimestamp());
             }
 
             metricsService.incrementBgpMessagesProcessed();
 
         } catch (Exception e) {
-            log.error("Error processing BGP update: {}", message, e);
+            log.error("Error processing BGP update: {}", bgpUpdate, e);
             metricsService.incrementBgpProcessingErrors();
         }
     }
@@ -71,64 +163,58 @@ public class UpdateProcessor {
     /**
      * Process BGP announcement - prefix is being advertised
      */
-    private void processAnnouncement(String prefix, String collector, String originAsn, String asPath) {
+    private void processAnnouncement(String prefix, String collector, String host, String originAsn,
+            String asPath, Instant messageTime) {
         String redisKey = "prefix:" + prefix;
 
         PrefixState state = getOrCreatePrefixState(redisKey);
-        boolean wasWithdrawn = state.isWithdrawn();
+
+        // Check the origin against what is expected before it is overwritten
+        routeAnomalyService.inspectAnnouncement(prefix, collector, originAsn, state.getOriginAsn(), asPath,
+                messageTime);
+        state.setRpkiStatus(rpkiValidationService.validate(prefix, originAsn, asPath, collector, messageTime));
+        if (!asPath.equals(state.getLastPath())) {
+            transitCorrelationService.recordPath(asPath, messageTime);
+        }
 
         // Add collector to visibility set
-        state.getVisibleCollectors().add(collector);
+        state.addVisiblePeer(collector, host);
         state.setOriginAsn(originAsn);
         state.setLastPath(asPath);
         state.setLastSeen(Instant.now());
-        state.setWithdrawn(false);
+        heavyHitterService.recordUpdate(prefix, originAsn);
+
+        evaluate(prefix, state, messageTime);
 
         // Update Redis
         savePrefixState(redisKey, state);
 
         log.debug("Announcement: prefix={}, collector={}, origin_asn={}", prefix, collector, originAsn);
-
-        // If prefix was previously withdrawn, this is a recovery
-        if (wasWithdrawn) {
-            log.info("RECOVERY detected: prefix={}, origin_asn={}", prefix, originAsn);
-            outageEventService.recordRecovery(prefix, originAsn, asPath, state.getWithdrawnBy());
-            metricsService.incrementPrefixRecoveries();
-
-            // Process recovery for ASN correlation
-            asnOutageService.processRecoveryEvent(
-                    outageEventService.createRecoveryEvent(prefix, originAsn, asPath, state.getWithdrawnBy()));
-        }
     }
 
     /**
      * Process BGP withdrawal - prefix is being withdrawn
      */
-    private void processWithdrawal(String prefix, String collector, String originAsn, String asPath) {
+    private void processWithdrawal(String prefix, String collector, String originAsn, String asPath,
+            Instant messageTime) {
+        // Withdrawals from a peer whose session is down are not a reachability signal
+        if (!peerHealthService.acceptWithdrawal(collector, Instant.now())) {
+            log.debug("Withdrawal of {} from down peer {} suppressed", prefix, collector);
+            return;
+        }
+
         String redisKey = "prefix:" + prefix;
 
         PrefixState state = getOrCreatePrefixState(redisKey);
 
         // Remove collector from visibility set
-        state.getVisibleCollectors().remove(collector);
+        state.removeVisiblePeer(collector);
+        routeAnomalyService.recordWithdrawal(prefix, collector);
         state.getWithdrawnBy().add(collector);
         state.setLastSeen(Instant.now());
+        heavyHitterService.recordUpdate(prefix, state.getOriginAsn());
 
-        // Check if prefix is now globally withdrawn
-        if (state.getVisibleCollectors().isEmpty()) {
-            state.setWithdrawn(true);
-            log.info("OUTAGE detected: prefix={}, origin_asn={}, withdrawn_by={}",
-                    prefix, originAsn, state.getWithdrawnBy());
-
-            // Record outage event
-            outageEventService.recordOutageStart(prefix, originAsn, state.getLastPath(), state.getWithdrawnBy());
-            metricsService.incrementPrefixOutages();
-
-            // Process outage for ASN correlation
-            asnOutageService.processOutageEvent(
-                    outageEventService.createOutageStartEvent(prefix, originAsn, state.getLastPath(),
-                            state.getWithdrawnBy()));
-        }
+        evaluate(prefix, state, messageTime);
 
         // Update Redis
         savePrefixState(redisKey, state);
@@ -136,27 +222,235 @@ public class UpdateProcessor {
         log.debug("Withdrawal: prefix={}, collector={}, origin_asn={}", prefix, collector, originAsn);
     }
 
+    /**
+     * Run the detection policy over the updated visibility and apply any
+     * resulting transition, subject to flap damping
+     */
+    private void evaluate(String prefix, PrefixState state, Instant messageTime) {
+        // Never seen announced, so there is no reachability to lose; states saved
+        // with an unusable origin before those were skipped are left alone too
+        if (OutageEventService.parseOriginAsn(state.getOriginAsn()) == null) {
+            return;
+        }
+
+        PipelineEvents.OutageDetection detectionEvent = new PipelineEvents.OutageDetection();
+        detectionEvent.begin();
+        OutageDetectionEngine.Decision decision = detectionEngine.evaluate(prefix, state, messageTime,
+                Instant.now());
+        detectionEvent.end();
+        if (detectionEvent.shouldCommit()) {
+            detectionEvent.prefix = prefix;
+            detectionEvent.originAsn = state.getOriginAsn();
+            detectionEvent.transition = decision.getTransition().name();
+            detectionEvent.commit();
+        }
+        if (decision.getTransition() == OutageDetectionEngine.Transition.NONE) {
+            return;
+        }
+
+        boolean outage = decision.getTransition() == OutageDetectionEngine.Transition.OUTAGE;
+        state.setWithdrawn(outage);
+        if (outage) {
+            heavyHitterService.recordOutage(prefix, state.getOriginAsn());
+        }
+
+        if (!flapDampingService.recordTransition(prefix, outage, decision.getEventTime())) {
+            log.debug("{} of flapping prefix {} damped", outage ? "Outage" : "Recovery", prefix);
+            return;
+        }
+        if (outage) {
+            reportOutage(prefix, state.getOriginAsn(), state.getLastPath(), state.getWithdrawnBy(),
+                    decision.getEventTime());
+        } else {
+            reportRecovery(prefix, state.getOriginAsn(), state.getLastPath(), state.getWithdrawnBy(),
+                    decision.getEventTime());
+        }
+        recordDetectionLatency(decision.getEventTime());
+    }
+
+    /**
+     * Apply transitions whose hold-down expired without a further update, each
+     * in its prefix's lane
+     */
+    @Scheduled(fixedRate = 1000)
+    public void applyExpiredHoldDowns() {
+        for (String prefix : detectionEngine.duePrefixes(Instant.now())) {
+            if (!shardCoordinator.ownsPrefix(prefix)) {
+                continue; // Handed off; the new owner re-evaluates on its next update
+            }
+            ingestLanes.run(prefix, () -> {
+                // Checked again in the lane: a handoff drains the lanes after it stops owning
+                if (shardCoordinator.ownsPrefix(prefix)) {
+                    applyExpiredHoldDown(prefix);
+                }
+            });
+        }
+    }
+
+    private void applyExpiredHoldDown(String prefix) {
+        String redisKey = "prefix:" + prefix;
+        try {
+            PrefixState state = getOrCreatePrefixState(redisKey);
+            boolean withdrawn = state.isWithdrawn();
+            evaluate(prefix, state, null);
+            if (state.isWithdrawn() != withdrawn) {
+                savePrefixState(redisKey, state);
+            }
+        } catch (Exception e) {
+            log.error("Failed to apply hold-down for prefix {}", prefix, e);
+        }
+    }
+
+    /**
+     * Record an outage start and feed it to the registry and ASN correlation
+     */
+    private void reportOutage(String prefix, String originAsn, String lastPath, Set<String> withdrawnBy,
+            Instant eventTime) {
+        log.info("OUTAGE detected: prefix={}, origin_asn={}, withdrawn_by={}", prefix, originAsn, withdrawnBy);
+
+        // Record outage event, which also opens it in the registry
+        OutageEvent outage = outageEventService.recordOutageStart(prefix, originAsn, lastPath, withdrawnBy,
+                eventTime);
+        metricsService.incrementPrefixOutages();
+
+        // Process outage for ASN correlation
+        Timer.Sample correlation = metricsService.startTimer();
+        PipelineEvents.AsnCorrelation correlationEvent = new PipelineEvents.AsnCorrelation();
+        correlationEvent.begin();
+        asnOutageService.processOutageEvent(outage);
+        transitCorrelationService.processOutageEvent(outage);
+        metricsService.recordAsnCorrelation(correlation);
+        commitCorrelation(correlationEvent, prefix, originAsn, outage.getEventType());
+    }
+
+    /**
+     * Record a recovery and feed it to the registry and ASN correlation
+     */
+    private void reportRecovery(String prefix, String originAsn, String asPath, Set<String> withdrawnBy,
+            Instant eventTime) {
+        log.info("RECOVERY detected: prefix={}, origin_asn={}", prefix, originAsn);
+        OutageEvent recovery = outageEventService.recordRecovery(prefix, originAsn, asPath, withdrawnBy, eventTime);
+        metricsService.incrementPrefixRecoveries();
+
+        // Process recovery for ASN correlation
+        Timer.Sample correlation = metricsService.startTimer();
+        PipelineEvents.AsnCorrelation correlationEvent = new PipelineEvents.AsnCorrelation();
+        correlationEvent.begin();
+        asnOutageService.processRecoveryEvent(recovery);
+        transitCorrelationService.processRecoveryEvent(recovery);
+        metricsService.recordAsnCorrelation(correlation);
+        commitCorrelation(correlationEvent, prefix, originAsn, recovery.getEventType());
+    }
+
+    private static void commitCorrelation(PipelineEvents.AsnCorrelation correlationEvent, String prefix,
+            String originAsn, String eventType) {
+        correlationEvent.end();
+        if (correlationEvent.shouldCommit()) {
+            correlationEvent.prefix = prefix;
+            correlationEvent.originAsn = originAsn;
+            correlationEvent.eventType = eventType;
+            correlationEvent.commit();
+        }
+    }
+
+    /**
+     * Report changes held back by flap damping once their prefixes stabilise,
+     * each released and reported in its prefix's lane
+     */
+    @Scheduled(fixedRate = 30000)
+    public void releaseDampedPrefixes() {
+        for (String prefix : flapDampingService.reusablePrefixes()) {
+            if (!shardCoordinator.ownsPrefix(prefix)) {
+                flapDampingService.release(prefix); // Handed off; the new owner reports its state
+                continue;
+            }
+            ingestLanes.run(prefix, () -> {
+                if (shardCoordinator.ownsPrefix(prefix)) {
+                    releaseDampedPrefix(prefix);
+                } else {
+                    flapDampingService.release(prefix);
+                }
+            });
+        }
+    }
+
+    private void releaseDampedPrefix(String prefix) {
+        try {
+            FlapDampingService.ReleasedTransition released = flapDampingService.release(prefix);
+            if (released == null) {
+                return;
+            }
+            PrefixState state = getOrCreatePrefixState("prefix:" + prefix);
+            if (state.getOriginAsn() == null) {
+                return;
+            }
+            if (released.isWithdrawn()) {
+                reportOutage(prefix, state.getOriginAsn(), state.getLastPath(), state.getWithdrawnBy(),
+                        released.getEventTime());
+            } else {
+                reportRecovery(prefix, state.getOriginAsn(), state.getLastPath(), state.getWithdrawnBy(),
+                        released.getEventTime());
+            }
+        } catch (Exception e) {
+            log.error("Failed to report released prefix {}", prefix, e);
+        }
+    }
+
+    /**
+     * Evict cached states of prefixes handed to another instance. Their new
+     * owner reads them from Redis, where every update is written through.
+     */
+    @EventListener
+    public void onOwnershipChanged(ShardCoordinator.OwnershipChanged event) {
+        int before = prefixStateCache.size();
+        prefixStateCache.keySet().removeIf(key -> !shardCoordinator.ownsPrefix(key.substring("prefix:".length())));
+        if (prefixStateCache.size() < before) {
+            log.info("Evicted {} cached prefix states after shard handoff", before - prefixStateCache.size());
+        }
+    }
+
     /**
      * Get or create prefix state from Redis/cache
      */
     private PrefixState getOrCreatePrefixState(String redisKey) {
+        Timer.Sample lookup = metricsService.startTimer();
+        PipelineEvents.StateLookup lookupEvent = new PipelineEvents.StateLookup();
+        lookupEvent.begin();
+
         // Check cache first
         PrefixState cached = prefixStateCache.get(redisKey);
         if (cached != null) {
+            metricsService.recordStateLookup(lookup, true);
+            commitLookup(lookupEvent, redisKey, true);
             return cached;
         }
 
         // Try to get from Redis
+        Timer.Sample read = metricsService.startTimer();
         PrefixState state = (PrefixState) redisTemplate.opsForValue().get(redisKey);
+        metricsService.recordRedisRead(read);
         if (state == null) {
             state = new PrefixState();
+        } else {
+            state.reconcileCounts();
         }
 
         // Cache the state
         prefixStateCache.put(redisKey, state);
+        metricsService.recordStateLookup(lookup, false);
+        commitLookup(lookupEvent, redisKey, false);
         return state;
     }
 
+    private static void commitLookup(PipelineEvents.StateLookup lookupEvent, String redisKey, boolean cacheHit) {
+        lookupEvent.end();
+        if (lookupEvent.shouldCommit()) {
+            lookupEvent.prefix = redisKey.substring("prefix:".length());
+            lookupEvent.cacheHit = cacheHit;
+            lookupEvent.commit();
+        }
+    }
+
     /**
      * Save prefix state to Redis and cache
      */
@@ -165,7 +459,18 @@ public class UpdateProcessor {
         prefixStateCache.put(redisKey, state);
 
         // Save to Redis with TTL
+        Timer.Sample write = metricsService.startTimer();
         redisTemplate.opsForValue().set(redisKey, state, PREFIX_TTL);
+        metricsService.recordRedisWrite(write);
+    }
+
+    /**
+     * Record the lag between the RIS message that triggered a detection and now
+     */
+    private void recordDetectionLatency(Instant messageTime) {
+        if (messageTime != null) {
+            metricsService.recordDetectionLatency(Duration.between(messageTime, Instant.now()));
+        }
     }
 
     /**
@@ -185,10 +490,20 @@ public class UpdateProcessor {
                 return null;
             }
 
+            if ("RIS_PEER_STATE".equals(data.path("type").asText())) {
+                return BgpUpdateMessage.builder()
+                        .collector(data.path("peer").asText())
+                        .host(data.path("host").asText())
+                        .peerState(data.path("state").asText())
+                        .timestamp(parseTimestamp(data.path("timestamp")))
+                        .build();
+            }
+
             String prefix = data.path("prefix").asText();
             String collector = data.path("peer").asText();
-            String originAsn = extractOriginAsn(data.path("path").asText());
-            String asPath = data.path("path").asText();
+            String asPath = formatPath(data.path("path"));
+            String originAsn = extractOriginAsn(asPath);
+            Instant timestamp = parseTimestamp(data.path("timestamp"));
 
             // Determine if this is an announcement or withdrawal
             boolean isAnnouncement = data.has("announcements") && !data.path("announcements").isEmpty();
@@ -201,6 +516,8 @@ public class UpdateProcessor {
                     .asPath(asPath)
                     .announcement(isAnnouncement)
                     .withdrawal(isWithdrawal)
+                    .timestamp(timestamp)
+                    .host(data.path("host").asText())
                     .build();
 
         } catch (Exception e) {
@@ -209,6 +526,44 @@ public class UpdateProcessor {
         }
     }
 
+    /**
+     * Parse the RIS timestamp (fractional epoch seconds)
+     */
+    private Instant parseTimestamp(JsonNode timestamp) {
+        if (!timestamp.isNumber()) {
+            return null;
+        }
+        double seconds = timestamp.asDouble();
+        long whole = (long) seconds;
+        return Instant.ofEpochSecond(whole, (long) ((seconds - whole) * 1_000_000_000L));
+    }
+
+    /**
+     * Render the RIS path array as a space-separated AS path; AS_SETs (nested
+     * arrays) become {a,b}
+     */
+    private String formatPath(JsonNode path) {
+        if (!path.isArray()) {
+            return path.asText();
+        }
+        StringBuilder text = new StringBuilder();
+        for (JsonNode hop : path) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            if (hop.isArray()) {
+                text.append('{');
+                for (int i = 0; i < hop.size(); i++) {
+                    text.append(i > 0 ? "," : "").append(hop.get(i).asText());
+                }
+                text.append('}');
+            } else {
+                text.append(hop.asText());
+            }
+        }
+        return text.toString();
+    }
+
     /**
      * Extract origin ASN from AS path
      */
@@ -0,0 +1,626 @@
+package com.nhp.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.net.InetAddresses;
+
+/**
+ * Validated ROA payloads (VRPs) in an immutable, path-compressed binary trie
+ * for route origin validation (RFC 6811). Only nodes that carry VRPs or branch
+ * are kept, each as four longs in one flat array (key bits, child links, depth
+ * and VRP range), so a lookup takes one step per covering VRP prefix or branch
+ * point rather than per bit, and each step reads one cache line. IPv4 lookups
+ * of /16 or longer start from a jump table indexed by the first 16 bits, which
+ * holds the VRPs down to /16 for that slot and the node to continue from, and
+ * allocate nothing. Reloading means building a new table and swapping the
+ * reference.
+ *
+ * Plain class with no Spring dependencies so that it can be benchmarked in
+ * isolation (see the rpkiBenchmark task).
+ */
+final class VrpTable {
+
+    static final String VALID = "valid";
+    static final String INVALID = "invalid";
+    static final String NOT_FOUND = "not-found";
+
+    static final VrpTable EMPTY = build(List.of());
+
+    private static final int IPV4_ROOT = 0;
+    private static final int IPV6_ROOT = 1;
+
+    // Node n is nodes[4n .. 4n + 3]: key high bits, key low bits,
+    // zero child << 32 | one child (0 if none), depth << 56 | VRP count << 32 | first VRP
+    private static final int NODE_LONGS = 4;
+
+    private static final int JUMP_BITS = 16;
+
+    private final long[] nodes;
+    private final int nodeCount;
+    private final int[] vrpAsn;
+    private final byte[] vrpMaxLength;
+    private final int skipped;
+
+    // Per IPv4 /16: deepest node down to /16 on its path, and the VRPs of that path
+    private final int[] jumpNode;
+    private final int[] jumpOffset;
+    private final int[] jumpAsn;
+    private final byte[] jumpMaxLength;
+
+    /**
+     * One ROA payload: origin AS, prefix and maximum length
+     */
+    @lombok.Value
+    static class Vrp {
+        int asn;
+        String prefix;
+        int maxLength;
+    }
+
+    private VrpTable(long[] nodes, int nodeCount, int[] vrpAsn, byte[] vrpMaxLength, int skipped) {
+        this.nodes = nodes;
+        this.nodeCount = nodeCount;
+        this.vrpAsn = vrpAsn;
+        this.vrpMaxLength = vrpMaxLength;
+        this.skipped = skipped;
+
+        this.jumpNode = new int[1 << JUMP_BITS];
+        this.jumpOffset = new int[(1 << JUMP_BITS) + 1];
+        int[] asns = new int[1024];
+        byte[] maxLengths = new byte[1024];
+        int count = 0;
+        for (int slot = 0; slot < 1 << JUMP_BITS; slot++) {
+            long high = (long) slot << (64 - JUMP_BITS);
+            int node = IPV4_ROOT;
+            while (true) {
+                int base = node * NODE_LONGS;
+                int first = (int) nodes[base + 3];
+                int end = first + ((int) (nodes[base + 3] >>> 32) & 0xFFFFFF);
+                if (count + end - first > asns.length) {
+                    asns = Arrays.copyOf(asns, Math.max(asns.length * 2, count + end - first));
+                    maxLengths = Arrays.copyOf(maxLengths, asns.length);
+                }
+                for (int vrp = first; vrp < end; vrp++) {
+                    asns[count] = vrpAsn[vrp];
+                    maxLengths[count++] = vrpMaxLength[vrp];
+                }
+                jumpNode[slot] = node;
+                int child = child(node, high, 0);
+                if (child == 0) {
+                    break;
+                }
+                int depth = (int) (nodes[child * NODE_LONGS + 3] >>> 56);
+                if (depth > JUMP_BITS || !keyMatches(high, 0, nodes[child * NODE_LONGS], 0, depth)) {
+                    break;
+                }
+                node = child;
+            }
+            jumpOffset[slot + 1] = count;
+        }
+        this.jumpAsn = Arrays.copyOf(asns, count);
+        this.jumpMaxLength = Arrays.copyOf(maxLengths, count);
+    }
+
+    /**
+     * Build a table; malformed VRPs (and max lengths shorter than the prefix)
+     * are skipped and counted
+     */
+    static VrpTable build(List<Vrp> vrps) {
+        // A plain binary trie first, one node per bit
+        int[] children = new int[Math.max(64, vrps.size() * 8)];
+        int plainNodes = 2; // Both roots
+        int[] nodeOf = new int[vrps.size()];
+        int skipped = 0;
+
+        for (int i = 0; i < vrps.size(); i++) {
+            Vrp vrp = vrps.get(i);
+            long[] key = parse(vrp.getPrefix());
+            if (key == null || vrp.getMaxLength() < key[2] || vrp.getMaxLength() > (key[3] == 6 ? 128 : 32)) {
+                nodeOf[i] = -1;
+                skipped++;
+                continue;
+            }
+            int node = key[3] == 6 ? IPV6_ROOT : IPV4_ROOT;
+            for (int bit = 0; bit < key[2]; bit++) {
+                int slot = 2 * node + bit(key[0], key[1], bit);
+                if (children[slot] == 0) {
+                    if (2 * plainNodes + 2 > children.length) {
+                        children = Arrays.copyOf(children, children.length * 2);
+                    }
+                    children[slot] = plainNodes++;
+                }
+                node = children[slot];
+            }
+            nodeOf[i] = node;
+        }
+
+        // Group VRPs by node (counting sort)
+        int[] vrpOffset = new int[plainNodes + 1];
+        for (int node : nodeOf) {
+            if (node >= 0) {
+                vrpOffset[node + 1]++;
+            }
+        }
+        for (int node = 0; node < plainNodes; node++) {
+            vrpOffset[node + 1] += vrpOffset[node];
+        }
+        int[] next = Arrays.copyOf(vrpOffset, plainNodes);
+        int[] asns = new int[vrpOffset[plainNodes]];
+        byte[] maxLengths = new byte[vrpOffset[plainNodes]];
+        for (int i = 0; i < vrps.size(); i++) {
+            if (nodeOf[i] >= 0) {
+                int slot = next[nodeOf[i]]++;
+                asns[slot] = vrps.get(i).getAsn();
+                maxLengths[slot] = (byte) vrps.get(i).getMaxLength();
+            }
+        }
+
+        // Then keep only the roots and the nodes with VRPs or two children
+        Compactor compactor = new Compactor(children, vrpOffset, asns, maxLengths);
+        compactor.keep(IPV4_ROOT, 0, 0, 0);
+        compactor.keep(IPV6_ROOT, 0, 0, 0);
+        compactor.run();
+        return new VrpTable(Arrays.copyOf(compactor.nodes, compactor.count * NODE_LONGS), compactor.count,
+                compactor.vrpAsn, compactor.vrpMaxLength, skipped);
+    }
+
+    /**
+     * Copies the nodes of a plain trie that carry VRPs or branch, in depth-first
+     * order, with the VRPs of each node next to those of the previous one
+     */
+    private static final class Compactor {
+        private final int[] children;
+        private final int[] vrpOffset;
+        private final int[] plainAsn;
+        private final byte[] plainMaxLength;
+
+        private long[] nodes = new long[64 * NODE_LONGS];
+        private int count;
+        private final int[] vrpAsn;
+        private final byte[] vrpMaxLength;
+        private int vrpCount;
+
+        // Plain node, depth, key high, key low, linking node, side
+        private final Deque<long[]> pending = new ArrayDeque<>();
+
+        Compactor(int[] children, int[] vrpOffset, int[] plainAsn, byte[] plainMaxLength) {
+            this.children = children;
+            this.vrpOffset = vrpOffset;
+            this.plainAsn = plainAsn;
+            this.plainMaxLength = plainMaxLength;
+            this.vrpAsn = new int[plainAsn.length];
+            this.vrpMaxLength = new byte[plainAsn.length];
+        }
+
+        int keep(int plain, int depth, long high, long low) {
+            int node = count++;
+            if (count * NODE_LONGS > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            }
+            int first = vrpCount;
+            for (int vrp = vrpOffset[plain]; vrp < vrpOffset[plain + 1]; vrp++) {
+                vrpAsn[vrpCount] = plainAsn[vrp];
+                vrpMaxLength[vrpCount++] = plainMaxLength[vrp];
+            }
+            int base = node * NODE_LONGS;
+            nodes[base] = high;
+            nodes[base + 1] = low;
+            nodes[base + 3] = (long) depth << 56 | (long) (vrpCount - first) << 32 | first;
+            for (int side = 0; side < 2; side++) {
+                int child = children[2 * plain + side];
+                if (child != 0) {
+                    long childHigh = side == 1 && depth < 64 ? high | 1L << (63 - depth) : high;
+                    long childLow = side == 1 && depth >= 64 ? low | 1L << (127 - depth) : low;
+                    pending.add(new long[] { child, depth + 1, childHigh, childLow, node, side });
+                }
+            }
+            return node;
+        }
+
+        void run() {
+            while (!pending.isEmpty()) {
+                long[] entry = pending.poll();
+                int plain = (int) entry[0];
+                int depth = (int) entry[1];
+                long high = entry[2];
+                long low = entry[3];
+                // Skip the chain of single-child nodes without VRPs below the link
+                while (vrpOffset[plain] == vrpOffset[plain + 1]
+                        && (children[2 * plain] == 0) != (children[2 * plain + 1] == 0)) {
+                    if (children[2 * plain] == 0) {
+                        if (depth < 64) {
+                            high |= 1L << (63 - depth);
+                        } else {
+                            low |= 1L << (127 - depth);
+                        }
+                        plain = children[2 * plain + 1];
+                    } else {
+                        plain = children[2 * plain];
+                    }
+                    depth++;
+                }
+                int node = keep(plain, depth, high, low);
+                int links = (int) entry[4] * NODE_LONGS + 2;
+                nodes[links] |= entry[5] == 0 ? (long) node << 32 : node;
+            }
+        }
+    }
+
+    int getVrpCount() {
+        return vrpAsn.length;
+    }
+
+    int getSkippedCount() {
+        return skipped;
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Validation state of an announcement of prefix by origin: VALID, INVALID
+     * or NOT_FOUND, or null if the prefix cannot be parsed
+     */
+    String validate(String prefix, int origin) {
+        int slash = prefix.indexOf('/');
+        if (slash < 0 || prefix.indexOf(':') >= 0) {
+            long[] key = parse(prefix);
+            return key == null ? null : validate(key[0], key[1], (int) key[2], key[3] == 6, origin);
+        }
+        // IPv4 fast path, no allocation
+        long address = parseIpv4(prefix, slash);
+        int length = parseLength(prefix, slash + 1, 32);
+        if (address < 0 || length < 0) {
+            return null;
+        }
+        return validate(address << 32, 0, length, false, origin);
+    }
+
+    /**
+     * Validation state of an announcement of an already parsed prefix (high
+     * and low address bits as from parse()) by origin
+     */
+    String validate(long high, long low, int length, boolean ipv6, int origin) {
+        if (ipv6 || length < JUMP_BITS) {
+            return walk(ipv6 ? IPV6_ROOT : IPV4_ROOT, high, low, length, origin);
+        }
+        int slot = (int) (high >>> (64 - JUMP_BITS));
+        boolean covered = false;
+        for (int vrp = jumpOffset[slot]; vrp < jumpOffset[slot + 1]; vrp++) {
+            covered = true;
+            if (jumpAsn[vrp] == origin && origin != 0 && (jumpMaxLength[vrp] & 0xff) >= length) {
+                return VALID;
+            }
+        }
+        int child = child(jumpNode[slot], high, 0);
+        if (child == 0) {
+            return covered ? INVALID : NOT_FOUND;
+        }
+        return walk(child, high, 0, length, origin, covered);
+    }
+
+    private String walk(int node, long high, long low, int length, int origin) {
+        return walk(node, high, low, length, origin, false);
+    }
+
+    private String walk(int node, long high, long low, int length, int origin, boolean covered) {
+        while (true) {
+            int base = node * NODE_LONGS;
+            long meta = nodes[base + 3];
+            int depth = (int) (meta >>> 56);
+            if (depth > length || !keyMatches(high, low, nodes[base], nodes[base + 1], depth)) {
+                break;
+            }
+            int first = (int) meta;
+            int end = first + ((int) (meta >>> 32) & 0xFFFFFF);
+            for (int vrp = first; vrp < end; vrp++) {
+                covered = true;
+                // AS 0 VRPs never match (RFC 6483), nor does a route with origin 0
+                if (vrpAsn[vrp] == origin && origin != 0 && (vrpMaxLength[vrp] & 0xff) >= length) {
+                    return VALID;
+                }
+            }
+            if (depth == length) {
+                break;
+            }
+            long links = nodes[base + 2];
+            node = bit(high, low, depth) == 0 ? (int) (links >>> 32) : (int) links;
+            if (node == 0) {
+                break;
+            }
+        }
+        return covered ? INVALID : NOT_FOUND;
+    }
+
+    /**
+     * VRPs covering a prefix, least specific first (for reporting, not the hot path)
+     */
+    List<Vrp> covering(String prefix) {
+        long[] key = parse(prefix);
+        if (key == null) {
+            throw new IllegalArgumentException("Invalid prefix: " + prefix);
+        }
+        List<Vrp> covering = new ArrayList<>();
+        int node = key[3] == 6 ? IPV6_ROOT : IPV4_ROOT;
+        while (true) {
+            int base = node * NODE_LONGS;
+            long meta = nodes[base + 3];
+            int depth = (int) (meta >>> 56);
+            if (depth > key[2] || !keyMatches(key[0], key[1], nodes[base], nodes[base + 1], depth)) {
+                break;
+            }
+            int first = (int) meta;
+            int end = first + ((int) (meta >>> 32) & 0xFFFFFF);
+            for (int vrp = first; vrp < end; vrp++) {
+                covering.add(new Vrp(vrpAsn[vrp], format(key, depth), vrpMaxLength[vrp] & 0xff));
+            }
+            if (depth == key[2]) {
+                break;
+            }
+            long links = nodes[base + 2];
+            node = bit(key[0], key[1], depth) == 0 ? (int) (links >>> 32) : (int) links;
+            if (node == 0) {
+                break;
+            }
+        }
+        return covering;
+    }
+
+    /**
+     * Child of a node towards an address, 0 if none
+     */
+    private int child(int node, long high, long low) {
+        long links = nodes[node * NODE_LONGS + 2];
+        int depth = (int) (nodes[node * NODE_LONGS + 3] >>> 56);
+        return bit(high, low, depth) == 0 ? (int) (links >>> 32) : (int) links;
+    }
+
+    /**
+     * Whether the first depth bits of an address equal a node's key
+     */
+    private static boolean keyMatches(long high, long low, long keyHigh, long keyLow, int depth) {
+        if (depth <= 64) {
+            return depth == 0 || (high ^ keyHigh) >>> (64 - depth) == 0;
+        }
+        return high == keyHigh && (low ^ keyLow) >>> (128 - depth) == 0;
+    }
+
+    private static int bit(long high, long low, int index) {
+        return (int) ((index < 64 ? high >>> (63 - index) : low >>> (127 - index)) & 1);
+    }
+
+    private static String format(long[] key, int length) {
+        byte[] bytes = new byte[key[3] == 6 ? 16 : 4];
+        for (int i = 0; i < length; i++) {
+            if (bit(key[0], key[1], i) == 1) {
+                bytes[i >> 3] |= (byte) (0x80 >> (i & 7));
+            }
+        }
+        try {
+            return InetAddresses.toAddrString(InetAddress.getByAddress(bytes)) + "/" + length;
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * "address/length" as {high 64 bits, low 64 bits, length, family (4 or 6)};
+     * IPv4 addresses sit in the top 32 bits. Null if malformed.
+     */
+    static long[] parse(String prefix) {
+        if (prefix == null) {
+            return null;
+        }
+        int slash = prefix.indexOf('/');
+        if (slash < 0) {
+            return null;
+        }
+        if (prefix.indexOf(':') < 0) {
+            long address = parseIpv4(prefix, slash);
+            int length = parseLength(prefix, slash + 1, 32);
+            return address < 0 || length < 0 ? null : new long[] { address << 32, 0, length, 4 };
+        }
+        long[] address = parseIpv6(prefix, slash);
+        int length = parseLength(prefix, slash + 1, 128);
+        return address == null || length < 0 ? null : new long[] { address[0], address[1], length, 6 };
+    }
+
+    private static long parseIpv4(String text, int end) {
+        long address = 0;
+        int octet = -1;
+        int dots = 0;
+        for (int i = 0; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && octet >= 0 && dots < 3) {
+                address = address << 8 | octet;
+                octet = -1;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+        return dots == 3 && octet >= 0 ? address << 8 | octet : -1;
+    }
+
+    private static long[] parseIpv6(String text, int end) {
+        int[] groups = new int[8];
+        int count = 0;
+        int gap = -1; // Group index where "::" stands
+        int i = 0;
+        if (end >= 2 && text.charAt(0) == ':' && text.charAt(1) == ':') {
+            gap = 0;
+            i = 2;
+        }
+        while (i < end) {
+            int value = 0;
+            int digits = 0;
+            int hex;
+            while (i < end && (hex = hexValue(text.charAt(i))) >= 0) {
+                if (++digits > 4) {
+                    return null;
+                }
+                value = value << 4 | hex;
+                i++;
+            }
+            if (digits == 0 || count == 8) {
+                return null;
+            }
+            groups[count++] = value;
+            if (i == end) {
+                break;
+            }
+            if (text.charAt(i++) != ':' || i == end) {
+                return null;
+            }
+            if (text.charAt(i) == ':') {
+                if (gap >= 0) {
+                    return null;
+                }
+                gap = count;
+                i++;
+            }
+        }
+        if (gap < 0 ? count != 8 : count > 7) {
+            return null;
+        }
+
+        long high = 0;
+        long low = 0;
+        int tail = gap < 0 ? 0 : count - gap;
+        for (int group = 0; group < 8; group++) {
+            int value;
+            if (gap < 0 || group < gap) {
+                value = groups[group];
+            } else if (group >= 8 - tail) {
+                value = groups[gap + group - (8 - tail)];
+            } else {
+                value = 0;
+            }
+            if (group < 4) {
+                high = high << 16 | value;
+            } else {
+                low = low << 16 | value;
+            }
+        }
+        return new long[] { high, low };
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static int parseLength(String text, int start, int max) {
+        int end = text.length();
+        if (start >= end || end - start > 3) {
+            return -1;
+        }
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            length = length * 10 + (c - '0');
+        }
+        return length <= max ? length : -1;
+    }
+
+    /**
+     * Read VRPs from a validator export: JSON with a "roas" array (rpki-client,
+     * Routinator, RIPE NCC validator) or CSV of ASN, prefix, max length[, ...]
+     * with an optional header line
+     */
+    static List<Vrp> read(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".json") ? readJson(file) : readCsv(file);
+    }
+
+    private static List<Vrp> readJson(Path file) throws IOException {
+        List<Vrp> vrps = new ArrayList<>();
+        ObjectMapper mapper = new ObjectMapper();
+        try (InputStream in = Files.newInputStream(file); JsonParser parser = mapper.getFactory().createParser(in)) {
+            // Stream the array instead of reading the whole document into a tree
+            while (parser.nextToken() != null) {
+                if (parser.currentToken() == JsonToken.FIELD_NAME && "roas".equals(parser.getCurrentName())
+                        && parser.nextToken() == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        JsonNode roa = mapper.readTree(parser);
+                        Vrp vrp = vrpOf(roa.path("asn").asText(), roa.path("prefix").asText(),
+                                roa.path("maxLength").asText());
+                        if (vrp != null) {
+                            vrps.add(vrp);
+                        }
+                    }
+                }
+            }
+        }
+        return vrps;
+    }
+
+    private static List<Vrp> readCsv(Path file) throws IOException {
+        List<Vrp> vrps = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length < 2) {
+                    continue;
+                }
+                Vrp vrp = vrpOf(fields[0].trim(), fields[1].trim(), fields.length > 2 ? fields[2].trim() : "");
+                if (vrp != null) {
+                    vrps.add(vrp); // A header line does not parse and is dropped here
+                }
+            }
+        }
+        return vrps;
+    }
+
+    /**
+     * A VRP from text fields; the max length defaults to the prefix length.
+     * ASNs above 2^31 are kept as their unsigned 32-bit pattern.
+     */
+    private static Vrp vrpOf(String asn, String prefix, String maxLength) {
+        try {
+            String digits = asn.regionMatches(true, 0, "AS", 0, 2) ? asn.substring(2) : asn;
+            long number = Long.parseLong(digits);
+            int slash = prefix.indexOf('/');
+            if (number < 0 || number > 0xFFFFFFFFL || slash < 0) {
+                return null;
+            }
+            int max = maxLength.isEmpty() ? Integer.parseInt(prefix.substring(slash + 1)) : Integer.parseInt(maxLength);
+            return new Vrp((int) number, prefix, max);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
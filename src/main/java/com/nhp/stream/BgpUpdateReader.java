@@ -0,0 +1,302 @@
+package com.nhp.stream;
+
+import java.util.function.Consumer;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Reads a BGP UPDATE message (RFC 4271, with RFC 4760 MP_REACH/MP_UNREACH)
+ * in place from a buffer, as carried by BMP Route Monitoring messages and MRT
+ * BGP4MP records. Construction walks the attributes and checks every NLRI, so
+ * a malformed message throws IllegalArgumentException before anything is
+ * emitted; the path and prefixes are then rendered as the RIS stream renders
+ * them.
+ *
+ * Unicast IPv4 and IPv6 are read. ADD-PATH NLRI cannot be told apart without
+ * the negotiated capabilities and are not supported.
+ *
+ * Plain class with no Spring dependencies; one instance per message.
+ */
+final class BgpUpdateReader {
+
+    static final int BGP_HEADER = 19;
+    static final int BGP_UPDATE = 2;
+
+    private static final int ATTR_EXTENDED_LENGTH = 0x10;
+    private static final int ATTR_AS_PATH = 2;
+    private static final int ATTR_MP_REACH = 14;
+    private static final int ATTR_MP_UNREACH = 15;
+
+    private static final int AS_SET = 1;
+    static final int AFI_IPV4 = 1;
+    static final int AFI_IPV6 = 2;
+    private static final int SAFI_UNICAST = 1;
+
+    private final ByteBuf buf;
+    private final int withdrawn;
+    private final int withdrawnEnd;
+    private final int nlri;
+    private final int nlriEnd;
+
+    // Attributes come in any order; where the path and MP NLRI are, if present
+    private int asPath = -1;
+    private int asPathEnd = -1;
+    private int reach = -1;
+    private int reachEnd = -1;
+    private int reachAfi;
+    private int unreach = -1;
+    private int unreachEnd = -1;
+    private int unreachAfi;
+
+    /**
+     * Read the UPDATE message (BGP header included) at [bgp, end)
+     */
+    BgpUpdateReader(ByteBuf buf, int bgp, int end) {
+        this.buf = buf;
+        require(bgp + BGP_HEADER <= end);
+        int bgpEnd = bgp + buf.getUnsignedShort(bgp + 16);
+        require(bgpEnd <= end && buf.getUnsignedByte(bgp + 18) == BGP_UPDATE);
+
+        withdrawn = bgp + BGP_HEADER + 2;
+        withdrawnEnd = withdrawn + buf.getUnsignedShort(bgp + BGP_HEADER);
+        require(withdrawnEnd + 2 <= bgpEnd);
+        int attrs = withdrawnEnd + 2;
+        nlri = attrs + buf.getUnsignedShort(withdrawnEnd);
+        nlriEnd = bgpEnd;
+        require(nlri <= nlriEnd);
+
+        for (int at = attrs; at < nlri;) {
+            require(at + 3 <= nlri);
+            int flags = buf.getUnsignedByte(at);
+            int type = buf.getUnsignedByte(at + 1);
+            boolean extended = (flags & ATTR_EXTENDED_LENGTH) != 0;
+            int value = at + (extended ? 4 : 3);
+            require(value <= nlri);
+            int valueEnd = value + (extended ? buf.getUnsignedShort(at + 2) : buf.getUnsignedByte(at + 2));
+            require(valueEnd <= nlri);
+            if (type == ATTR_AS_PATH) {
+                asPath = value;
+                asPathEnd = valueEnd;
+            } else if (type == ATTR_MP_REACH && valueEnd - value >= 5
+                    && buf.getUnsignedByte(value + 2) == SAFI_UNICAST) {
+                reachAfi = buf.getUnsignedShort(value);
+                reach = value + 4 + buf.getUnsignedByte(value + 3) + 1; // Next hop, reserved byte
+                reachEnd = valueEnd;
+                require(reach <= reachEnd);
+            } else if (type == ATTR_MP_UNREACH && valueEnd - value >= 3
+                    && buf.getUnsignedByte(value + 2) == SAFI_UNICAST) {
+                unreachAfi = buf.getUnsignedShort(value);
+                unreach = value + 3;
+                unreachEnd = valueEnd;
+            }
+            at = valueEnd;
+        }
+
+        prefixes(buf, withdrawn, withdrawnEnd, AFI_IPV4, null);
+        prefixes(buf, nlri, nlriEnd, AFI_IPV4, null);
+        if (unreach >= 0) {
+            prefixes(buf, unreach, unreachEnd, unreachAfi, null);
+        }
+        if (reach >= 0) {
+            prefixes(buf, reach, reachEnd, reachAfi, null);
+        }
+    }
+
+    /**
+     * The AS path, with ASNs of asnSize bytes (2 from a session without
+     * 4-byte ASN support); "" when the message has none
+     */
+    String path(int asnSize) {
+        return asPath >= 0 ? formatPath(buf, asPath, asPathEnd, asnSize) : "";
+    }
+
+    boolean hasAnnouncements() {
+        return nlri < nlriEnd || reach >= 0 && reach < reachEnd;
+    }
+
+    /**
+     * Withdrawn prefixes, IPv4 before MP_UNREACH
+     */
+    void withdrawals(Consumer<String> sink) {
+        prefixes(buf, withdrawn, withdrawnEnd, AFI_IPV4, sink);
+        if (unreach >= 0) {
+            prefixes(buf, unreach, unreachEnd, unreachAfi, sink);
+        }
+    }
+
+    /**
+     * Announced prefixes, IPv4 before MP_REACH
+     */
+    void announcements(Consumer<String> sink) {
+        prefixes(buf, nlri, nlriEnd, AFI_IPV4, sink);
+        if (reach >= 0) {
+            prefixes(buf, reach, reachEnd, reachAfi, sink);
+        }
+    }
+
+    /**
+     * Walk NLRI (length in bits, then the significant bytes), passing each
+     * prefix to sink; with a null sink the NLRI are only checked. Bits past
+     * the prefix length are cleared, as a cidr value requires.
+     */
+    static void prefixes(ByteBuf buf, int at, int end, int afi, Consumer<String> sink) {
+        if (afi != AFI_IPV4 && afi != AFI_IPV6) {
+            return;
+        }
+        int maxBits = afi == AFI_IPV4 ? 32 : 128;
+        while (at < end) {
+            int bits = buf.getUnsignedByte(at);
+            int bytes = (bits + 7) / 8;
+            require(bits <= maxBits && at + 1 + bytes <= end);
+            if (sink != null) {
+                sink.accept(prefix(buf, at + 1, bits, afi));
+            }
+            at += 1 + bytes;
+        }
+    }
+
+    /**
+     * Text of a prefix of bits length whose significant bytes start at at
+     */
+    static String prefix(ByteBuf buf, int at, int bits, int afi) {
+        return (afi == AFI_IPV4 ? ipv4(buf, at, (bits + 7) / 8, bits) : ipv6(buf, at, (bits + 7) / 8, bits))
+                + "/" + bits;
+    }
+
+    /**
+     * The AS path in the path attributes at [at, end), as in a TABLE_DUMP_V2
+     * RIB entry; "" when there is none
+     */
+    static String attributePath(ByteBuf buf, int at, int end, int asnSize) {
+        while (at < end) {
+            require(at + 3 <= end);
+            boolean extended = (buf.getUnsignedByte(at) & ATTR_EXTENDED_LENGTH) != 0;
+            int value = at + (extended ? 4 : 3);
+            require(value <= end);
+            int valueEnd = value + (extended ? buf.getUnsignedShort(at + 2) : buf.getUnsignedByte(at + 2));
+            require(valueEnd <= end);
+            if (buf.getUnsignedByte(at + 1) == ATTR_AS_PATH) {
+                return formatPath(buf, value, valueEnd, asnSize);
+            }
+            at = valueEnd;
+        }
+        return "";
+    }
+
+    /**
+     * Render AS_PATH segments as the RIS path is rendered: space-separated
+     * ASNs, AS_SETs as {a,b}
+     */
+    static String formatPath(ByteBuf buf, int at, int end, int asnSize) {
+        StringBuilder path = new StringBuilder();
+        while (at < end) {
+            require(at + 2 <= end);
+            int type = buf.getUnsignedByte(at);
+            int count = buf.getUnsignedByte(at + 1);
+            at += 2;
+            require(at + count * asnSize <= end);
+            if (path.length() > 0) {
+                path.append(' ');
+            }
+            if (type == AS_SET) {
+                path.append('{');
+            }
+            for (int i = 0; i < count; i++, at += asnSize) {
+                if (i > 0) {
+                    path.append(type == AS_SET ? ',' : ' ');
+                }
+                path.append(asnSize == 4 ? buf.getUnsignedInt(at) : buf.getUnsignedShort(at));
+            }
+            if (type == AS_SET) {
+                path.append('}');
+            }
+        }
+        return path.toString();
+    }
+
+    /**
+     * Last hop of the path, as for RIS updates; "0" for an empty path
+     */
+    static String originOf(String path) {
+        String trimmed = path.trim();
+        return trimmed.isEmpty() ? "0" : trimmed.substring(trimmed.lastIndexOf(' ') + 1);
+    }
+
+    /**
+     * Dotted quad of the first bytes of an address, the rest being zero
+     */
+    static String ipv4(ByteBuf buf, int at, int bytes) {
+        return ipv4(buf, at, bytes, 32);
+    }
+
+    private static String ipv4(ByteBuf buf, int at, int bytes, int bits) {
+        StringBuilder text = new StringBuilder(15);
+        for (int i = 0; i < 4; i++) {
+            if (i > 0) {
+                text.append('.');
+            }
+            text.append(i < bytes ? buf.getUnsignedByte(at + i) & mask(i, bits) : 0);
+        }
+        return text.toString();
+    }
+
+    /**
+     * RFC 5952 text of the first bytes of an address, the rest being zero:
+     * lower-case groups without leading zeros, the longest run of two or more
+     * zero groups (the first, on a tie) written as ::
+     */
+    static String ipv6(ByteBuf buf, int at, int bytes) {
+        return ipv6(buf, at, bytes, 128);
+    }
+
+    private static String ipv6(ByteBuf buf, int at, int bytes, int bits) {
+        int[] groups = new int[8];
+        for (int i = 0; i < bytes; i++) {
+            groups[i / 2] |= (buf.getUnsignedByte(at + i) & mask(i, bits)) << (i % 2 == 0 ? 8 : 0);
+        }
+        int runStart = -1;
+        int runLength = 0;
+        for (int i = 0; i < 8;) {
+            if (groups[i] != 0) {
+                i++;
+                continue;
+            }
+            int j = i;
+            while (j < 8 && groups[j] == 0) {
+                j++;
+            }
+            if (j - i > runLength && j - i >= 2) {
+                runStart = i;
+                runLength = j - i;
+            }
+            i = j;
+        }
+        StringBuilder text = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == runStart) {
+                text.append("::");
+                i += runLength - 1;
+                continue;
+            }
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+                text.append(':');
+            }
+            text.append(Integer.toHexString(groups[i]));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Mask of the bits of address byte i within a prefix of bits length
+     */
+    private static int mask(int i, int bits) {
+        int kept = bits - i * 8;
+        return kept >= 8 ? 0xFF : 0xFF << (8 - Math.max(kept, 0)) & 0xFF;
+    }
+
+    static void require(boolean condition) {
+        if (!condition) {
+            throw new IllegalArgumentException("Truncated or malformed BGP message");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.nhp.stream;
+
+import java.time.Instant;
+import java.util.function.Consumer;
+
+import com.nhp.dto.BgpUpdateMessage;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Decodes BMP messages (RFC 7854) into the per-prefix updates the RIS stream
+ * produces: one BgpUpdateMessage per announced or withdrawn prefix of a Route
+ * Monitoring message, and a peer state message for Peer Up and Peer Down.
+ * Fields are read in place from the frame with absolute ByteBuf reads
+ * (BgpUpdateReader for the UPDATE); only the resulting strings are allocated. The BMP monitored peer stands in for
+ * the RIS peer and the router for the RIS collector.
+ *
+ * Unicast IPv4 and IPv6 (in the UPDATE itself and in MP_REACH/MP_UNREACH) are
+ * decoded; other message types are skipped.
+ *
+ * Plain class with no Spring dependencies; stateless.
+ */
+final class BmpDecoder {
+
+    static final int VERSION = 3;
+
+    static final int ROUTE_MONITORING = 0;
+    static final int STATISTICS_REPORT = 1;
+    static final int PEER_DOWN = 2;
+    static final int PEER_UP = 3;
+    static final int INITIATION = 4;
+    static final int TERMINATION = 5;
+
+    static final int COMMON_HEADER = 6;
+    static final int PER_PEER_HEADER = 42;
+
+    // Per-peer header flags
+    static final int FLAG_IPV6 = 0x80;
+    static final int FLAG_LEGACY_AS_PATH = 0x20;
+
+    private BmpDecoder() {
+    }
+
+    /**
+     * Decode one framed BMP message (common header included) received from
+     * router; returns its message type. Malformed messages throw
+     * IllegalArgumentException before anything is emitted.
+     */
+    static int decode(ByteBuf frame, String router, Consumer<BgpUpdateMessage> sink) {
+        int start = frame.readerIndex();
+        int end = start + frame.readableBytes();
+        if (end - start < COMMON_HEADER || frame.getUnsignedByte(start) != VERSION
+                || frame.getInt(start + 1) != end - start) {
+            throw new IllegalArgumentException("Not a BMP v3 message");
+        }
+        int type = frame.getUnsignedByte(start + 5);
+        int peer = start + COMMON_HEADER;
+        switch (type) {
+            case ROUTE_MONITORING -> routeMonitoring(frame, peer, end, router, sink);
+            case PEER_DOWN -> peerState(frame, peer, end, router, "down", sink);
+            case PEER_UP -> peerState(frame, peer, end, router, "connected", sink);
+            default -> {
+                // Statistics, initiation, termination and route mirroring carry no reachability
+            }
+        }
+        return type;
+    }
+
+    private static void peerState(ByteBuf frame, int peer, int end, String router, String state,
+            Consumer<BgpUpdateMessage> sink) {
+        require(peer + PER_PEER_HEADER <= end);
+        sink.accept(BgpUpdateMessage.builder()
+                .collector(peerAddress(frame, peer))
+                .host(router)
+                .peerState(state)
+                .timestamp(peerTimestamp(frame, peer))
+                .build());
+    }
+
+    private static void routeMonitoring(ByteBuf frame, int peer, int end, String router,
+            Consumer<BgpUpdateMessage> sink) {
+        require(peer + PER_PEER_HEADER <= end);
+        BgpUpdateReader update = new BgpUpdateReader(frame, peer + PER_PEER_HEADER, end);
+
+        String collector = peerAddress(frame, peer);
+        Instant timestamp = peerTimestamp(frame, peer);
+        boolean legacy = (frame.getUnsignedByte(peer + 1) & FLAG_LEGACY_AS_PATH) != 0;
+        String path = update.path(legacy ? 2 : 4);
+        String origin = BgpUpdateReader.originOf(path);
+
+        update.withdrawals(prefix -> sink.accept(BgpUpdateMessage.builder()
+                .prefix(prefix)
+                .collector(collector)
+                .originAsn(origin)
+                .asPath("")
+                .withdrawal(true)
+                .timestamp(timestamp)
+                .host(router)
+                .build()));
+        update.announcements(prefix -> sink.accept(BgpUpdateMessage.builder()
+                .prefix(prefix)
+                .collector(collector)
+                .originAsn(origin)
+                .asPath(path)
+                .announcement(true)
+                .timestamp(timestamp)
+                .host(router)
+                .build()));
+    }
+
+    /**
+     * The monitored peer's address: IPv4 in the last 4 of its 16 bytes unless
+     * the V flag is set
+     */
+    private static String peerAddress(ByteBuf frame, int peer) {
+        boolean ipv6 = (frame.getUnsignedByte(peer + 1) & FLAG_IPV6) != 0;
+        return ipv6 ? BgpUpdateReader.ipv6(frame, peer + 10, 16) : BgpUpdateReader.ipv4(frame, peer + 22, 4);
+    }
+
+    private static Instant peerTimestamp(ByteBuf frame, int peer) {
+        long seconds = frame.getUnsignedInt(peer + 34);
+        long micros = frame.getUnsignedInt(peer + 38);
+        return seconds == 0 ? Instant.now() : Instant.ofEpochSecond(seconds, Math.min(micros, 999_999) * 1000);
+    }
+
+    private static void require(boolean condition) {
+        if (!condition) {
+            throw new IllegalArgumentException("Truncated or malformed BMP message");
+        }
+    }
+}
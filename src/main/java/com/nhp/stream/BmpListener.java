@@ -0,0 +1,169 @@
+package com.nhp.stream;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nhp.dto.BgpUpdateMessage;
+import com.nhp.services.MetricsService;
+import com.nhp.services.ShardCoordinator;
+import com.nhp.services.StartupGate;
+import com.nhp.services.UpdateProcessor;
+
+import io.micrometer.core.instrument.Timer;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.netty.DisposableServer;
+import reactor.netty.NettyInbound;
+import reactor.netty.NettyOutbound;
+import reactor.netty.tcp.TcpServer;
+
+/**
+ * Ingest source next to the RIS stream: a BMP (RFC 7854) listener our own
+ * routers connect to. Each session's bytes are framed by the BMP common
+ * header and decoded on the event loop straight from the ByteBuf
+ * (BmpDecoder), with no JSON in between, into the same per-prefix updates
+ * as RIS. They then go through the same per-prefix lanes into
+ * UpdateProcessor. In cluster mode every instance should receive the
+ * routers' sessions; each keeps the prefixes of its shard units.
+ */
+@Slf4j
+@Component
+public class BmpListener {
+
+    // Largest BMP message taken: a 64 KiB (extended) BGP message and headers
+    private static final int MAX_MESSAGE = 65535 + BmpDecoder.COMMON_HEADER + BmpDecoder.PER_PEER_HEADER + 16;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private UpdateProcessor updateProcessor;
+
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
+    @Autowired
+    private StartupGate startupGate;
+
+    // Where processing runs, see ExecutionConfig
+    @Autowired
+    private Scheduler blockingScheduler;
+
+    @Autowired
+    private IngestLanes ingestLanes;
+
+    @Value("${nhp.bmp.enabled:false}")
+    private boolean enabled;
+
+    @Value("${nhp.bmp.host:0.0.0.0}")
+    private String host;
+
+    @Value("${nhp.bmp.port:11019}")
+    private int port;
+
+    // Updates held while startup warm-ups run (fast-start profile)
+    @Value("${nhp.startup.buffer:100000}")
+    private int startupBuffer;
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    private DisposableServer server;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        metricsService.registerGauge("ripe.bmp.sessions", "Connected BMP sessions", sessions, AtomicInteger::get);
+        server = TcpServer.create()
+                .host(host)
+                .port(port)
+                .doOnConnection(connection -> connection.addHandlerLast(
+                        new LengthFieldBasedFrameDecoder(MAX_MESSAGE, 1, 4, -5, 0)))
+                .handle(this::session)
+                .bindNow();
+        log.info("Listening for BMP sessions on {}:{}", host, server.port());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.disposeNow(Duration.ofSeconds(5));
+            log.info("BMP listener closed on shutdown.");
+        }
+    }
+
+    private Mono<Void> session(NettyInbound inbound, NettyOutbound outbound) {
+        String[] router = { "bmp" };
+        inbound.withConnection(connection -> {
+            if (connection.channel().remoteAddress() instanceof InetSocketAddress address) {
+                router[0] = address.getAddress().getHostAddress();
+            }
+        });
+        sessions.incrementAndGet();
+        log.info("BMP session from {} opened", router[0]);
+
+        // Frames are released once decoded, so decoding stays on the event loop
+        Flux<BgpUpdateMessage> updates = inbound.receive()
+                .flatMapIterable(frame -> decode(frame, router[0]))
+                .filter(update -> update.getPrefix() == null || shardCoordinator.ownsPrefix(update.getPrefix()));
+        if (!startupGate.isReady()) {
+            // Connected ahead of the warm-ups: hold updates, oldest dropped first if they overrun
+            updates = updates
+                    .onBackpressureBuffer(startupBuffer,
+                            dropped -> metricsService.incrementStartupUpdatesDropped(),
+                            BufferOverflowStrategy.DROP_OLDEST)
+                    .delayUntil(update -> startupGate.ready());
+        }
+        return ingestLanes.dispatch(updates, RipeStreamClient::laneKey, this::process, blockingScheduler)
+                .doOnError(error -> log.error("Error in BMP session from {}", router[0], error))
+                .doFinally(signal -> {
+                    sessions.decrementAndGet();
+                    log.info("BMP session from {} closed ({})", router[0], signal);
+                })
+                .then();
+    }
+
+    /**
+     * Decode one BMP message; a malformed one is counted and skipped, the
+     * session goes on
+     */
+    private List<BgpUpdateMessage> decode(ByteBuf frame, String router) {
+        metricsService.incrementBgpMessagesReceieved();
+        metricsService.recordFirstMessage(false);
+        metricsService.recordBgpMessageSize(frame.readableBytes());
+        List<BgpUpdateMessage> updates = new ArrayList<>();
+        Timer.Sample decode = metricsService.startTimer();
+        try {
+            BmpDecoder.decode(frame, router, updates::add);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            metricsService.incrementBmpDecodeErrors();
+            log.warn("Skipping malformed BMP message from {}: {}", router, e.getMessage());
+            return List.of();
+        }
+        metricsService.recordBmpDecode(decode);
+        if (!updates.isEmpty() && updates.get(0).getTimestamp() != null) {
+            metricsService.recordIngestLag(Duration.between(updates.get(0).getTimestamp(), Instant.now()));
+        }
+        return updates;
+    }
+
+    private void process(BgpUpdateMessage update) {
+        updateProcessor.process(update);
+        metricsService.recordFirstMessage(true);
+    }
+}
@@ -0,0 +1,87 @@
+package com.nhp.stream;
+
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Spreads updates over a fixed number of lanes keyed by prefix, each drained in
+ * order on the blocking scheduler. Every piece of work for a key runs under its
+ * lane's lock, whether it comes from a stream (RIS Live, BMP sessions) or is
+ * submitted with run() by a sweep, so per-prefix state is never touched by two
+ * threads at once, while blocking I/O for different prefixes overlaps.
+ * Backpressure reaches the socket once every lane is busy.
+ */
+@Component
+public class IngestLanes {
+
+    // Updates queued per lane before the stream is slowed down
+    private static final int LANE_BUFFER = 256;
+
+    private final int lanes;
+
+    // Not monitors, so that a virtual thread blocked on Redis inside a lane is not pinned
+    private final ReentrantLock[] locks;
+
+    public IngestLanes(@Value("${nhp.execution.ingest-lanes:16}") int lanes) {
+        this.lanes = Math.max(lanes, 1);
+        this.locks = new ReentrantLock[this.lanes];
+        for (int i = 0; i < this.lanes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Run worker over updates; on the immediate scheduler this stays on the
+     * calling thread, in arrival order
+     */
+    public <T> Flux<T> dispatch(Flux<T> updates, Function<T, Object> key, Consumer<T> worker, Scheduler scheduler) {
+        Consumer<T> inLane = update -> run(key.apply(update), () -> worker.accept(update));
+        if (scheduler == Schedulers.immediate()) {
+            return updates.doOnNext(inLane);
+        }
+        if (lanes == 1) {
+            return updates.publishOn(scheduler, LANE_BUFFER).doOnNext(inLane);
+        }
+        return updates
+                .groupBy(update -> laneOf(key.apply(update)), LANE_BUFFER)
+                .flatMap(lane -> lane.publishOn(scheduler, LANE_BUFFER).doOnNext(inLane), lanes);
+    }
+
+    /**
+     * Run task on the calling thread once key's lane is free, excluding the
+     * stream workers and other tasks of that lane meanwhile
+     */
+    public void run(Object key, Runnable task) {
+        ReentrantLock lock = locks[laneOf(key)];
+        lock.lock();
+        try {
+            task.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for the work running in every lane to finish; work that starts
+     * later sees whatever the caller changed before
+     */
+    public void drain() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
+    private int laneOf(Object key) {
+        return Math.floorMod(Objects.hashCode(key), lanes);
+    }
+}
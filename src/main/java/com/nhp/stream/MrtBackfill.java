@@ -0,0 +1,375 @@
+package com.nhp.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.nhp.dto.BackfillStatus;
+import com.nhp.dto.OutageEvent;
+import com.nhp.dto.PrefixState;
+import com.nhp.services.OutageDetectionEngine;
+import com.nhp.services.PeerHealthService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds outage history from MRT update archives (RIS updates.*.gz,
+ * optionally with the bview.*.gz dump before them) under the backfill
+ * directory, one job at a time. Gzipped files are decompressed to a
+ * temporary directory, then MrtReplay decodes and replays everything in
+ * event time with the live detection settings, and the events are
+ * bulk-loaded with COPY, several connections in parallel; the
+ * outage_events trigger resolves each outage as its recovery is loaded. The
+ * first directory under the backfill directory names the route collector.
+ */
+@Slf4j
+@Service
+public class MrtBackfill {
+
+    private static final String OVERLAP_SQL = "SELECT EXISTS (SELECT 1 FROM outage_events "
+            + "WHERE timestamp >= ? AND timestamp <= ?)";
+
+    private static final String COPY_SQL = "COPY outage_events (prefix, origin_asn, timestamp, detected_at, "
+            + "event_type, last_path, withdrawn_by) FROM STDIN";
+
+    // Rows encoded before they are handed to the driver
+    private static final int COPY_BUFFER = 1 << 20;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private OutageDetectionEngine detectionEngine;
+
+    @Autowired
+    private PeerHealthService peerHealthService;
+
+    @Value("${nhp.backfill.directory:mrt}")
+    private String directory;
+
+    // Decode and replay threads; 0 for one per core
+    @Value("${nhp.backfill.threads:0}")
+    private int threads;
+
+    @Value("${nhp.backfill.chunk-size:64MB}")
+    private DataSize chunkSize;
+
+    @Value("${nhp.backfill.copy-connections:4}")
+    private int copyConnections;
+
+    private volatile BackfillStatus status;
+    private volatile MrtReplay replay;
+    private final AtomicLong loaded = new AtomicLong();
+
+    /**
+     * Start backfilling the files matching a glob relative to the backfill
+     * directory, e.g. "rrc00/2024.01/updates.20240115.*.gz"
+     */
+    public synchronized BackfillStatus start(String files) throws IOException {
+        if (status != null && "running".equals(status.getState())) {
+            throw new IllegalStateException("A backfill is already running");
+        }
+        Path root = Paths.get(directory).toAbsolutePath().normalize();
+        List<Path> matched = find(root, files);
+        if (matched.isEmpty()) {
+            throw new IllegalArgumentException("No files match '" + files + "' in " + root);
+        }
+
+        replay = null;
+        loaded.set(0);
+        status = BackfillStatus.builder()
+                .state("running")
+                .phase("decompressing")
+                .files(matched.stream().map(file -> root.relativize(file).toString()).toList())
+                .startedAt(Instant.now())
+                .build();
+        Thread thread = new Thread(() -> run(root, matched), "mrt-backfill");
+        thread.setDaemon(true);
+        thread.start();
+        return getStatus();
+    }
+
+    /**
+     * The running or last backfill; null if there was none
+     */
+    public BackfillStatus getStatus() {
+        BackfillStatus current = status;
+        if (current == null) {
+            return null;
+        }
+        MrtReplay running = replay;
+        if (running != null) {
+            current.setBytes(running.bytes.get());
+            current.setRecords(running.records.get());
+            current.setMalformedRecords(running.malformed.get());
+            current.setUpdates(running.updates.get());
+            current.setPrefixes(running.prefixes.get());
+            current.setEvents(running.events.get());
+            current.setUnrecordedEvents(running.unrecorded.get());
+            current.setOpenAtEndEvents(running.openAtEnd.get());
+        }
+        current.setLoadedEvents(loaded.get());
+        return current;
+    }
+
+    private List<Path> find(Path root, String files) throws IOException {
+        if (files == null || files.isBlank()) {
+            throw new IllegalArgumentException("No files given");
+        }
+        if (files.endsWith(".bz2")) {
+            throw new IllegalArgumentException("bzip2 archives are not supported, decompress them first");
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + files);
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(file -> matcher.matches(root.relativize(file)))
+                    .filter(file -> !file.getFileName().toString().endsWith(".bz2"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private void run(Path root, List<Path> files) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "mrt-backfill-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, factory);
+        Path scratch = null;
+        long started = System.nanoTime();
+        try {
+            scratch = Files.createTempDirectory("nhp-backfill");
+            List<MrtReplay.Source> sources = decompress(root, files, scratch, executor);
+
+            replay = new MrtReplay(detectionEngine.getPolicy(), detectionEngine.getOutageHoldDown(),
+                    detectionEngine.getRecoveryHoldDown(), peerHealthService.getMassWithdrawalThreshold(),
+                    peerHealthService.getMassWithdrawalWindow(), peerHealthService.getSuppressFor(),
+                    (int) Math.min(chunkSize.toBytes(), Integer.MAX_VALUE), workers * 4, executor);
+            status.setPhase("decoding");
+            List<MrtReplay.ChunkLog> chunks = replay.decode(sources);
+            status.setPhase("checking");
+            checkOverlap(MrtReplay.span(chunks));
+            status.setPhase("replaying");
+            List<List<OutageEvent>> events = replay.replay(chunks, Instant.now());
+            chunks = null;
+            status.setPhase("loading");
+            load(events, executor);
+
+            BackfillStatus done = getStatus();
+            done.setState("completed");
+            done.setPhase(null);
+            done.setFinishedAt(Instant.now());
+            log.info("Backfilled {} files: {} updates of {} prefixes, {} outage events loaded in {}",
+                    files.size(), done.getUpdates(), done.getPrefixes(), done.getLoadedEvents(),
+                    Duration.ofNanos(System.nanoTime() - started));
+        } catch (Exception e) {
+            log.error("Backfill of {} files failed", files.size(), e);
+            BackfillStatus failed = getStatus();
+            failed.setState("failed");
+            failed.setFinishedAt(Instant.now());
+            failed.setError(e.getMessage());
+        } finally {
+            executor.shutdownNow();
+            replay = null;
+            delete(scratch);
+        }
+    }
+
+    /**
+     * Sources for the files, gzipped ones decompressed into scratch in
+     * parallel. The first directory of the relative path is the collector.
+     */
+    private List<MrtReplay.Source> decompress(Path root, List<Path> files, Path scratch, ExecutorService executor)
+            throws Exception {
+        List<Callable<MrtReplay.Source>> tasks = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            Path relative = root.relativize(file);
+            String collector = relative.getNameCount() > 1 ? relative.getName(0).toString()
+                    : PrefixState.UNKNOWN_COLLECTOR;
+            if (!file.getFileName().toString().endsWith(".gz")) {
+                tasks.add(() -> new MrtReplay.Source(file, collector));
+                continue;
+            }
+            Path target = scratch.resolve(i + ".mrt");
+            tasks.add(() -> {
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(file), 1 << 16);
+                        OutputStream out = Files.newOutputStream(target)) {
+                    in.transferTo(out);
+                }
+                return new MrtReplay.Source(target, collector);
+            });
+        }
+        List<MrtReplay.Source> sources = new ArrayList<>();
+        for (Future<MrtReplay.Source> source : executor.invokeAll(tasks)) {
+            sources.add(source.get());
+        }
+        return sources;
+    }
+
+    /**
+     * Refuse archives whose time span already has outage events, from an
+     * earlier backfill or the live service: COPY appends, so loading them
+     * again would duplicate every outage in the overlap
+     */
+    private void checkOverlap(long[] span) throws SQLException {
+        if (span == null) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(OVERLAP_SQL)) {
+            statement.setTimestamp(1, Timestamp.from(Instant.ofEpochMilli(span[0])));
+            statement.setTimestamp(2, Timestamp.from(Instant.ofEpochMilli(span[1])));
+            try (ResultSet result = statement.executeQuery()) {
+                if (result.next() && result.getBoolean(1)) {
+                    throw new IllegalStateException("Outage events between " + Instant.ofEpochMilli(span[0])
+                            + " and " + Instant.ofEpochMilli(span[1]) + " are already stored");
+                }
+            }
+        }
+    }
+
+    /**
+     * COPY the events, each connection taking every copyConnections-th
+     * partition. A prefix's events are all in one partition, in time order,
+     * so its recoveries always follow the outages they resolve.
+     */
+    private void load(List<List<OutageEvent>> partitions, ExecutorService executor) throws Exception {
+        int connections = Math.max(1, Math.min(copyConnections, partitions.size()));
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            int first = c;
+            tasks.add(() -> {
+                List<List<OutageEvent>> share = new ArrayList<>();
+                for (int p = first; p < partitions.size(); p += connections) {
+                    share.add(partitions.get(p));
+                }
+                return copy(share);
+            });
+        }
+        for (Future<Long> task : executor.invokeAll(tasks)) {
+            task.get();
+        }
+    }
+
+    private long copy(List<List<OutageEvent>> partitions) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                StringBuilder rows = new StringBuilder(COPY_BUFFER + 4096);
+                long written = 0;
+                for (List<OutageEvent> events : partitions) {
+                    for (OutageEvent event : events) {
+                        appendRow(rows, event);
+                        written++;
+                        if (rows.length() >= COPY_BUFFER) {
+                            flush(copy, rows);
+                            loaded.addAndGet(written);
+                            written = 0;
+                        }
+                    }
+                }
+                flush(copy, rows);
+                loaded.addAndGet(written);
+                return copy.endCopy();
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        }
+    }
+
+    private static void flush(CopyIn copy, StringBuilder rows) throws SQLException {
+        byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        rows.setLength(0);
+    }
+
+    /**
+     * One row in COPY text format: tab-separated, \N for null
+     */
+    private static void appendRow(StringBuilder row, OutageEvent event) {
+        appendText(row, event.getPrefix()).append('\t');
+        row.append(event.getOriginAsn()).append('\t');
+        row.append(event.getTimestamp()).append('\t');
+        row.append(event.getDetectedAt()).append('\t');
+        appendText(row, event.getEventType()).append('\t');
+        appendText(row, event.getLastPath()).append('\t');
+        if (event.getWithdrawnBy() == null) {
+            row.append("\\N");
+        } else {
+            // Peer addresses need no quoting in an array literal
+            appendText(row, "{" + String.join(",", event.getWithdrawnBy()) + "}");
+        }
+        row.append('\n');
+    }
+
+    private static StringBuilder appendText(StringBuilder row, String value) {
+        if (value == null) {
+            return row.append("\\N");
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> row.append("\\\\");
+                case '\t' -> row.append("\\t");
+                case '\n' -> row.append("\\n");
+                case '\r' -> row.append("\\r");
+                default -> row.append(c);
+            }
+        }
+        return row;
+    }
+
+    private static void delete(Path scratch) {
+        if (scratch == null) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(scratch)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Could not delete backfill scratch directory {}", scratch, e);
+        }
+    }
+}
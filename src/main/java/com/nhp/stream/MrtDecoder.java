@@ -0,0 +1,212 @@
+package com.nhp.stream;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Decodes MRT records (RFC 6396) as archived by RIS and RouteViews into
+ * per-prefix updates: BGP4MP and BGP4MP_ET UPDATE messages (2- and 4-byte
+ * ASN sessions), BGP4MP state changes into and out of Established, and the
+ * unicast RIB entries of TABLE_DUMP_V2 dumps (bview files), which seed
+ * visibility as announcements at dump time. Records are read in place with
+ * absolute ByteBuf reads, so a memory-mapped file is decoded without copying.
+ *
+ * Locally generated messages, ADD-PATH subtypes and other record types are
+ * skipped. AS4_PATH is not merged into the path of a 2-byte ASN session.
+ *
+ * Plain class with no Spring dependencies; stateless.
+ */
+final class MrtDecoder {
+
+    static final int HEADER = 12;
+
+    static final int TABLE_DUMP_V2 = 13;
+    static final int BGP4MP = 16;
+    static final int BGP4MP_ET = 17;
+
+    // BGP4MP subtypes
+    static final int STATE_CHANGE = 0;
+    static final int MESSAGE = 1;
+    static final int MESSAGE_AS4 = 4;
+    static final int STATE_CHANGE_AS4 = 5;
+
+    // TABLE_DUMP_V2 subtypes
+    static final int PEER_INDEX_TABLE = 1;
+    static final int RIB_IPV4_UNICAST = 2;
+    static final int RIB_IPV6_UNICAST = 4;
+
+    private static final int ESTABLISHED = 6;
+    private static final int PEER_TYPE_IPV6 = 0x01;
+    private static final int PEER_TYPE_AS4 = 0x02;
+
+    /**
+     * Receives the updates of a record, timestamps in epoch milliseconds
+     */
+    interface Sink {
+        void announce(long millis, String peer, String prefix, String path);
+
+        void withdraw(long millis, String peer, String prefix);
+
+        void peerState(long millis, String peer, boolean up);
+    }
+
+    private MrtDecoder() {
+    }
+
+    /**
+     * Length of the record at at, header included; throws if the header is
+     * cut off or the record runs past end
+     */
+    static int recordLength(ByteBuf buf, int at, int end) {
+        require(at + HEADER <= end);
+        long length = HEADER + buf.getUnsignedInt(at + 8);
+        require(length <= end - at);
+        return (int) length;
+    }
+
+    static int type(ByteBuf buf, int at) {
+        return buf.getUnsignedShort(at + 4);
+    }
+
+    static int subtype(ByteBuf buf, int at) {
+        return buf.getUnsignedShort(at + 6);
+    }
+
+    /**
+     * Peer addresses of a TABLE_DUMP_V2 PEER_INDEX_TABLE record, by index
+     */
+    static String[] peerIndexTable(ByteBuf buf, int at, int end) {
+        int body = at + HEADER;
+        require(body + 6 <= end);
+        int entries = body + 6 + buf.getUnsignedShort(body + 4);
+        require(entries + 2 <= end);
+        String[] peers = new String[buf.getUnsignedShort(entries)];
+        int entry = entries + 2;
+        for (int i = 0; i < peers.length; i++) {
+            require(entry + 1 <= end);
+            int type = buf.getUnsignedByte(entry);
+            int address = entry + 5;
+            int addressLength = (type & PEER_TYPE_IPV6) != 0 ? 16 : 4;
+            int next = address + addressLength + ((type & PEER_TYPE_AS4) != 0 ? 4 : 2);
+            require(next <= end);
+            peers[i] = addressLength == 16 ? BgpUpdateReader.ipv6(buf, address, 16)
+                    : BgpUpdateReader.ipv4(buf, address, 4);
+            entry = next;
+        }
+        return peers;
+    }
+
+    /**
+     * Decode the record at [at, end); peers is the PEER_INDEX_TABLE read
+     * before it in the same file, if any. Returns false for a record that
+     * carries no updates we read. Malformed records throw
+     * IllegalArgumentException before anything is emitted.
+     */
+    static boolean decode(ByteBuf buf, int at, int end, String[] peers, Sink sink) {
+        int type = type(buf, at);
+        int subtype = subtype(buf, at);
+        long millis = buf.getUnsignedInt(at) * 1000;
+        int body = at + HEADER;
+        if (type == BGP4MP_ET) {
+            require(body + 4 <= end);
+            millis += Math.min(buf.getUnsignedInt(body), 999_999) / 1000;
+            body += 4;
+        }
+        if (type == BGP4MP || type == BGP4MP_ET) {
+            return switch (subtype) {
+                case MESSAGE, MESSAGE_AS4 -> message(buf, body, end, subtype == MESSAGE_AS4 ? 4 : 2, millis, sink);
+                case STATE_CHANGE, STATE_CHANGE_AS4 ->
+                    stateChange(buf, body, end, subtype == STATE_CHANGE_AS4 ? 4 : 2, millis, sink);
+                default -> false;
+            };
+        }
+        if (type == TABLE_DUMP_V2 && (subtype == RIB_IPV4_UNICAST || subtype == RIB_IPV6_UNICAST)) {
+            require(peers != null);
+            return rib(buf, body, end, subtype == RIB_IPV4_UNICAST ? BgpUpdateReader.AFI_IPV4
+                    : BgpUpdateReader.AFI_IPV6, peers, millis, sink);
+        }
+        return false;
+    }
+
+    /**
+     * BGP4MP_MESSAGE(_AS4): peer and local AS, interface, AFI, peer and local
+     * address, then the BGP message
+     */
+    private static boolean message(ByteBuf buf, int body, int end, int asnSize, long millis, Sink sink) {
+        int afi = body + 2 * asnSize + 2;
+        require(afi + 2 <= end);
+        int addressLength = buf.getUnsignedShort(afi) == BgpUpdateReader.AFI_IPV6 ? 16 : 4;
+        int bgp = afi + 2 + 2 * addressLength;
+        require(bgp + BgpUpdateReader.BGP_HEADER <= end);
+        if (buf.getUnsignedByte(bgp + 18) != BgpUpdateReader.BGP_UPDATE) {
+            return false; // OPEN, KEEPALIVE, NOTIFICATION
+        }
+        BgpUpdateReader update = new BgpUpdateReader(buf, bgp, end);
+        String peer = address(buf, afi + 2, addressLength);
+        update.withdrawals(prefix -> sink.withdraw(millis, peer, prefix));
+        if (update.hasAnnouncements()) {
+            String path = update.path(asnSize);
+            update.announcements(prefix -> sink.announce(millis, peer, prefix, path));
+        }
+        return true;
+    }
+
+    /**
+     * BGP4MP_STATE_CHANGE(_AS4): reported when a session enters or leaves
+     * Established, other FSM moves are skipped
+     */
+    private static boolean stateChange(ByteBuf buf, int body, int end, int asnSize, long millis, Sink sink) {
+        int afi = body + 2 * asnSize + 2;
+        require(afi + 2 <= end);
+        int addressLength = buf.getUnsignedShort(afi) == BgpUpdateReader.AFI_IPV6 ? 16 : 4;
+        int states = afi + 2 + 2 * addressLength;
+        require(states + 4 <= end);
+        int oldState = buf.getUnsignedShort(states);
+        int newState = buf.getUnsignedShort(states + 2);
+        if ((oldState == ESTABLISHED) == (newState == ESTABLISHED)) {
+            return false;
+        }
+        sink.peerState(millis, address(buf, afi + 2, addressLength), newState == ESTABLISHED);
+        return true;
+    }
+
+    /**
+     * RIB_IPV4/IPV6_UNICAST: sequence number, the prefix, then one entry per
+     * peer with its path attributes (AS_PATH always with 4-byte ASNs)
+     */
+    private static boolean rib(ByteBuf buf, int body, int end, int afi, String[] peers, long millis,
+            Sink sink) {
+        require(body + 5 <= end);
+        int bits = buf.getUnsignedByte(body + 4);
+        int entries = body + 5 + (bits + 7) / 8;
+        require(bits <= (afi == BgpUpdateReader.AFI_IPV4 ? 32 : 128) && entries + 2 <= end);
+        String prefix = BgpUpdateReader.prefix(buf, body + 5, bits, afi);
+        int count = buf.getUnsignedShort(entries);
+
+        // Read every entry before emitting, as for UPDATE messages
+        String[] entryPeers = new String[count];
+        String[] paths = new String[count];
+        int entry = entries + 2;
+        for (int i = 0; i < count; i++) {
+            require(entry + 8 <= end && buf.getUnsignedShort(entry) < peers.length);
+            int attrsEnd = entry + 8 + buf.getUnsignedShort(entry + 6);
+            require(attrsEnd <= end);
+            entryPeers[i] = peers[buf.getUnsignedShort(entry)];
+            paths[i] = BgpUpdateReader.attributePath(buf, entry + 8, attrsEnd, 4);
+            entry = attrsEnd;
+        }
+        for (int i = 0; i < count; i++) {
+            sink.announce(millis, entryPeers[i], prefix, paths[i]);
+        }
+        return true;
+    }
+
+    private static String address(ByteBuf buf, int at, int length) {
+        return length == 16 ? BgpUpdateReader.ipv6(buf, at, 16) : BgpUpdateReader.ipv4(buf, at, 4);
+    }
+
+    private static void require(boolean condition) {
+        if (!condition) {
+            throw new IllegalArgumentException("Truncated or malformed MRT record");
+        }
+    }
+}
@@ -0,0 +1,727 @@
+package com.nhp.stream;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nhp.dto.OutageEvent;
+import com.nhp.dto.PrefixState;
+import com.nhp.services.DetectionPolicy;
+import com.nhp.services.OutageEventService;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Replays MRT update archives through outage detection in event time. Files
+ * are memory-mapped and cut into chunks of whole records, which are decoded
+ * in parallel into compact columns (time, prefix, peer, path as ids into
+ * per-chunk dictionaries), already split into prefix partitions. Each
+ * partition is then replayed on its own: its updates are counting-sorted by
+ * prefix, sorted by event time within a prefix (file order breaking ties),
+ * and applied to a fresh PrefixState as UpdateProcessor applies them. The
+ * detection policy and hold-downs are those of live detection, with the
+ * hold-downs running out in event time. Withdrawals from a peer while it is
+ * down are left out as PeerHealthService leaves them out, from its MRT state
+ * changes and its mass withdrawals, computed per peer up front from its
+ * sorted withdrawal times.
+ *
+ * Flap damping and ASN outages are not replayed. Events whose origin is not
+ * a plain ASN (an AS_SET) cannot be stored and are counted instead.
+ *
+ * Plain class with no Spring dependencies; one instance per run, progress
+ * counters may be read from other threads.
+ */
+final class MrtReplay {
+
+    // Bits of a sort key for the position of an update within its prefix; the
+    // event time relative to the earliest update takes the rest
+    private static final int INDEX_BITS = 24;
+
+    private static final int NONE = 0;
+    private static final int OUTAGE = 1;
+    private static final int RECOVERY = 2;
+
+    /**
+     * An MRT file and the route collector it was archived from
+     */
+    static final class Source {
+        final Path file;
+        final String collector;
+
+        Source(Path file, String collector) {
+            this.file = file;
+            this.collector = collector;
+        }
+    }
+
+    private final DetectionPolicy policy;
+    private final long outageHoldDown;
+    private final long recoveryHoldDown;
+    private final int massWithdrawalThreshold;
+    private final long massWithdrawalWindow;
+    private final long suppressFor;
+    private final int chunkSize;
+    private final int partitions;
+    private final ExecutorService executor;
+
+    final AtomicLong bytes = new AtomicLong();
+    final AtomicLong records = new AtomicLong();
+    final AtomicLong malformed = new AtomicLong();
+    final AtomicLong updates = new AtomicLong();
+    final AtomicLong prefixes = new AtomicLong();
+    final AtomicLong events = new AtomicLong();
+    final AtomicLong unrecorded = new AtomicLong();
+    final AtomicLong openAtEnd = new AtomicLong();
+
+    MrtReplay(DetectionPolicy policy, Duration outageHoldDown, Duration recoveryHoldDown,
+            int massWithdrawalThreshold, Duration massWithdrawalWindow, Duration suppressFor, int chunkSize,
+            int partitions, ExecutorService executor) {
+        this.policy = policy;
+        this.outageHoldDown = outageHoldDown.toMillis();
+        this.recoveryHoldDown = recoveryHoldDown.toMillis();
+        this.massWithdrawalThreshold = massWithdrawalThreshold;
+        this.massWithdrawalWindow = massWithdrawalWindow.toMillis();
+        this.suppressFor = suppressFor.toMillis();
+        this.chunkSize = chunkSize;
+        this.partitions = partitions;
+        this.executor = executor;
+    }
+
+    /**
+     * Map and decode the sources, in parallel per chunk
+     */
+    List<ChunkLog> decode(List<Source> sources) throws IOException, InterruptedException {
+        List<Callable<List<ChunkLog>>> splits = new ArrayList<>();
+        for (Source source : sources) {
+            splits.add(() -> split(source));
+        }
+        List<Callable<ChunkLog>> decodes = new ArrayList<>();
+        for (List<ChunkLog> chunks : invokeAll(splits)) {
+            for (ChunkLog chunk : chunks) {
+                decodes.add(() -> chunk.decode());
+            }
+        }
+        return invokeAll(decodes);
+    }
+
+    /**
+     * Replay decoded chunks; the events of each partition, in event time
+     * order per prefix
+     */
+    List<List<OutageEvent>> replay(List<ChunkLog> chunks, Instant detectedAt)
+            throws IOException, InterruptedException {
+        long[] span = span(chunks);
+        if (span == null) {
+            return List.of();
+        }
+        if (span[1] - span[0] >= 1L << (63 - INDEX_BITS)) {
+            throw new IllegalArgumentException("Updates span too long a period to replay");
+        }
+        Map<String, long[]> downs = peerDowntime(chunks);
+
+        long start = span[0];
+        long end = span[1];
+        List<Callable<List<OutageEvent>>> replays = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            int p = partition;
+            replays.add(() -> replayPartition(p, chunks, downs, start, end, detectedAt));
+        }
+        return invokeAll(replays);
+    }
+
+    /**
+     * Event times of the first and last decoded update, epoch milliseconds;
+     * null if there are none
+     */
+    static long[] span(List<ChunkLog> chunks) {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (ChunkLog chunk : chunks) {
+            first = Math.min(first, chunk.first);
+            last = Math.max(last, chunk.last);
+        }
+        return first > last ? null : new long[] { first, last };
+    }
+
+    /**
+     * Map a file and cut it into chunks of about chunkSize bytes at record
+     * boundaries, found by hopping from header to header. A
+     * PEER_INDEX_TABLE ends a chunk, the RIB records after it refer to it.
+     */
+    private List<ChunkLog> split(Source source) throws IOException {
+        ByteBuf buf;
+        try (FileChannel channel = FileChannel.open(source.file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(source.file + " is larger than 2 GiB, split it first");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buf = Unpooled.wrappedBuffer(mapped);
+        }
+        int end = buf.writerIndex();
+        bytes.addAndGet(end);
+
+        List<ChunkLog> chunks = new ArrayList<>();
+        String[] peers = null;
+        int chunkStart = 0;
+        int at = 0;
+        while (at < end) {
+            int length;
+            try {
+                length = MrtDecoder.recordLength(buf, at, end);
+            } catch (IllegalArgumentException e) {
+                malformed.incrementAndGet(); // Cut off, as the file being written at the time
+                break;
+            }
+            if (MrtDecoder.type(buf, at) == MrtDecoder.TABLE_DUMP_V2
+                    && MrtDecoder.subtype(buf, at) == MrtDecoder.PEER_INDEX_TABLE) {
+                if (at > chunkStart) {
+                    chunks.add(new ChunkLog(buf, chunkStart, at, source.collector, peers));
+                }
+                try {
+                    peers = MrtDecoder.peerIndexTable(buf, at, at + length);
+                } catch (IllegalArgumentException e) {
+                    malformed.incrementAndGet();
+                    peers = null;
+                }
+                records.incrementAndGet();
+                chunkStart = at + length;
+            }
+            at += length;
+            if (at - chunkStart >= chunkSize) {
+                chunks.add(new ChunkLog(buf, chunkStart, at, source.collector, peers));
+                chunkStart = at;
+            }
+        }
+        if (at > chunkStart) {
+            chunks.add(new ChunkLog(buf, chunkStart, at, source.collector, peers));
+        }
+        return chunks;
+    }
+
+    /**
+     * When each peer's withdrawals were suppressed, as sorted [from, until)
+     * pairs
+     */
+    private Map<String, long[]> peerDowntime(List<ChunkLog> chunks) throws IOException, InterruptedException {
+        Map<String, List<PeerLog>> byPeer = new HashMap<>();
+        for (ChunkLog chunk : chunks) {
+            for (int peer = 0; peer < chunk.peers.size(); peer++) {
+                byPeer.computeIfAbsent(chunk.peers.name(peer), key -> new ArrayList<>()).add(chunk.peerLogs.get(peer));
+            }
+        }
+        List<String> names = new ArrayList<>(byPeer.keySet());
+        List<Callable<long[]>> sweeps = new ArrayList<>();
+        for (String name : names) {
+            sweeps.add(() -> downtime(byPeer.get(name)));
+        }
+        List<long[]> downtimes = invokeAll(sweeps);
+        Map<String, long[]> downs = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (downtimes.get(i).length > 0) {
+                downs.put(names.get(i), downtimes.get(i));
+            }
+        }
+        return downs;
+    }
+
+    /**
+     * Sweep one peer's withdrawals and state changes in time order through
+     * PeerHealthService's rules: a Peer Down suppresses until the next Peer
+     * Up, and the withdrawal that reaches the threshold within a tumbling
+     * window suppresses for suppressFor from its time, until a Peer Up
+     */
+    private long[] downtime(List<PeerLog> logs) {
+        LongList all = new LongList();
+        LongList changes = new LongList();
+        for (PeerLog log : logs) {
+            all.addAll(log.withdrawals);
+            changes.addAll(log.states);
+        }
+        long[] withdrawals = all.toSortedArray();
+        long[] states = changes.toSortedArray(); // time << 1 | up
+
+        List<long[]> intervals = new ArrayList<>();
+        boolean windowOpen = false;
+        long windowStart = 0;
+        int windowCount = 0;
+        boolean down = false;
+        long downFrom = 0;
+        boolean storm = false;
+        long stormFrom = 0;
+        long stormUntil = 0;
+        int w = 0;
+        int s = 0;
+        while (w < withdrawals.length || s < states.length) {
+            if (s < states.length && (w == withdrawals.length || states[s] >> 1 <= withdrawals[w])) {
+                long time = states[s] >> 1;
+                boolean up = (states[s++] & 1) == 1;
+                if (up) {
+                    if (down) {
+                        intervals.add(new long[] { downFrom, time });
+                        down = false;
+                    }
+                    if (storm) {
+                        intervals.add(new long[] { stormFrom, Math.min(stormUntil, time) });
+                        storm = false;
+                    }
+                } else if (!down) {
+                    down = true;
+                    downFrom = time;
+                }
+                continue;
+            }
+            long time = withdrawals[w++];
+            if (!windowOpen || time >= windowStart + massWithdrawalWindow) {
+                windowOpen = true;
+                windowStart = time;
+                windowCount = 0;
+            }
+            if (++windowCount >= massWithdrawalThreshold) {
+                if (!storm || time > stormUntil) {
+                    if (storm) {
+                        intervals.add(new long[] { stormFrom, stormUntil });
+                    }
+                    storm = true;
+                    stormFrom = time;
+                }
+                stormUntil = time + suppressFor;
+            }
+        }
+        if (down) {
+            intervals.add(new long[] { downFrom, Long.MAX_VALUE });
+        }
+        if (storm) {
+            intervals.add(new long[] { stormFrom, stormUntil });
+        }
+
+        // Merge overlaps into sorted, disjoint pairs
+        intervals.sort(Comparator.comparingLong(interval -> interval[0]));
+        LongList merged = new LongList();
+        for (long[] interval : intervals) {
+            int size = merged.size();
+            if (size > 0 && interval[0] <= merged.get(size - 1)) {
+                merged.set(size - 1, Math.max(merged.get(size - 1), interval[1]));
+            } else {
+                merged.add(interval[0]);
+                merged.add(interval[1]);
+            }
+        }
+        return merged.toArray();
+    }
+
+    private List<OutageEvent> replayPartition(int partition, List<ChunkLog> chunks, Map<String, long[]> downs,
+            long start, long end, Instant detectedAt) {
+        // Partition-wide prefix ids
+        Names names = new Names();
+        int[][] ids = new int[chunks.size()][];
+        int total = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            Part part = chunks.get(c).parts[partition];
+            ids[c] = new int[part.prefixes.size()];
+            for (int local = 0; local < ids[c].length; local++) {
+                ids[c][local] = names.id(part.prefixes.name(local));
+            }
+            total += part.prefix.size();
+        }
+
+        // Counting sort by prefix, keeping file order
+        int[] offsets = new int[names.size() + 1];
+        for (int c = 0; c < chunks.size(); c++) {
+            IntList prefix = chunks.get(c).parts[partition].prefix;
+            for (int i = 0; i < prefix.size(); i++) {
+                offsets[ids[c][prefix.get(i)] + 1]++;
+            }
+        }
+        for (int id = 0; id < names.size(); id++) {
+            offsets[id + 1] += offsets[id];
+        }
+        long[] order = new long[total];
+        int[] fill = Arrays.copyOf(offsets, names.size());
+        for (int c = 0; c < chunks.size(); c++) {
+            IntList prefix = chunks.get(c).parts[partition].prefix;
+            for (int i = 0; i < prefix.size(); i++) {
+                order[fill[ids[c][prefix.get(i)]]++] = (long) c << 32 | i;
+            }
+        }
+
+        List<OutageEvent> events = new ArrayList<>();
+        long[] keys = new long[0];
+        for (int id = 0; id < names.size(); id++) {
+            int from = offsets[id];
+            int count = offsets[id + 1] - from;
+            if (count >= 1 << INDEX_BITS) {
+                throw new IllegalArgumentException("Too many updates of " + names.name(id) + " to replay");
+            }
+            if (keys.length < count) {
+                keys = new long[Math.max(count, keys.length * 2)];
+            }
+            for (int k = 0; k < count; k++) {
+                long ref = order[from + k];
+                ChunkLog chunk = chunks.get((int) (ref >>> 32));
+                long time = chunk.base + chunk.parts[partition].time.get((int) ref);
+                keys[k] = (time - start) << INDEX_BITS | k;
+            }
+            Arrays.sort(keys, 0, count);
+
+            PrefixReplay replay = new PrefixReplay(names.name(id), detectedAt, events);
+            for (int k = 0; k < count; k++) {
+                long ref = order[from + (int) (keys[k] & ((1 << INDEX_BITS) - 1))];
+                ChunkLog chunk = chunks.get((int) (ref >>> 32));
+                Part part = chunk.parts[partition];
+                int i = (int) ref;
+                replay.apply(chunk, chunk.base + part.time.get(i), chunk.peers.name(part.peer.get(i)),
+                        part.path.get(i), downs);
+            }
+            replay.finish(end);
+        }
+        prefixes.addAndGet(names.size());
+        this.events.addAndGet(events.size());
+        return events;
+    }
+
+    private static boolean isDown(long[] downtime, long time) {
+        if (downtime == null) {
+            return false;
+        }
+        // Last interval starting at or before time
+        int low = 0;
+        int high = downtime.length / 2 - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (downtime[2 * mid] <= time) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found >= 0 && time < downtime[2 * found + 1];
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException, InterruptedException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * One prefix's detection state, updates applied in event time
+     */
+    private final class PrefixReplay {
+        private final String prefix;
+        private final Instant detectedAt;
+        private final List<OutageEvent> events;
+        private final PrefixState state = new PrefixState();
+        private int pending = NONE;
+        private long pendingSince;
+        private long pendingDeadline;
+        // Index in events of the outage start not recovered yet; -1 if none
+        private int openOutage = -1;
+
+        PrefixReplay(String prefix, Instant detectedAt, List<OutageEvent> events) {
+            this.prefix = prefix;
+            this.detectedAt = detectedAt;
+            this.events = events;
+        }
+
+        void apply(ChunkLog chunk, long time, String peer, int path, Map<String, long[]> downs) {
+            // The sweep would have applied an expired hold-down by now
+            if (pending != NONE && time >= pendingDeadline) {
+                report(pending == OUTAGE, pendingSince);
+            }
+            if (path < 0) {
+                if (isDown(downs.get(peer), time)) {
+                    return;
+                }
+                state.removeVisiblePeer(peer);
+                state.getWithdrawnBy().add(peer);
+            } else {
+                if (OutageEventService.parseOriginAsn(chunk.origins.get(path)) == null) {
+                    unrecorded.incrementAndGet(); // Unknown origin, as in live ingestion
+                    return;
+                }
+                state.addVisiblePeer(peer, chunk.collector);
+                state.setOriginAsn(chunk.origins.get(path));
+                state.setLastPath(chunk.paths.name(path));
+            }
+            evaluate(time);
+        }
+
+        /**
+         * Report what the sweep would have by the end of the archives, then
+         * drop an outage still open: no live recovery would ever close it, so
+         * loaded it would stay active forever
+         */
+        void finish(long end) {
+            if (pending != NONE && pendingDeadline <= end) {
+                report(pending == OUTAGE, pendingSince);
+            }
+            if (openOutage >= 0) {
+                // Nothing is added after it for this prefix, so it is the last event
+                events.remove(openOutage);
+                openOutage = -1;
+                openAtEnd.incrementAndGet();
+            }
+        }
+
+        private void evaluate(long time) {
+            if (state.getOriginAsn() == null) {
+                return;
+            }
+            boolean down = policy.isOutage(state);
+            if (down == state.isWithdrawn()) {
+                pending = NONE;
+                return;
+            }
+            long holdDown = down ? outageHoldDown : recoveryHoldDown;
+            if (holdDown == 0) {
+                report(down, time);
+            } else if (pending != (down ? OUTAGE : RECOVERY)) {
+                pending = down ? OUTAGE : RECOVERY;
+                pendingSince = time;
+                pendingDeadline = time + holdDown;
+            }
+        }
+
+        private void report(boolean outage, long since) {
+            pending = NONE;
+            state.setWithdrawn(outage);
+            Integer origin = OutageEventService.parseOriginAsn(state.getOriginAsn());
+            openOutage = outage ? events.size() : -1;
+            events.add(OutageEvent.builder()
+                    .prefix(prefix)
+                    .originAsn(origin)
+                    .timestamp(Instant.ofEpochMilli(since))
+                    .detectedAt(detectedAt)
+                    .eventType(outage ? "outage_start" : "recovery")
+                    .lastPath(state.getLastPath())
+                    .withdrawnBy(state.getWithdrawnBy().toArray(String[]::new))
+                    .build());
+        }
+    }
+
+    /**
+     * The updates of one chunk of a file, as columns per prefix partition
+     */
+    final class ChunkLog implements MrtDecoder.Sink {
+        private final ByteBuf buf;
+        private final int start;
+        private final int end;
+        private final String collector;
+        private final String[] peerTable;
+
+        private final Part[] parts = new Part[partitions];
+        private final Names peers = new Names();
+        private final List<PeerLog> peerLogs = new ArrayList<>();
+        private final Names paths = new Names();
+        private final List<String> origins = new ArrayList<>();
+
+        // Times are kept relative to the first record's
+        private long base;
+        private long first = Long.MAX_VALUE;
+        private long last = Long.MIN_VALUE;
+        private long count;
+
+        ChunkLog(ByteBuf buf, int start, int end, String collector, String[] peerTable) {
+            this.buf = buf;
+            this.start = start;
+            this.end = end;
+            this.collector = collector;
+            this.peerTable = peerTable;
+            for (int p = 0; p < partitions; p++) {
+                parts[p] = new Part();
+            }
+        }
+
+        ChunkLog decode() {
+            base = buf.getUnsignedInt(start) * 1000;
+            long decoded = 0;
+            for (int at = start; at < end;) {
+                int length = MrtDecoder.recordLength(buf, at, end);
+                try {
+                    MrtDecoder.decode(buf, at, at + length, peerTable, this);
+                    decoded++;
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    malformed.incrementAndGet();
+                }
+                at += length;
+            }
+            records.addAndGet(decoded);
+            updates.addAndGet(count);
+            return this;
+        }
+
+        @Override
+        public void announce(long millis, String peer, String prefix, String path) {
+            int id = paths.size();
+            int pathId = paths.id(path);
+            if (pathId == id) {
+                origins.add(BgpUpdateReader.originOf(path));
+            }
+            add(millis, peer, prefix, pathId);
+        }
+
+        @Override
+        public void withdraw(long millis, String peer, String prefix) {
+            peerLogs.get(add(millis, peer, prefix, -1)).withdrawals.add(millis);
+        }
+
+        @Override
+        public void peerState(long millis, String peer, boolean up) {
+            peerLogs.get(peerId(peer)).states.add(millis << 1 | (up ? 1 : 0));
+        }
+
+        private int add(long millis, String peer, String prefix, int path) {
+            Part part = parts[Math.floorMod(prefix.hashCode(), partitions)];
+            int peerId = peerId(peer);
+            part.time.add(Math.toIntExact(millis - base));
+            part.prefix.add(part.prefixes.id(prefix));
+            part.peer.add(peerId);
+            part.path.add(path);
+            first = Math.min(first, millis);
+            last = Math.max(last, millis);
+            count++;
+            return peerId;
+        }
+
+        private int peerId(String peer) {
+            int id = peers.id(peer);
+            if (id == peerLogs.size()) {
+                peerLogs.add(new PeerLog());
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Updates of the prefixes of one partition; path -1 is a withdrawal
+     */
+    private static final class Part {
+        private final Names prefixes = new Names();
+        private final IntList time = new IntList();
+        private final IntList prefix = new IntList();
+        private final IntList peer = new IntList();
+        private final IntList path = new IntList();
+    }
+
+    private static final class PeerLog {
+        private final LongList withdrawals = new LongList();
+        private final LongList states = new LongList();
+    }
+
+    /**
+     * Strings by dense id, in the order first seen
+     */
+    private static final class Names {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        int id(String name) {
+            Integer id = ids.putIfAbsent(name, names.size());
+            if (id != null) {
+                return id;
+            }
+            names.add(name);
+            return names.size() - 1;
+        }
+
+        String name(int id) {
+            return names.get(id);
+        }
+
+        int size() {
+            return names.size();
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(LongList other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        long get(int index) {
+            return values[index];
+        }
+
+        void set(int index, long value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = toArray();
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -8,17 +8,25 @@ import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nhp.dto.BgpUpdateMessage;
 import com.nhp.services.MetricsService;
+import com.nhp.services.ShardCoordinator;
+import com.nhp.services.StartupGate;
 import com.nhp.services.UpdateProcessor;
 
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
 import reactor.netty.http.client.WebsocketClientSpec;
 import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
 import reactor.util.retry.Retry;
 
 @Slf4j
@@ -31,14 +39,54 @@ public class RipeStreamClient {
     @Autowired
     private UpdateProcessor updateProcessor;
 
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
+    @Autowired
+    private StartupGate startupGate;
+
+    // Where processing runs, see ExecutionConfig
+    @Autowired
+    private Scheduler blockingScheduler;
+
+    @Autowired
+    private IngestLanes ingestLanes;
+
+    // Updates held while startup warm-ups run (fast-start profile)
+    @Value("${nhp.startup.buffer:100000}")
+    private int startupBuffer;
+
     private static final String RIS_WS_URL = "wss://ris-live.ripe.net/v1/ws/";
     private final ObjectMapper objectMapper = new ObjectMapper();
     private Disposable connection;
+    private List<String> subscribedPrefixes = List.of();
 
     @PostConstruct
     public void startStream() {
-        // TODO fetch this list of prefixes from the kafka stream
-        restartStreamWithPrefixes(List.of("8.8.8.0/24"));
+        if (shardCoordinator.isEnabled()) {
+            log.info("Cluster mode: subscribing once shard units are assigned");
+            return;
+        }
+        restartStreamWithPrefixes(shardCoordinator.getSubscription());
+    }
+
+    /**
+     * Resubscribe to this instance's slice of the stream after a shard handoff
+     */
+    @EventListener
+    public synchronized void onOwnershipChanged(ShardCoordinator.OwnershipChanged event) {
+        List<String> prefixes = shardCoordinator.getSubscription();
+        if (prefixes.equals(subscribedPrefixes)) {
+            return;
+        }
+        if (prefixes.isEmpty()) {
+            // An empty prefix list would subscribe to everything
+            log.info("No configured prefixes fall in this instance's shard units");
+            stopStream();
+            subscribedPrefixes = prefixes;
+            return;
+        }
+        restartStreamWithPrefixes(prefixes);
     }
 
     // gracefully handle app shutdown, least thing we can do
@@ -50,7 +98,8 @@ public class RipeStreamClient {
         }
     }
 
-    public void restartStreamWithPrefixes(List<String> prefixes) {
+    public synchronized void restartStreamWithPrefixes(List<String> prefixes) {
+        subscribedPrefixes = List.copyOf(prefixes);
         if (connection != null && !connection.isDisposed()) {
             connection.dispose();
             log.info("Closed previous RIPE stream connection");
@@ -62,20 +111,34 @@ public class RipeStreamClient {
                 .websocket(WebsocketClientSpec.builder().build())
                 .uri(RIS_WS_URL)
                 .handle((inbound, outbound) -> {
-                    // send the subscription message
-                    outbound.sendString(Mono.just(buildSubscribeMsg(prefixes)))
+                    // send the subscription messages: updates for our prefixes, and
+                    // peer session state so session resets are not taken for outages
+                    outbound.sendString(Flux.just(buildSubscribeMsg(prefixes), buildPeerStateSubscribeMsg()))
                             .then()
                             .subscribe();
 
-                    // consumer logic from this socket now
-                    inbound.receive().asString()
-                            .doOnNext(msg -> {
+                    // consumer logic from this socket now: parse on the event loop,
+                    // then process in per-prefix lanes on the blocking scheduler
+                    Flux<BgpUpdateMessage> updates = inbound.receive().asString()
+                            .handle((msg, sink) -> {
                                 log.debug("BGP Message: {}", msg);
                                 metricsService.incrementBgpMessagesReceieved();
-
-                                // Process the BGP message
-                                updateProcessor.processBgpUpdate(msg);
-                            })
+                                metricsService.recordFirstMessage(false);
+
+                                BgpUpdateMessage update = updateProcessor.parse(msg);
+                                if (update != null) {
+                                    sink.next(update);
+                                }
+                            });
+                    if (!startupGate.isReady()) {
+                        // Connected ahead of the warm-ups: hold updates, oldest dropped first if they overrun
+                        updates = updates
+                                .onBackpressureBuffer(startupBuffer,
+                                        dropped -> metricsService.incrementStartupUpdatesDropped(),
+                                        BufferOverflowStrategy.DROP_OLDEST)
+                                .delayUntil(update -> startupGate.ready());
+                    }
+                    ingestLanes.dispatch(updates, RipeStreamClient::laneKey, this::process, blockingScheduler)
                             .doOnError(error -> {
                                 log.error("Error while streaming", error);
                                 metricsService.recordWebsocketError();
@@ -97,6 +160,18 @@ public class RipeStreamClient {
                 .subscribe();
     }
 
+    private void process(BgpUpdateMessage update) {
+        updateProcessor.process(update);
+        metricsService.recordFirstMessage(true);
+    }
+
+    /**
+     * Updates are ordered per prefix; peer state messages per peer
+     */
+    static Object laneKey(BgpUpdateMessage update) {
+        return update.getPrefix() != null ? update.getPrefix() : update.getCollector();
+    }
+
     private String buildSubscribeMsg(List<String> prefixes) {
         try {
             Map<String, Object> parameters = Map.of(
@@ -110,4 +185,14 @@ public class RipeStreamClient {
             throw new RuntimeException("Error while building subscribe message", e);
         }
     }
+
+    private String buildPeerStateSubscribeMsg() {
+        try {
+            return objectMapper.writeValueAsString(Map.of(
+                    "type", "ris_subscribe",
+                    "data", Map.of("type", "RIS_PEER_STATE")));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error while building peer state subscribe message", e);
+        }
+    }
 }
@@ -0,0 +1,50 @@
+-- Chunking, compression and retention for the outage hypertables.
+--
+-- Ingest is one row per prefix state change: a few thousand rows a day in
+-- normal conditions and a few hundred thousand during a large event. Chunks
+-- are therefore sized by time so that the recent, frequently queried window
+-- (dashboard: 24h, stats: 7d) sits in one or two uncompressed chunks while
+-- older chunks stay small enough to compress and drop individually.
+
+-- outage_events: weekly chunks (applies to chunks created from now on)
+SELECT set_chunk_time_interval('outage_events', INTERVAL '7 days');
+
+-- Compress per ASN: history queries filter on origin_asn and read newest
+-- first, so segmenting by it keeps each ASN's rows in their own compressed
+-- batches ordered the way they are read
+ALTER TABLE outage_events SET (
+    timescaledb.compress,
+    timescaledb.compress_segmentby = 'origin_asn',
+    timescaledb.compress_orderby = 'timestamp DESC, id DESC'
+);
+
+-- Outages rarely stay open for two weeks; the duration trigger may still
+-- update older rows, which TimescaleDB 2.11+ supports on compressed chunks
+SELECT add_compression_policy('outage_events', INTERVAL '14 days', if_not_exists => TRUE);
+
+-- Keep two years of per-prefix history online; use the columnar export
+-- (nhp.export.*) to archive older data before it is dropped
+SELECT add_retention_policy('outage_events', INTERVAL '730 days', if_not_exists => TRUE);
+
+-- asn_outages becomes a hypertable on start_time. Its primary key must
+-- include the partitioning column first.
+ALTER TABLE asn_outages DROP CONSTRAINT IF EXISTS asn_outages_pkey;
+ALTER TABLE asn_outages ADD PRIMARY KEY (id, start_time);
+
+SELECT create_hypertable(
+        'asn_outages', 'start_time',
+        chunk_time_interval => INTERVAL '30 days',
+        if_not_exists => TRUE,
+        migrate_data => TRUE
+    );
+
+ALTER TABLE asn_outages SET (
+    timescaledb.compress,
+    timescaledb.compress_segmentby = 'asn',
+    timescaledb.compress_orderby = 'start_time DESC, id DESC'
+);
+
+-- ASN outages are written once, when they close, so compress sooner
+SELECT add_compression_policy('asn_outages', INTERVAL '7 days', if_not_exists => TRUE);
+
+SELECT add_retention_policy('asn_outages', INTERVAL '730 days', if_not_exists => TRUE);
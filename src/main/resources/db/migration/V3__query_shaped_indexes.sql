@@ -0,0 +1,63 @@
+-- Indexes shaped after the queries the application actually runs (see
+-- benchmarks/query_audit.sql for the EXPLAIN of each one). The single-column
+-- indexes from V1 are replaced where a composite index serves the same
+-- lookups; the default time index TimescaleDB created on each hypertable
+-- stays.
+
+-- OutageEventRepository.findPageByOriginAsn / streamAsnEvents:
+--   origin_asn = ? AND timestamp range ORDER BY timestamp DESC, id DESC
+-- also countDistinctPrefixByOriginAsn (index-only thanks to INCLUDE) and
+-- the distinct ASN scan of the stats seed (index-only, leading column)
+CREATE INDEX IF NOT EXISTS idx_outage_events_asn_time
+    ON outage_events (origin_asn, timestamp DESC, id DESC) INCLUDE (prefix);
+
+-- OutageEventRepository.findPageByPrefix / streamPrefixHistory and the
+-- distinct prefix scan of the stats seed
+CREATE INDEX IF NOT EXISTS idx_outage_events_prefix_time
+    ON outage_events (prefix, timestamp DESC, id DESC);
+
+-- OutageEventRepository.findPage and the ordered exports:
+--   timestamp range ORDER BY timestamp DESC, id DESC
+CREATE INDEX IF NOT EXISTS idx_outage_events_time_id
+    ON outage_events (timestamp DESC, id DESC);
+
+-- countByEventType, countByEventTypeAndTimestampAfter and
+-- countByEventTypePerHourSince: index-only counts per type and time range
+CREATE INDEX IF NOT EXISTS idx_outage_events_type_time
+    ON outage_events (event_type, timestamp);
+
+-- findActiveOutages / countByEventTypeAndResolvedAtIsNull: only open
+-- outages, which are a tiny fraction of the table
+CREATE INDEX IF NOT EXISTS idx_outage_events_open
+    ON outage_events (timestamp DESC)
+    WHERE event_type = 'outage_start' AND resolved_at IS NULL;
+
+-- calculate_outage_duration trigger: latest open outage for a prefix/ASN
+CREATE INDEX IF NOT EXISTS idx_outage_events_open_prefix_asn
+    ON outage_events (prefix, origin_asn, timestamp DESC)
+    WHERE event_type = 'outage_start' AND resolved_at IS NULL;
+
+-- findAverageDurationMinutes / sumResolvedDurationSeconds
+CREATE INDEX IF NOT EXISTS idx_outage_events_resolved_duration
+    ON outage_events (timestamp) INCLUDE (duration)
+    WHERE duration IS NOT NULL;
+
+-- Superseded by the composite indexes above
+DROP INDEX IF EXISTS idx_outage_events_prefix;
+DROP INDEX IF EXISTS idx_outage_events_origin_asn;
+DROP INDEX IF EXISTS idx_outage_events_timestamp;
+DROP INDEX IF EXISTS idx_outage_events_event_type;
+
+-- AsnOutageRepository.findPageByAsn:
+--   asn = ? AND start_time range ORDER BY start_time DESC, id DESC
+CREATE INDEX IF NOT EXISTS idx_asn_outages_asn_time
+    ON asn_outages (asn, start_time DESC, id DESC);
+
+-- AsnOutageRepository.findActiveAsnOutages
+CREATE INDEX IF NOT EXISTS idx_asn_outages_open
+    ON asn_outages (start_time DESC)
+    WHERE end_time IS NULL;
+
+-- findRecentAsnOutages uses the hypertable's default start_time index
+DROP INDEX IF EXISTS idx_asn_outages_asn;
+DROP INDEX IF EXISTS idx_asn_outages_start_time;
@@ -0,0 +1,8 @@
+-- outage_events.timestamp now carries the BGP event time from the RIS
+-- message, so replays and backfills land where they happened. The wall-clock
+-- detection time is kept alongside it; the difference is the detection lag.
+-- Rows written before this migration have no detection time.
+ALTER TABLE outage_events ADD COLUMN IF NOT EXISTS detected_at TIMESTAMPTZ;
+
+COMMENT ON COLUMN outage_events.timestamp IS 'BGP event time (RIS message timestamp)';
+COMMENT ON COLUMN outage_events.detected_at IS 'Wall-clock time the event was detected';
@@ -0,0 +1,29 @@
+-- Origin anomalies raised by the route anomaly stage (RouteAnomalyService).
+-- Rare compared to outage events, so weekly chunks and the same retention.
+CREATE TABLE IF NOT EXISTS route_anomalies (
+    id BIGSERIAL,
+    prefix CIDR NOT NULL,
+    timestamp TIMESTAMPTZ NOT NULL,
+    detected_at TIMESTAMPTZ,
+    anomaly_type TEXT NOT NULL,
+    origin_asn INTEGER NOT NULL,
+    expected_origins INTEGER[],
+    covering_prefix CIDR,
+    as_path TEXT,
+    peer TEXT,
+    created_at TIMESTAMPTZ DEFAULT NOW(),
+    PRIMARY KEY (id, timestamp)
+);
+
+SELECT create_hypertable('route_anomalies', 'timestamp',
+    chunk_time_interval => INTERVAL '7 days', if_not_exists => TRUE);
+
+SELECT add_retention_policy('route_anomalies', INTERVAL '730 days', if_not_exists => TRUE);
+
+-- RouteAnomalyRepository.findPage: timestamp range ORDER BY timestamp DESC, id DESC
+CREATE INDEX IF NOT EXISTS idx_route_anomalies_time_id
+    ON route_anomalies (timestamp DESC, id DESC);
+
+-- RouteAnomalyRepository.findPageByPrefix
+CREATE INDEX IF NOT EXISTS idx_route_anomalies_prefix_time
+    ON route_anomalies (prefix, timestamp DESC, id DESC);
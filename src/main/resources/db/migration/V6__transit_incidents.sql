@@ -0,0 +1,27 @@
+-- Outages correlated behind a transit AS (TransitCorrelationService).
+-- Written once, when the incident closes; same layout and retention as asn_outages.
+CREATE TABLE IF NOT EXISTS transit_incidents (
+    id BIGSERIAL,
+    asn INTEGER NOT NULL,
+    start_time TIMESTAMPTZ NOT NULL,
+    end_time TIMESTAMPTZ,
+    prefixes TEXT[] NOT NULL,
+    origin_asns INTEGER[] NOT NULL,
+    affected_downstreams INTEGER,
+    downstream_asns INTEGER,
+    created_at TIMESTAMPTZ DEFAULT NOW(),
+    PRIMARY KEY (id, start_time)
+);
+
+SELECT create_hypertable('transit_incidents', 'start_time',
+    chunk_time_interval => INTERVAL '30 days', if_not_exists => TRUE);
+
+SELECT add_retention_policy('transit_incidents', INTERVAL '730 days', if_not_exists => TRUE);
+
+-- TransitIncidentRepository.findPage
+CREATE INDEX IF NOT EXISTS idx_transit_incidents_time_id
+    ON transit_incidents (start_time DESC, id DESC);
+
+-- TransitIncidentRepository.findPageByAsn
+CREATE INDEX IF NOT EXISTS idx_transit_incidents_asn_time
+    ON transit_incidents (asn, start_time DESC, id DESC);
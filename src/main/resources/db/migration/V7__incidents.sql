@@ -0,0 +1,26 @@
+-- Concurrent ASN outages grouped by country and shared upstream (IncidentService).
+-- Written once, when the incident closes; same layout and retention as asn_outages.
+CREATE TABLE IF NOT EXISTS incidents (
+    id BIGSERIAL,
+    start_time TIMESTAMPTZ NOT NULL,
+    end_time TIMESTAMPTZ,
+    asns INTEGER[] NOT NULL,
+    countries TEXT[] NOT NULL,
+    upstream_asns INTEGER[] NOT NULL,
+    prefix_count INTEGER,
+    created_at TIMESTAMPTZ DEFAULT NOW(),
+    PRIMARY KEY (id, start_time)
+);
+
+SELECT create_hypertable('incidents', 'start_time',
+    chunk_time_interval => INTERVAL '30 days', if_not_exists => TRUE);
+
+SELECT add_retention_policy('incidents', INTERVAL '730 days', if_not_exists => TRUE);
+
+-- IncidentRepository.findPage
+CREATE INDEX IF NOT EXISTS idx_incidents_time_id
+    ON incidents (start_time DESC, id DESC);
+
+-- IncidentRepository.findPageByCountry
+CREATE INDEX IF NOT EXISTS idx_incidents_countries
+    ON incidents USING GIN (countries);
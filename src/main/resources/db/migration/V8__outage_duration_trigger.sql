@@ -0,0 +1,37 @@
+-- The duration trigger, owned by a versioned migration from here on. The
+-- trigger shipped before Flyway used UPDATE ... ORDER BY ... LIMIT, which
+-- PostgreSQL rejects, so databases bootstrapped by the old init-db.sql never
+-- got it; V1 creates it with the target row picked in a subquery. This
+-- redefines it the same way on every database, whichever V1 body it ran, so
+-- later changes to the trigger go in a new version instead of an edit to V1.
+CREATE OR REPLACE FUNCTION calculate_outage_duration()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF NEW.event_type = 'recovery' THEN
+        -- Close the latest open outage_start of the same prefix and origin
+        -- (served by idx_outage_events_open_prefix_asn from V3)
+        UPDATE outage_events
+        SET resolved_at = NEW.timestamp,
+            duration = NEW.timestamp - timestamp
+        WHERE (id, timestamp) = (
+            SELECT id, timestamp
+            FROM outage_events
+            WHERE prefix = NEW.prefix
+              AND origin_asn = NEW.origin_asn
+              AND event_type = 'outage_start'
+              AND resolved_at IS NULL
+              AND timestamp < NEW.timestamp
+            ORDER BY timestamp DESC
+            LIMIT 1
+        );
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trigger_calculate_duration ON outage_events;
+
+CREATE TRIGGER trigger_calculate_duration
+    AFTER INSERT ON outage_events
+    FOR EACH ROW
+    EXECUTE FUNCTION calculate_outage_duration();